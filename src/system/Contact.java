@@ -23,6 +23,8 @@ class Contact implements Serializable {
     private String address;
     //黑名单
     private boolean isBlacklisted;
+    // 标签（分组也以标签表示，如 家人、同事、VIP），不可变集合，修改时整体替换；旧快照反序列化后为 null
+    private Set<String> tags;
     
     /**
      * 构造方法，初始化联系人对象
@@ -40,6 +42,15 @@ class Contact implements Serializable {
         this.address = address;
         this.isBlacklisted = isBlacklisted;
     }
+
+    /**
+     * 拷贝构造方法，用于在内存缓存与调用方之间隔离可变对象
+     * @param other 被拷贝的联系人
+     */
+    public Contact(Contact other) {
+        this(other.id, other.name, other.phone, other.email, other.address, other.isBlacklisted);
+        this.tags = other.tags; // 标签集合不可变，可以共享
+    }
     
     // Getter 方法
     public int getId() { return id; }
@@ -48,6 +59,7 @@ class Contact implements Serializable {
     public String getEmail() { return email; }
     public String getAddress() { return address; }
     public boolean isBlacklisted() { return isBlacklisted;}
+    public Set<String> getTags() { return tags == null ? Collections.<String>emptySet() : tags; }
     
     // Setter 方法
     public void setId(int id) { this.id = id; } // Added setId method
@@ -56,9 +68,13 @@ class Contact implements Serializable {
     public void setEmail(String email) { this.email = email; }
     public void setAddress(String address) { this.address = address; }
     public void setBlacklisted(boolean blacklisted) { isBlacklisted  = blacklisted; }
+    public void setTags(Collection<String> tags) {
+        this.tags = tags == null || tags.isEmpty() ? null : Collections.unmodifiableSet(new TreeSet<>(tags));
+    }
     
     @Override
     public String toString() {
-        return "编号: " + id + ", 姓名: " + name + ", 电话: " + phone + ", 邮箱: " + email + ", 地址: " + address;
+        return "编号: " + id + ", 姓名: " + name + ", 电话: " + phone + ", 邮箱: " + email + ", 地址: " + address
+                + (tags == null ? "" : ", 标签: " + String.join("、", tags));
     }
 }
@@ -0,0 +1,292 @@
+package system;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * ContactAccessTracker 类：按联系人编号统计访问频率（含时间衰减），只在内存中维护，不写数据库
+ * 频率用 count-min 草图估计：DEPTH 行计数器，每行用不同的哈希定位，估计值取各行最小值，
+ * 增加时只增加等于最小值的计数器（保守更新），减少哈希冲突带来的高估。
+ * 计数器定期整体减半：累计访问达到 SAMPLE_FACTOR 倍宽度时（使频率反映最近一段时间），
+ * 以及每经过一个半衰期时（使长时间未访问的联系人分数逐渐降低）。
+ * 另外保留估计值最高的少量联系人作为热点集合，供输入关键字时立即给出候选。
+ * 记录访问在读路径上，不加锁：计数器用原子数组，并发的保守更新可能少计，属于估计误差；
+ * 热点集合只记成员，分数取当时的估计值；不在集合中、且（集合已满时）估计值超过集合最低分的访问才排队，
+ * 由取热点、衰减时（或排队较多时由恰好拿到锁的线程）在锁内合并，记录访问的线程不会等待这把锁。
+ */
+class ContactAccessTracker implements ContactChangeListener {
+
+    private static final int DEPTH = 4;
+    private static final int SAMPLE_FACTOR = 10;
+    // 约每记录这么多次检查一次累计次数是否到了减半的时候
+    private static final int SAMPLE_CHECK_INTERVAL = 64;
+    private static final int[] SEEDS = {0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F};
+
+    private final int mask;
+    private final AtomicIntegerArray[] counters;
+    private final int hotCapacity;
+    private final long halfLifeMillis;
+    private final LongAdder additions = new LongAdder();
+    private volatile long lastDecayMillis = System.currentTimeMillis();
+    // 以下热点状态访问时锁住 hotLock：热点联系人编号
+    private final ReentrantLock hotLock = new ReentrantLock();
+    private final Set<Integer> hot = new HashSet<>();
+    // 热点集合的只读副本，每次合并后发布，供记录访问时无锁判断是否已是成员
+    private volatile Set<Integer> hotView = Collections.emptySet();
+    // 进入热点集合所需超过的分数：集合未满时为 0，已满时为合并时成员的最低分
+    private volatile int admission;
+    // 待合并的编号
+    private final ConcurrentLinkedQueue<Integer> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+
+    ContactAccessTracker() {
+        this(Integer.getInteger("contact.access.width", 1 << 13),
+             Integer.getInteger("contact.access.hotSize", 128),
+             Long.getLong("contact.access.halfLifeMinutes", 60) * 60_000);
+    }
+
+    /**
+     * @param width 每行计数器数，向上取整为 2 的幂
+     * @param hotCapacity 热点集合大小
+     * @param halfLifeMillis 分数减半的时间间隔，小于等于 0 表示不按时间衰减
+     */
+    ContactAccessTracker(int width, int hotCapacity, long halfLifeMillis) {
+        int size = Integer.highestOneBit(Math.max(16, width - 1) << 1);
+        this.mask = size - 1;
+        this.counters = new AtomicIntegerArray[DEPTH];
+        for (int row = 0; row < DEPTH; row++) {
+            counters[row] = new AtomicIntegerArray(size);
+        }
+        this.hotCapacity = hotCapacity;
+        this.halfLifeMillis = halfLifeMillis;
+    }
+
+    private int index(int id, int row) {
+        int h = id * SEEDS[row];
+        h ^= h >>> 16;
+        h *= 0x7FEB352D;
+        h ^= h >>> 15;
+        return h & mask;
+    }
+
+    /**
+     * 记录一次访问
+     */
+    void record(int id) {
+        decayIfDue();
+        int min = estimateOf(id);
+        if (min == Integer.MAX_VALUE) {
+            return; // 已饱和
+        }
+        for (int row = 0; row < DEPTH; row++) {
+            // 只增加仍等于最小值的计数器；其他线程已先增加时不再重复
+            counters[row].compareAndSet(index(id, row), min, min + 1);
+        }
+        if (min + 1 > admission && !hotView.contains(id)) {
+            pending.add(id);
+            if (pendingCount.incrementAndGet() >= Math.max(1, hotCapacity) && hotLock.tryLock()) {
+                try {
+                    drainPending();
+                } finally {
+                    hotLock.unlock();
+                }
+            }
+        }
+        additions.increment();
+        if (ThreadLocalRandom.current().nextInt(SAMPLE_CHECK_INTERVAL) == 0
+                && additions.sum() >= (long) SAMPLE_FACTOR * counters[0].length()) {
+            hotLock.lock();
+            try {
+                if (additions.sum() >= (long) SAMPLE_FACTOR * counters[0].length()) {
+                    halve(1);
+                }
+            } finally {
+                hotLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 估计的访问分数（已衰减），从未访问过时为 0（可能因冲突略有高估）
+     */
+    int estimate(int id) {
+        decayIfDue();
+        return estimateOf(id);
+    }
+
+    /**
+     * 一次取得多个联系人的分数，顺序与输入一致
+     */
+    int[] estimates(int[] ids) {
+        decayIfDue();
+        int[] scores = new int[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            scores[i] = estimateOf(ids[i]);
+        }
+        return scores;
+    }
+
+    private int estimateOf(int id) {
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            min = Math.min(min, counters[row].get(index(id, row)));
+        }
+        return min;
+    }
+
+    /**
+     * 热点联系人编号，按分数从高到低排列
+     */
+    List<Integer> hotIds() {
+        decayIfDue();
+        List<Integer> ids;
+        hotLock.lock();
+        try {
+            drainPending();
+            ids = new ArrayList<>(hot);
+        } finally {
+            hotLock.unlock();
+        }
+        Map<Integer, Integer> scores = new HashMap<>(ids.size() * 2);
+        for (int id : ids) {
+            scores.put(id, estimateOf(id));
+        }
+        ids.sort((a, b) -> scores.get(a).equals(scores.get(b))
+                ? Integer.compare(a, b) : Integer.compare(scores.get(b), scores.get(a)));
+        return ids;
+    }
+
+    /**
+     * 把排队的编号合并进热点集合（集合已满时替换估计值最低的成员），调用方需持有 hotLock
+     */
+    private void drainPending() {
+        Integer id;
+        boolean changed = false;
+        while ((id = pending.poll()) != null) {
+            pendingCount.decrementAndGet();
+            if (hot.contains(id)) {
+                continue;
+            }
+            if (hot.size() < hotCapacity) {
+                changed |= hot.add(id);
+                continue;
+            }
+            int coldest = 0;
+            int coldestScore = Integer.MAX_VALUE;
+            for (int member : hot) {
+                int score = estimateOf(member);
+                if (score < coldestScore) {
+                    coldest = member;
+                    coldestScore = score;
+                }
+            }
+            if (estimateOf(id) > coldestScore) {
+                hot.remove(coldest);
+                hot.add(id);
+                changed = true;
+            }
+        }
+        if (changed) {
+            publishHot();
+        }
+    }
+
+    /**
+     * 发布热点集合的副本并重新计算进入门槛，调用方需持有 hotLock
+     */
+    private void publishHot() {
+        hotView = Collections.unmodifiableSet(new HashSet<>(hot));
+        if (hot.size() < hotCapacity) {
+            admission = 0;
+            return;
+        }
+        int lowest = Integer.MAX_VALUE;
+        for (int member : hot) {
+            lowest = Math.min(lowest, estimateOf(member));
+        }
+        admission = lowest;
+    }
+
+    private void decayIfDue() {
+        if (halfLifeMillis <= 0 || System.currentTimeMillis() - lastDecayMillis < halfLifeMillis) {
+            return;
+        }
+        hotLock.lock();
+        try {
+            long elapsed = System.currentTimeMillis() - lastDecayMillis;
+            if (elapsed >= halfLifeMillis) {
+                long halvings = elapsed / halfLifeMillis;
+                lastDecayMillis += halvings * halfLifeMillis;
+                halve((int) Math.min(31, halvings));
+            }
+        } finally {
+            hotLock.unlock();
+        }
+    }
+
+    /**
+     * 所有计数器右移 shift 位；分数降为 0 的热点联系人移出集合，调用方需持有 hotLock
+     * 减半期间并发的增加可能被覆盖，属于估计误差
+     */
+    private void halve(int shift) {
+        drainPending();
+        for (AtomicIntegerArray row : counters) {
+            for (int i = 0; i < row.length(); i++) {
+                row.set(i, row.get(i) >>> shift);
+            }
+        }
+        hot.removeIf(id -> estimateOf(id) == 0);
+        publishHot();
+        additions.reset();
+    }
+
+    /**
+     * 计数器与热点集合占用的字节数（估算）
+     */
+    long sizeInBytes() {
+        return (long) DEPTH * counters[0].length() * 4 + hotCapacity * 48L;
+    }
+
+    @Override
+    public void contactChanged(Contact before, Contact after) {
+        if (after == null && before != null) {
+            hotLock.lock();
+            try {
+                drainPending();
+                if (hot.remove(before.getId())) {
+                    publishHot();
+                }
+            } finally {
+                hotLock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public void contactsReloaded(Collection<Contact> contacts) {
+        // 重新加载时保留统计，只移出已不存在的热点联系人
+        Set<Integer> missing;
+        hotLock.lock();
+        try {
+            drainPending();
+            missing = new HashSet<>(hot);
+        } finally {
+            hotLock.unlock();
+        }
+        for (Contact contact : contacts) {
+            missing.remove(contact.getId());
+        }
+        hotLock.lock();
+        try {
+            hot.removeAll(missing);
+            publishHot();
+        } finally {
+            hotLock.unlock();
+        }
+    }
+}
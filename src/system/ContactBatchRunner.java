@@ -0,0 +1,545 @@
+package system;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * ContactBatchRunner 类：命令行批处理模式，从文件或标准输入读取命令（CSV 或 JSON Lines），
+ * 将连续的同类写命令合并后走批量接口执行，连续的读命令通过异步接口并发执行，结果按输入顺序通过缓冲输出写出
+ *
+ * CSV 每行一条命令：
+ *   add,姓名,电话,邮箱,地址,是否黑名单
+ *   update,编号,姓名,电话,邮箱,地址,是否黑名单
+ *   delete,编号
+ *   restore,编号      撤销软删除（墓碑被物理删除前有效）
+ *   get,编号
+ *   search,关键字
+ *   list
+ * JSON Lines 每行一个对象，字段为 op、id、name、phone、email、address、blacklisted、keyword
+ *
+ * 输出每行格式：行号\t操作\tOK|ERR|ROW\t详情
+ */
+class ContactBatchRunner {
+
+    private static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private final ContactService service;
+    private final BufferedWriter out;
+    private final int batchSize;
+
+    // 尚未提交的同类写命令
+    private final List<Command> pending = new ArrayList<>();
+    private String pendingOp;
+    // 已提交异步执行、尚未输出结果的读命令
+    private final List<Command> pendingReads = new ArrayList<>();
+    private final List<CompletableFuture<List<Contact>>> readResults = new ArrayList<>();
+
+    private long total = 0;
+    private long succeeded = 0;
+    private long failed = 0;
+
+    ContactBatchRunner(ContactService service, Writer out, int batchSize) {
+        this.service = service;
+        this.out = out instanceof BufferedWriter ? (BufferedWriter) out : new BufferedWriter(out, 1 << 16);
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * 批处理入口，参数：--batch 文件|- [--format csv|jsonl] [--out 文件] [--batch-size N]
+     * @return 进程退出码，有失败命令时返回 1
+     */
+    static int run(String[] args) {
+        String input = null;
+        String format = null;
+        String output = null;
+        int batchSize = DEFAULT_BATCH_SIZE;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (i + 1 >= args.length) {
+                System.err.println("参数缺少取值: " + arg);
+                return 2;
+            }
+            switch (arg) {
+                case "--batch":
+                    input = args[++i];
+                    break;
+                case "--format":
+                    format = args[++i].toLowerCase();
+                    break;
+                case "--out":
+                    output = args[++i];
+                    break;
+                case "--batch-size":
+                    try {
+                        batchSize = Math.max(1, Integer.parseInt(args[++i]));
+                    } catch (NumberFormatException e) {
+                        System.err.println("无效的批大小: " + args[i]);
+                        return 2;
+                    }
+                    break;
+                default:
+                    System.err.println("未知参数: " + arg);
+                    return 2;
+            }
+        }
+        if (input == null) {
+            System.err.println("用法: --batch 文件|- [--format csv|jsonl] [--out 文件] [--batch-size N]");
+            return 2;
+        }
+        if (format == null) {
+            format = input.endsWith(".jsonl") || input.endsWith(".json") ? "jsonl" : null;
+        }
+
+        ContactService service = ContactService.getShared();
+        // 预先把全部联系人加载到内存，批处理中的查询不再逐条访问数据库
+        service.warmUpAsync().join();
+
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    "-".equals(input) ? System.in : new FileInputStream(input), StandardCharsets.UTF_8), 1 << 16);
+             Writer writer = new OutputStreamWriter(
+                    output == null ? new FileOutputStream(FileDescriptor.out) : new FileOutputStream(output),
+                    StandardCharsets.UTF_8)) {
+            ContactBatchRunner runner = new ContactBatchRunner(service, writer, batchSize);
+            long start = System.nanoTime();
+            runner.process(reader, format);
+            long elapsed = System.nanoTime() - start;
+            runner.printSummary(elapsed);
+            return runner.failed > 0 ? 1 : 0;
+        } catch (IOException e) {
+            System.err.println("批处理读写失败: " + e.getMessage());
+            return 2;
+        }
+    }
+
+    /**
+     * 逐行读取并执行命令
+     * @param format csv 或 jsonl，为 null 时按首个非空行自动判断
+     */
+    void process(BufferedReader reader, String format) throws IOException {
+        String line;
+        int lineNo = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNo++;
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            if (format == null) {
+                format = trimmed.startsWith("{") ? "jsonl" : "csv";
+            }
+            Command command;
+            try {
+                command = "jsonl".equals(format) ? parseJson(lineNo, trimmed) : parseCsv(lineNo, line);
+            } catch (IllegalArgumentException e) {
+                flush();
+                flushReads();
+                total++;
+                writeResult(lineNo, "?", e.getMessage());
+                continue;
+            }
+            submit(command);
+        }
+        flush();
+        flushReads();
+        out.flush();
+    }
+
+    private void submit(Command command) throws IOException {
+        total++;
+        switch (command.op) {
+            case "add":
+            case "update":
+            case "delete":
+            case "restore":
+                // 写命令不能影响之前读命令的结果，先等它们完成
+                flushReads();
+                if (!command.op.equals(pendingOp) || pending.size() >= batchSize) {
+                    flush();
+                }
+                pending.add(command);
+                pendingOp = command.op;
+                break;
+            default:
+                // 读命令需要看到之前写命令的结果，先提交积压的写命令
+                flush();
+                pendingReads.add(command);
+                readResults.add(executeRead(command));
+                if (pendingReads.size() >= batchSize) {
+                    flushReads();
+                }
+        }
+    }
+
+    /**
+     * 提交积压的同类写命令
+     */
+    private void flush() throws IOException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        String[] errors;
+        switch (pendingOp) {
+            case "add": {
+                List<Contact> contacts = new ArrayList<>(pending.size());
+                for (Command command : pending) {
+                    contacts.add(command.contact);
+                }
+                errors = service.addContacts(contacts);
+                break;
+            }
+            case "update": {
+                List<Contact> contacts = new ArrayList<>(pending.size());
+                for (Command command : pending) {
+                    contacts.add(command.contact);
+                }
+                errors = service.updateContacts(contacts);
+                break;
+            }
+            case "restore": {
+                List<Integer> ids = new ArrayList<>(pending.size());
+                for (Command command : pending) {
+                    ids.add(command.contact.getId());
+                }
+                errors = service.restoreContacts(ids);
+                break;
+            }
+            default: {
+                List<Integer> ids = new ArrayList<>(pending.size());
+                for (Command command : pending) {
+                    ids.add(command.contact.getId());
+                }
+                errors = service.deleteContacts(ids);
+            }
+        }
+        for (int i = 0; i < pending.size(); i++) {
+            Command command = pending.get(i);
+            if (errors[i] == null) {
+                writeOk(command.line, command.op, "id=" + command.contact.getId());
+            } else {
+                writeResult(command.line, command.op, errors[i]);
+            }
+        }
+        pending.clear();
+        pendingOp = null;
+    }
+
+    private CompletableFuture<List<Contact>> executeRead(Command command) {
+        ContactServiceAsync async = service.async();
+        switch (command.op) {
+            case "get":
+                return async.getContactAsync(command.contact.getId()).thenApply(contact ->
+                        contact == null ? Collections.<Contact>emptyList() : Collections.singletonList(contact));
+            case "search":
+                return async.searchContactsAsync(command.keyword);
+            default:
+                return async.getAllContactsAsync();
+        }
+    }
+
+    /**
+     * 等待积压的读命令完成，按输入顺序输出结果
+     */
+    private void flushReads() throws IOException {
+        for (int i = 0; i < pendingReads.size(); i++) {
+            Command command = pendingReads.get(i);
+            List<Contact> contacts;
+            try {
+                contacts = readResults.get(i).join();
+            } catch (CompletionException e) {
+                Throwable cause = e.getCause() != null ? e.getCause() : e;
+                writeResult(command.line, command.op, "查询失败: " + cause.getMessage());
+                continue;
+            }
+            if (command.op.equals("get") && contacts.isEmpty()) {
+                writeResult(command.line, command.op, "未找到编号为 " + command.contact.getId() + " 的联系人！");
+            } else {
+                writeRows(command, contacts);
+            }
+        }
+        pendingReads.clear();
+        readResults.clear();
+    }
+
+    private void writeRows(Command command, List<Contact> contacts) throws IOException {
+        for (Contact contact : contacts) {
+            writeRow(command.line, command.op, contact);
+        }
+        writeOk(command.line, command.op, String.valueOf(contacts.size()));
+    }
+
+    private void writeOk(int line, String op, String detail) throws IOException {
+        succeeded++;
+        out.write(line + "\t" + op + "\tOK\t" + detail);
+        out.newLine();
+    }
+
+    private void writeResult(int line, String op, String error) throws IOException {
+        failed++;
+        out.write(line + "\t" + op + "\tERR\t" + error);
+        out.newLine();
+    }
+
+    private void writeRow(int line, String op, Contact contact) throws IOException {
+        out.write(line + "\t" + op + "\tROW\t" + contact.getId() + "," + csvField(contact.getName()) + ","
+                + csvField(contact.getPhone()) + "," + csvField(contact.getEmail()) + ","
+                + csvField(contact.getAddress()) + "," + contact.isBlacklisted());
+        out.newLine();
+    }
+
+    private void printSummary(long elapsedNanos) {
+        double seconds = Math.max(elapsedNanos, 1) / 1e9;
+        System.err.printf("批处理完成：共 %d 条命令（成功 %d，失败 %d），用时 %.1f ms，吞吐 %.0f 条/秒%n",
+                total, succeeded, failed, elapsedNanos / 1e6, total / seconds);
+    }
+
+    // ---------------------------------------------------------------- 解析
+
+    /**
+     * 一条批处理命令；写命令与 get 的参数都放在 contact 中
+     */
+    static class Command {
+        final int line;
+        final String op;
+        final Contact contact;
+        final String keyword;
+
+        Command(int line, String op, Contact contact, String keyword) {
+            this.line = line;
+            this.op = op;
+            this.contact = contact;
+            this.keyword = keyword;
+        }
+    }
+
+    static Command parseCsv(int lineNo, String line) {
+        List<String> fields = splitCsv(line);
+        String op = fields.get(0).trim().toLowerCase();
+        switch (op) {
+            case "add":
+                requireFields(fields, 3, line);
+                return new Command(lineNo, op, new Contact(0, field(fields, 1), field(fields, 2),
+                        field(fields, 3), field(fields, 4), parseBoolean(field(fields, 5))), null);
+            case "update":
+                requireFields(fields, 2, line);
+                // 与交互式修改一致：空字段表示保持原值
+                return new Command(lineNo, op, new Contact(parseId(field(fields, 1)), field(fields, 2),
+                        field(fields, 3), emptyToNull(field(fields, 4)), emptyToNull(field(fields, 5)),
+                        parseBoolean(field(fields, 6))), null);
+            case "delete":
+            case "restore":
+            case "get":
+                requireFields(fields, 2, line);
+                return new Command(lineNo, op, idOnly(parseId(field(fields, 1))), null);
+            case "search":
+                requireFields(fields, 2, line);
+                return new Command(lineNo, op, null, field(fields, 1));
+            case "list":
+                return new Command(lineNo, op, null, null);
+            default:
+                throw new IllegalArgumentException("未知操作: " + op);
+        }
+    }
+
+    static Command parseJson(int lineNo, String line) {
+        Map<String, String> object = parseJsonObject(line);
+        String op = object.get("op");
+        if (op == null) {
+            throw new IllegalArgumentException("缺少 op 字段");
+        }
+        op = op.toLowerCase();
+        switch (op) {
+            case "add":
+            case "update":
+                return new Command(lineNo, op, new Contact(
+                        "update".equals(op) ? parseId(object.get("id")) : 0,
+                        object.get("name"), object.get("phone"), object.get("email"), object.get("address"),
+                        parseBoolean(object.get("blacklisted"))), null);
+            case "delete":
+            case "restore":
+            case "get":
+                return new Command(lineNo, op, idOnly(parseId(object.get("id"))), null);
+            case "search":
+                if (object.get("keyword") == null) {
+                    throw new IllegalArgumentException("缺少 keyword 字段");
+                }
+                return new Command(lineNo, op, null, object.get("keyword"));
+            case "list":
+                return new Command(lineNo, op, null, null);
+            default:
+                throw new IllegalArgumentException("未知操作: " + op);
+        }
+    }
+
+    private static Contact idOnly(int id) {
+        return new Contact(id, null, null, null, null, false);
+    }
+
+    private static void requireFields(List<String> fields, int count, String line) {
+        if (fields.size() < count) {
+            throw new IllegalArgumentException("字段数量不足: " + line);
+        }
+    }
+
+    private static String field(List<String> fields, int index) {
+        return index < fields.size() ? fields.get(index) : null;
+    }
+
+    private static String emptyToNull(String value) {
+        return value == null || value.trim().isEmpty() ? null : value;
+    }
+
+    private static int parseId(String value) {
+        try {
+            return Integer.parseInt(value == null ? "" : value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("无效的联系人编号: " + value);
+        }
+    }
+
+    static boolean parseBoolean(String value) {
+        if (value == null) {
+            return false;
+        }
+        String v = value.trim().toLowerCase();
+        return v.equals("true") || v.equals("1") || v.equals("是") || v.equals("yes");
+    }
+
+    /**
+     * 拆分一行 CSV，支持双引号包裹的字段与 "" 转义
+     */
+    static List<String> splitCsv(String line) {
+        List<String> fields = new ArrayList<>(8);
+        StringBuilder current = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        current.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    current.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(current.toString());
+                current.setLength(0);
+            } else {
+                current.append(c);
+            }
+        }
+        fields.add(current.toString());
+        return fields;
+    }
+
+    private static String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    /**
+     * 解析单层 JSON 对象，值为字符串、数字、布尔或 null，统一以字符串返回
+     */
+    static Map<String, String> parseJsonObject(String text) {
+        Map<String, String> object = new HashMap<>();
+        int[] pos = {skipSpaces(text, 0)};
+        expect(text, pos, '{');
+        if (peek(text, pos) == '}') {
+            return object;
+        }
+        while (true) {
+            String key = readJsonString(text, pos);
+            expect(text, pos, ':');
+            pos[0] = skipSpaces(text, pos[0]);
+            String value;
+            if (peek(text, pos) == '"') {
+                value = readJsonString(text, pos);
+            } else {
+                int start = pos[0];
+                while (pos[0] < text.length() && ",} \t".indexOf(text.charAt(pos[0])) < 0) {
+                    pos[0]++;
+                }
+                value = text.substring(start, pos[0]);
+                if (value.equals("null")) {
+                    value = null;
+                }
+            }
+            object.put(key, value);
+            char next = peek(text, pos);
+            pos[0]++;
+            if (next == '}') {
+                return object;
+            }
+            if (next != ',') {
+                throw new IllegalArgumentException("JSON 格式错误: " + text);
+            }
+        }
+    }
+
+    private static String readJsonString(String text, int[] pos) {
+        expect(text, pos, '"');
+        StringBuilder sb = new StringBuilder();
+        while (pos[0] < text.length()) {
+            char c = text.charAt(pos[0]++);
+            if (c == '"') {
+                return sb.toString();
+            }
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            if (pos[0] >= text.length()) {
+                break;
+            }
+            char e = text.charAt(pos[0]++);
+            switch (e) {
+                case 'n': sb.append('\n'); break;
+                case 't': sb.append('\t'); break;
+                case 'r': sb.append('\r'); break;
+                case 'b': sb.append('\b'); break;
+                case 'f': sb.append('\f'); break;
+                case 'u':
+                    if (pos[0] + 4 > text.length()) {
+                        throw new IllegalArgumentException("JSON 格式错误: " + text);
+                    }
+                    sb.append((char) Integer.parseInt(text.substring(pos[0], pos[0] + 4), 16));
+                    pos[0] += 4;
+                    break;
+                default: sb.append(e);
+            }
+        }
+        throw new IllegalArgumentException("JSON 字符串未结束: " + text);
+    }
+
+    private static void expect(String text, int[] pos, char c) {
+        if (peek(text, pos) != c) {
+            throw new IllegalArgumentException("JSON 格式错误，期望 '" + c + "': " + text);
+        }
+        pos[0]++;
+    }
+
+    private static char peek(String text, int[] pos) {
+        pos[0] = skipSpaces(text, pos[0]);
+        return pos[0] < text.length() ? text.charAt(pos[0]) : '\0';
+    }
+
+    private static int skipSpaces(String text, int pos) {
+        while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+}
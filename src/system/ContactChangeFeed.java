@@ -0,0 +1,297 @@
+package system;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+
+/**
+ * ContactChangeFeed 类：跨实例的缓存一致性
+ * 共用同一数据库的多个实例（GUI 工作站、命令行任务）在每次写入时向 contact_changes 表追加受影响的编号；
+ * 本类在后台线程中按各分片已读到的序号（高水位）持续读取新的通知，只刷新其他实例改动过的联系人，
+ * 不需要整体重新加载。MySQL 无法由服务端推送，因此以轮询代替：有新通知时立即继续读取，
+ * 空闲时轮询间隔逐步加长到上限。
+ * 序号在插入时分配而提交后才可见，并发事务可能晚于序号更大的事务提交，也可能回滚，因此高水位以下
+ * 跳过的序号会被记下并在之后每次轮询时重读，出现即处理；超过等待时间仍未出现的视为已回滚。
+ * 启动时高水位以下最近的一段序号同样按跳过处理，以免遗漏启动时尚未提交的事务。
+ * 通知表中的过期记录由各实例定期清理；若长时间未能轮询（例如休眠），未读取的记录可能已被清理，
+ * 改为整体与数据库同步。
+ * 通知按租户分组交给回调：单个服务只处理自己的租户，多租户时由 ContactTenants 分发给已加载的各租户。
+ *
+ * 配置（系统属性）：
+ *   contact.changeFeed.enabled           是否启用，默认 true
+ *   contact.changeFeed.maxIntervalMs     空闲时的最长轮询间隔，默认 500
+ *   contact.changeFeed.retentionMinutes  通知保留时间，默认 60
+ *   contact.changeFeed.gapTimeoutSeconds 跳过的序号最多等待多久，默认 300（不超过保留时间的一半）
+ */
+class ContactChangeFeed {
+
+    // 每次每个分片最多读取的通知数
+    private static final int POLL_LIMIT = 1000;
+    private static final long MIN_INTERVAL_MILLIS = 20;
+    private static final long MAX_INTERVAL_MILLIS = Long.getLong("contact.changeFeed.maxIntervalMs", 500);
+    private static final long RETENTION_MILLIS = Long.getLong("contact.changeFeed.retentionMinutes", 60) * 60_000;
+    // 超过这么久未能轮询时，未读取的通知可能已被其他实例清理
+    private static final long STALL_MILLIS = RETENTION_MILLIS / 2;
+    private static final long GAP_TIMEOUT_MILLIS =
+            Math.min(Long.getLong("contact.changeFeed.gapTimeoutSeconds", 300) * 1000, STALL_MILLIS);
+    // 每个分片最多记录的跳过区间数，超过时整体同步
+    private static final int MAX_GAPS = 100;
+
+    /**
+     * 各分片跳过（尚未出现）的序号区间，只由轮询线程访问
+     */
+    static class Gaps {
+        // 每个分片的区间 {起, 止, 发现时间}，按起点升序
+        private final List<List<long[]>> shards = new ArrayList<>();
+        private boolean overflowed;
+
+        /**
+         * 深拷贝，轮询在副本上进行，全部分片成功后才替换，失败时下次从原位置重读
+         */
+        Gaps copy() {
+            Gaps copy = new Gaps();
+            for (List<long[]> ranges : shards) {
+                List<long[]> copied = new ArrayList<>(ranges.size());
+                for (long[] range : ranges) {
+                    copied.add(range.clone());
+                }
+                copy.shards.add(copied);
+            }
+            copy.overflowed = overflowed;
+            return copy;
+        }
+
+        List<long[]> ranges(int shard) {
+            return shard < shards.size() ? new ArrayList<>(shards.get(shard)) : new ArrayList<>();
+        }
+
+        void add(int shard, long from, long to, long now) {
+            while (shards.size() <= shard) {
+                shards.add(new ArrayList<>());
+            }
+            List<long[]> ranges = shards.get(shard);
+            ranges.add(new long[] {from, to, now});
+            if (ranges.size() > MAX_GAPS) {
+                ranges.remove(0);
+                overflowed = true;
+            }
+        }
+
+        /**
+         * 序号出现时从区间中移除（必要时把区间一分为二）
+         * @return 该序号是否在跳过的区间中
+         */
+        boolean remove(int shard, long seq) {
+            if (shard >= shards.size()) {
+                return false;
+            }
+            List<long[]> ranges = shards.get(shard);
+            for (int i = 0; i < ranges.size(); i++) {
+                long[] range = ranges.get(i);
+                if (seq < range[0] || seq > range[1]) {
+                    continue;
+                }
+                if (range[0] == range[1]) {
+                    ranges.remove(i);
+                } else if (seq == range[0]) {
+                    range[0]++;
+                } else if (seq == range[1]) {
+                    range[1]--;
+                } else {
+                    ranges.add(i + 1, new long[] {seq + 1, range[1], range[2]});
+                    range[1] = seq - 1;
+                }
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * 丢弃等待超时的区间（事务已回滚）
+         */
+        void expire(long now) {
+            for (List<long[]> ranges : shards) {
+                for (Iterator<long[]> it = ranges.iterator(); it.hasNext(); ) {
+                    if (now - it.next()[2] > GAP_TIMEOUT_MILLIS) {
+                        it.remove();
+                    }
+                }
+            }
+        }
+
+        /**
+         * 是否因区间过多丢弃过尚未超时的区间（之后可能遗漏通知）
+         */
+        boolean overflowed() {
+            return overflowed;
+        }
+
+        void clear() {
+            shards.clear();
+            overflowed = false;
+        }
+    }
+
+    private final ContactDao dao;
+    private final BiConsumer<String, Set<Integer>> apply;
+    private final Runnable resync;
+    private final Predicate<String> local;
+    private volatile long[] highWater;
+    private Gaps gaps = new Gaps();
+    private volatile Thread thread;
+    private volatile long appliedCount;
+    private long nextMaintenanceMillis;
+    private long lastPolledMillis;
+
+    /**
+     * @param apply 收到某个租户的变更时调用，参数为租户编号与联系人编号
+     * @param resync 无法确定遗漏了哪些通知、需要整体同步时调用
+     */
+    ContactChangeFeed(ContactDao dao, BiConsumer<String, Set<Integer>> apply, Runnable resync) {
+        this(dao, apply, resync, dao.getOrigin()::equals);
+    }
+
+    /**
+     * @param local 判断实例标识是否属于本进程（其写入已在本地发布，跳过）
+     */
+    ContactChangeFeed(ContactDao dao, BiConsumer<String, Set<Integer>> apply, Runnable resync,
+                      Predicate<String> local) {
+        this.dao = dao;
+        this.apply = apply;
+        this.resync = resync;
+        this.local = local;
+    }
+
+    /**
+     * 读取起始高水位并启动后台线程；应在从数据库加载全量数据之前调用，
+     * 这样加载期间其他实例的写入会在之后再刷新一次，不会遗漏
+     */
+    synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        try {
+            readHighWater();
+        } catch (SQLException e) {
+            System.err.println("读取变更通知失败，稍后重试: " + e.getMessage());
+        }
+        nextMaintenanceMillis = System.currentTimeMillis() + RETENTION_MILLIS / 4;
+        Thread poller = new Thread(this::run, "contact-change-feed");
+        poller.setDaemon(true);
+        thread = poller;
+        poller.start();
+    }
+
+    synchronized void stop() {
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    /**
+     * 收到的其他实例写入的联系人数
+     */
+    long getAppliedCount() {
+        return appliedCount;
+    }
+
+    private void run() {
+        long interval = MIN_INTERVAL_MILLIS;
+        boolean failing = false;
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                if (highWater == null) {
+                    // 启动时未能读取高水位，期间的写入无从得知，取得高水位后整体同步一次
+                    readHighWater();
+                    resync.run();
+                    continue;
+                }
+                if (System.currentTimeMillis() - lastPolledMillis > STALL_MILLIS) {
+                    restart("长时间未能读取变更通知，部分通知可能已被清理，重新与数据库同步");
+                    continue;
+                }
+                long[] before = highWater;
+                long[] polled = before.clone();
+                Gaps pending = gaps.copy();
+                Map<String, Set<Integer>> changes = dao.pollChanges(polled, pending, local, POLL_LIMIT);
+                highWater = polled;
+                gaps = pending;
+                lastPolledMillis = System.currentTimeMillis();
+                gaps.expire(lastPolledMillis);
+                if (gaps.overflowed()) {
+                    restart("跳过的变更通知序号过多，重新与数据库同步");
+                    continue;
+                }
+                if (failing) {
+                    System.out.println("变更通知已恢复");
+                    failing = false;
+                }
+                for (Map.Entry<String, Set<Integer>> entry : changes.entrySet()) {
+                    apply.accept(entry.getKey(), entry.getValue());
+                    appliedCount += entry.getValue().size();
+                }
+                if (!Arrays.equals(before, highWater)) {
+                    interval = MIN_INTERVAL_MILLIS;
+                    continue;
+                }
+                if (System.currentTimeMillis() >= nextMaintenanceMillis) {
+                    maintain();
+                }
+                Thread.sleep(interval);
+                interval = Math.min(interval * 2, MAX_INTERVAL_MILLIS);
+            } catch (SQLException e) {
+                if (!failing) {
+                    System.err.println("读取变更通知失败，稍后重试: " + e.getMessage());
+                    failing = true;
+                }
+                try {
+                    Thread.sleep(MAX_INTERVAL_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 读取各分片当前的最大序号作为起点，其下最近的一段序号按跳过处理（可能属于尚未提交的事务）
+     */
+    private void readHighWater() throws SQLException {
+        long[] start = dao.changeHighWater();
+        long now = System.currentTimeMillis();
+        gaps.clear();
+        for (int i = 0; i < start.length; i++) {
+            if (start[i] > 0) {
+                gaps.add(i, Math.max(1, start[i] - POLL_LIMIT + 1), start[i], now);
+            }
+        }
+        lastPolledMillis = now;
+        highWater = start;
+    }
+
+    /**
+     * 无法确定遗漏了哪些通知时，从当前位置重新开始并整体同步
+     */
+    private void restart(String reason) throws SQLException {
+        System.err.println(reason);
+        readHighWater();
+        resync.run();
+    }
+
+    /**
+     * 清理过期通知（只会清理到保留时间之前，未读取的通知由轮询间隔检查保证不被清理）
+     */
+    private void maintain() throws SQLException {
+        nextMaintenanceMillis = System.currentTimeMillis() + RETENTION_MILLIS / 4;
+        dao.purgeChanges(System.currentTimeMillis() - RETENTION_MILLIS);
+    }
+}
@@ -0,0 +1,179 @@
+package system;
+
+import java.util.*;
+
+/**
+ * ContactChangeJournal 类：联系人变更日志
+ * 每次增、删、改、拉黑按发生顺序追加一条记录并分配单调递增的序号。下游同步方保存上次拿到的序号，
+ * 之后只取该序号之后的变更（同一联系人的多次变更合并为最后状态），同步代价与变更量成正比而与通讯录大小无关。
+ * 日志只保留最近的部分，超出保留范围的请求需要全量同步。
+ */
+class ContactChangeJournal {
+
+    /**
+     * 变更类型
+     */
+    enum ChangeType {
+        ADD, UPDATE, DELETE, BLACKLIST
+    }
+
+    /**
+     * 一条变更记录；删除时 contact 为 null
+     */
+    static final class Entry {
+        final long sequence;
+        final ChangeType type;
+        final int id;
+        final Contact contact;
+        final long timestamp;
+
+        Entry(long sequence, ChangeType type, int id, Contact contact, long timestamp) {
+            this.sequence = sequence;
+            this.type = type;
+            this.id = id;
+            this.contact = contact;
+            this.timestamp = timestamp;
+        }
+    }
+
+    /**
+     * 增量同步结果
+     */
+    static final class Delta {
+        // 请求的起始序号与本次同步到的序号，下次同步从 toSequence 开始
+        final long fromSequence;
+        final long toSequence;
+        // 为 true 时起始序号已超出日志保留范围，upserts 是全部联系人，同步方应先清空本地数据
+        final boolean full;
+        // 新增或修改后的联系人（每个编号只出现一次）
+        final List<Contact> upserts;
+        // 被删除的联系人编号
+        final List<Integer> deletedIds;
+
+        Delta(long fromSequence, long toSequence, boolean full, List<Contact> upserts, List<Integer> deletedIds) {
+            this.fromSequence = fromSequence;
+            this.toSequence = toSequence;
+            this.full = full;
+            this.upserts = upserts;
+            this.deletedIds = deletedIds;
+        }
+
+        @Override
+        public String toString() {
+            return (full ? "全量" : "增量") + "同步 " + fromSequence + " -> " + toSequence
+                    + "，新增或修改 " + upserts.size() + " 个，删除 " + deletedIds.size() + " 个";
+        }
+    }
+
+    // 每追加这么多条检查一次是否需要截断
+    private static final int TRUNCATE_INTERVAL = 1024;
+
+    private final int maxEntries;
+    private final long retentionMillis;
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    // 序号从启动时刻换算的值开始，重启后的序号仍大于之前发出的序号，旧序号会被判定为超出保留范围
+    private final long baseSequence;
+    private long lastSequence;
+    // 已截断的最大序号，小于它的起始序号无法增量同步
+    private long truncatedThrough;
+    private int appendsSinceTruncate;
+
+    ContactChangeJournal() {
+        this(Integer.getInteger("contact.journal.maxEntries", 100_000),
+             Long.getLong("contact.journal.retentionMs", 24L * 60 * 60 * 1000));
+    }
+
+    ContactChangeJournal(int maxEntries, long retentionMillis) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.retentionMillis = retentionMillis;
+        this.baseSequence = System.currentTimeMillis() * 1000;
+        this.lastSequence = baseSequence;
+        this.truncatedThrough = baseSequence;
+    }
+
+    /**
+     * 追加一条变更
+     * @param contact 变更后的联系人（调用方不得再修改），删除时为 null
+     * @return 分配的序号
+     */
+    synchronized long append(ChangeType type, int id, Contact contact) {
+        long now = System.currentTimeMillis();
+        entries.addLast(new Entry(++lastSequence, type, id, contact, now));
+        if (entries.size() > maxEntries || ++appendsSinceTruncate >= TRUNCATE_INTERVAL) {
+            truncate(now);
+        }
+        return lastSequence;
+    }
+
+    /**
+     * 最新的序号
+     */
+    synchronized long currentSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * 起始序号是否仍在日志保留范围内
+     */
+    synchronized boolean canServe(long sinceSequence) {
+        return sinceSequence >= truncatedThrough && sinceSequence <= lastSequence;
+    }
+
+    /**
+     * 取出指定序号之后的变更，同一联系人合并为最后状态
+     * @return 增量结果；起始序号超出保留范围时返回 null
+     */
+    synchronized Delta changesSince(long sinceSequence) {
+        if (!canServe(sinceSequence)) {
+            return null;
+        }
+        Map<Integer, Entry> latest = new LinkedHashMap<>();
+        // 从尾部向前找到起点，日志按序号有序
+        Iterator<Entry> it = entries.descendingIterator();
+        while (it.hasNext()) {
+            Entry entry = it.next();
+            if (entry.sequence <= sinceSequence) {
+                break;
+            }
+            latest.putIfAbsent(entry.id, entry);
+        }
+        List<Contact> upserts = new ArrayList<>();
+        List<Integer> deletedIds = new ArrayList<>();
+        for (Entry entry : latest.values()) {
+            if (entry.type == ChangeType.DELETE) {
+                deletedIds.add(entry.id);
+            } else {
+                upserts.add(new Contact(entry.contact));
+            }
+        }
+        return new Delta(sinceSequence, lastSequence, false, upserts, deletedIds);
+    }
+
+    /**
+     * 丢弃超出条数上限或保留时长的旧记录
+     */
+    synchronized void truncate() {
+        truncate(System.currentTimeMillis());
+    }
+
+    private void truncate(long now) {
+        appendsSinceTruncate = 0;
+        while (!entries.isEmpty()
+                && (entries.size() > maxEntries || now - entries.peekFirst().timestamp > retentionMillis)) {
+            truncatedThrough = entries.pollFirst().sequence;
+        }
+    }
+
+    /**
+     * 两个联系人的各字段是否相同
+     */
+    static boolean sameContent(Contact a, Contact b) {
+        return a.getId() == b.getId()
+                && Objects.equals(a.getName(), b.getName())
+                && Objects.equals(a.getPhone(), b.getPhone())
+                && Objects.equals(a.getEmail(), b.getEmail())
+                && Objects.equals(a.getAddress(), b.getAddress())
+                && a.isBlacklisted() == b.isBlacklisted()
+                && a.getTags().equals(b.getTags());
+    }
+}
@@ -0,0 +1,23 @@
+package system;
+
+import java.util.Collection;
+
+/**
+ * ContactChangeListener 接口：监听 ContactService 内存副本的变化，用于维护建立在其上的内存结构
+ * 回调在服务内部锁内同步执行，实现应尽量轻量，且不得修改传入的联系人对象
+ */
+interface ContactChangeListener {
+
+    /**
+     * 单个联系人发生变化
+     * @param before 变化前的联系人，新增时为 null
+     * @param after 变化后的联系人，删除时为 null
+     */
+    void contactChanged(Contact before, Contact after);
+
+    /**
+     * 内存副本被整体替换（加载快照、与数据库同步），需要全量重建
+     * @param contacts 当前全部联系人
+     */
+    void contactsReloaded(Collection<Contact> contacts);
+}
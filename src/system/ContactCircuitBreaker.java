@@ -0,0 +1,206 @@
+package system;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.SQLTransientException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * ContactCircuitBreaker 类：一个数据库实例（分片主库）的熔断器，包在取得连接外面
+ * 关闭（正常）状态下取得连接失败时，按带随机抖动的指数退避重试有限次数；
+ * 连续失败的连接尝试（含重试）达到阈值后打开（默认即一次请求重试用尽）：之后的请求立即失败，
+ * 不再逐个等待连接超时，避免数据库故障时线程堆积。
+ * 打开一段时间后放行一个探测请求（半开），成功则关闭并通知监听器，失败则重新打开且等待时间加倍（有上限）。
+ *
+ * 配置（系统属性）：
+ *   contact.db.retries          关闭状态下取得连接失败后的重试次数，默认 2
+ *   contact.db.retryBaseMs      第一次重试前的平均等待，之后每次加倍，默认 100
+ *   contact.breaker.failures    连续失败多少次连接尝试后打开，默认 3
+ *   contact.breaker.openMs      打开后到第一次探测的等待，默认 2000
+ *   contact.breaker.maxOpenMs   探测连续失败时等待时间的上限，默认 30000
+ */
+class ContactCircuitBreaker {
+
+    private static final int RETRIES = Math.max(0, Integer.getInteger("contact.db.retries", 2));
+    private static final long RETRY_BASE_MILLIS = Math.max(1, Long.getLong("contact.db.retryBaseMs", 100));
+    private static final int FAILURE_THRESHOLD = Math.max(1, Integer.getInteger("contact.breaker.failures", 3));
+    private static final long OPEN_MILLIS = Math.max(1, Long.getLong("contact.breaker.openMs", 2000));
+    private static final long MAX_OPEN_MILLIS = Math.max(OPEN_MILLIS, Long.getLong("contact.breaker.maxOpenMs", 30_000));
+
+    enum State { CLOSED, OPEN, HALF_OPEN }
+
+    /**
+     * 取得连接的操作
+     */
+    interface ConnectionFactory {
+        Connection connect() throws SQLException;
+    }
+
+    /**
+     * 熔断期间快速失败时抛出的异常
+     */
+    static class OpenException extends SQLTransientConnectionException {
+        private static final long serialVersionUID = 1L;
+
+        OpenException(String name, long retryInMillis) {
+            super("数据库暂不可用，" + Math.max(1, retryInMillis / 1000) + " 秒后重试: " + name, "08000");
+        }
+    }
+
+    private final String name;
+    // 以下状态访问时锁住本对象
+    private State state = State.CLOSED;
+    private int failures;
+    private long openMillis = OPEN_MILLIS;
+    private long openUntilMillis;
+    private final List<Runnable> recoveryListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param name 数据库的名称（地址），用于日志
+     */
+    ContactCircuitBreaker(String name) {
+        this.name = name;
+    }
+
+    /**
+     * 通过熔断器取得连接
+     * @throws OpenException 熔断期间立即抛出
+     */
+    Connection open(ConnectionFactory factory) throws SQLException {
+        boolean probe = acquire();
+        int attempts = probe ? 1 : RETRIES + 1;
+        SQLException failure = null;
+        boolean succeeded = false;
+        int attempted = 0;
+        try {
+            for (int attempt = 0; attempt < attempts; attempt++) {
+                if (attempt > 0 && !backOff(attempt)) {
+                    break;
+                }
+                attempted++;
+                try {
+                    Connection conn = factory.connect();
+                    succeeded = true;
+                    return conn;
+                } catch (SQLException e) {
+                    failure = e;
+                    if (!isTransient(e)) {
+                        break;
+                    }
+                }
+            }
+            throw failure != null ? failure : new SQLTransientConnectionException("取得数据库连接被中断", "08000");
+        } finally {
+            if (succeeded) {
+                succeeded();
+            } else {
+                failed(probe, attempted);
+            }
+        }
+    }
+
+    /**
+     * @return true 表示本次请求是半开状态下的探测
+     */
+    private synchronized boolean acquire() throws OpenException {
+        if (state == State.CLOSED) {
+            return false;
+        }
+        long now = System.currentTimeMillis();
+        if (state == State.OPEN && now >= openUntilMillis) {
+            state = State.HALF_OPEN;
+            return true;
+        }
+        // 半开时已有一个探测在进行，其余请求仍快速失败
+        throw new OpenException(name, Math.max(0, openUntilMillis - now));
+    }
+
+    /**
+     * 第 attempt 次重试前等待：平均 base × 2^(attempt-1)，在 [0.5, 1.5) 倍之间随机，避免各线程同时重试
+     * @return false 表示等待被中断，不再重试
+     */
+    private static boolean backOff(int attempt) {
+        long mean = RETRY_BASE_MILLIS << (attempt - 1);
+        long delay = mean / 2 + ThreadLocalRandom.current().nextLong(mean);
+        try {
+            Thread.sleep(delay);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * 连接类错误（SQLState 以 08 开头）与瞬时错误才值得重试；账号错误等重试也不会成功
+     */
+    private static boolean isTransient(SQLException e) {
+        String sqlState = e.getSQLState();
+        return e instanceof SQLTransientException || e instanceof SQLRecoverableException
+                || (sqlState != null && sqlState.startsWith("08"));
+    }
+
+    private void succeeded() {
+        boolean recovered;
+        synchronized (this) {
+            recovered = state != State.CLOSED;
+            state = State.CLOSED;
+            failures = 0;
+            openMillis = OPEN_MILLIS;
+        }
+        if (recovered) {
+            System.out.println("数据库已恢复: " + name);
+            for (Runnable listener : recoveryListeners) {
+                try {
+                    listener.run();
+                } catch (RuntimeException e) {
+                    System.err.println("处理数据库恢复失败: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private synchronized void failed(boolean probe, int attempted) {
+        if (probe || state == State.HALF_OPEN) {
+            openMillis = Math.min(openMillis * 2, MAX_OPEN_MILLIS);
+        } else if (state != State.CLOSED || (failures += attempted) < FAILURE_THRESHOLD) {
+            return;
+        }
+        state = State.OPEN;
+        openUntilMillis = System.currentTimeMillis() + openMillis;
+        System.err.println("数据库不可用，" + openMillis + " ms 内的请求将直接失败: " + name);
+    }
+
+    synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * 是否处于正常（关闭）状态
+     */
+    synchronized boolean isClosed() {
+        return state == State.CLOSED;
+    }
+
+    /**
+     * 现在发起请求是否会真正访问数据库（正常，或已到探测时间），用于决定是否值得尝试而不是必然快速失败
+     */
+    synchronized boolean allowsAttempt() {
+        return state == State.CLOSED || (state == State.OPEN && System.currentTimeMillis() >= openUntilMillis);
+    }
+
+    /**
+     * 熔断后恢复（探测成功）时在探测线程中回调
+     */
+    void addRecoveryListener(Runnable listener) {
+        recoveryListeners.add(listener);
+    }
+
+    void removeRecoveryListener(Runnable listener) {
+        recoveryListeners.remove(listener);
+    }
+}
@@ -0,0 +1,178 @@
+package system;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * ContactCoherenceCheck 类：跨实例缓存一致性的检查
+ * 在同一进程中创建两个各自带内存副本与变更通知的服务（两个 ContactDao，来源编号不同，相当于两个实例），
+ * 共用同一数据库；依次通过一个实例新增、修改、打标签、删除联系人，检查另一个实例在限定时间内看到变化。
+ *
+ * 默认使用内存嵌入式数据库（MySQL 兼容模式的 H2，需要其驱动在 classpath 中），也可以指定实际的数据库：
+ *   --coherence --url jdbc:mysql://host:3306/contacts --user 用户 --password 密码 --timeout 5
+ * 检查使用带时间戳的姓名，结束时删除检查用的联系人。
+ */
+class ContactCoherenceCheck {
+
+    static final String DEFAULT_URL = "jdbc:h2:mem:contact_coherence;MODE=MySQL;DB_CLOSE_DELAY=-1";
+    private static final long POLL_MILLIS = 20;
+
+    private final ContactService first;
+    private final ContactService second;
+    private final long timeoutMillis;
+    private int failures;
+
+    ContactCoherenceCheck(ContactService first, ContactService second, long timeoutMillis) {
+        this.first = first;
+        this.second = second;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * 命令行入口，参数：--coherence [--timeout 秒] [--url JDBC地址] [--user 用户] [--password 密码]
+     * @return 进程退出码，0 表示全部通过
+     */
+    static int run(String[] args) {
+        long timeoutSeconds = 5;
+        String url = DEFAULT_URL;
+        String user = "sa";
+        String password = "";
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.equals("--coherence")) {
+                    continue;
+                }
+                if (i + 1 >= args.length) {
+                    System.err.println("参数缺少取值: " + arg);
+                    return 2;
+                }
+                switch (arg) {
+                    case "--timeout":
+                        timeoutSeconds = Long.parseLong(args[++i]);
+                        break;
+                    case "--url":
+                        url = args[++i];
+                        break;
+                    case "--user":
+                        user = args[++i];
+                        break;
+                    case "--password":
+                        password = args[++i];
+                        break;
+                    default:
+                        System.err.println("未知参数: " + arg);
+                        return 2;
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("无效的数值参数: " + e.getMessage());
+            return 2;
+        }
+        if (!ContactDao.CHANGE_FEED_ENABLED) {
+            System.err.println("变更通知已关闭（contact.changeFeed.enabled=false），无法检查跨实例一致性");
+            return 2;
+        }
+
+        ContactDataSource source = new ContactDataSource(url, user, password);
+        try {
+            // 只检查数据库是否可用
+            source.getConnection().close();
+        } catch (SQLException e) {
+            System.err.println("无法连接数据库 " + url + ": " + e.getMessage());
+            if (url.startsWith("jdbc:h2:")) {
+                System.err.println("使用嵌入式数据库时需要将 H2 驱动加入 classpath");
+            }
+            return 2;
+        }
+
+        ContactService first;
+        ContactService second;
+        try {
+            // 各自的连接路由与来源编号，互相之间只通过数据库与变更通知表联系
+            first = new ContactService(new ContactDao(ShardRouter.single(source)), temporarySnapshot());
+            second = new ContactService(new ContactDao(ShardRouter.single(source)), temporarySnapshot());
+        } catch (IOException e) {
+            System.err.println("无法创建临时快照文件: " + e.getMessage());
+            return 2;
+        }
+        first.warmUpAsync().join();
+        second.warmUpAsync().join();
+        try {
+            return new ContactCoherenceCheck(first, second, timeoutSeconds * 1000).execute() ? 0 : 1;
+        } finally {
+            first.close();
+            second.close();
+        }
+    }
+
+    private static ContactSnapshotStore temporarySnapshot() throws IOException {
+        File file = File.createTempFile("contacts-coherence", ".snapshot");
+        file.deleteOnExit();
+        return new ContactSnapshotStore(file);
+    }
+
+    /**
+     * 依次执行各项检查并输出结果
+     * @return 是否全部通过
+     */
+    boolean execute() {
+        String name = "一致性检查-" + System.currentTimeMillis();
+        String renamed = name + "-改";
+        String tag = "一致性检查";
+
+        first.addContact(name, "13800000000", null, null, false);
+        check("新增后另一实例可搜索到", () -> second.searchContacts(name).size() == 1);
+        List<Contact> added = first.searchContacts(name);
+        if (added.isEmpty()) {
+            System.err.println("新增检查用的联系人失败，停止检查");
+            return false;
+        }
+        int id = added.get(0).getId();
+
+        first.updateContact(id, renamed, "13800000000", null, null, false);
+        check("修改后另一实例读取到新内容", () -> {
+            Contact contact = second.getContact(id);
+            return contact != null && contact.getName().equals(renamed);
+        });
+        check("修改后另一实例的搜索缓存失效", () -> second.searchContacts(renamed).size() == 1);
+
+        first.tagContacts(Collections.singletonList(id), tag);
+        check("打标签后另一实例的标签计数更新", () -> second.getTagCounts().containsKey(tag));
+
+        second.deleteContact(id);
+        check("另一实例删除后本实例不再返回", () -> first.getContact(id) == null
+                && first.searchContacts(renamed).isEmpty());
+
+        System.out.println(failures == 0 ? "跨实例一致性检查全部通过" : "跨实例一致性检查未通过 " + failures + " 项");
+        return failures == 0;
+    }
+
+    /**
+     * 在限定时间内反复检查条件，输出结果与等待时间
+     */
+    private void check(String description, BooleanSupplier condition) {
+        long start = System.nanoTime();
+        long deadline = start + timeoutMillis * 1_000_000;
+        boolean passed;
+        while (!(passed = condition.getAsBoolean()) && System.nanoTime() < deadline) {
+            try {
+                Thread.sleep(POLL_MILLIS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        long elapsed = (System.nanoTime() - start) / 1_000_000;
+        if (passed) {
+            System.out.println("通过  " + description + "（" + elapsed + " ms）");
+        } else {
+            failures++;
+            System.out.println("未通过 " + description + "（等待 " + elapsed + " ms）");
+        }
+    }
+}
@@ -2,46 +2,445 @@ package system;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
 
 /**
  * ContactDao 类：用于联系人数据的存储与读取 (MySQL 数据库实现)
+ * 连接由 ShardRouter 提供：默认单库；配置多个分片后按编号路由，全量查询并行分发再归并
+ * 每个实例只访问一个租户（通讯录）的数据：写入时带上 tenant_id，读取与修改都以 tenant_id 过滤；
+ * 编号在所有租户间唯一。默认租户为空字符串，可通过 -Dcontact.tenant=... 指定
  */
 class ContactDao {
 
-    private static final String DB_URL = "jdbc:mysql://localhost:3306/ContactManager";
+    // rewriteBatchedStatements 让批量插入合并为多值 INSERT，显著提升批处理吞吐；
+    // connectTimeout 使数据库不可达时尽快失败（驱动默认无限等待），由熔断器决定是否重试
+    private static final String DB_URL =
+            "jdbc:mysql://localhost:3306/ContactManager?rewriteBatchedStatements=true&connectTimeout=3000";
     private static final String USER = "root"; // 替换为你的数据库用户名
     private static final String PASS = "123456"; // 替换为你的数据库密码
 	private String affectedRows;
+    // 批量操作每次 executeBatch 以及 IN 查询每次携带的最大记录数
+    private static final int BATCH_CHUNK = 500;
+    // 一次读取标签的联系人超过该数量时整表读取标签，而不是分批 IN 查询
+    private static final int TAG_SCAN_THRESHOLD = BATCH_CHUNK * 4;
+
+    private static final Comparator<Contact> BY_NAME = Comparator.comparing(Contact::getName);
+    private static final Comparator<ContactSummary> SUMMARY_BY_NAME = Comparator.comparing(ContactSummary::getName);
+    // 是否在每次写入时追加变更通知，供共用同一数据库的其他实例刷新内存副本
+    static final boolean CHANGE_FEED_ENABLED =
+            Boolean.parseBoolean(System.getProperty("contact.changeFeed.enabled", "true"));
+    // 软删除：删除只写入 deleted_at（墓碑），所有读取都过滤掉；墓碑由后台分批物理删除，清理前可撤销
+    static final boolean SOFT_DELETE = Boolean.parseBoolean(System.getProperty("contact.softDelete", "true"));
+    // 本租户且未删除的条件，所有读取与更新都带上；租户编号作为第一个（或紧随编号之后的）绑定参数
+    private static final String LIVE = "deleted_at IS NULL AND tenant_id = ?";
+    static final String DEFAULT_TENANT = "";
+    private static final Pattern TENANT_PATTERN = Pattern.compile("[A-Za-z0-9_.-]{0,64}");
+
+    private static volatile boolean driverLoaded = false;
+
+    private final ShardRouter router;
+    // 慢查询日志，包装每个读写连接
+    private final ContactQueryTracer tracer = ContactQueryTracer.getShared();
+    // 本实例的标识，写入变更通知表，轮询时据此跳过自己的写入；各租户的 DAO 各自一个
+    private final String origin;
+    private final String tenant;
 
     public ContactDao() {
-        try {
-            Class.forName("com.mysql.cj.jdbc.Driver");
-            createTable();
-            System.out.println("数据库连接成功！");
-        } catch (ClassNotFoundException e) {
-            System.err.println("MySQL JDBC 驱动未找到: " + e.getMessage());
-        } catch (SQLException e) {
-            System.err.println("数据库初始化失败: " + e.getMessage());
-            e.printStackTrace();
+        this(ShardRouter.fromSystemProperties(DB_URL, USER, PASS), System.getProperty("contact.tenant", DEFAULT_TENANT));
+    }
+
+    public ContactDao(ShardRouter router) {
+        this(router, DEFAULT_TENANT);
+    }
+
+    public ContactDao(ShardRouter router, String tenant) {
+        this(router, checkTenant(tenant), UUID.randomUUID().toString());
+    }
+
+    private ContactDao(ShardRouter router, String tenant, String origin) {
+        this.router = router;
+        this.tenant = tenant;
+        this.origin = origin;
+    }
+
+    /**
+     * 访问另一个租户的 DAO，共用连接（分片、连接池），实例标识独立：
+     * 租户的服务被淘汰后，仍持有它的调用方写入的变更能被重新加载的服务收到
+     */
+    ContactDao forTenant(String tenant) {
+        return new ContactDao(router, checkTenant(tenant), UUID.randomUUID().toString());
+    }
+
+    String getOrigin() {
+        return origin;
+    }
+
+    String getTenant() {
+        return tenant;
+    }
+
+    /**
+     * 数据库是否可用：所有分片主库都没有熔断
+     */
+    boolean isAvailable() {
+        return router.isAvailable();
+    }
+
+    /**
+     * 现在访问数据库是否会真正发出请求，而不是在熔断期间立即失败
+     */
+    boolean allowsAttempt() {
+        return router.allowsAttempt();
+    }
+
+    /**
+     * 数据库熔断后恢复时回调，同一组连接（各租户）共用
+     */
+    void addRecoveryListener(Runnable listener) {
+        router.addRecoveryListener(listener);
+    }
+
+    void removeRecoveryListener(Runnable listener) {
+        router.removeRecoveryListener(listener);
+    }
+
+    /**
+     * 租户编号只允许字母、数字与 _ . -，最长 64 个字符（也用于本地快照文件名）
+     */
+    static String checkTenant(String tenant) {
+        if (tenant == null || !TENANT_PATTERN.matcher(tenant).matches()) {
+            throw new IllegalArgumentException("无效的租户编号: " + tenant);
         }
+        return tenant;
     }
 
-    private Connection getConnection() throws SQLException {
-        return DriverManager.getConnection(DB_URL, USER, PASS);
+    /**
+     * 首次访问某个分片时加载驱动并建表，失败时下次访问会重试
+     */
+    private void ensureInitialized(ShardRouter.Shard shard) throws SQLException {
+        if (shard.initialized) {
+            return;
+        }
+        synchronized (shard) {
+            if (shard.initialized) {
+                return;
+            }
+            if (!driverLoaded && shard.primary.getUrl().startsWith("jdbc:mysql:")) {
+                try {
+                    Class.forName("com.mysql.cj.jdbc.Driver");
+                    driverLoaded = true;
+                } catch (ClassNotFoundException e) {
+                    System.err.println("MySQL JDBC 驱动未找到: " + e.getMessage());
+                }
+            }
+            try (Connection conn = router.openPrimary(shard)) {
+                createTable(conn);
+            }
+            shard.initialized = true;
+            System.out.println("数据库连接成功！" + (router.isSharded() ? "（分片 " + shard.index + "）" : ""));
+        }
+    }
+
+    /**
+     * 写连接：始终访问分片主库
+     */
+    private Connection writeConnection(ShardRouter.Shard shard) throws SQLException {
+        ensureInitialized(shard);
+        long start = System.nanoTime();
+        Connection conn = router.openPrimary(shard);
+        return tracer.wrap(conn, System.nanoTime() - start);
     }
 
-    private void createTable() throws SQLException {
+    /**
+     * 读连接：由路由层决定访问副本还是主库
+     */
+    private Connection readConnection(ShardRouter.Shard shard) throws SQLException {
+        ensureInitialized(shard);
+        long start = System.nanoTime();
+        Connection conn = router.openRead(shard);
+        return tracer.wrap(conn, System.nanoTime() - start);
+    }
+
+    private void createTable(Connection conn) throws SQLException {
         String sql = "CREATE TABLE IF NOT EXISTS contacts (" +
                      "id INT AUTO_INCREMENT PRIMARY KEY," +
                      "name VARCHAR(100) NOT NULL," +
                      "phone VARCHAR(15) NOT NULL," +
                      "email VARCHAR(100)," +
-                     "address VARCHAR(255)" +
+                     "address VARCHAR(255)," +
+                     "is_blacklisted BOOLEAN DEFAULT FALSE," +
+                     "deleted_at TIMESTAMP NULL DEFAULT NULL," +
+                     "tenant_id VARCHAR(64) NOT NULL DEFAULT ''," +
+                     "last_accessed_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP," +
+                     "KEY idx_contacts_deleted_at (deleted_at)," +
+                     "KEY idx_contacts_accessed (last_accessed_at)," +
+                     "KEY idx_contacts_tenant (tenant_id, name)" +
                      ")";
-        try (Connection conn = getConnection();
-             Statement stmt = conn.createStatement()) {
+        // 联系人标签（分组），与联系人存放在同一分片
+        String tagSql = "CREATE TABLE IF NOT EXISTS contact_tags (" +
+                        "contact_id INT NOT NULL," +
+                        "tag VARCHAR(50) NOT NULL," +
+                        "PRIMARY KEY (contact_id, tag)," +
+                        "KEY idx_contact_tags_tag (tag)" +
+                        ")";
+        // 冷数据归档：长期未访问或已拉黑的联系人移到这里，不参与日常查询与内存索引，访问时移回
+        String archiveSql = "CREATE TABLE IF NOT EXISTS contacts_archive (" +
+                            "id INT PRIMARY KEY," +
+                            "name VARCHAR(100) NOT NULL," +
+                            "phone VARCHAR(15) NOT NULL," +
+                            "email VARCHAR(100)," +
+                            "address VARCHAR(255)," +
+                            "is_blacklisted BOOLEAN DEFAULT FALSE," +
+                            "tenant_id VARCHAR(64) NOT NULL DEFAULT ''," +
+                            "last_accessed_at TIMESTAMP NULL DEFAULT NULL," +
+                            "archived_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP," +
+                            "KEY idx_contacts_archive_tenant (tenant_id, name)" +
+                            ")";
+        // 变更通知：每次写入追加受影响的编号，按序号只增不改，过期的记录定期清理
+        String changeSql = "CREATE TABLE IF NOT EXISTS contact_changes (" +
+                           "seq BIGINT AUTO_INCREMENT PRIMARY KEY," +
+                           "contact_id INT NOT NULL," +
+                           "origin VARCHAR(36) NOT NULL," +
+                           "tenant_id VARCHAR(64) NOT NULL DEFAULT ''," +
+                           "changed_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP" +
+                           ")";
+        try (Statement stmt = conn.createStatement()) {
             stmt.execute(sql);
+            stmt.execute(tagSql);
+            stmt.execute(archiveSql);
+            if (CHANGE_FEED_ENABLED) {
+                stmt.execute(changeSql);
+            }
+            if (!hasColumn(conn, "contacts", "deleted_at")) {
+                // 旧版本建的表没有墓碑列
+                stmt.execute("ALTER TABLE contacts ADD COLUMN deleted_at TIMESTAMP NULL DEFAULT NULL");
+                stmt.execute("CREATE INDEX idx_contacts_deleted_at ON contacts (deleted_at)");
+            }
+            if (!hasColumn(conn, "contacts", "tenant_id")) {
+                // 旧版本建的表只有一个通讯录，原有数据归入默认租户
+                stmt.execute("ALTER TABLE contacts ADD COLUMN tenant_id VARCHAR(64) NOT NULL DEFAULT ''");
+                stmt.execute("CREATE INDEX idx_contacts_tenant ON contacts (tenant_id, name)");
+            }
+            if (!hasColumn(conn, "contacts", "last_accessed_at")) {
+                // 已有的联系人从现在开始计算未访问时间，不会立即被归档
+                stmt.execute("ALTER TABLE contacts ADD COLUMN last_accessed_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP");
+                stmt.execute("CREATE INDEX idx_contacts_accessed ON contacts (last_accessed_at)");
+            }
+            if (CHANGE_FEED_ENABLED && !hasColumn(conn, "contact_changes", "tenant_id")) {
+                stmt.execute("ALTER TABLE contact_changes ADD COLUMN tenant_id VARCHAR(64) NOT NULL DEFAULT ''");
+            }
+            alignAutoIncrement(stmt);
+        }
+    }
+
+    /**
+     * 自增计数不小于归档中的最大编号：编号最大的联系人被归档后，MySQL 5.7 重启会把计数重置为联系人表的
+     * 最大编号 + 1，新联系人就会拿到归档中的编号，移回时冲突。调整时 MySQL 不会把计数调小
+     */
+    private static void alignAutoIncrement(Statement stmt) throws SQLException {
+        long archivedMax = 0;
+        long liveMax = 0;
+        try (ResultSet rs = stmt.executeQuery("SELECT COALESCE((SELECT MAX(id) FROM contacts_archive), 0), "
+                + "COALESCE((SELECT MAX(id) FROM contacts), 0)")) {
+            if (rs.next()) {
+                archivedMax = rs.getLong(1);
+                liveMax = rs.getLong(2);
+            }
+        }
+        if (archivedMax > liveMax) {
+            stmt.execute("ALTER TABLE contacts AUTO_INCREMENT = " + (archivedMax + 1));
+        }
+    }
+
+    private static boolean hasColumn(Connection conn, String table, String column) throws SQLException {
+        DatabaseMetaData meta = conn.getMetaData();
+        for (String[] names : new String[][] {{table, column}, {table.toUpperCase(), column.toUpperCase()}}) {
+            try (ResultSet rs = meta.getColumns(conn.getCatalog(), null, names[0], names[1])) {
+                if (rs.next()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 在同一连接（及其事务）中追加变更通知
+     */
+    private void recordChanges(Connection conn, Collection<Integer> ids) throws SQLException {
+        if (!CHANGE_FEED_ENABLED || ids.isEmpty()) {
+            return;
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(
+                "INSERT INTO contact_changes(contact_id, origin, tenant_id) VALUES(?,?,?)")) {
+            int pending = 0;
+            for (int id : ids) {
+                pstmt.setInt(1, id);
+                pstmt.setString(2, origin);
+                pstmt.setString(3, tenant);
+                pstmt.addBatch();
+                if (++pending == BATCH_CHUNK) {
+                    pstmt.executeBatch();
+                    pending = 0;
+                }
+            }
+            if (pending > 0) {
+                pstmt.executeBatch();
+            }
+        }
+    }
+
+    /**
+     * 自动提交模式下的写入已经生效，追加变更通知失败时只提示，不影响写入结果
+     */
+    private void recordChangeQuietly(Connection conn, int id) {
+        try {
+            recordChanges(conn, Collections.singletonList(id));
+        } catch (SQLException e) {
+            System.err.println("写入变更通知失败，其他实例可能暂时看不到本次修改: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 批量写入中实际生效的编号（受影响行数大于 0 或驱动未返回行数）
+     */
+    private static List<Integer> changedIds(List<Integer> ids, List<Integer> indexes, int[] counts) {
+        List<Integer> changed = new ArrayList<>(indexes.size());
+        for (int index : indexes) {
+            if (counts[index] > 0 || counts[index] == Statement.SUCCESS_NO_INFO) {
+                changed.add(ids.get(index));
+            }
+        }
+        return changed;
+    }
+
+    private static List<Integer> idsOf(List<Contact> contacts) {
+        List<Integer> ids = new ArrayList<>(contacts.size());
+        for (Contact contact : contacts) {
+            if (contact.getId() > 0) {
+                ids.add(contact.getId());
+            }
+        }
+        return ids;
+    }
+
+    private static Contact mapContact(ResultSet rs) throws SQLException {
+        return new Contact(
+            rs.getInt("id"),
+            rs.getString("name"),
+            rs.getString("phone"),
+            rs.getString("email"),
+            rs.getString("address"),
+            rs.getBoolean("is_blacklisted")
+        );
+    }
+
+    /**
+     * 读取一批联系人（联系人表中的）的标签并写回各对象
+     */
+    private void attachTags(Connection conn, List<Contact> contacts) throws SQLException {
+        attachTags(conn, contacts, "contacts");
+    }
+
+    /**
+     * 读取一批联系人的标签并写回各对象；数量较多时读取本租户的全部标签，否则按编号分批 IN 查询
+     * @param table 联系人所在的表（contacts 或 contacts_archive），整表读取标签时据此按租户过滤
+     */
+    private void attachTags(Connection conn, List<Contact> contacts, String table) throws SQLException {
+        if (contacts.isEmpty()) {
+            return;
+        }
+        Map<Integer, Contact> byId = new HashMap<>(Math.max(16, contacts.size() * 2));
+        for (Contact contact : contacts) {
+            byId.put(contact.getId(), contact);
+        }
+        Map<Integer, List<String>> tags = new HashMap<>();
+        if (contacts.size() > TAG_SCAN_THRESHOLD) {
+            try (PreparedStatement pstmt = conn.prepareStatement("SELECT t.contact_id, t.tag FROM contact_tags t "
+                    + "JOIN " + table + " c ON c.id = t.contact_id WHERE c.tenant_id = ?")) {
+                pstmt.setString(1, tenant);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    collectTags(rs, byId, tags);
+                }
+            }
+        } else {
+            List<Integer> ids = new ArrayList<>(byId.keySet());
+            for (int from = 0; from < ids.size(); from += BATCH_CHUNK) {
+                int to = Math.min(from + BATCH_CHUNK, ids.size());
+                StringBuilder sql = new StringBuilder("SELECT contact_id, tag FROM contact_tags WHERE contact_id IN (");
+                for (int i = from; i < to; i++) {
+                    sql.append(i == from ? "?" : ",?");
+                }
+                sql.append(')');
+                try (PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+                    for (int i = from; i < to; i++) {
+                        pstmt.setInt(i - from + 1, ids.get(i));
+                    }
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        collectTags(rs, byId, tags);
+                    }
+                }
+            }
+        }
+        for (Map.Entry<Integer, List<String>> entry : tags.entrySet()) {
+            byId.get(entry.getKey()).setTags(entry.getValue());
+        }
+    }
+
+    private static void collectTags(ResultSet rs, Map<Integer, Contact> byId, Map<Integer, List<String>> tags)
+            throws SQLException {
+        while (rs.next()) {
+            int id = rs.getInt(1);
+            if (byId.containsKey(id)) {
+                tags.computeIfAbsent(id, k -> new ArrayList<>()).add(rs.getString(2));
+            }
+        }
+    }
+
+    /**
+     * 写入新联系人的标签，调用方负责事务
+     */
+    private static void insertTags(Connection conn, List<Contact> contacts) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("INSERT INTO contact_tags(contact_id, tag) VALUES(?,?)")) {
+            int pending = 0;
+            for (Contact contact : contacts) {
+                for (String tag : contact.getTags()) {
+                    pstmt.setInt(1, contact.getId());
+                    pstmt.setString(2, tag);
+                    pstmt.addBatch();
+                    if (++pending == BATCH_CHUNK) {
+                        pstmt.executeBatch();
+                        pending = 0;
+                    }
+                }
+            }
+            if (pending > 0) {
+                pstmt.executeBatch();
+            }
+        }
+    }
+
+    /**
+     * 删除一批联系人的全部标签，调用方负责事务
+     */
+    private static void deleteTags(Connection conn, List<Integer> ids) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM contact_tags WHERE contact_id = ?")) {
+            for (int id : ids) {
+                pstmt.setInt(1, id);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
         }
     }
 
@@ -50,37 +449,188 @@ class ContactDao {
      * @param contact 要添加的联系人对象
      */
     public void addContact(Contact contact) {
-		String sql = "INSERT INTO contacts(name, phone, email, address, is_blacklisted) VALUES(?,?,?,?,?)";
-		try (Connection conn = getConnection();
+        if (router.isSharded()) {
+            try {
+                List<Contact> single = new ArrayList<>(1);
+                single.add(contact);
+                insertContacts(single);
+            } catch (SQLException e) {
+                System.err.println("添加联系人失败: " + e.getMessage());
+            }
+            return;
+        }
+		String sql = "INSERT INTO contacts(name, phone, email, address, is_blacklisted, tenant_id) VALUES(?,?,?,?,?,?)";
+		ShardRouter.Shard shard = router.shard(0);
+		try (Connection conn = writeConnection(shard);
 			PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
 			pstmt.setString(1, contact.getName());
 			pstmt.setString(2, contact.getPhone());
 			pstmt.setString(3, contact.getEmail());
 			pstmt.setString(4, contact.getAddress());
 			pstmt.setBoolean(5, contact.isBlacklisted());
+			pstmt.setString(6, tenant);
 			pstmt.executeUpdate();
+			router.markWritten(shard);
 
             // 获取自增ID并设置给Contact对象
             ResultSet rs = pstmt.getGeneratedKeys();
             if (rs.next()) {
                 contact.setId(rs.getInt(1));
             }
+            if (contact.getId() > 0 && !contact.getTags().isEmpty()) {
+                insertTags(conn, Collections.singletonList(contact));
+            }
+            if (contact.getId() > 0) {
+                recordChangeQuietly(conn, contact.getId());
+            }
         } catch (SQLException e) {
             System.err.println("添加联系人失败: " + e.getMessage());
         }
     }
 
     /**
-     * 删除联系人，根据联系人编号删除
+     * 批量添加联系人，成功后把编号写回各个对象
+     * 单库时在一个事务中使用自增编号；分片时先分配全局编号，再按分片各自在一个事务中写入，
+     * 某个分片失败不影响其他分片，失败分片中的对象编号保持为 0
+     * @param contacts 要添加的联系人
+     */
+    void insertContacts(List<Contact> contacts) throws SQLException {
+        if (router.isSharded()) {
+            insertSharded(contacts);
+            return;
+        }
+        String sql = "INSERT INTO contacts(name, phone, email, address, is_blacklisted, tenant_id) VALUES(?,?,?,?,?,?)";
+        ShardRouter.Shard shard = router.shard(0);
+        try (Connection conn = writeConnection(shard)) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS)) {
+                for (int from = 0; from < contacts.size(); from += BATCH_CHUNK) {
+                    List<Contact> chunk = contacts.subList(from, Math.min(from + BATCH_CHUNK, contacts.size()));
+                    for (Contact contact : chunk) {
+                        pstmt.setString(1, contact.getName());
+                        pstmt.setString(2, contact.getPhone());
+                        pstmt.setString(3, contact.getEmail());
+                        pstmt.setString(4, contact.getAddress());
+                        pstmt.setBoolean(5, contact.isBlacklisted());
+                        pstmt.setString(6, tenant);
+                        pstmt.addBatch();
+                    }
+                    pstmt.executeBatch();
+                    try (ResultSet rs = pstmt.getGeneratedKeys()) {
+                        for (Contact contact : chunk) {
+                            if (!rs.next()) {
+                                break;
+                            }
+                            contact.setId(rs.getInt(1));
+                        }
+                    }
+                }
+                insertTags(conn, contacts);
+                recordChanges(conn, idsOf(contacts));
+                conn.commit();
+                router.markWritten(shard);
+            } catch (SQLException e) {
+                conn.rollback();
+                for (Contact contact : contacts) {
+                    contact.setId(0);
+                }
+                throw e;
+            }
+        }
+    }
+
+    private void insertSharded(List<Contact> contacts) throws SQLException {
+        for (ShardRouter.Shard shard : router.getShards()) {
+            ensureInitialized(shard);
+        }
+        List<Integer> ids = new ArrayList<>(contacts.size());
+        for (Contact contact : contacts) {
+            contact.setId(router.allocateId());
+            ids.add(contact.getId());
+        }
+        List<List<Integer>> groups = router.groupByShard(ids);
+        SQLException failure = null;
+        for (int s = 0; s < groups.size(); s++) {
+            List<Contact> shardContacts = new ArrayList<>(groups.get(s).size());
+            for (int index : groups.get(s)) {
+                shardContacts.add(contacts.get(index));
+            }
+            if (shardContacts.isEmpty()) {
+                continue;
+            }
+            try {
+                insertWithIds(router.shard(s), shardContacts);
+            } catch (SQLException e) {
+                for (Contact contact : shardContacts) {
+                    contact.setId(0);
+                }
+                if (e.getSQLState() != null && e.getSQLState().startsWith("23")) {
+                    // 编号冲突，说明其他进程也在分配编号，下次重新读取最大编号
+                    router.resetIdAllocator();
+                }
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private void insertWithIds(ShardRouter.Shard shard, List<Contact> contacts) throws SQLException {
+        String sql = "INSERT INTO contacts(id, name, phone, email, address, is_blacklisted, tenant_id) VALUES(?,?,?,?,?,?,?)";
+        try (Connection conn = writeConnection(shard)) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                for (int from = 0; from < contacts.size(); from += BATCH_CHUNK) {
+                    int to = Math.min(from + BATCH_CHUNK, contacts.size());
+                    for (int i = from; i < to; i++) {
+                        Contact contact = contacts.get(i);
+                        pstmt.setInt(1, contact.getId());
+                        pstmt.setString(2, contact.getName());
+                        pstmt.setString(3, contact.getPhone());
+                        pstmt.setString(4, contact.getEmail());
+                        pstmt.setString(5, contact.getAddress());
+                        pstmt.setBoolean(6, contact.isBlacklisted());
+                        pstmt.setString(7, tenant);
+                        pstmt.addBatch();
+                    }
+                    pstmt.executeBatch();
+                }
+                insertTags(conn, contacts);
+                recordChanges(conn, idsOf(contacts));
+                conn.commit();
+                router.markWritten(shard);
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 删除联系人，根据联系人编号删除；软删除模式下只标记墓碑，标签保留到物理删除时
      * @param id 联系人编号
      * @return true 删除成功，false 未找到联系人
      */
     public boolean deleteContact(int id) {
-        String sql = "DELETE FROM contacts WHERE id = ?";
-        try (Connection conn = getConnection();
+        String sql = SOFT_DELETE
+                ? "UPDATE contacts SET deleted_at = CURRENT_TIMESTAMP WHERE id = ? AND " + LIVE
+                : "DELETE FROM contacts WHERE id = ? AND tenant_id = ?";
+        ShardRouter.Shard shard = router.shardOf(id);
+        try (Connection conn = writeConnection(shard);
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setInt(1, id);
+            pstmt.setString(2, tenant);
             int affectedRows = pstmt.executeUpdate();
+            router.markWritten(shard);
+            if (affectedRows > 0) {
+                if (!SOFT_DELETE) {
+                    deleteTags(conn, Collections.singletonList(id));
+                }
+                recordChangeQuietly(conn, id);
+            }
             return affectedRows > 0;
         } catch (SQLException e) {
             System.err.println("删除联系人失败: " + e.getMessage());
@@ -88,24 +638,80 @@ class ContactDao {
         }
     }
 
+    /**
+     * 批量删除联系人（软删除模式下标记墓碑），每个分片在一个事务中执行
+     * @param ids 联系人编号
+     * @return 与输入一一对应的受影响行数
+     */
+    int[] deleteContacts(List<Integer> ids) throws SQLException {
+        String sql = SOFT_DELETE
+                ? "UPDATE contacts SET deleted_at = CURRENT_TIMESTAMP WHERE id = ? AND " + LIVE
+                : "DELETE FROM contacts WHERE id = ? AND tenant_id = ?";
+        int[] counts = new int[ids.size()];
+        List<List<Integer>> groups = router.groupByShard(ids);
+        for (int s = 0; s < groups.size(); s++) {
+            List<Integer> indexes = groups.get(s);
+            if (indexes.isEmpty()) {
+                continue;
+            }
+            ShardRouter.Shard shard = router.shard(s);
+            try (Connection conn = writeConnection(shard)) {
+                conn.setAutoCommit(false);
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    for (int from = 0; from < indexes.size(); from += BATCH_CHUNK) {
+                        int to = Math.min(from + BATCH_CHUNK, indexes.size());
+                        for (int i = from; i < to; i++) {
+                            pstmt.setInt(1, ids.get(indexes.get(i)));
+                            pstmt.setString(2, tenant);
+                            pstmt.addBatch();
+                        }
+                        int[] chunkCounts = pstmt.executeBatch();
+                        for (int i = from; i < to; i++) {
+                            counts[indexes.get(i)] = chunkCounts[i - from];
+                        }
+                    }
+                    List<Integer> deleted = changedIds(ids, indexes, counts);
+                    if (!SOFT_DELETE && !deleted.isEmpty()) {
+                        // 只删除确实属于本租户、已删除的联系人的标签
+                        deleteTags(conn, deleted);
+                    }
+                    recordChanges(conn, deleted);
+                    conn.commit();
+                    router.markWritten(shard);
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                }
+            }
+        }
+        return counts;
+    }
+
     /**
      * 更新联系人信息，根据联系人编号更新对应信息
      * @param updated 联系人对象，编号用于匹配
      * @return true 更新成功，false 未找到联系人
      */
     public boolean updateContact(Contact updated) {
-    	String sql = "UPDATE contacts SET name = ?, phone = ?, email = ?, address = ?, is_blacklisted = ? WHERE id = ?";
-        try (Connection conn = getConnection();
+    	String sql = "UPDATE contacts SET name = ?, phone = ?, email = ?, address = ?, is_blacklisted = ?, "
+                + "last_accessed_at = CURRENT_TIMESTAMP WHERE id = ? AND " + LIVE;
+        ShardRouter.Shard shard = router.shardOf(updated.getId());
+        try (Connection conn = writeConnection(shard);
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, updated.getName());
             pstmt.setString(2, updated.getPhone());
             pstmt.setString(3, updated.getEmail());
             pstmt.setString(4, updated.getAddress());
             pstmt.setInt(6, updated.getId());
+            pstmt.setString(7, tenant);
             System.out.println("isBlacklisted: " + updated.isBlacklisted());
             pstmt.setBoolean(5, updated.isBlacklisted());
             System.out.println("Affected rows: " + affectedRows);
             int affectedRows = pstmt.executeUpdate();
+            router.markWritten(shard);
+            if (affectedRows > 0) {
+                recordChangeQuietly(conn, updated.getId());
+            }
             return affectedRows > 0;
         } catch (SQLException e) {
             System.err.println("更新联系人失败: " + e.getMessage());
@@ -114,26 +720,75 @@ class ContactDao {
         }
     }
 
+    /**
+     * 批量更新联系人信息，每个分片在一个事务中执行
+     * @param contacts 联系人对象，编号用于匹配
+     * @return 与输入一一对应的受影响行数
+     */
+    int[] updateContacts(List<Contact> contacts) throws SQLException {
+        String sql = "UPDATE contacts SET name = ?, phone = ?, email = ?, address = ?, is_blacklisted = ?, "
+                + "last_accessed_at = CURRENT_TIMESTAMP WHERE id = ? AND " + LIVE;
+        int[] counts = new int[contacts.size()];
+        List<Integer> ids = new ArrayList<>(contacts.size());
+        for (Contact contact : contacts) {
+            ids.add(contact.getId());
+        }
+        List<List<Integer>> groups = router.groupByShard(ids);
+        for (int s = 0; s < groups.size(); s++) {
+            List<Integer> indexes = groups.get(s);
+            if (indexes.isEmpty()) {
+                continue;
+            }
+            ShardRouter.Shard shard = router.shard(s);
+            try (Connection conn = writeConnection(shard)) {
+                conn.setAutoCommit(false);
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    for (int from = 0; from < indexes.size(); from += BATCH_CHUNK) {
+                        int to = Math.min(from + BATCH_CHUNK, indexes.size());
+                        for (int i = from; i < to; i++) {
+                            Contact contact = contacts.get(indexes.get(i));
+                            pstmt.setString(1, contact.getName());
+                            pstmt.setString(2, contact.getPhone());
+                            pstmt.setString(3, contact.getEmail());
+                            pstmt.setString(4, contact.getAddress());
+                            pstmt.setBoolean(5, contact.isBlacklisted());
+                            pstmt.setInt(6, contact.getId());
+                            pstmt.setString(7, tenant);
+                            pstmt.addBatch();
+                        }
+                        int[] chunkCounts = pstmt.executeBatch();
+                        for (int i = from; i < to; i++) {
+                            counts[indexes.get(i)] = chunkCounts[i - from];
+                        }
+                    }
+                    recordChanges(conn, changedIds(ids, indexes, counts));
+                    conn.commit();
+                    router.markWritten(shard);
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                }
+            }
+        }
+        return counts;
+    }
+
     /**
      * 根据联系人编号查询联系人信息
      * @param id 联系人编号
      * @return 联系人对象，若未找到返回 null
      */
     public Contact getContact(int id) {
-        String sql = "SELECT id, name, phone, email, address, is_blacklisted FROM contacts WHERE id = ?";
-        try (Connection conn = getConnection();
+        String sql = "SELECT id, name, phone, email, address, is_blacklisted FROM contacts WHERE id = ? AND " + LIVE;
+        try (Connection conn = readConnection(router.shardOf(id));
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setInt(1, id);
+            pstmt.setString(2, tenant);
             ResultSet rs = pstmt.executeQuery();
             if (rs.next()) {
-                return new Contact(
-                    rs.getInt("id"),
-                    rs.getString("name"),
-                    rs.getString("phone"),
-                    rs.getString("email"),
-                    rs.getString("address"), // 在这里添加逗号
-                    rs.getBoolean("is_blacklisted")
-                );
+                Contact contact = mapContact(rs);
+                attachTags(conn, Collections.singletonList(contact));
+                return contact;
             }
         } catch (SQLException e) {
             System.err.println("查询联系人失败: " + e.getMessage());
@@ -141,58 +796,716 @@ class ContactDao {
         return null;
     }
 
+    /**
+     * 按编号批量查询联系人，各分片并行查询，每次 IN 查询最多携带 BATCH_CHUNK 个编号
+     * @param ids 联系人编号
+     * @return 编号到联系人的映射，不存在的编号不出现在结果中
+     */
+    Map<Integer, Contact> getContacts(Collection<Integer> ids) throws SQLException {
+        return getContacts(ids, false);
+    }
+
+    /**
+     * @param fromPrimary true 时只读主库，用于刷新其他实例刚写入的数据，避免读到副本上的旧值
+     */
+    Map<Integer, Contact> getContacts(Collection<Integer> ids, boolean fromPrimary) throws SQLException {
+        List<Integer> all = new ArrayList<>(ids);
+        List<List<Integer>> groups = router.groupByShard(all);
+        List<List<Contact>> perShard = router.scatter(shard -> {
+            List<Integer> indexes = groups.get(shard.index);
+            List<Contact> found = new ArrayList<>(indexes.size());
+            if (indexes.isEmpty()) {
+                return found;
+            }
+            try (Connection conn = fromPrimary ? writeConnection(shard) : readConnection(shard)) {
+                for (int from = 0; from < indexes.size(); from += BATCH_CHUNK) {
+                    int to = Math.min(from + BATCH_CHUNK, indexes.size());
+                    StringBuilder sql = new StringBuilder(
+                            "SELECT id, name, phone, email, address, is_blacklisted FROM contacts WHERE " + LIVE + " AND id IN (");
+                    for (int i = from; i < to; i++) {
+                        sql.append(i == from ? "?" : ",?");
+                    }
+                    sql.append(')');
+                    try (PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+                        pstmt.setString(1, tenant);
+                        for (int i = from; i < to; i++) {
+                            pstmt.setInt(i - from + 2, all.get(indexes.get(i)));
+                        }
+                        try (ResultSet rs = pstmt.executeQuery()) {
+                            while (rs.next()) {
+                                found.add(mapContact(rs));
+                            }
+                        }
+                    }
+                }
+                attachTags(conn, found);
+            }
+            return found;
+        });
+        Map<Integer, Contact> contacts = new HashMap<>(Math.max(16, all.size() * 2));
+        for (List<Contact> found : perShard) {
+            for (Contact contact : found) {
+                contacts.put(contact.getId(), contact);
+            }
+        }
+        return contacts;
+    }
+
     /**
      * 获取所有联系人数据
      * @return 联系人列表
      */
     public List<Contact> getAllContacts() {
-        List<Contact> contacts = new ArrayList<>();
-        String sql = "SELECT id, name, phone, email, address, is_blacklisted FROM contacts";
-        try (Connection conn = getConnection();
-             Statement stmt = conn.createStatement();
-             ResultSet rs = stmt.executeQuery(sql)) {
-            while (rs.next()) {
-                contacts.add(new Contact(
-                    rs.getInt("id"),
-                    rs.getString("name"),
-                    rs.getString("phone"),
-                    rs.getString("email"),
-                    rs.getString("address"),
-                    rs.getBoolean("is_blacklisted") // 添加对 is_blacklisted 的处理
-                ));
-            }
+        try {
+            return fetchAllContacts();
         } catch (SQLException e) {
             System.err.println("获取所有联系人失败: " + e.getMessage());
+            return new ArrayList<>();
         }
-        return contacts;
+    }
+
+    /**
+     * 获取所有联系人数据，数据库异常直接抛出，供需要区分"空表"与"读取失败"的调用方使用
+     * 分片时各分片并行读取并各自按姓名排序，再 k 路归并
+     * @return 联系人列表
+     */
+    List<Contact> fetchAllContacts() throws SQLException {
+        String sql = "SELECT id, name, phone, email, address, is_blacklisted FROM contacts WHERE " + LIVE;
+        List<List<Contact>> perShard = router.scatter(shard -> {
+            List<Contact> contacts = new ArrayList<>();
+            try (Connection conn = readConnection(shard);
+                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setString(1, tenant);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        contacts.add(mapContact(rs));
+                    }
+                }
+                attachTags(conn, contacts);
+            }
+            if (router.isSharded()) {
+                contacts.sort(BY_NAME);
+            }
+            return contacts;
+        });
+        return ShardRouter.mergeSorted(perShard, BY_NAME);
     }
 
     /**
      * 模糊查询联系人，根据姓名或电话包含关键字进行查询
      */
     public List<Contact> searchContacts(String keyword) {
-        List<Contact> results = new ArrayList<>();
-        String sql = "SELECT id, name, phone, email, address, is_blacklisted FROM contacts WHERE name LIKE ? OR phone LIKE ?";
-        try (Connection conn = getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, "%" + keyword + "%");
-            pstmt.setString(2, "%" + keyword + "%");
-            ResultSet rs = pstmt.executeQuery();
-            while (rs.next()) {
-                results.add(new Contact(
-                    rs.getInt("id"),
-                    rs.getString("name"),
-                    rs.getString("phone"),
-                    rs.getString("email"),
-                    rs.getString("address"),
-                    rs.getBoolean("is_blacklisted") // 添加对 is_blacklisted 的处理
-                ));
-            }
+        String sql = "SELECT id, name, phone, email, address, is_blacklisted FROM contacts WHERE " + LIVE
+                + " AND (name LIKE ? OR phone LIKE ?)";
+        try {
+            List<List<Contact>> perShard = router.scatter(shard -> {
+                List<Contact> results = new ArrayList<>();
+                try (Connection conn = readConnection(shard);
+                     PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    pstmt.setString(1, tenant);
+                    pstmt.setString(2, "%" + keyword + "%");
+                    pstmt.setString(3, "%" + keyword + "%");
+                    ResultSet rs = pstmt.executeQuery();
+                    while (rs.next()) {
+                        results.add(mapContact(rs));
+                    }
+                    attachTags(conn, results);
+                }
+                if (router.isSharded()) {
+                    results.sort(BY_NAME);
+                }
+                return results;
+            });
+            return ShardRouter.mergeSorted(perShard, BY_NAME);
         } catch (SQLException e) {
             System.err.println("模糊查询联系人失败: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    /**
+     * 列表用的投影查询：只读取编号、姓名与电话，不读取标签，结果按姓名排序
+     * @param keyword 姓名或电话包含的关键字，null 表示全部
+     */
+    List<ContactSummary> querySummaries(String keyword) throws SQLException {
+        String sql = "SELECT id, name, phone FROM contacts WHERE " + LIVE
+                + (keyword != null ? " AND (name LIKE ? OR phone LIKE ?)" : "");
+        List<List<ContactSummary>> perShard = router.scatter(shard -> {
+            List<ContactSummary> results = new ArrayList<>();
+            try (Connection conn = readConnection(shard);
+                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setString(1, tenant);
+                if (keyword != null) {
+                    pstmt.setString(2, "%" + keyword + "%");
+                    pstmt.setString(3, "%" + keyword + "%");
+                }
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        results.add(new ContactSummary(rs.getInt(1), rs.getString(2), rs.getString(3)));
+                    }
+                }
+            }
+            results.sort(SUMMARY_BY_NAME);
+            return results;
+        });
+        return ShardRouter.mergeSorted(perShard, SUMMARY_BY_NAME);
+    }
+
+    /**
+     * 组合条件查询实际执行的 SQL，第一个绑定参数为租户编号，之后为 where 中的参数；也用于查询计划的说明
+     * @param where 下推的 SQL 条件，null 表示不加条件
+     */
+    static String querySql(String where) {
+        return "SELECT id, name, phone, email, address, is_blacklisted FROM contacts WHERE " + LIVE
+                + (where != null ? " AND (" + where + ")" : "") + " ORDER BY name";
+    }
+
+    /**
+     * 按条件查询联系人，结果按姓名排序
+     * @param where 下推的 SQL 条件，null 表示不加条件
+     * @param params where 中的绑定参数
+     * @param residual 读取每一行后还需判断的条件，null 表示没有
+     * @param limit 最多返回条数，小于等于 0 表示不限制；达到后停止读取结果集
+     */
+    List<Contact> queryContacts(String where, List<Object> params, Predicate<Contact> residual, int limit)
+            throws SQLException {
+        String sql = querySql(where);
+        List<List<Contact>> perShard = router.scatter(shard -> {
+            List<Contact> results = new ArrayList<>();
+            try (Connection conn = readConnection(shard);
+                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setString(1, tenant);
+                for (int i = 0; i < params.size(); i++) {
+                    pstmt.setObject(i + 2, params.get(i));
+                }
+                if (residual == null && limit > 0) {
+                    pstmt.setMaxRows(limit);
+                }
+                // 后置条件可能用到标签，按 BATCH_CHUNK 行一批补齐标签后再判断
+                List<Contact> batch = new ArrayList<>();
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    boolean more = true;
+                    while (more && (limit <= 0 || results.size() < limit)) {
+                        more = rs.next();
+                        if (more) {
+                            batch.add(mapContact(rs));
+                        }
+                        if (batch.size() == BATCH_CHUNK || (!more && !batch.isEmpty())) {
+                            attachTags(conn, batch);
+                            for (Contact contact : batch) {
+                                if (residual == null || residual.test(contact)) {
+                                    results.add(contact);
+                                    if (limit > 0 && results.size() >= limit) {
+                                        break;
+                                    }
+                                }
+                            }
+                            batch.clear();
+                        }
+                    }
+                }
+            }
+            // 数据库排序规则与 Java 字符串顺序不同，归并前统一按 Java 顺序排序
+            results.sort(BY_NAME);
+            return results;
+        });
+        List<Contact> merged = ShardRouter.mergeSorted(perShard, BY_NAME);
+        return limit > 0 && merged.size() > limit ? new ArrayList<>(merged.subList(0, limit)) : merged;
+    }
+
+    /**
+     * 为一批联系人加上或去掉同一个标签，每个分片在一个事务中执行
+     * 调用方只传入确实需要变化的联系人（加标签时尚无该标签，去标签时已有该标签）
+     * @param ids 联系人编号
+     * @param tag 标签
+     * @param add true 加标签，false 去标签
+     */
+    void updateTags(List<Integer> ids, String tag, boolean add) throws SQLException {
+        String sql = add
+                ? "INSERT INTO contact_tags(contact_id, tag) VALUES(?,?)"
+                : "DELETE FROM contact_tags WHERE contact_id = ? AND tag = ?";
+        List<List<Integer>> groups = router.groupByShard(ids);
+        for (int s = 0; s < groups.size(); s++) {
+            List<Integer> indexes = groups.get(s);
+            if (indexes.isEmpty()) {
+                continue;
+            }
+            ShardRouter.Shard shard = router.shard(s);
+            try (Connection conn = writeConnection(shard)) {
+                conn.setAutoCommit(false);
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    for (int from = 0; from < indexes.size(); from += BATCH_CHUNK) {
+                        int to = Math.min(from + BATCH_CHUNK, indexes.size());
+                        for (int i = from; i < to; i++) {
+                            pstmt.setInt(1, ids.get(indexes.get(i)));
+                            pstmt.setString(2, tag);
+                            pstmt.addBatch();
+                        }
+                        pstmt.executeBatch();
+                    }
+                    List<Integer> shardIds = new ArrayList<>(indexes.size());
+                    for (int index : indexes) {
+                        shardIds.add(ids.get(index));
+                    }
+                    recordChanges(conn, shardIds);
+                    conn.commit();
+                    router.markWritten(shard);
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * 撤销软删除：清除墓碑标记，标签在软删除时未删除，随联系人一起恢复
+     * @param ids 联系人编号
+     * @return 与输入一一对应的受影响行数，已被物理删除或未删除的为 0
+     */
+    int[] restoreContacts(List<Integer> ids) throws SQLException {
+        String sql = "UPDATE contacts SET deleted_at = NULL WHERE id = ? AND tenant_id = ? AND deleted_at IS NOT NULL";
+        int[] counts = new int[ids.size()];
+        List<List<Integer>> groups = router.groupByShard(ids);
+        for (int s = 0; s < groups.size(); s++) {
+            List<Integer> indexes = groups.get(s);
+            if (indexes.isEmpty()) {
+                continue;
+            }
+            ShardRouter.Shard shard = router.shard(s);
+            try (Connection conn = writeConnection(shard)) {
+                conn.setAutoCommit(false);
+                try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                    for (int from = 0; from < indexes.size(); from += BATCH_CHUNK) {
+                        int to = Math.min(from + BATCH_CHUNK, indexes.size());
+                        for (int i = from; i < to; i++) {
+                            pstmt.setInt(1, ids.get(indexes.get(i)));
+                            pstmt.setString(2, tenant);
+                            pstmt.addBatch();
+                        }
+                        int[] chunkCounts = pstmt.executeBatch();
+                        for (int i = from; i < to; i++) {
+                            counts[indexes.get(i)] = chunkCounts[i - from];
+                        }
+                    }
+                    recordChanges(conn, changedIds(ids, indexes, counts));
+                    conn.commit();
+                    router.markWritten(shard);
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                }
+            }
+        }
+        return counts;
+    }
+
+    /**
+     * 物理删除早于指定时间的墓碑及其标签，每个分片最多 limit 条、各在一个短事务中执行，
+     * 每批只锁住少量行，不影响正常读写
+     * @return 物理删除的联系人数
+     */
+    int purgeDeleted(long olderThanMillis, int limit) throws SQLException {
+        Timestamp cutoff = new Timestamp(olderThanMillis);
+        int purged = 0;
+        for (ShardRouter.Shard shard : router.getShards()) {
+            List<Integer> ids = new ArrayList<>();
+            try (Connection conn = writeConnection(shard)) {
+                try (PreparedStatement pstmt = conn.prepareStatement(
+                        "SELECT id FROM contacts WHERE deleted_at IS NOT NULL AND deleted_at < ? ORDER BY deleted_at LIMIT ?")) {
+                    pstmt.setTimestamp(1, cutoff);
+                    pstmt.setInt(2, limit);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            ids.add(rs.getInt(1));
+                        }
+                    }
+                }
+                if (ids.isEmpty()) {
+                    continue;
+                }
+                conn.setAutoCommit(false);
+                // 选出后、删除前可能已被撤销，删除时再次检查墓碑条件，被撤销的联系人保留标签
+                try (PreparedStatement pstmt = conn.prepareStatement(
+                        "DELETE FROM contacts WHERE id = ? AND deleted_at IS NOT NULL AND deleted_at < ?")) {
+                    for (int id : ids) {
+                        pstmt.setInt(1, id);
+                        pstmt.setTimestamp(2, cutoff);
+                        pstmt.addBatch();
+                    }
+                    int[] counts = pstmt.executeBatch();
+                    List<Integer> removed = new ArrayList<>(ids.size());
+                    for (int i = 0; i < ids.size(); i++) {
+                        if (counts[i] > 0 || counts[i] == Statement.SUCCESS_NO_INFO) {
+                            removed.add(ids.get(i));
+                        }
+                    }
+                    if (!removed.isEmpty()) {
+                        deleteTags(conn, removed);
+                    }
+                    conn.commit();
+                    router.markWritten(shard);
+                    purged += removed.size();
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                }
+            }
+        }
+        return purged;
+    }
+
+    // ---------------------------------------------------------------- 冷数据归档
+
+    private static final String ARCHIVE_COLUMNS = "id, name, phone, email, address, is_blacklisted, tenant_id";
+    // 归档条件：长期未访问，或（按配置）已拉黑；第一个绑定参数为未访问的截止时间
+    private static String archivePolicy(boolean blacklisted) {
+        return blacklisted ? "(last_accessed_at < ? OR is_blacklisted = TRUE)" : "last_accessed_at < ?";
+    }
+
+    /**
+     * 批量更新最近访问时间，供归档策略判断；不写变更通知（内容未变）
+     */
+    void touchContacts(Collection<Integer> ids) throws SQLException {
+        List<Integer> all = new ArrayList<>(ids);
+        List<List<Integer>> groups = router.groupByShard(all);
+        for (int s = 0; s < groups.size(); s++) {
+            List<Integer> indexes = groups.get(s);
+            if (indexes.isEmpty()) {
+                continue;
+            }
+            ShardRouter.Shard shard = router.shard(s);
+            try (Connection conn = writeConnection(shard);
+                 PreparedStatement pstmt = conn.prepareStatement(
+                         "UPDATE contacts SET last_accessed_at = CURRENT_TIMESTAMP WHERE id = ? AND tenant_id = ?")) {
+                for (int from = 0; from < indexes.size(); from += BATCH_CHUNK) {
+                    int to = Math.min(from + BATCH_CHUNK, indexes.size());
+                    for (int i = from; i < to; i++) {
+                        pstmt.setInt(1, all.get(indexes.get(i)));
+                        pstmt.setString(2, tenant);
+                        pstmt.addBatch();
+                    }
+                    pstmt.executeBatch();
+                }
+                router.markWritten(shard);
+            }
+        }
+    }
+
+    /**
+     * 符合归档条件的联系人编号，每个分片最多 limit 个
+     * @param idleBeforeMillis 最近访问早于该时间的视为冷数据
+     * @param blacklisted 已拉黑的联系人是否也归档
+     */
+    List<Integer> archiveCandidates(long idleBeforeMillis, boolean blacklisted, int limit) throws SQLException {
+        String sql = "SELECT id FROM contacts WHERE " + LIVE + " AND " + archivePolicy(blacklisted) + " LIMIT ?";
+        List<Integer> ids = new ArrayList<>();
+        for (List<Integer> found : router.scatter(shard -> {
+            List<Integer> shardIds = new ArrayList<>();
+            try (Connection conn = writeConnection(shard);
+                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setString(1, tenant);
+                pstmt.setTimestamp(2, new Timestamp(idleBeforeMillis));
+                pstmt.setInt(3, limit);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        shardIds.add(rs.getInt(1));
+                    }
+                }
+            }
+            return shardIds;
+        })) {
+            ids.addAll(found);
+        }
+        return ids;
+    }
+
+    /**
+     * 把联系人移到归档表，每个分片在一个事务中执行；移动时再次检查归档条件，期间被访问或修改过的保留
+     * 标签留在标签表中，移回时随联系人恢复
+     * @return 实际移动的编号
+     */
+    List<Integer> archiveContacts(List<Integer> ids, long idleBeforeMillis, boolean blacklisted) throws SQLException {
+        String copySql = "INSERT INTO contacts_archive(" + ARCHIVE_COLUMNS + ", last_accessed_at) SELECT "
+                + ARCHIVE_COLUMNS + ", last_accessed_at FROM contacts WHERE id = ? AND " + LIVE
+                + " AND " + archivePolicy(blacklisted);
+        List<Integer> moved = new ArrayList<>();
+        List<List<Integer>> groups = router.groupByShard(ids);
+        for (int s = 0; s < groups.size(); s++) {
+            List<Integer> indexes = groups.get(s);
+            if (indexes.isEmpty()) {
+                continue;
+            }
+            ShardRouter.Shard shard = router.shard(s);
+            try (Connection conn = writeConnection(shard)) {
+                conn.setAutoCommit(false);
+                try (PreparedStatement copy = conn.prepareStatement(copySql);
+                     PreparedStatement delete = conn.prepareStatement("DELETE FROM contacts WHERE id = ?")) {
+                    for (int index : indexes) {
+                        copy.setInt(1, ids.get(index));
+                        copy.setString(2, tenant);
+                        copy.setTimestamp(3, new Timestamp(idleBeforeMillis));
+                        copy.addBatch();
+                    }
+                    int[] counts = new int[ids.size()];
+                    int[] copied = copy.executeBatch();
+                    for (int i = 0; i < indexes.size(); i++) {
+                        counts[indexes.get(i)] = copied[i];
+                    }
+                    List<Integer> shardMoved = changedIds(ids, indexes, counts);
+                    for (int id : shardMoved) {
+                        delete.setInt(1, id);
+                        delete.addBatch();
+                    }
+                    if (!shardMoved.isEmpty()) {
+                        delete.executeBatch();
+                    }
+                    recordChanges(conn, shardMoved);
+                    conn.commit();
+                    router.markWritten(shard);
+                    moved.addAll(shardMoved);
+                } catch (SQLException e) {
+                    conn.rollback();
+                    throw e;
+                }
+            }
+        }
+        return moved;
+    }
+
+    /**
+     * 是否在本租户的归档中，只读主键，用于决定是否需要开启移回的事务
+     */
+    boolean isArchived(int id) throws SQLException {
+        try (Connection conn = readConnection(router.shardOf(id));
+             PreparedStatement pstmt = conn.prepareStatement(
+                     "SELECT 1 FROM contacts_archive WHERE id = ? AND tenant_id = ?")) {
+            pstmt.setInt(1, id);
+            pstmt.setString(2, tenant);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    /**
+     * 把归档的联系人移回联系人表，并把最近访问时间设为现在
+     * 原编号已被其他联系人占用时（自增计数被重置后分配了重复的编号），改用新编号移回；
+     * 标签按编号存放，无法区分两者，留给占用该编号的联系人
+     * @return 移回后的编号（通常与原编号相同），0 表示不在归档中
+     */
+    int unarchiveContact(int id) throws SQLException {
+        ShardRouter.Shard shard = router.shardOf(id);
+        try (Connection conn = writeConnection(shard)) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement copy = conn.prepareStatement("INSERT INTO contacts(" + ARCHIVE_COLUMNS + ") SELECT "
+                    + ARCHIVE_COLUMNS + " FROM contacts_archive WHERE id = ? AND tenant_id = ?");
+                 PreparedStatement delete = conn.prepareStatement("DELETE FROM contacts_archive WHERE id = ?")) {
+                copy.setInt(1, id);
+                copy.setString(2, tenant);
+                int restoredId = id;
+                try {
+                    if (copy.executeUpdate() == 0) {
+                        conn.rollback();
+                        return 0;
+                    }
+                } catch (SQLException e) {
+                    if (e.getSQLState() == null || !e.getSQLState().startsWith("23")) {
+                        throw e;
+                    }
+                    restoredId = unarchiveWithNewId(conn, shard, id);
+                    System.err.println("归档中联系人的编号 " + id + " 已被其他联系人占用，已改为编号 " + restoredId
+                            + " 移回（原有标签留在编号 " + id + " 上）");
+                }
+                delete.setInt(1, id);
+                delete.executeUpdate();
+                recordChanges(conn, Collections.singletonList(restoredId));
+                conn.commit();
+                router.markWritten(shard);
+                return restoredId;
+            } catch (SQLException e) {
+                conn.rollback();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * 以新编号把归档的联系人插入联系人表（与归档在同一分片，同一事务）
+     * @return 新编号
+     */
+    private int unarchiveWithNewId(Connection conn, ShardRouter.Shard shard, int id) throws SQLException {
+        String columns = "name, phone, email, address, is_blacklisted, tenant_id";
+        if (!router.isSharded()) {
+            try (PreparedStatement pstmt = conn.prepareStatement("INSERT INTO contacts(" + columns + ") SELECT "
+                    + columns + " FROM contacts_archive WHERE id = ?", Statement.RETURN_GENERATED_KEYS)) {
+                pstmt.setInt(1, id);
+                pstmt.executeUpdate();
+                try (ResultSet rs = pstmt.getGeneratedKeys()) {
+                    if (rs.next()) {
+                        return rs.getInt(1);
+                    }
+                }
+            }
+            throw new SQLException("移回归档联系人 " + id + " 时未取得新编号");
+        }
+        // 编号决定分片，取落在同一分片的下一个全局编号（跳过的编号不再使用）
+        router.resetIdAllocator();
+        int newId;
+        do {
+            newId = router.allocateId();
+        } while (router.shardOf(newId) != shard);
+        try (PreparedStatement pstmt = conn.prepareStatement("INSERT INTO contacts(id, " + columns + ") SELECT ?, "
+                + columns + " FROM contacts_archive WHERE id = ?")) {
+            pstmt.setInt(1, newId);
+            pstmt.setInt(2, id);
+            pstmt.executeUpdate();
+        }
+        return newId;
+    }
+
+    /**
+     * 本租户归档中的全部编号
+     */
+    ContactBitmap archivedIds() throws SQLException {
+        ContactBitmap ids = new ContactBitmap();
+        for (ShardRouter.Shard shard : router.getShards()) {
+            try (Connection conn = readConnection(shard);
+                 PreparedStatement pstmt = conn.prepareStatement("SELECT id FROM contacts_archive WHERE tenant_id = ?")) {
+                pstmt.setString(1, tenant);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        ids.add(rs.getInt(1));
+                    }
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * 在归档中按姓名或电话模糊查询（不移回），结果按姓名排序
+     */
+    List<Contact> searchArchive(String keyword) throws SQLException {
+        String sql = "SELECT id, name, phone, email, address, is_blacklisted FROM contacts_archive "
+                + "WHERE tenant_id = ? AND (name LIKE ? OR phone LIKE ?)";
+        List<List<Contact>> perShard = router.scatter(shard -> {
+            List<Contact> results = new ArrayList<>();
+            try (Connection conn = readConnection(shard);
+                 PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setString(1, tenant);
+                pstmt.setString(2, "%" + keyword + "%");
+                pstmt.setString(3, "%" + keyword + "%");
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        results.add(mapContact(rs));
+                    }
+                }
+                attachTags(conn, results, "contacts_archive");
+            }
+            results.sort(BY_NAME);
+            return results;
+        });
+        return ShardRouter.mergeSorted(perShard, BY_NAME);
+    }
+
+    /**
+     * 各分片变更通知表当前的最大序号，作为轮询的起点
+     */
+    long[] changeHighWater() throws SQLException {
+        return changeBounds("SELECT COALESCE(MAX(seq), 0) FROM contact_changes");
+    }
+
+    private long[] changeBounds(String sql) throws SQLException {
+        List<ShardRouter.Shard> shards = router.getShards();
+        long[] bounds = new long[shards.size()];
+        for (ShardRouter.Shard shard : shards) {
+            try (Connection conn = writeConnection(shard);
+                 Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery(sql)) {
+                bounds[shard.index] = rs.next() ? rs.getLong(1) : 0;
+            }
+        }
+        return bounds;
+    }
+
+    /**
+     * 读取各分片序号大于 highWater 的变更通知（所有租户，每个分片最多 limit 条，读主库），并推进 highWater；
+     * 同时重读 gaps 中尚未出现的序号。序号在插入时分配、提交后才可见，先分配的事务可能后提交（或回滚），
+     * 跳过的序号记入 gaps，出现后再处理
+     * @param highWater 各分片已读取到的序号，原地更新
+     * @param gaps 各分片跳过的序号，原地更新
+     * @param local 判断实例标识是否属于本进程中仍在使用的服务
+     * @return 按租户分组的其他实例写入的联系人编号（去重、升序）；本进程自己的写入只推进序号
+     */
+    Map<String, Set<Integer>> pollChanges(long[] highWater, ContactChangeFeed.Gaps gaps, Predicate<String> local,
+                                          int limit) throws SQLException {
+        String columns = "SELECT seq, contact_id, origin, tenant_id FROM contact_changes WHERE ";
+        Map<String, Set<Integer>> ids = new TreeMap<>();
+        long now = System.currentTimeMillis();
+        for (ShardRouter.Shard shard : router.getShards()) {
+            try (Connection conn = writeConnection(shard)) {
+                List<long[]> pending = gaps.ranges(shard.index);
+                if (!pending.isEmpty()) {
+                    StringBuilder sql = new StringBuilder(columns);
+                    for (int i = 0; i < pending.size(); i++) {
+                        sql.append(i > 0 ? " OR " : "").append("seq BETWEEN ? AND ?");
+                    }
+                    try (PreparedStatement pstmt = conn.prepareStatement(sql.toString())) {
+                        for (int i = 0; i < pending.size(); i++) {
+                            pstmt.setLong(2 * i + 1, pending.get(i)[0]);
+                            pstmt.setLong(2 * i + 2, pending.get(i)[1]);
+                        }
+                        try (ResultSet rs = pstmt.executeQuery()) {
+                            while (rs.next()) {
+                                if (gaps.remove(shard.index, rs.getLong(1))) {
+                                    collectChange(ids, rs, local);
+                                }
+                            }
+                        }
+                    }
+                }
+                try (PreparedStatement pstmt = conn.prepareStatement(columns + "seq > ? ORDER BY seq LIMIT ?")) {
+                    pstmt.setLong(1, highWater[shard.index]);
+                    pstmt.setInt(2, limit);
+                    try (ResultSet rs = pstmt.executeQuery()) {
+                        while (rs.next()) {
+                            long seq = rs.getLong(1);
+                            if (seq > highWater[shard.index] + 1) {
+                                gaps.add(shard.index, highWater[shard.index] + 1, seq - 1, now);
+                            }
+                            highWater[shard.index] = seq;
+                            collectChange(ids, rs, local);
+                        }
+                    }
+                }
+            }
+        }
+        return ids;
+    }
+
+    private static void collectChange(Map<String, Set<Integer>> ids, ResultSet rs, Predicate<String> local)
+            throws SQLException {
+        if (!local.test(rs.getString(3))) {
+            ids.computeIfAbsent(rs.getString(4), k -> new TreeSet<>()).add(rs.getInt(2));
+        }
+    }
+
+    /**
+     * 删除早于指定时间的变更通知
+     * @return 删除的条数
+     */
+    int purgeChanges(long olderThanMillis) throws SQLException {
+        int purged = 0;
+        for (ShardRouter.Shard shard : router.getShards()) {
+            try (Connection conn = writeConnection(shard);
+                 PreparedStatement pstmt = conn.prepareStatement("DELETE FROM contact_changes WHERE changed_at < ?")) {
+                pstmt.setTimestamp(1, new Timestamp(olderThanMillis));
+                purged += pstmt.executeUpdate();
+            }
         }
-        return results;
+        return purged;
     }
 
     // 在ContactDao中不再需要saveContacts和loadContacts方法，因为数据直接操作数据库
-}
\ No newline at end of file
+}
@@ -0,0 +1,227 @@
+package system;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.SplittableRandom;
+
+/**
+ * ContactDataGenerator 类：生成可复现的模拟联系人数据，用于压测与大数据量场景的复现
+ * 第 i 个联系人只由种子和 i 决定，可以分段或并行生成而结果不变。
+ * 生成的数据满足 ContactService 的校验：电话为 11 位手机号，邮箱符合格式且不使用 QQ 邮箱。
+ */
+class ContactDataGenerator {
+
+    // 常见姓氏（大致按人口从多到少排列）及其拼音，用于生成邮箱
+    private static final String[][] SURNAMES = {
+        {"王", "wang"}, {"李", "li"}, {"张", "zhang"}, {"刘", "liu"}, {"陈", "chen"}, {"杨", "yang"},
+        {"黄", "huang"}, {"赵", "zhao"}, {"吴", "wu"}, {"周", "zhou"}, {"徐", "xu"}, {"孙", "sun"},
+        {"马", "ma"}, {"朱", "zhu"}, {"胡", "hu"}, {"郭", "guo"}, {"何", "he"}, {"高", "gao"},
+        {"林", "lin"}, {"罗", "luo"}, {"郑", "zheng"}, {"梁", "liang"}, {"谢", "xie"}, {"宋", "song"},
+        {"唐", "tang"}, {"许", "xu"}, {"韩", "han"}, {"冯", "feng"}, {"邓", "deng"}, {"曹", "cao"},
+        {"彭", "peng"}, {"曾", "zeng"}, {"肖", "xiao"}, {"田", "tian"}, {"董", "dong"}, {"袁", "yuan"},
+        {"潘", "pan"}, {"于", "yu"}, {"蒋", "jiang"}, {"蔡", "cai"}, {"余", "yu"}, {"杜", "du"},
+        {"叶", "ye"}, {"程", "cheng"}, {"苏", "su"}, {"魏", "wei"}, {"吕", "lv"}, {"丁", "ding"},
+        {"任", "ren"}, {"沈", "shen"}, {"欧阳", "ouyang"}, {"司马", "sima"}
+    };
+
+    private static final String[][] GIVEN_CHARS = {
+        {"伟", "wei"}, {"芳", "fang"}, {"娜", "na"}, {"敏", "min"}, {"静", "jing"}, {"丽", "li"},
+        {"强", "qiang"}, {"磊", "lei"}, {"军", "jun"}, {"洋", "yang"}, {"勇", "yong"}, {"艳", "yan"},
+        {"杰", "jie"}, {"娟", "juan"}, {"涛", "tao"}, {"明", "ming"}, {"超", "chao"}, {"秀", "xiu"},
+        {"霞", "xia"}, {"平", "ping"}, {"刚", "gang"}, {"桂", "gui"}, {"英", "ying"}, {"华", "hua"},
+        {"玉", "yu"}, {"萍", "ping"}, {"红", "hong"}, {"建", "jian"}, {"文", "wen"}, {"辉", "hui"},
+        {"鹏", "peng"}, {"宇", "yu"}, {"浩", "hao"}, {"欣", "xin"}, {"婷", "ting"}, {"雪", "xue"},
+        {"琳", "lin"}, {"晨", "chen"}, {"博", "bo"}, {"子", "zi"}, {"怡", "yi"}, {"佳", "jia"},
+        {"思", "si"}, {"嘉", "jia"}, {"俊", "jun"}, {"天", "tian"}, {"梓", "zi"}, {"涵", "han"},
+        {"诗", "shi"}, {"雨", "yu"}
+    };
+
+    private static final String[] MOBILE_PREFIXES = {
+        "130", "131", "132", "133", "134", "135", "136", "137", "138", "139",
+        "150", "151", "152", "153", "155", "156", "157", "158", "159",
+        "166", "170", "176", "177", "178",
+        "180", "181", "182", "183", "184", "185", "186", "187", "188", "189", "198", "199"
+    };
+
+    // 不包含 QQ 邮箱，ContactService 不接受只有 QQ 邮箱的联系人
+    private static final String[] EMAIL_DOMAINS = {
+        "163.com", "126.com", "gmail.com", "outlook.com", "sina.com", "foxmail.com",
+        "hotmail.com", "yeah.net", "aliyun.com", "example.com.cn"
+    };
+
+    // 省（直辖市为空）、城市及其下辖区县，格式与 ContactFacets.parseCity 的解析规则一致
+    private static final String[][][] REGIONS = {
+        {{"", "北京市"}, {"海淀区", "朝阳区", "东城区", "西城区", "丰台区"}},
+        {{"", "上海市"}, {"浦东新区", "徐汇区", "静安区", "黄浦区"}},
+        {{"", "天津市"}, {"和平区", "河西区", "南开区"}},
+        {{"", "重庆市"}, {"渝中区", "江北区", "沙坪坝区"}},
+        {{"广东省", "广州市"}, {"天河区", "越秀区", "海珠区", "番禺区"}},
+        {{"广东省", "深圳市"}, {"南山区", "福田区", "宝安区", "龙岗区"}},
+        {{"浙江省", "杭州市"}, {"西湖区", "滨江区", "上城区"}},
+        {{"浙江省", "宁波市"}, {"海曙区", "鄞州区"}},
+        {{"江苏省", "南京市"}, {"鼓楼区", "玄武区", "秦淮区"}},
+        {{"江苏省", "苏州市"}, {"姑苏区", "吴中区"}},
+        {{"四川省", "成都市"}, {"武侯区", "锦江区", "高新区"}},
+        {{"湖北省", "武汉市"}, {"江汉区", "洪山区", "武昌区"}},
+        {{"陕西省", "西安市"}, {"雁塔区", "碑林区"}},
+        {{"吉林省", "延边朝鲜族自治州"}, {"延吉市", "珲春市"}}
+    };
+
+    private static final String[] STREETS = {
+        "人民路", "解放路", "中山路", "建设路", "和平路", "新华路", "长江路", "科技路", "文化路", "东风路"
+    };
+
+    private final long seed;
+    private final double blacklistRatio;
+    private final double emailRatio;
+    private final double addressRatio;
+
+    ContactDataGenerator(long seed) {
+        this(seed, 0.05, 0.8, 0.9);
+    }
+
+    /**
+     * @param seed 随机种子，相同种子生成相同数据
+     * @param blacklistRatio 黑名单联系人的比例
+     * @param emailRatio 有邮箱的联系人比例
+     * @param addressRatio 有地址的联系人比例
+     */
+    ContactDataGenerator(long seed, double blacklistRatio, double emailRatio, double addressRatio) {
+        this.seed = seed;
+        this.blacklistRatio = blacklistRatio;
+        this.emailRatio = emailRatio;
+        this.addressRatio = addressRatio;
+    }
+
+    /**
+     * 生成第 index 个联系人（编号为 0，由写入数据库时分配）
+     */
+    Contact generate(long index) {
+        SplittableRandom random = new SplittableRandom(seed * 0x9E3779B97F4A7C15L + index);
+
+        // 姓氏与名字的选取偏向列表前部，使常见姓名出现得更多
+        String[] surname = SURNAMES[skewed(random, SURNAMES.length)];
+        int givenLength = random.nextInt(10) < 7 ? 2 : 1;
+        StringBuilder name = new StringBuilder(surname[0]);
+        StringBuilder pinyin = new StringBuilder(surname[1]);
+        for (int i = 0; i < givenLength; i++) {
+            String[] given = GIVEN_CHARS[skewed(random, GIVEN_CHARS.length)];
+            name.append(given[0]);
+            pinyin.append(given[1]);
+        }
+
+        StringBuilder phone = new StringBuilder(11);
+        phone.append(MOBILE_PREFIXES[random.nextInt(MOBILE_PREFIXES.length)]);
+        for (int i = 0; i < 8; i++) {
+            phone.append((char) ('0' + random.nextInt(10)));
+        }
+
+        String email = null;
+        if (random.nextDouble() < emailRatio) {
+            StringBuilder local = new StringBuilder(pinyin);
+            int style = random.nextInt(3);
+            if (style == 1) {
+                local.append(random.nextInt(1960, 2010));
+            } else if (style == 2) {
+                local.append('.').append(index % 100_000);
+            }
+            email = local + "@" + EMAIL_DOMAINS[skewed(random, EMAIL_DOMAINS.length)];
+        }
+
+        String address = null;
+        if (random.nextDouble() < addressRatio) {
+            String[][] region = REGIONS[skewed(random, REGIONS.length)];
+            String[] districts = region[1];
+            address = region[0][0] + region[0][1] + districts[random.nextInt(districts.length)]
+                    + STREETS[random.nextInt(STREETS.length)] + (1 + random.nextInt(999)) + "号";
+        }
+
+        boolean blacklisted = random.nextDouble() < blacklistRatio;
+        return new Contact(0, name.toString(), phone.toString(), email, address, blacklisted);
+    }
+
+    /**
+     * 偏向小下标的随机下标：约一半落在前四分之一
+     */
+    private static int skewed(SplittableRandom random, int size) {
+        double u = random.nextDouble();
+        return (int) (u * u * size);
+    }
+
+    /**
+     * 以批处理 CSV 格式（add,姓名,电话,邮箱,地址,是否黑名单）写出 count 个联系人
+     */
+    void writeCsv(long count, Writer out) throws IOException {
+        for (long i = 0; i < count; i++) {
+            Contact contact = generate(i);
+            out.write("add,");
+            out.write(contact.getName());
+            out.write(',');
+            out.write(contact.getPhone());
+            out.write(',');
+            out.write(contact.getEmail() == null ? "" : contact.getEmail());
+            out.write(',');
+            out.write(contact.getAddress() == null ? "" : contact.getAddress());
+            out.write(',');
+            out.write(contact.isBlacklisted() ? "true" : "false");
+            out.write('\n');
+        }
+    }
+
+    /**
+     * 命令行入口，参数：--generate 数量 [--seed N] [--blacklist-ratio 比例] [--out 文件]
+     * 输出可直接交给 --batch 导入
+     * @return 进程退出码
+     */
+    static int run(String[] args) {
+        long count = -1;
+        long seed = 42;
+        double blacklistRatio = 0.05;
+        String output = null;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (i + 1 >= args.length) {
+                    System.err.println("参数缺少取值: " + arg);
+                    return 2;
+                }
+                switch (arg) {
+                    case "--generate":
+                        count = Long.parseLong(args[++i]);
+                        break;
+                    case "--seed":
+                        seed = Long.parseLong(args[++i]);
+                        break;
+                    case "--blacklist-ratio":
+                        blacklistRatio = Double.parseDouble(args[++i]);
+                        break;
+                    case "--out":
+                        output = args[++i];
+                        break;
+                    default:
+                        System.err.println("未知参数: " + arg);
+                        return 2;
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("无效的数值参数: " + e.getMessage());
+            return 2;
+        }
+        if (count < 0) {
+            System.err.println("用法: --generate 数量 [--seed N] [--blacklist-ratio 比例] [--out 文件]");
+            return 2;
+        }
+        ContactDataGenerator generator = new ContactDataGenerator(seed, blacklistRatio, 0.8, 0.9);
+        long start = System.nanoTime();
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                output == null ? new FileOutputStream(FileDescriptor.out) : new FileOutputStream(output),
+                StandardCharsets.UTF_8), 1 << 16)) {
+            generator.writeCsv(count, out);
+        } catch (IOException e) {
+            System.err.println("写出模拟数据失败: " + e.getMessage());
+            return 2;
+        }
+        System.err.println("已生成 " + count + " 个联系人，用时 " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        return 0;
+    }
+}
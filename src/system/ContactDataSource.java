@@ -0,0 +1,34 @@
+package system;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+/**
+ * ContactDataSource 类：一个数据库实例的连接参数（主库或只读副本）
+ */
+class ContactDataSource {
+
+    private final String url;
+    private final String user;
+    private final String password;
+
+    public ContactDataSource(String url, String user, String password) {
+        this.url = url;
+        this.user = user;
+        this.password = password;
+    }
+
+    public Connection getConnection() throws SQLException {
+        return DriverManager.getConnection(url, user, password);
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    @Override
+    public String toString() {
+        return url;
+    }
+}
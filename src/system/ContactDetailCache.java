@@ -0,0 +1,74 @@
+package system;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * ContactDetailCache 类：内存副本未加载时，按编号读取的完整联系人的小型缓存
+ * 列表只显示摘要，选中某行时读取详情，同时顺带读取列表中相邻的若干行，之后在相邻行间移动时直接命中。
+ * 每项记录读取时的写入代数，代数变化（任何写入）后视为失效；按最近最少使用淘汰。
+ */
+class ContactDetailCache {
+
+    private final int capacity;
+    private final LinkedHashMap<Integer, Cached> entries;
+
+    private static final class Cached {
+        final long generation;
+        final Contact contact;
+
+        Cached(long generation, Contact contact) {
+            this.generation = generation;
+            this.contact = contact;
+        }
+    }
+
+    ContactDetailCache() {
+        this(Integer.getInteger("contact.detail.cacheSize", 512));
+    }
+
+    ContactDetailCache(int capacity) {
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<Integer, Cached>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Cached> eldest) {
+                return size() > ContactDetailCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * @return 缓存的联系人副本，未命中或已失效时返回 null
+     */
+    synchronized Contact get(int id, long generation) {
+        Cached entry = entries.get(id);
+        if (entry == null || entry.generation != generation) {
+            return null;
+        }
+        return new Contact(entry.contact);
+    }
+
+    /**
+     * 是否有未失效的缓存项，不复制联系人，用于决定预读哪些相邻行
+     */
+    synchronized boolean contains(int id, long generation) {
+        Cached entry = entries.get(id);
+        return entry != null && entry.generation == generation;
+    }
+
+    /**
+     * @param generation 开始读取前的写入代数
+     */
+    synchronized void putAll(Map<Integer, Contact> contacts, long generation) {
+        if (capacity <= 0) {
+            return;
+        }
+        for (Contact contact : contacts.values()) {
+            entries.put(contact.getId(), new Cached(generation, new Contact(contact)));
+        }
+    }
+
+    synchronized void clear() {
+        entries.clear();
+    }
+}
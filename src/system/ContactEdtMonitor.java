@@ -0,0 +1,255 @@
+package system;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+
+/**
+ * ContactEdtMonitor 类：界面线程（EDT）响应监控
+ * 安装自定义 EventQueue 记录每个事件的处理耗时；后台看门狗线程定期向队列投递探测任务，
+ * 以探测任务从投递到执行的时间作为排队延迟，同时检查当前事件是否已处理过久，
+ * 超过阈值时采样界面线程的调用栈输出到 System.err（每次阻塞只采样一次，结束时再输出总耗时）。
+ * 另外记录搜索从提交到结果绘制完成的时间。统计在窗口的调试浮层上显示（Ctrl+Shift+D 切换），
+ * 也可按配置定期输出到控制台。事件处理中只记下事件本身，描述在采样到阻塞时才生成。
+ *
+ * 配置（系统属性）：
+ *   contact.edt.monitor        是否启用，默认 true
+ *   contact.edt.stallMs        视为阻塞的事件处理时间，默认 200
+ *   contact.edt.probeMs        探测间隔，默认 100
+ *   contact.edt.reportSeconds  统计输出到控制台的间隔（秒），0 表示不输出，默认 0
+ *   contact.edt.overlay        启动时是否显示调试浮层，默认 false
+ */
+class ContactEdtMonitor {
+
+    private static final long STALL_NANOS = Long.getLong("contact.edt.stallMs", 200) * 1_000_000;
+    private static final long PROBE_MILLIS = Math.max(10, Long.getLong("contact.edt.probeMs", 100));
+    private static final long REPORT_MILLIS = Long.getLong("contact.edt.reportSeconds", 0) * 1000;
+    private static final int STACK_DEPTH = 30;
+
+    private static volatile ContactEdtMonitor installed;
+
+    // 事件处理耗时、排队延迟、搜索到首批候选绘制、搜索到完整结果绘制，均为纳秒；访问时锁住本对象
+    private final ContactLoadRunner.LatencyHistogram dispatch = new ContactLoadRunner.LatencyHistogram();
+    private final ContactLoadRunner.LatencyHistogram queueLatency = new ContactLoadRunner.LatencyHistogram();
+    private final ContactLoadRunner.LatencyHistogram searchFirstRender = new ContactLoadRunner.LatencyHistogram();
+    private final ContactLoadRunner.LatencyHistogram searchRender = new ContactLoadRunner.LatencyHistogram();
+    private long stalls;
+
+    // 当前正在处理的事件（嵌套处理时为最内层）：开始时间（0 表示空闲）、序号与事件，由看门狗读取
+    private volatile Thread edt;
+    private volatile long dispatchStart;
+    private volatile long dispatchSeq;
+    private volatile AWTEvent dispatchEvent;
+    private long sampledSeq = -1;
+    private volatile long probePosted;
+
+    private ContactEdtMonitor() {
+    }
+
+    /**
+     * 按配置安装监控，重复调用返回同一个实例；未启用时返回 null
+     */
+    static synchronized ContactEdtMonitor install() {
+        if (installed != null || !Boolean.parseBoolean(System.getProperty("contact.edt.monitor", "true"))) {
+            return installed;
+        }
+        ContactEdtMonitor monitor = new ContactEdtMonitor();
+        Toolkit.getDefaultToolkit().getSystemEventQueue().push(monitor.new MonitoredQueue());
+        Thread watchdog = new Thread(monitor::watch, "contact-edt-watchdog");
+        watchdog.setDaemon(true);
+        watchdog.start();
+        installed = monitor;
+        return monitor;
+    }
+
+    /**
+     * 已安装的监控，未安装时为 null
+     */
+    static ContactEdtMonitor get() {
+        return installed;
+    }
+
+    /**
+     * 记录事件处理耗时的事件队列；模态对话框会在事件处理中嵌套处理其他事件，因此保存并恢复外层状态
+     */
+    private final class MonitoredQueue extends EventQueue {
+        @Override
+        protected void dispatchEvent(AWTEvent event) {
+            edt = Thread.currentThread();
+            long outerStart = dispatchStart;
+            AWTEvent outerEvent = dispatchEvent;
+            long start = System.nanoTime();
+            dispatchEvent = event;
+            dispatchSeq++;
+            dispatchStart = start;
+            try {
+                super.dispatchEvent(event);
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                long seq = dispatchSeq;
+                dispatchStart = outerStart;
+                dispatchEvent = outerEvent;
+                // 嵌套处理后外层事件已不再阻塞界面，重新计时
+                if (outerStart != 0) {
+                    dispatchStart = System.nanoTime();
+                    dispatchSeq++;
+                }
+                finished(seq, elapsed);
+            }
+        }
+    }
+
+    private static String describe(AWTEvent event) {
+        String source = event.getSource() == null ? "" : event.getSource().getClass().getSimpleName();
+        return event.getClass().getSimpleName() + (source.isEmpty() ? "" : " @ " + source);
+    }
+
+    private void finished(long seq, long elapsed) {
+        boolean stalled;
+        synchronized (this) {
+            dispatch.record(elapsed);
+            stalled = seq == sampledSeq;
+        }
+        if (stalled) {
+            System.err.println("界面线程阻塞结束，共 " + elapsed / 1_000_000 + " ms");
+        }
+    }
+
+    /**
+     * 看门狗：投递探测任务，检查当前事件是否超时，定期输出统计
+     */
+    private void watch() {
+        long nextReport = System.currentTimeMillis() + REPORT_MILLIS;
+        long reportedCount = 0;
+        while (true) {
+            try {
+                Thread.sleep(PROBE_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+            if (probePosted == 0) {
+                probePosted = System.nanoTime();
+                EventQueue.invokeLater(() -> {
+                    long latency = System.nanoTime() - probePosted;
+                    synchronized (this) {
+                        queueLatency.record(latency);
+                    }
+                    probePosted = 0;
+                });
+            }
+            checkStall();
+            if (REPORT_MILLIS > 0 && System.currentTimeMillis() >= nextReport) {
+                nextReport = System.currentTimeMillis() + REPORT_MILLIS;
+                long count;
+                synchronized (this) {
+                    count = dispatch.count();
+                }
+                if (count != reportedCount) {
+                    reportedCount = count;
+                    System.out.println(summary());
+                }
+            }
+        }
+    }
+
+    private void checkStall() {
+        long start = dispatchStart;
+        long seq = dispatchSeq;
+        Thread thread = edt;
+        if (start == 0 || thread == null || System.nanoTime() - start < STALL_NANOS) {
+            return;
+        }
+        synchronized (this) {
+            if (seq == sampledSeq) {
+                return;
+            }
+            sampledSeq = seq;
+            stalls++;
+        }
+        StackTraceElement[] stack = thread.getStackTrace();
+        AWTEvent event = dispatchEvent;
+        // 采样期间事件可能已处理完，此时栈已无意义
+        if (dispatchSeq != seq || event == null) {
+            return;
+        }
+        StringBuilder sb = new StringBuilder();
+        sb.append("界面线程阻塞超过 ").append((System.nanoTime() - start) / 1_000_000).append(" ms，事件: ")
+          .append(describe(event)).append('\n');
+        for (int i = 0; i < Math.min(stack.length, STACK_DEPTH); i++) {
+            sb.append("\tat ").append(stack[i]).append('\n');
+        }
+        if (stack.length > STACK_DEPTH) {
+            sb.append("\t... 其余 ").append(stack.length - STACK_DEPTH).append(" 层\n");
+        }
+        System.err.print(sb);
+    }
+
+    /**
+     * 记录一次搜索从提交到结果绘制完成的时间
+     * @param first true 表示首批候选，false 表示完整结果
+     */
+    synchronized void recordSearchRender(long nanos, boolean first) {
+        (first ? searchFirstRender : searchRender).record(nanos);
+    }
+
+    /**
+     * 统计摘要，供控制台输出与调试浮层显示
+     */
+    synchronized String summary() {
+        return String.format("界面响应: 事件 %d 个，处理耗时 p50 %.1f / p99 %.1f / 最长 %.0f ms，阻塞 %d 次；"
+                        + "排队延迟 p99 %.1f / 最长 %.0f ms；搜索到候选 p50 %.0f ms，搜索到结果 p50 %.0f / p99 %.0f ms（%d 次）",
+                dispatch.count(), ms(dispatch.percentile(0.5)), ms(dispatch.percentile(0.99)), ms(dispatch.max()), stalls,
+                ms(queueLatency.percentile(0.99)), ms(queueLatency.max()), ms(searchFirstRender.percentile(0.5)),
+                ms(searchRender.percentile(0.5)), ms(searchRender.percentile(0.99)), searchRender.count());
+    }
+
+    private static double ms(long nanos) {
+        return nanos / 1e6;
+    }
+
+    /**
+     * 在窗口上加调试浮层（使用玻璃面板，不拦截鼠标），Ctrl+Shift+D 切换显示，只在显示时每秒刷新
+     */
+    void attachOverlay(JFrame frame) {
+        JComponent overlay = new JComponent() {
+            @Override
+            protected void paintComponent(Graphics g) {
+                String[] lines = summary().split("；");
+                FontMetrics metrics = g.getFontMetrics();
+                int width = 0;
+                for (String line : lines) {
+                    width = Math.max(width, metrics.stringWidth(line));
+                }
+                int lineHeight = metrics.getHeight();
+                int x = getWidth() - width - 16;
+                g.setColor(new Color(0, 0, 0, 170));
+                g.fillRoundRect(x - 8, 8, width + 16, lineHeight * lines.length + 8, 8, 8);
+                g.setColor(Color.WHITE);
+                for (int i = 0; i < lines.length; i++) {
+                    g.drawString(lines[i], x, 12 + metrics.getAscent() + i * lineHeight);
+                }
+            }
+        };
+        frame.setGlassPane(overlay);
+        Timer refresh = new Timer(1000, e -> overlay.repaint());
+        if (Boolean.getBoolean("contact.edt.overlay")) {
+            overlay.setVisible(true);
+            refresh.start();
+        }
+        JRootPane root = frame.getRootPane();
+        KeyStroke toggle = KeyStroke.getKeyStroke(KeyEvent.VK_D, InputEvent.CTRL_DOWN_MASK | InputEvent.SHIFT_DOWN_MASK);
+        root.getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW).put(toggle, "toggleEdtOverlay");
+        root.getActionMap().put("toggleEdtOverlay", new AbstractAction() {
+            @Override
+            public void actionPerformed(java.awt.event.ActionEvent e) {
+                overlay.setVisible(!overlay.isVisible());
+                if (overlay.isVisible()) {
+                    refresh.start();
+                } else {
+                    refresh.stop();
+                }
+            }
+        });
+    }
+}
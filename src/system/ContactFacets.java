@@ -0,0 +1,142 @@
+package system;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ContactFacets 类：按城市（从地址解析）、邮箱域名、黑名单状态统计联系人数量
+ * 计数使用 LongAdder（分段计数器），随 ContactService 的每次增删改增量维护，查询只遍历分面值
+ */
+class ContactFacets implements ContactChangeListener {
+
+    static final String UNKNOWN = "未知";
+
+    /**
+     * 一次全量重建得到的计数，重建时整体替换
+     */
+    private static final class Counts {
+        final ConcurrentHashMap<String, LongAdder> byCity = new ConcurrentHashMap<>();
+        final ConcurrentHashMap<String, LongAdder> byEmailDomain = new ConcurrentHashMap<>();
+        final LongAdder blacklisted = new LongAdder();
+        final LongAdder notBlacklisted = new LongAdder();
+        final LongAdder total = new LongAdder();
+    }
+
+    private volatile Counts counts = new Counts();
+
+    @Override
+    public void contactChanged(Contact before, Contact after) {
+        Counts current = counts;
+        if (before != null) {
+            apply(current, before, -1);
+        }
+        if (after != null) {
+            apply(current, after, 1);
+        }
+    }
+
+    @Override
+    public void contactsReloaded(Collection<Contact> contacts) {
+        Counts rebuilt = new Counts();
+        for (Contact contact : contacts) {
+            apply(rebuilt, contact, 1);
+        }
+        counts = rebuilt;
+    }
+
+    private static void apply(Counts counts, Contact contact, int delta) {
+        counts.byCity.computeIfAbsent(parseCity(contact.getAddress()), k -> new LongAdder()).add(delta);
+        counts.byEmailDomain.computeIfAbsent(emailDomain(contact.getEmail()), k -> new LongAdder()).add(delta);
+        (contact.isBlacklisted() ? counts.blacklisted : counts.notBlacklisted).add(delta);
+        counts.total.add(delta);
+    }
+
+    /**
+     * 各城市的联系人数量，按数量从多到少排列
+     */
+    public Map<String, Long> countByCity() {
+        return snapshot(counts.byCity);
+    }
+
+    /**
+     * 各邮箱域名的联系人数量，按数量从多到少排列；无邮箱的归为"未知"
+     */
+    public Map<String, Long> countByEmailDomain() {
+        return snapshot(counts.byEmailDomain);
+    }
+
+    /**
+     * 黑名单与非黑名单的联系人数量
+     */
+    public Map<Boolean, Long> countByBlacklist() {
+        Counts current = counts;
+        Map<Boolean, Long> result = new LinkedHashMap<>();
+        result.put(Boolean.TRUE, current.blacklisted.sum());
+        result.put(Boolean.FALSE, current.notBlacklisted.sum());
+        return result;
+    }
+
+    public long total() {
+        return counts.total.sum();
+    }
+
+    private static Map<String, Long> snapshot(ConcurrentHashMap<String, LongAdder> facet) {
+        List<Map.Entry<String, Long>> entries = new ArrayList<>(facet.size());
+        for (Map.Entry<String, LongAdder> entry : facet.entrySet()) {
+            long count = entry.getValue().sum();
+            if (count > 0) {
+                entries.add(new AbstractMap.SimpleEntry<>(entry.getKey(), count));
+            }
+        }
+        entries.sort((a, b) -> Long.compare(b.getValue(), a.getValue()));
+        Map<String, Long> result = new LinkedHashMap<>();
+        for (Map.Entry<String, Long> entry : entries) {
+            result.put(entry.getKey(), entry.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * 从地址中解析城市，例如 "北京市海淀区" -> "北京市"，"广东省广州市天河区" -> "广州市"，
+     * "吉林省延边朝鲜族自治州延吉市" -> "延边朝鲜族自治州"
+     */
+    static String parseCity(String address) {
+        if (address == null) {
+            return UNKNOWN;
+        }
+        String rest = address.trim();
+        // 去掉省、自治区前缀（直辖市没有这一级）
+        int province = rest.indexOf('省');
+        if (province < 0) {
+            province = endOf(rest, "自治区");
+        }
+        if (province >= 0 && province + 1 < rest.length()) {
+            rest = rest.substring(province + 1);
+        }
+        int end = -1;
+        for (String suffix : new String[] {"自治州", "地区", "盟", "市"}) {
+            int candidate = endOf(rest, suffix);
+            if (candidate >= 0 && (end < 0 || candidate < end)) {
+                end = candidate;
+            }
+        }
+        return end > 0 ? rest.substring(0, end + 1) : UNKNOWN;
+    }
+
+    private static int endOf(String text, String suffix) {
+        int index = text.indexOf(suffix);
+        return index < 0 ? -1 : index + suffix.length() - 1;
+    }
+
+    /**
+     * 邮箱域名（小写），无邮箱时为"未知"
+     */
+    static String emailDomain(String email) {
+        if (email == null) {
+            return UNKNOWN;
+        }
+        int at = email.lastIndexOf('@');
+        return at < 0 || at == email.length() - 1 ? UNKNOWN : email.substring(at + 1).toLowerCase();
+    }
+}
@@ -0,0 +1,413 @@
+package system;
+
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * ContactFilter 类：可组合的联系人过滤条件
+ * 每个条件既能在内存中判断，也尽可能翻译为 SQL WHERE 片段，由 ContactQueryPlanner 决定在哪里执行
+ *
+ * 用法示例：
+ *   ContactFilter.and(ContactFilter.blacklisted(false),
+ *                     ContactFilter.emailDomain("example.com"),
+ *                     ContactFilter.contains(ContactFilter.Field.ADDRESS, "北京"))
+ *   ContactFilter.and(ContactFilter.tagged("同事"), ContactFilter.not(ContactFilter.tagged("VIP")))
+ */
+abstract class ContactFilter {
+
+    /**
+     * 可过滤的文本字段及其对应的列名
+     */
+    enum Field {
+        NAME("name"), PHONE("phone"), EMAIL("email"), ADDRESS("address");
+
+        final String column;
+
+        Field(String column) {
+            this.column = column;
+        }
+
+        String valueOf(Contact contact) {
+            switch (this) {
+                case NAME: return contact.getName();
+                case PHONE: return contact.getPhone();
+                case EMAIL: return contact.getEmail();
+                default: return contact.getAddress();
+            }
+        }
+    }
+
+    enum MatchType { EQUALS, CONTAINS, STARTS_WITH, ENDS_WITH }
+
+    /**
+     * 在内存中判断联系人是否满足条件
+     */
+    abstract boolean test(Contact contact);
+
+    /**
+     * 翻译为 SQL 条件
+     * @param params 追加绑定参数
+     * @return SQL 片段，无法下推时返回 null（此时不修改 params）
+     */
+    abstract String toSql(List<Object> params);
+
+    /**
+     * 顶层 AND 拆分后的各个子条件
+     */
+    List<ContactFilter> conjuncts() {
+        return Collections.singletonList(this);
+    }
+
+    // ---------------------------------------------------------------- 工厂方法
+
+    public static ContactFilter matches(Field field, MatchType type, String value) {
+        return new FieldMatch(field, type, value);
+    }
+
+    public static ContactFilter equalTo(Field field, String value) {
+        return new FieldMatch(field, MatchType.EQUALS, value);
+    }
+
+    public static ContactFilter contains(Field field, String value) {
+        return new FieldMatch(field, MatchType.CONTAINS, value);
+    }
+
+    public static ContactFilter startsWith(Field field, String value) {
+        return new FieldMatch(field, MatchType.STARTS_WITH, value);
+    }
+
+    /**
+     * 邮箱域名等于给定值，例如 emailDomain("example.com")
+     */
+    public static ContactFilter emailDomain(String domain) {
+        return new FieldMatch(Field.EMAIL, MatchType.ENDS_WITH, "@" + domain);
+    }
+
+    /**
+     * 字段匹配正则表达式（Java 语法，find 语义，即字段中任意位置出现即可）；只能在内存中判断
+     */
+    public static ContactFilter regex(Field field, String pattern) {
+        return new Regex(field, pattern);
+    }
+
+    public static ContactFilter blacklisted(boolean blacklisted) {
+        return new Blacklisted(blacklisted);
+    }
+
+    /**
+     * 带有指定标签（或属于指定分组）
+     */
+    public static ContactFilter tagged(String tag) {
+        return new Tagged(tag);
+    }
+
+    public static ContactFilter idIn(Collection<Integer> ids) {
+        return new IdIn(ids);
+    }
+
+    public static ContactFilter and(ContactFilter... filters) {
+        return new And(Arrays.asList(filters));
+    }
+
+    public static ContactFilter or(ContactFilter... filters) {
+        return new Or(Arrays.asList(filters));
+    }
+
+    public static ContactFilter not(ContactFilter filter) {
+        return new Not(filter);
+    }
+
+    // ---------------------------------------------------------------- 条件实现
+
+    /**
+     * 文本字段匹配；与 MySQL 默认排序规则一致，按不区分大小写比较
+     */
+    static final class FieldMatch extends ContactFilter {
+        final Field field;
+        final MatchType type;
+        final String value;
+        private final String lowerValue;
+
+        FieldMatch(Field field, MatchType type, String value) {
+            this.field = field;
+            this.type = type;
+            this.value = value;
+            this.lowerValue = value.toLowerCase();
+        }
+
+        @Override
+        boolean test(Contact contact) {
+            String actual = field.valueOf(contact);
+            if (actual == null) {
+                return false;
+            }
+            // 逐字符不区分大小写比较，不为每一行生成小写副本
+            int length = lowerValue.length();
+            switch (type) {
+                case EQUALS: return actual.length() == length && actual.regionMatches(true, 0, lowerValue, 0, length);
+                case CONTAINS: return containsIgnoreCase(actual, lowerValue);
+                case STARTS_WITH: return actual.regionMatches(true, 0, lowerValue, 0, length);
+                default: return actual.regionMatches(true, actual.length() - length, lowerValue, 0, length);
+            }
+        }
+
+        private static boolean containsIgnoreCase(String text, String lowerNeedle) {
+            int length = lowerNeedle.length();
+            if (length == 0) {
+                return true;
+            }
+            char first = lowerNeedle.charAt(0);
+            for (int i = 0, last = text.length() - length; i <= last; i++) {
+                if (Character.toLowerCase(text.charAt(i)) == first
+                        && text.regionMatches(true, i, lowerNeedle, 0, length)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        String toSql(List<Object> params) {
+            if (type == MatchType.EQUALS) {
+                params.add(value);
+                return "(" + field.column + " IS NOT NULL AND " + field.column + " = ?)";
+            }
+            String escaped = value.replace("!", "!!").replace("%", "!%").replace("_", "!_");
+            params.add((type == MatchType.STARTS_WITH ? "" : "%") + escaped + (type == MatchType.ENDS_WITH ? "" : "%"));
+            return "(" + field.column + " IS NOT NULL AND " + field.column + " LIKE ? ESCAPE '!')";
+        }
+
+        @Override
+        public String toString() {
+            return field.column + " " + type.name().toLowerCase() + " '" + value + "'";
+        }
+    }
+
+    /**
+     * 正则匹配；每个线程复用一个 Matcher，逐行判断时不产生新对象
+     * MySQL 的 REGEXP 语法与 Java 不同，因此不下推
+     */
+    static final class Regex extends ContactFilter {
+        final Field field;
+        final Pattern pattern;
+        private final ThreadLocal<Matcher> matchers;
+
+        Regex(Field field, String pattern) {
+            this.field = field;
+            this.pattern = Pattern.compile(pattern);
+            this.matchers = ThreadLocal.withInitial(() -> this.pattern.matcher(""));
+        }
+
+        @Override
+        boolean test(Contact contact) {
+            String actual = field.valueOf(contact);
+            return actual != null && matchers.get().reset(actual).find();
+        }
+
+        @Override
+        String toSql(List<Object> params) {
+            return null;
+        }
+
+        @Override
+        public String toString() {
+            return field.column + " regex '" + pattern.pattern() + "'";
+        }
+    }
+
+    static final class Blacklisted extends ContactFilter {
+        final boolean blacklisted;
+
+        Blacklisted(boolean blacklisted) {
+            this.blacklisted = blacklisted;
+        }
+
+        @Override
+        boolean test(Contact contact) {
+            return contact.isBlacklisted() == blacklisted;
+        }
+
+        @Override
+        String toSql(List<Object> params) {
+            params.add(blacklisted);
+            return "is_blacklisted = ?";
+        }
+
+        @Override
+        public String toString() {
+            return "is_blacklisted = " + blacklisted;
+        }
+    }
+
+    static final class Tagged extends ContactFilter {
+        final String tag;
+
+        Tagged(String tag) {
+            this.tag = tag;
+        }
+
+        @Override
+        boolean test(Contact contact) {
+            return contact.getTags().contains(tag);
+        }
+
+        @Override
+        String toSql(List<Object> params) {
+            params.add(tag);
+            return "id IN (SELECT contact_id FROM contact_tags WHERE tag = ?)";
+        }
+
+        @Override
+        public String toString() {
+            return "tag = '" + tag + "'";
+        }
+    }
+
+    static final class IdIn extends ContactFilter {
+        final Set<Integer> ids;
+
+        IdIn(Collection<Integer> ids) {
+            this.ids = new LinkedHashSet<>(ids);
+        }
+
+        @Override
+        boolean test(Contact contact) {
+            return ids.contains(contact.getId());
+        }
+
+        @Override
+        String toSql(List<Object> params) {
+            if (ids.isEmpty()) {
+                return "1 = 0";
+            }
+            StringBuilder sql = new StringBuilder("id IN (");
+            boolean first = true;
+            for (Integer id : ids) {
+                sql.append(first ? "?" : ",?");
+                params.add(id);
+                first = false;
+            }
+            return sql.append(')').toString();
+        }
+
+        @Override
+        public String toString() {
+            return "id in " + ids;
+        }
+    }
+
+    static final class And extends ContactFilter {
+        final List<ContactFilter> children;
+
+        And(List<ContactFilter> children) {
+            this.children = new ArrayList<>(children);
+        }
+
+        @Override
+        boolean test(Contact contact) {
+            for (ContactFilter child : children) {
+                if (!child.test(contact)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        String toSql(List<Object> params) {
+            return joinSql(children, " AND ", params);
+        }
+
+        @Override
+        List<ContactFilter> conjuncts() {
+            List<ContactFilter> flat = new ArrayList<>();
+            for (ContactFilter child : children) {
+                flat.addAll(child.conjuncts());
+            }
+            return flat;
+        }
+
+        @Override
+        public String toString() {
+            return join(children, " AND ");
+        }
+    }
+
+    static final class Or extends ContactFilter {
+        final List<ContactFilter> children;
+
+        Or(List<ContactFilter> children) {
+            this.children = new ArrayList<>(children);
+        }
+
+        @Override
+        boolean test(Contact contact) {
+            for (ContactFilter child : children) {
+                if (child.test(contact)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        String toSql(List<Object> params) {
+            return joinSql(children, " OR ", params);
+        }
+
+        @Override
+        public String toString() {
+            return join(children, " OR ");
+        }
+    }
+
+    static final class Not extends ContactFilter {
+        final ContactFilter child;
+
+        Not(ContactFilter child) {
+            this.child = child;
+        }
+
+        @Override
+        boolean test(Contact contact) {
+            return !child.test(contact);
+        }
+
+        @Override
+        String toSql(List<Object> params) {
+            String sql = child.toSql(params);
+            return sql == null ? null : "NOT (" + sql + ")";
+        }
+
+        @Override
+        public String toString() {
+            return "NOT (" + child + ")";
+        }
+    }
+
+    private static String joinSql(List<ContactFilter> children, String operator, List<Object> params) {
+        if (children.isEmpty()) {
+            return operator.trim().equals("AND") ? "1 = 1" : "1 = 0";
+        }
+        List<Object> childParams = new ArrayList<>();
+        StringBuilder sql = new StringBuilder("(");
+        for (int i = 0; i < children.size(); i++) {
+            String child = children.get(i).toSql(childParams);
+            if (child == null) {
+                return null;
+            }
+            sql.append(i == 0 ? "" : operator).append(child);
+        }
+        params.addAll(childParams);
+        return sql.append(')').toString();
+    }
+
+    private static String join(List<ContactFilter> children, String operator) {
+        StringBuilder sb = new StringBuilder("(");
+        for (int i = 0; i < children.size(); i++) {
+            sb.append(i == 0 ? "" : operator).append(children.get(i));
+        }
+        return sb.append(')').toString();
+    }
+}
@@ -0,0 +1,281 @@
+package system;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * ContactFuzzyIndex 类：姓名与电话的容错检索索引
+ * 姓名、电话各建一棵 BK 树（按编辑距离组织的度量树），查询时利用三角不等式只访问
+ * 距离在 [d-k, d+k] 范围内的子树，不需要与每一行计算编辑距离。随 ContactService 的写入增量维护。
+ */
+class ContactFuzzyIndex implements ContactChangeListener {
+
+    /**
+     * 一条匹配结果
+     */
+    static final class Match {
+        final int id;
+        final int distance;
+
+        Match(int id, int distance) {
+            this.id = id;
+            this.distance = distance;
+        }
+    }
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private BkTree names = new BkTree();
+    private BkTree phones = new BkTree();
+
+    @Override
+    public void contactChanged(Contact before, Contact after) {
+        lock.writeLock().lock();
+        try {
+            if (before != null) {
+                names.remove(normalize(before.getName()), before.getId());
+                phones.remove(normalize(before.getPhone()), before.getId());
+            }
+            if (after != null) {
+                names.add(normalize(after.getName()), after.getId());
+                phones.add(normalize(after.getPhone()), after.getId());
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void contactsReloaded(Collection<Contact> contacts) {
+        BkTree newNames = new BkTree();
+        BkTree newPhones = new BkTree();
+        for (Contact contact : contacts) {
+            newNames.add(normalize(contact.getName()), contact.getId());
+            newPhones.add(normalize(contact.getPhone()), contact.getId());
+        }
+        lock.writeLock().lock();
+        try {
+            names = newNames;
+            phones = newPhones;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 查找姓名或电话与关键字编辑距离不超过 maxDistance 的联系人
+     * @return 按距离从小到大排列，每个联系人只出现一次（取姓名、电话中较小的距离）
+     */
+    List<Match> search(String query, int maxDistance) {
+        String term = normalize(query);
+        Map<Integer, Integer> best = new HashMap<>();
+        lock.readLock().lock();
+        try {
+            names.search(term, maxDistance, best);
+            phones.search(term, maxDistance, best);
+        } finally {
+            lock.readLock().unlock();
+        }
+        List<Match> matches = new ArrayList<>(best.size());
+        for (Map.Entry<Integer, Integer> entry : best.entrySet()) {
+            matches.add(new Match(entry.getKey(), entry.getValue()));
+        }
+        matches.sort(Comparator.comparingInt(m -> m.distance));
+        return matches;
+    }
+
+    private static String normalize(String term) {
+        return term == null ? "" : term.trim().toLowerCase();
+    }
+
+    // 编辑距离计算用的两行缓冲区，每个线程复用，避免建树和查询时的大量小数组分配
+    private static final ThreadLocal<int[][]> ROWS = ThreadLocal.withInitial(() -> new int[2][32]);
+
+    /**
+     * 编辑距离（插入、删除、替换各计 1）
+     */
+    static int levenshtein(String a, String b) {
+        if (a.length() < b.length()) {
+            String t = a;
+            a = b;
+            b = t;
+        }
+        int[][] rows = ROWS.get();
+        if (rows[0].length <= b.length()) {
+            rows[0] = new int[b.length() + 1];
+            rows[1] = new int[b.length() + 1];
+        }
+        int[] prev = rows[0];
+        int[] curr = rows[1];
+        for (int j = 0; j <= b.length(); j++) {
+            prev[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            curr[0] = i;
+            char ca = a.charAt(i - 1);
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = ca == b.charAt(j - 1) ? 0 : 1;
+                curr[j] = Math.min(Math.min(curr[j - 1] + 1, prev[j] + 1), prev[j - 1] + cost);
+            }
+            int[] t = prev;
+            prev = curr;
+            curr = t;
+        }
+        return prev[b.length()];
+    }
+
+    /**
+     * BK 树：每个节点保存一个词及拥有该词的联系人编号，子节点按与父节点的编辑距离区分
+     * 删除只清空节点上的编号，失效节点过多时整体重建
+     */
+    static final class BkTree {
+
+        private static final class Node {
+            final String term;
+            int[] ids = new int[1];
+            int idCount;
+            int[] childKeys = new int[0];
+            Node[] children = new Node[0];
+
+            Node(String term) {
+                this.term = term;
+            }
+
+            Node child(int key) {
+                for (int i = 0; i < childKeys.length; i++) {
+                    if (childKeys[i] == key) {
+                        return children[i];
+                    }
+                }
+                return null;
+            }
+
+            void addChild(int key, Node node) {
+                childKeys = Arrays.copyOf(childKeys, childKeys.length + 1);
+                children = Arrays.copyOf(children, children.length + 1);
+                childKeys[childKeys.length - 1] = key;
+                children[children.length - 1] = node;
+            }
+
+            void addId(int id) {
+                if (idCount == ids.length) {
+                    ids = Arrays.copyOf(ids, idCount * 2);
+                }
+                ids[idCount++] = id;
+            }
+
+            boolean removeId(int id) {
+                for (int i = 0; i < idCount; i++) {
+                    if (ids[i] == id) {
+                        ids[i] = ids[--idCount];
+                        return true;
+                    }
+                }
+                return false;
+            }
+        }
+
+        private Node root;
+        private int liveTerms;
+        private int deadTerms;
+
+        void add(String term, int id) {
+            if (root == null) {
+                root = new Node(term);
+                root.addId(id);
+                liveTerms++;
+                return;
+            }
+            Node node = root;
+            while (true) {
+                int d = levenshtein(term, node.term);
+                if (d == 0) {
+                    if (node.idCount == 0) {
+                        deadTerms--;
+                        liveTerms++;
+                    }
+                    node.addId(id);
+                    return;
+                }
+                Node child = node.child(d);
+                if (child == null) {
+                    Node created = new Node(term);
+                    created.addId(id);
+                    node.addChild(d, created);
+                    liveTerms++;
+                    return;
+                }
+                node = child;
+            }
+        }
+
+        void remove(String term, int id) {
+            Node node = root;
+            while (node != null) {
+                int d = levenshtein(term, node.term);
+                if (d == 0) {
+                    if (node.removeId(id) && node.idCount == 0) {
+                        liveTerms--;
+                        deadTerms++;
+                        if (deadTerms > liveTerms) {
+                            rebuild();
+                        }
+                    }
+                    return;
+                }
+                node = node.child(d);
+            }
+        }
+
+        /**
+         * 去掉失效节点后重建整棵树
+         */
+        private void rebuild() {
+            List<Node> live = new ArrayList<>(liveTerms);
+            Deque<Node> stack = new ArrayDeque<>();
+            if (root != null) {
+                stack.push(root);
+            }
+            while (!stack.isEmpty()) {
+                Node node = stack.pop();
+                if (node.idCount > 0) {
+                    live.add(node);
+                }
+                for (Node child : node.children) {
+                    stack.push(child);
+                }
+            }
+            root = null;
+            liveTerms = 0;
+            deadTerms = 0;
+            for (Node node : live) {
+                for (int i = 0; i < node.idCount; i++) {
+                    add(node.term, node.ids[i]);
+                }
+            }
+        }
+
+        void search(String query, int maxDistance, Map<Integer, Integer> best) {
+            if (root == null) {
+                return;
+            }
+            Deque<Node> stack = new ArrayDeque<>();
+            stack.push(root);
+            while (!stack.isEmpty()) {
+                Node node = stack.pop();
+                int d = levenshtein(query, node.term);
+                if (d <= maxDistance) {
+                    for (int i = 0; i < node.idCount; i++) {
+                        best.merge(node.ids[i], d, Math::min);
+                    }
+                }
+                // 三角不等式：只有与本节点距离在 [d-k, d+k] 的子树可能包含匹配
+                for (int i = 0; i < node.childKeys.length; i++) {
+                    int key = node.childKeys[i];
+                    if (key >= d - maxDistance && key <= d + maxDistance) {
+                        stack.push(node.children[i]);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,769 @@
+package system;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.*;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ContactImporter 类：从手机导出的 vCard（.vcf）或其他系统导出的 CSV 文件批量导入联系人
+ * 文件按窗口内存映射，先顺序扫描一遍找出记录边界（vCard 为 BEGIN:VCARD 所在行首，CSV 为引号之外的换行），
+ * 切成若干块后在所有核心上并行解码、解析；解析结果经有界队列交给调用线程分批调用 ContactService.addContacts，
+ * 写入跟不上时解析线程阻塞等待。内存占用只与窗口、块大小和线程数有关，与文件大小无关。
+ * 支持 UTF-8（可带 BOM）与 GBK，未指定时按文件开头的内容自动判断。
+ */
+class ContactImporter {
+
+    enum Format { CSV, VCARD }
+
+    // 每次映射的字节数；单条记录不能超过它
+    private static final long WINDOW_SIZE = Long.getLong("contact.import.windowBytes", 256L << 20);
+    // 每个并行解析块的目标字节数
+    private static final int CHUNK_SIZE = Integer.getInteger("contact.import.chunkBytes", 8 << 20);
+    // 每次调用 addContacts 的联系人数
+    private static final int BATCH_SIZE = 1000;
+    // 自动判断编码时检查的字节数
+    private static final int SNIFF_BYTES = 64 << 10;
+    // 最多记录的失败原因条数
+    private static final int MAX_ERROR_SAMPLES = 10;
+
+    private static final List<Contact> END = new ArrayList<>();
+
+    /**
+     * 一次导入的统计
+     */
+    static final class Stats {
+        final AtomicLong records = new AtomicLong();
+        final AtomicLong malformed = new AtomicLong();
+        long imported;
+        long rejected;
+        long bytes;
+        long elapsedNanos;
+        final List<String> errorSamples = Collections.synchronizedList(new ArrayList<>());
+
+        void sampleError(String error) {
+            if (errorSamples.size() < MAX_ERROR_SAMPLES) {
+                errorSamples.add(error);
+            }
+        }
+
+        @Override
+        public String toString() {
+            long ms = elapsedNanos / 1_000_000;
+            return "读取 " + records.get() + " 条记录（" + bytes / (1 << 20) + " MB），导入 " + imported
+                    + " 个，校验失败 " + rejected + " 个，无法解析 " + malformed.get() + " 条，用时 " + ms + " ms（"
+                    + (ms == 0 ? imported : imported * 1000 / ms) + " 个/秒）";
+        }
+    }
+
+    private final ContactService service;
+    private final int threads;
+
+    ContactImporter(ContactService service, int threads) {
+        this.service = service;
+        this.threads = Math.max(1, threads);
+    }
+
+    /**
+     * 导入文件
+     * @param format 文件格式，为 null 时按扩展名与内容判断
+     * @param charset 字符集，为 null 时自动判断 UTF-8 或 GBK
+     */
+    Stats importFile(Path file, Format format, Charset charset) throws IOException {
+        long start = System.nanoTime();
+        Stats stats = new Stats();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            stats.bytes = size;
+            byte[] head = new byte[(int) Math.min(SNIFF_BYTES, size)];
+            channel.read(ByteBuffer.wrap(head), 0);
+            long offset = 0;
+            if (head.length >= 3 && (head[0] & 0xFF) == 0xEF && (head[1] & 0xFF) == 0xBB && (head[2] & 0xFF) == 0xBF) {
+                offset = 3; // UTF-8 BOM
+                charset = charset == null ? StandardCharsets.UTF_8 : charset;
+            }
+            if (charset == null) {
+                charset = detectCharset(head);
+            }
+            if (format == null) {
+                format = detectFormat(file, head, charset);
+            }
+            CsvLayout layout = null;
+            if (format == Format.CSV) {
+                // 表头只在文件开头出现一次，先单独解析，之后各块共用
+                int headerEnd = recordEnd(head, (int) offset);
+                String firstLine = new String(head, (int) offset, headerEnd - (int) offset, charset).trim();
+                layout = CsvLayout.fromHeader(ContactBatchRunner.splitCsv(firstLine));
+                if (layout != null) {
+                    offset = headerEnd;
+                } else {
+                    layout = CsvLayout.POSITIONAL;
+                }
+            }
+            run(channel, offset, size, format, charset, layout, stats);
+        }
+        stats.elapsedNanos = System.nanoTime() - start;
+        return stats;
+    }
+
+    /**
+     * 解析线程按窗口生产，调用线程消费并写入；任何一方出错都会让另一方尽快停止
+     */
+    private void run(FileChannel channel, long offset, long size, Format format, Charset charset,
+                     CsvLayout layout, Stats stats) throws IOException {
+        BlockingQueue<List<Contact>> queue = new ArrayBlockingQueue<>(threads * 2);
+        AtomicInteger threadNo = new AtomicInteger();
+        ExecutorService parsers = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "contact-import-" + threadNo.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Throwable[] producerError = new Throwable[1];
+        Thread producer = new Thread(() -> {
+            try {
+                produce(channel, offset, size, format, charset, layout, stats, queue, parsers);
+            } catch (Throwable t) {
+                producerError[0] = t;
+            } finally {
+                try {
+                    queue.put(END);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }, "contact-import-reader");
+        producer.setDaemon(true);
+        producer.start();
+        try {
+            while (true) {
+                List<Contact> batch = queue.take();
+                if (batch == END) {
+                    break;
+                }
+                String[] errors = service.addContacts(batch);
+                for (String error : errors) {
+                    if (error == null) {
+                        stats.imported++;
+                    } else {
+                        stats.rejected++;
+                        stats.sampleError(error);
+                    }
+                }
+            }
+            producer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("导入被中断", e);
+        } finally {
+            producer.interrupt();
+            parsers.shutdownNow();
+        }
+        if (producerError[0] != null) {
+            Throwable error = producerError[0];
+            throw error instanceof IOException ? (IOException) error : new IOException(error.getMessage(), error);
+        }
+    }
+
+    private void produce(FileChannel channel, long offset, long size, Format format, Charset charset,
+                         CsvLayout layout, Stats stats, BlockingQueue<List<Contact>> queue,
+                         ExecutorService parsers) throws IOException, InterruptedException, ExecutionException {
+        long position = offset;
+        while (position < size) {
+            long length = Math.min(WINDOW_SIZE, size - position);
+            boolean last = position + length == size;
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+            List<int[]> chunks = new ArrayList<>();
+            int consumed = split(window, (int) length, last, format, chunks);
+            if (consumed == 0) {
+                throw new IOException("位置 " + position + " 处的单条记录超过映射窗口大小 " + WINDOW_SIZE + " 字节");
+            }
+            List<Future<?>> running = new ArrayList<>(chunks.size());
+            for (int[] chunk : chunks) {
+                running.add(parsers.submit(() -> {
+                    parseChunk(window, chunk[0], chunk[1], format, charset, layout, stats, queue);
+                    return null;
+                }));
+            }
+            // 等本窗口解析完再映射下一个窗口，同一时刻只有一个窗口在使用
+            for (Future<?> future : running) {
+                future.get();
+            }
+            position += consumed;
+        }
+    }
+
+    /**
+     * 顺序扫描窗口，按记录边界切成不小于 CHUNK_SIZE 的块
+     * @param last 窗口是否到达文件末尾；否则最后一条记录可能不完整，留给下一个窗口
+     * @return 本窗口处理到的字节数（最后一个完整记录的结尾）
+     */
+    private static int split(MappedByteBuffer window, int length, boolean last, Format format, List<int[]> chunks) {
+        byte[] scratch = new byte[64 << 10];
+        int chunkStart = 0;
+        int lastBoundary = 0;
+        boolean quoted = false;
+        byte previous = '\n';
+        // vCard 判断行首是否为 BEGIN:VCARD 时需要看到后续字节，直接从映射区读取
+        ByteBuffer view = window.duplicate();
+        for (int base = 0; base < length; base += scratch.length) {
+            int n = Math.min(scratch.length, length - base);
+            view.position(base);
+            view.get(scratch, 0, n);
+            for (int i = 0; i < n; i++) {
+                byte b = scratch[i];
+                int at = base + i;
+                boolean boundary;
+                if (format == Format.CSV) {
+                    if (b == '"') {
+                        quoted = !quoted;
+                    }
+                    boundary = b == '\n' && !quoted;
+                    if (boundary) {
+                        at++; // CSV 记录在换行之后结束
+                    }
+                } else {
+                    boundary = previous == '\n' && at > 0 && startsWithBeginVcard(window, at, length);
+                }
+                previous = b;
+                if (boundary) {
+                    lastBoundary = at;
+                    if (lastBoundary - chunkStart >= CHUNK_SIZE) {
+                        chunks.add(new int[] {chunkStart, lastBoundary});
+                        chunkStart = lastBoundary;
+                    }
+                }
+            }
+        }
+        int end = last ? length : lastBoundary;
+        if (end > chunkStart) {
+            chunks.add(new int[] {chunkStart, end});
+        }
+        return end;
+    }
+
+    private static boolean startsWithBeginVcard(ByteBuffer window, int at, int length) {
+        String marker = "BEGIN:VCARD";
+        if (at + marker.length() > length) {
+            return false;
+        }
+        for (int i = 0; i < marker.length(); i++) {
+            if (Character.toUpperCase((char) window.get(at + i)) != marker.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 在字节数组中找到从 from 开始的第一条记录的结尾（CSV 专用，用于读取表头）
+     */
+    private static int recordEnd(byte[] bytes, int from) {
+        boolean quoted = false;
+        for (int i = from; i < bytes.length; i++) {
+            if (bytes[i] == '"') {
+                quoted = !quoted;
+            } else if (bytes[i] == '\n' && !quoted) {
+                return i + 1;
+            }
+        }
+        return bytes.length;
+    }
+
+    /**
+     * 解码并解析一个块，每凑够 BATCH_SIZE 个联系人放入队列，队列满时阻塞
+     */
+    private static void parseChunk(MappedByteBuffer window, int from, int to, Format format, Charset charset,
+                                   CsvLayout layout, Stats stats, BlockingQueue<List<Contact>> queue)
+            throws InterruptedException {
+        byte[] bytes = new byte[to - from];
+        ByteBuffer view = window.duplicate();
+        view.position(from);
+        view.get(bytes);
+        String text = new String(bytes, charset);
+        List<Contact> batch = new ArrayList<>(BATCH_SIZE);
+        int pos = 0;
+        while (pos < text.length()) {
+            int end = format == Format.CSV ? csvRecordEnd(text, pos) : vcardRecordEnd(text, pos);
+            String record = text.substring(pos, end);
+            pos = end;
+            if (record.trim().isEmpty()) {
+                continue;
+            }
+            stats.records.incrementAndGet();
+            Contact contact;
+            try {
+                contact = format == Format.CSV ? parseCsvRecord(record, layout) : parseVcard(record, charset);
+            } catch (RuntimeException e) {
+                contact = null;
+            }
+            if (contact == null) {
+                stats.malformed.incrementAndGet();
+                continue;
+            }
+            batch.add(contact);
+            if (batch.size() == BATCH_SIZE) {
+                queue.put(batch);
+                batch = new ArrayList<>(BATCH_SIZE);
+            }
+        }
+        if (!batch.isEmpty()) {
+            queue.put(batch);
+        }
+    }
+
+    private static int csvRecordEnd(String text, int from) {
+        boolean quoted = false;
+        for (int i = from; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"') {
+                quoted = !quoted;
+            } else if (c == '\n' && !quoted) {
+                return i + 1;
+            }
+        }
+        return text.length();
+    }
+
+    private static int vcardRecordEnd(String text, int from) {
+        int i = from;
+        while (true) {
+            int newline = text.indexOf('\n', i);
+            if (newline < 0) {
+                return text.length();
+            }
+            i = newline + 1;
+            if (text.regionMatches(true, i, "BEGIN:VCARD", 0, 11)) {
+                return i;
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------- CSV
+
+    /**
+     * CSV 各列的含义；没有可识别的表头时按 姓名,电话,邮箱,地址,是否黑名单,标签 的顺序解析
+     */
+    static final class CsvLayout {
+        static final CsvLayout POSITIONAL = new CsvLayout(0, 1, 2, 3, 4, 5);
+
+        final int name;
+        final int phone;
+        final int email;
+        final int address;
+        final int blacklisted;
+        final int tags;
+
+        CsvLayout(int name, int phone, int email, int address, int blacklisted, int tags) {
+            this.name = name;
+            this.phone = phone;
+            this.email = email;
+            this.address = address;
+            this.blacklisted = blacklisted;
+            this.tags = tags;
+        }
+
+        /**
+         * 按表头识别各列，至少要识别出姓名和电话，否则返回 null（视为没有表头）
+         */
+        static CsvLayout fromHeader(List<String> header) {
+            int[] columns = {-1, -1, -1, -1, -1, -1};
+            for (int i = 0; i < header.size(); i++) {
+                int kind = headerKind(header.get(i).trim().toLowerCase());
+                if (kind >= 0 && columns[kind] < 0) {
+                    columns[kind] = i;
+                }
+            }
+            if (columns[0] < 0 || columns[1] < 0) {
+                return null;
+            }
+            return new CsvLayout(columns[0], columns[1], columns[2], columns[3], columns[4], columns[5]);
+        }
+
+        private static int headerKind(String header) {
+            switch (header) {
+                case "姓名": case "名字": case "联系人": case "name": case "full name": case "fullname":
+                    return 0;
+                case "电话": case "手机": case "手机号": case "电话号码": case "phone": case "mobile": case "tel":
+                case "telephone": case "mobile phone":
+                    return 1;
+                case "邮箱": case "电子邮件": case "email": case "e-mail": case "email address":
+                    return 2;
+                case "地址": case "住址": case "address": case "home address":
+                    return 3;
+                case "黑名单": case "blacklisted": case "is_blacklisted":
+                    return 4;
+                case "标签": case "分组": case "群组": case "tags": case "groups": case "group": case "categories":
+                    return 5;
+                default:
+                    return -1;
+            }
+        }
+    }
+
+    static Contact parseCsvRecord(String record, CsvLayout layout) {
+        List<String> fields = ContactBatchRunner.splitCsv(stripLineEnd(record));
+        // 兼容批处理格式（首列为 add），例如 --generate 生成的文件
+        if (layout == CsvLayout.POSITIONAL && !fields.isEmpty() && fields.get(0).trim().equalsIgnoreCase("add")) {
+            fields = fields.subList(1, fields.size());
+        }
+        String name = column(fields, layout.name);
+        String phone = normalizePhone(column(fields, layout.phone));
+        if (name == null || phone == null) {
+            return null;
+        }
+        Contact contact = new Contact(0, name, phone, column(fields, layout.email), column(fields, layout.address),
+                ContactBatchRunner.parseBoolean(column(fields, layout.blacklisted)));
+        String tags = column(fields, layout.tags);
+        if (tags != null) {
+            contact.setTags(splitTags(tags, "[;,|，；]"));
+        }
+        return contact;
+    }
+
+    private static String column(List<String> fields, int index) {
+        if (index < 0 || index >= fields.size()) {
+            return null;
+        }
+        String value = fields.get(index).trim();
+        return value.isEmpty() ? null : value;
+    }
+
+    private static String stripLineEnd(String record) {
+        int end = record.length();
+        while (end > 0 && (record.charAt(end - 1) == '\n' || record.charAt(end - 1) == '\r')) {
+            end--;
+        }
+        return record.substring(0, end);
+    }
+
+    // ---------------------------------------------------------------- vCard
+
+    /**
+     * 解析一张 vCard（2.1 / 3.0 / 4.0）：FN 或 N 为姓名，优先取手机号码，取第一个邮箱与地址，CATEGORIES 为标签
+     * 支持续行与 QUOTED-PRINTABLE 编码（部分手机导出的 2.1 格式使用）
+     */
+    static Contact parseVcard(String record, Charset fileCharset) {
+        String fullName = null;
+        String structuredName = null;
+        String phone = null;
+        boolean phoneIsCell = false;
+        String email = null;
+        String address = null;
+        List<String> tags = new ArrayList<>();
+        for (String line : unfold(record)) {
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+            String[] head = line.substring(0, colon).split(";");
+            String property = head[0];
+            int dot = property.indexOf('.');
+            if (dot >= 0) {
+                property = property.substring(dot + 1); // 去掉 item1. 之类的分组前缀
+            }
+            property = property.toUpperCase();
+            String params = line.substring(0, colon).toUpperCase();
+            String value = line.substring(colon + 1);
+            if (params.contains("QUOTED-PRINTABLE")) {
+                value = decodeQuotedPrintable(value, paramCharset(head, fileCharset));
+            }
+            switch (property) {
+                case "FN":
+                    fullName = unescape(value).trim();
+                    break;
+                case "N":
+                    structuredName = joinName(value.split(";", -1));
+                    break;
+                case "TEL": {
+                    String normalized = normalizePhone(unescape(value));
+                    boolean cell = params.contains("CELL");
+                    if (normalized != null && (phone == null || (cell && !phoneIsCell))) {
+                        phone = normalized;
+                        phoneIsCell = cell;
+                    }
+                    break;
+                }
+                case "EMAIL":
+                    if (email == null && !value.trim().isEmpty()) {
+                        email = unescape(value).trim();
+                    }
+                    break;
+                case "ADR":
+                    if (address == null) {
+                        address = joinAddress(value.split(";", -1));
+                    }
+                    break;
+                case "CATEGORIES":
+                    tags.addAll(splitTags(unescape(value), ","));
+                    break;
+                default:
+                    break;
+            }
+        }
+        String name = fullName != null && !fullName.isEmpty() ? fullName : structuredName;
+        if (name == null || name.isEmpty() || phone == null) {
+            return null;
+        }
+        Contact contact = new Contact(0, name, phone, email, address, false);
+        contact.setTags(tags);
+        return contact;
+    }
+
+    /**
+     * 拆分为属性行：合并以空白开头的续行，以及 QUOTED-PRINTABLE 以 = 结尾的软换行
+     */
+    private static List<String> unfold(String record) {
+        List<String> lines = new ArrayList<>();
+        StringBuilder current = null;
+        boolean softBreak = false;
+        for (String raw : record.split("\r?\n")) {
+            if (current != null && (softBreak || (!raw.isEmpty() && (raw.charAt(0) == ' ' || raw.charAt(0) == '\t')))) {
+                current.append(softBreak ? raw : raw.substring(1));
+            } else {
+                if (current != null) {
+                    lines.add(current.toString());
+                }
+                current = new StringBuilder(raw);
+            }
+            String text = current.toString();
+            softBreak = text.endsWith("=") && text.toUpperCase().contains("QUOTED-PRINTABLE");
+            if (softBreak) {
+                current.setLength(current.length() - 1);
+            }
+        }
+        if (current != null) {
+            lines.add(current.toString());
+        }
+        return lines;
+    }
+
+    private static Charset paramCharset(String[] head, Charset fallback) {
+        for (String param : head) {
+            if (param.toUpperCase().startsWith("CHARSET=")) {
+                try {
+                    return Charset.forName(param.substring("CHARSET=".length()));
+                } catch (IllegalArgumentException e) {
+                    return fallback;
+                }
+            }
+        }
+        return fallback;
+    }
+
+    private static String decodeQuotedPrintable(String value, Charset charset) {
+        byte[] bytes = new byte[value.length()];
+        int n = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '=' && i + 2 < value.length()) {
+                int hi = Character.digit(value.charAt(i + 1), 16);
+                int lo = Character.digit(value.charAt(i + 2), 16);
+                if (hi >= 0 && lo >= 0) {
+                    bytes[n++] = (byte) ((hi << 4) | lo);
+                    i += 2;
+                    continue;
+                }
+            }
+            bytes[n++] = (byte) c;
+        }
+        return new String(bytes, 0, n, charset);
+    }
+
+    private static String unescape(String value) {
+        if (value.indexOf('\\') < 0) {
+            return value;
+        }
+        StringBuilder sb = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' && i + 1 < value.length()) {
+                char next = value.charAt(++i);
+                sb.append(next == 'n' || next == 'N' ? ' ' : next);
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * N 属性：姓;名;中间名;前缀;后缀。中文姓名姓在前且不加空格，其他按 名 姓 排列
+     */
+    private static String joinName(String[] parts) {
+        String family = parts.length > 0 ? unescape(parts[0]).trim() : "";
+        String given = parts.length > 1 ? unescape(parts[1]).trim() : "";
+        if (family.isEmpty() || given.isEmpty()) {
+            return family.isEmpty() ? given : family;
+        }
+        return hasHan(family + given) ? family + given : given + " " + family;
+    }
+
+    /**
+     * ADR 属性：邮政信箱;扩展地址;街道;城市;省份;邮编;国家。中文地址按 省份 城市 街道 拼接
+     */
+    private static String joinAddress(String[] parts) {
+        String street = parts.length > 2 ? unescape(parts[2]).trim() : "";
+        String city = parts.length > 3 ? unescape(parts[3]).trim() : "";
+        String region = parts.length > 4 ? unescape(parts[4]).trim() : "";
+        String joined;
+        if (hasHan(street + city + region)) {
+            joined = (region.equals(city) ? "" : region) + city + street;
+        } else {
+            StringJoiner joiner = new StringJoiner(", ");
+            for (String part : new String[] {street, city, region}) {
+                if (!part.isEmpty()) {
+                    joiner.add(part);
+                }
+            }
+            joined = joiner.toString();
+        }
+        return joined.isEmpty() ? null : joined;
+    }
+
+    private static boolean hasHan(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.UnicodeScript.of(text.charAt(i)) == Character.UnicodeScript.HAN) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // ---------------------------------------------------------------- 通用
+
+    /**
+     * 只保留数字，并去掉中国区号前缀 +86 / 0086；没有数字时返回 null
+     */
+    static String normalizePhone(String raw) {
+        if (raw == null) {
+            return null;
+        }
+        StringBuilder digits = new StringBuilder(raw.length());
+        for (int i = 0; i < raw.length(); i++) {
+            char c = raw.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            }
+        }
+        String phone = digits.toString();
+        if (phone.length() == 15 && phone.startsWith("0086")) {
+            phone = phone.substring(4);
+        } else if (phone.length() == 13 && phone.startsWith("86")) {
+            phone = phone.substring(2);
+        }
+        return phone.isEmpty() ? null : phone;
+    }
+
+    private static List<String> splitTags(String value, String separators) {
+        List<String> tags = new ArrayList<>();
+        for (String tag : value.split(separators)) {
+            String trimmed = tag.trim();
+            if (!trimmed.isEmpty()) {
+                tags.add(trimmed);
+            }
+        }
+        return tags;
+    }
+
+    /**
+     * 文件开头能按 UTF-8 严格解码时为 UTF-8，否则视为 GBK
+     * 截断在多字节字符中间导致的末尾错误不计
+     */
+    static Charset detectCharset(byte[] head) {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPORT)
+                .onUnmappableCharacter(CodingErrorAction.REPORT);
+        ByteBuffer in = ByteBuffer.wrap(head);
+        CharBuffer out = CharBuffer.allocate(head.length);
+        CoderResult result = decoder.decode(in, out, false);
+        if (result.isError()) {
+            return Charset.forName("GBK");
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    private static Format detectFormat(Path file, byte[] head, Charset charset) {
+        String name = file.getFileName().toString().toLowerCase();
+        if (name.endsWith(".vcf") || name.endsWith(".vcard")) {
+            return Format.VCARD;
+        }
+        if (name.endsWith(".csv")) {
+            return Format.CSV;
+        }
+        String start = new String(head, 0, Math.min(head.length, 64), charset).trim();
+        if (!start.isEmpty() && start.charAt(0) == '﻿') {
+            start = start.substring(1);
+        }
+        return start.regionMatches(true, 0, "BEGIN:VCARD", 0, 11) ? Format.VCARD : Format.CSV;
+    }
+
+    /**
+     * 命令行入口，参数：--import 文件 [--format csv|vcf] [--charset UTF-8|GBK] [--threads N]
+     * @return 进程退出码
+     */
+    static int run(String[] args) {
+        String input = null;
+        Format format = null;
+        Charset charset = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (i + 1 >= args.length) {
+                    System.err.println("参数缺少取值: " + arg);
+                    return 2;
+                }
+                switch (arg) {
+                    case "--import":
+                        input = args[++i];
+                        break;
+                    case "--format": {
+                        String value = args[++i].toLowerCase();
+                        format = value.equals("vcf") || value.equals("vcard") ? Format.VCARD : Format.CSV;
+                        break;
+                    }
+                    case "--charset":
+                        charset = Charset.forName(args[++i]);
+                        break;
+                    case "--threads":
+                        threads = Integer.parseInt(args[++i]);
+                        break;
+                    default:
+                        System.err.println("未知参数: " + arg);
+                        return 2;
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("无效的数值参数: " + e.getMessage());
+            return 2;
+        } catch (IllegalArgumentException e) {
+            System.err.println("不支持的字符集: " + e.getMessage());
+            return 2;
+        }
+        if (input == null) {
+            System.err.println("用法: --import 文件 [--format csv|vcf] [--charset UTF-8|GBK] [--threads N]");
+            return 2;
+        }
+        ContactImporter importer = new ContactImporter(ContactService.getShared(), threads);
+        try {
+            Stats stats = importer.importFile(Paths.get(input), format, charset);
+            System.out.println(stats);
+            for (String error : stats.errorSamples) {
+                System.err.println("  " + error);
+            }
+            return stats.rejected > 0 || stats.malformed.get() > 0 ? 1 : 0;
+        } catch (IOException e) {
+            System.err.println("导入失败: " + e.getMessage());
+            return 2;
+        }
+    }
+}
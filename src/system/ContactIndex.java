@@ -0,0 +1,31 @@
+package system;
+
+/**
+ * ContactIndex 接口：内存中的联系人二级索引，供 ContactQueryPlanner 选择访问路径
+ */
+interface ContactIndex {
+
+    /**
+     * 索引名称，用于 explain 输出
+     */
+    String getName();
+
+    /**
+     * 是否能用本索引直接回答该条件（只判断，不执行查找）
+     */
+    boolean supports(ContactFilter condition);
+
+    /**
+     * 查找满足条件的联系人编号
+     * @return 升序排列的编号
+     */
+    int[] lookup(ContactFilter condition);
+
+    /**
+     * 以位图形式查找满足条件的联系人编号，多个索引条件的结果按位图求交集
+     * 默认由 lookup 的结果构造，原生基于位图的索引直接返回运算结果
+     */
+    default ContactBitmap lookupBitmap(ContactFilter condition) {
+        return ContactBitmap.of(lookup(condition));
+    }
+}
@@ -0,0 +1,461 @@
+package system;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ContactLoadRunner 类：并发压测，多个线程按配置的读写比例调用 ContactService，
+ * 统计吞吐量与各操作的 p50/p99 延迟
+ *
+ * 默认使用内存嵌入式数据库（MySQL 兼容模式的 H2，需要其驱动在 classpath 中），先用
+ * ContactDataGenerator 写入指定数量的模拟联系人，再按时长运行压测。
+ */
+class ContactLoadRunner {
+
+    static final String DEFAULT_URL = "jdbc:h2:mem:contact_load;MODE=MySQL;DB_CLOSE_DELAY=-1";
+    static final String DEFAULT_MIX = "get=60,search=25,add=5,update=8,delete=2";
+
+    /**
+     * 压测操作类型
+     */
+    enum Op { GET, SEARCH, LIST, ADD, UPDATE, DELETE }
+
+    private final ContactService service;
+    private final ContactDataGenerator generator;
+    private final int threads;
+    private final long durationMillis;
+    private final EnumMap<Op, Integer> mix;
+    // 新增联系人使用的生成序号，从预置数据之后开始，避免与预置数据重复
+    private final AtomicLong nextGenerated;
+
+    ContactLoadRunner(ContactService service, ContactDataGenerator generator, int threads,
+                      long durationMillis, EnumMap<Op, Integer> mix, long generatedRows) {
+        this.service = service;
+        this.generator = generator;
+        this.threads = threads;
+        this.durationMillis = durationMillis;
+        this.mix = mix;
+        this.nextGenerated = new AtomicLong(generatedRows);
+    }
+
+    /**
+     * 命令行入口，参数：--load 秒数 [--rows N] [--threads N] [--mix get=60,search=25,...]
+     *                   [--seed N] [--url JDBC地址] [--user 用户] [--password 密码]
+     * @return 进程退出码
+     */
+    static int run(String[] args) {
+        long seconds = -1;
+        long rows = 100_000;
+        int threads = Runtime.getRuntime().availableProcessors();
+        String mixSpec = DEFAULT_MIX;
+        long seed = 42;
+        String url = DEFAULT_URL;
+        String user = "sa";
+        String password = "";
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (i + 1 >= args.length) {
+                    System.err.println("参数缺少取值: " + arg);
+                    return 2;
+                }
+                switch (arg) {
+                    case "--load":
+                        seconds = Long.parseLong(args[++i]);
+                        break;
+                    case "--rows":
+                        rows = Long.parseLong(args[++i]);
+                        break;
+                    case "--threads":
+                        threads = Math.max(1, Integer.parseInt(args[++i]));
+                        break;
+                    case "--mix":
+                        mixSpec = args[++i];
+                        break;
+                    case "--seed":
+                        seed = Long.parseLong(args[++i]);
+                        break;
+                    case "--url":
+                        url = args[++i];
+                        break;
+                    case "--user":
+                        user = args[++i];
+                        break;
+                    case "--password":
+                        password = args[++i];
+                        break;
+                    default:
+                        System.err.println("未知参数: " + arg);
+                        return 2;
+                }
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("无效的数值参数: " + e.getMessage());
+            return 2;
+        }
+        if (seconds <= 0) {
+            System.err.println("用法: --load 秒数 [--rows N] [--threads N] [--mix " + DEFAULT_MIX + "]"
+                    + " [--seed N] [--url JDBC地址] [--user 用户] [--password 密码]");
+            return 2;
+        }
+        EnumMap<Op, Integer> mix;
+        try {
+            mix = parseMix(mixSpec);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return 2;
+        }
+
+        ContactDataSource source = new ContactDataSource(url, user, password);
+        try {
+            // 只检查数据库是否可用
+            source.getConnection().close();
+        } catch (SQLException e) {
+            System.err.println("无法连接压测数据库 " + url + ": " + e.getMessage());
+            if (url.startsWith("jdbc:h2:")) {
+                System.err.println("使用嵌入式数据库时需要将 H2 驱动加入 classpath");
+            }
+            return 2;
+        }
+
+        File snapshotFile;
+        try {
+            snapshotFile = File.createTempFile("contacts-load", ".snapshot");
+        } catch (IOException e) {
+            System.err.println("无法创建临时快照文件: " + e.getMessage());
+            return 2;
+        }
+        snapshotFile.deleteOnExit();
+        // 不使用共享实例与默认快照文件，压测数据不会影响正常使用的通讯录
+        ContactService service = new ContactService(new ContactDao(ShardRouter.single(source)),
+                new ContactSnapshotStore(snapshotFile));
+        ContactDataGenerator generator = new ContactDataGenerator(seed);
+        if (!seed(service, generator, rows)) {
+            return 1;
+        }
+        ContactLoadRunner runner = new ContactLoadRunner(service, generator, threads, seconds * 1000, mix, rows);
+        runner.execute();
+        return 0;
+    }
+
+    /**
+     * 解析操作比例，例如 "get=60,search=25,add=5,update=8,delete=2"
+     */
+    static EnumMap<Op, Integer> parseMix(String spec) {
+        EnumMap<Op, Integer> mix = new EnumMap<>(Op.class);
+        for (String part : spec.split(",")) {
+            String[] kv = part.trim().split("=");
+            if (kv.length != 2) {
+                throw new IllegalArgumentException("无效的操作比例: " + part);
+            }
+            Op op;
+            int weight;
+            try {
+                op = Op.valueOf(kv[0].trim().toUpperCase());
+                weight = Integer.parseInt(kv[1].trim());
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("无效的操作比例: " + part);
+            }
+            if (weight < 0) {
+                throw new IllegalArgumentException("操作比例不能为负数: " + part);
+            }
+            if (weight > 0) {
+                mix.put(op, weight);
+            }
+        }
+        if (mix.isEmpty()) {
+            throw new IllegalArgumentException("操作比例不能全为 0");
+        }
+        return mix;
+    }
+
+    /**
+     * 批量写入预置数据并等待内存副本加载完成
+     */
+    static boolean seed(ContactService service, ContactDataGenerator generator, long rows) {
+        long start = System.nanoTime();
+        int chunk = 1000;
+        long failed = 0;
+        for (long from = 0; from < rows; from += chunk) {
+            int size = (int) Math.min(chunk, rows - from);
+            List<Contact> contacts = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                contacts.add(generator.generate(from + i));
+            }
+            for (String error : service.addContacts(contacts)) {
+                if (error != null) {
+                    failed++;
+                }
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        if (rows > 0) {
+            System.out.println("预置 " + rows + " 个联系人，失败 " + failed + " 个，用时 " + elapsed / 1_000_000
+                    + " ms（" + (elapsed == 0 ? rows : rows * 1_000_000_000L / elapsed) + " 行/秒）");
+        }
+        service.warmUpAsync().join();
+        if (failed == rows && rows > 0) {
+            System.err.println("预置数据全部写入失败，停止压测");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 运行压测并输出报告
+     */
+    void execute() {
+        ContactSnapshot snapshot = service.snapshot();
+        List<Contact> existing = snapshot == null ? service.getAllContacts() : snapshot.values();
+        int[] ids = new int[existing.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = existing.get(i).getId();
+        }
+        if (ids.length == 0 && (mix.containsKey(Op.GET) || mix.containsKey(Op.UPDATE) || mix.containsKey(Op.DELETE))) {
+            System.out.println("数据库中没有联系人，按编号的操作都将未命中");
+        }
+        System.out.println("开始压测：" + threads + " 个线程，" + durationMillis / 1000 + " 秒，操作比例 " + mix
+                + "，联系人 " + ids.length + " 个");
+
+        Op[] ops = mix.keySet().toArray(new Op[0]);
+        int[] cumulative = new int[ops.length];
+        int totalWeight = 0;
+        for (int i = 0; i < ops.length; i++) {
+            totalWeight += mix.get(ops[i]);
+            cumulative[i] = totalWeight;
+        }
+        final int weightSum = totalWeight;
+
+        Worker[] workers = new Worker[threads];
+        CountDownLatch startSignal = new CountDownLatch(1);
+        Thread[] running = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Worker(t, ids, ops, cumulative, weightSum, startSignal);
+            running[t] = new Thread(workers[t], "contact-load-" + t);
+            running[t].start();
+        }
+        long start = System.nanoTime();
+        long deadline = start + durationMillis * 1_000_000;
+        for (Worker worker : workers) {
+            worker.deadline = deadline;
+        }
+        startSignal.countDown();
+        for (Thread thread : running) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        long elapsed = System.nanoTime() - start;
+        report(workers, elapsed);
+    }
+
+    private void report(Worker[] workers, long elapsedNanos) {
+        EnumMap<Op, LatencyHistogram> byOp = new EnumMap<>(Op.class);
+        EnumMap<Op, Long> failures = new EnumMap<>(Op.class);
+        LatencyHistogram overall = new LatencyHistogram();
+        for (Worker worker : workers) {
+            for (Op op : Op.values()) {
+                LatencyHistogram h = worker.histograms[op.ordinal()];
+                if (h.count() > 0) {
+                    byOp.computeIfAbsent(op, k -> new LatencyHistogram()).add(h);
+                    overall.add(h);
+                }
+                failures.merge(op, worker.failures[op.ordinal()], Long::sum);
+            }
+        }
+        double seconds = elapsedNanos / 1e9;
+        System.out.println("压测结果（用时 " + String.format("%.1f", seconds) + " 秒）");
+        System.out.println(String.format("  %-8s %10s %10s %10s %10s %10s %8s",
+                "操作", "次数", "次/秒", "p50(ms)", "p99(ms)", "max(ms)", "失败"));
+        for (Map.Entry<Op, LatencyHistogram> entry : byOp.entrySet()) {
+            printRow(entry.getKey().name().toLowerCase(), entry.getValue(), seconds, failures.get(entry.getKey()));
+        }
+        long totalFailures = 0;
+        for (long f : failures.values()) {
+            totalFailures += f;
+        }
+        printRow("total", overall, seconds, totalFailures);
+    }
+
+    private static void printRow(String name, LatencyHistogram h, double seconds, long failures) {
+        System.out.println(String.format("  %-8s %10d %10.0f %10.3f %10.3f %10.3f %8d", name, h.count(),
+                h.count() / seconds, h.percentile(0.50) / 1e6, h.percentile(0.99) / 1e6, h.max() / 1e6, failures));
+    }
+
+    /**
+     * 单个压测线程：按比例随机选择操作，记录每次调用的耗时
+     */
+    private final class Worker implements Runnable {
+        final LatencyHistogram[] histograms = new LatencyHistogram[Op.values().length];
+        final long[] failures = new long[Op.values().length];
+        private final SplittableRandom random;
+        private final int[] ids;
+        private final Op[] ops;
+        private final int[] cumulative;
+        private final int weightSum;
+        private final CountDownLatch startSignal;
+        volatile long deadline;
+
+        Worker(int index, int[] ids, Op[] ops, int[] cumulative, int weightSum, CountDownLatch startSignal) {
+            this.random = new SplittableRandom(0x5DEECE66DL * (index + 1));
+            this.ids = ids;
+            this.ops = ops;
+            this.cumulative = cumulative;
+            this.weightSum = weightSum;
+            this.startSignal = startSignal;
+            for (int i = 0; i < histograms.length; i++) {
+                histograms[i] = new LatencyHistogram();
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                startSignal.await();
+            } catch (InterruptedException e) {
+                return;
+            }
+            while (true) {
+                long begin = System.nanoTime();
+                if (begin >= deadline) {
+                    return;
+                }
+                Op op = pick();
+                boolean ok;
+                try {
+                    ok = perform(op);
+                } catch (RuntimeException e) {
+                    ok = false;
+                }
+                long elapsed = System.nanoTime() - begin;
+                histograms[op.ordinal()].record(elapsed);
+                if (!ok) {
+                    failures[op.ordinal()]++;
+                }
+            }
+        }
+
+        private Op pick() {
+            int r = random.nextInt(weightSum);
+            for (int i = 0; i < ops.length; i++) {
+                if (r < cumulative[i]) {
+                    return ops[i];
+                }
+            }
+            return ops[ops.length - 1];
+        }
+
+        private int randomId() {
+            return ids.length == 0 ? 0 : ids[random.nextInt(ids.length)];
+        }
+
+        private boolean perform(Op op) {
+            switch (op) {
+                case GET:
+                    return service.getContact(randomId()) != null;
+                case SEARCH: {
+                    // 一半按姓名前缀（姓氏加一个字），一半按号段查询，与人工查询的习惯相近
+                    Contact sample = generator.generate(random.nextLong(Math.max(1, nextGenerated.get())));
+                    String keyword = random.nextBoolean()
+                            ? sample.getName().substring(0, Math.min(2, sample.getName().length()))
+                            : sample.getPhone().substring(0, 7);
+                    service.searchContacts(keyword);
+                    return true;
+                }
+                case LIST:
+                    service.getAllContacts();
+                    return true;
+                case ADD: {
+                    Contact contact = generator.generate(nextGenerated.getAndIncrement());
+                    return service.addContact(contact.getName(), contact.getPhone(), contact.getEmail(),
+                            contact.getAddress(), contact.isBlacklisted());
+                }
+                case UPDATE: {
+                    Contact source = generator.generate(random.nextLong(Math.max(1, nextGenerated.get())));
+                    return service.updateContact(randomId(), null, source.getPhone(), null, null,
+                            source.isBlacklisted());
+                }
+                default:
+                    return service.deleteContact(randomId());
+            }
+        }
+    }
+
+    /**
+     * 延迟直方图：对数分桶（每个 2 的幂区间再分 32 格），相对误差约 3%，记录与合并都不需要保存每个样本
+     */
+    static final class LatencyHistogram {
+        private static final int SUB_BITS = 5;
+        private static final int SUB_COUNT = 1 << SUB_BITS;
+
+        private final long[] counts = new long[64 * SUB_COUNT];
+        private long count;
+        private long max;
+
+        void record(long nanos) {
+            long value = Math.max(0, nanos);
+            counts[index(value)]++;
+            count++;
+            if (value > max) {
+                max = value;
+            }
+        }
+
+        void add(LatencyHistogram other) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += other.counts[i];
+            }
+            count += other.count;
+            max = Math.max(max, other.max);
+        }
+
+        long count() {
+            return count;
+        }
+
+        long max() {
+            return max;
+        }
+
+        /**
+         * 分位数（纳秒），取所在桶的上界
+         */
+        long percentile(double p) {
+            if (count == 0) {
+                return 0;
+            }
+            long target = Math.max(1, (long) Math.ceil(p * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= target) {
+                    return Math.min(max, lowerBound(i + 1) - 1);
+                }
+            }
+            return max;
+        }
+
+        private static int index(long value) {
+            if (value < 2 * SUB_COUNT) {
+                return (int) value;
+            }
+            int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+            return (shift + 1) * SUB_COUNT + (int) ((value >>> shift) - SUB_COUNT);
+        }
+
+        private static long lowerBound(int index) {
+            if (index < 2 * SUB_COUNT) {
+                return index;
+            }
+            int shift = index / SUB_COUNT - 1;
+            return (long) (SUB_COUNT + index % SUB_COUNT) << shift;
+        }
+    }
+}
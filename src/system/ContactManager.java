@@ -8,9 +8,30 @@ import java.util.regex.*;
  */
 public class ContactManager {
     private static Scanner scanner = new Scanner(System.in);
-    private static ContactService service = new ContactService();
+    private static ContactService service = ContactService.getShared();
     
     public static void main(String[] args) {
+        if (args.length > 0) {
+            List<String> options = Arrays.asList(args);
+            if (options.contains("--generate")) {
+                // 生成模拟数据，例如 --generate 1000000 --out contacts.csv
+                System.exit(ContactDataGenerator.run(args));
+            }
+            if (options.contains("--load")) {
+                // 并发压测，例如 --load 60 --rows 1000000 --threads 16
+                System.exit(ContactLoadRunner.run(args));
+            }
+            if (options.contains("--coherence")) {
+                // 跨实例缓存一致性检查，例如 --coherence --url jdbc:mysql://... --timeout 5
+                System.exit(ContactCoherenceCheck.run(args));
+            }
+            if (options.contains("--import")) {
+                // 导入 vCard / CSV 文件，例如 --import contacts.vcf --threads 8
+                System.exit(ContactImporter.run(args));
+            }
+            // 带参数启动时进入非交互批处理模式，例如 --batch commands.csv
+            System.exit(ContactBatchRunner.run(args));
+        }
         System.out.println("欢迎使用 Java 通讯录管理系统");
         while (true) {
             showMenu();
@@ -34,6 +55,12 @@ public class ContactManager {
                 case 6:
                     searchContacts(); // Added search option
                     break;
+                case 7:
+                    undoDelete();
+                    break;
+                case 8:
+                    searchArchived();
+                    break;
                 case 0:
                     System.out.println("退出系统，感谢使用！");
                     System.exit(0);
@@ -55,6 +82,8 @@ public class ContactManager {
         System.out.println("4. 查询联系人 (按ID)");
         System.out.println("5. 列出所有联系人");
         System.out.println("6. 搜索联系人 (按姓名或电话)"); // Added search option
+        System.out.println("7. 撤销最近一次删除");
+        System.out.println("8. 搜索已归档的联系人");
         System.out.println("0. 退出系统");
         System.out.println("================================");
         System.out.print("请选择操作：");
@@ -114,6 +143,18 @@ public class ContactManager {
         }
     }
     
+    /**
+     * 撤销最近一次删除操作（软删除的联系人在被后台清理前可恢复）
+     */
+    private static void undoDelete() {
+        int restored = service.undoLastDelete();
+        if (restored > 0) {
+            System.out.println("已恢复 " + restored + " 个联系人！");
+        } else {
+            System.out.println("没有可撤销的删除，或联系人已被彻底清除！");
+        }
+    }
+
     /**
      * 修改联系人操作
      */
@@ -182,6 +223,7 @@ public class ContactManager {
      */
     private static void listContacts() {
         List<Contact> list = service.getAllContacts();
+        warnIfOffline();
         if (list.isEmpty()) {
             System.out.println("暂无联系人数据！");
         } else {
@@ -192,6 +234,15 @@ public class ContactManager {
         }
     }
 
+    /**
+     * 数据库不可用时提示以下数据来自本地快照
+     */
+    private static void warnIfOffline() {
+        if (!service.isDatabaseAvailable()) {
+            System.out.println("（数据库暂不可用，以下为本地快照中的数据，可能不是最新；修改操作暂不可用）");
+        }
+    }
+
     /**
      * 搜索联系人操作
      */
@@ -199,6 +250,7 @@ public class ContactManager {
         System.out.print("请输入搜索关键字 (姓名或电话)：");
         String keyword = scanner.nextLine();
         List<Contact> results = service.searchContacts(keyword);
+        warnIfOffline();
         if (results.isEmpty()) {
             System.out.println("未找到匹配的联系人！");
         } else {
@@ -208,4 +260,36 @@ public class ContactManager {
             }
         }
     }
+
+    /**
+     * 在归档（长期未访问或已拉黑的联系人）中搜索；按编号查询时自动移回
+     */
+    private static void searchArchived() {
+        System.out.print("请输入搜索关键字 (姓名或电话)：");
+        String keyword = scanner.nextLine();
+        List<Contact> results = service.searchArchivedContacts(keyword);
+        if (results.isEmpty()) {
+            System.out.println("归档中未找到匹配的联系人！");
+        } else {
+            System.out.println("归档中的搜索结果：");
+            for (Contact c : results) {
+                System.out.println(c);
+            }
+            System.out.print("请输入要移回的联系人编号（直接回车跳过）：");
+            String input = scanner.nextLine().trim();
+            if (input.isEmpty()) {
+                return;
+            }
+            try {
+                Contact restored = service.restoreArchivedContact(Integer.parseInt(input));
+                if (restored != null) {
+                    System.out.println("已移回：" + restored);
+                } else {
+                    System.out.println("该联系人不在归档中或移回失败！");
+                }
+            } catch (NumberFormatException e) {
+                System.out.println("请输入有效的数字编号！");
+            }
+        }
+    }
 }
\ No newline at end of file
@@ -1,14 +1,18 @@
 package system;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import javax.swing.table.DefaultTableModel;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.MouseAdapter;
 import java.awt.event.MouseEvent;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
+import java.util.Vector;
 
 /**
  * 通讯录管理系统GUI主类，负责用户界面展示和交互
@@ -19,8 +23,10 @@ public class ContactManagerGUI extends JFrame {
     
     // 界面组件
     private JTable contactTable;
-    private DefaultTableModel tableModel;
+    private ContactTableModel tableModel;
+    private ContactTableSorter tableSorter;
     private JTextField searchField;    //输入搜索关键词的文本框
+    private JTextField filterField;    //在当前表格结果中快速筛选的文本框
     private JTextField nameField;      //输入或编辑联系人姓名的文本框。
     private JTextField phoneField;     //输入或编辑联系人电话的文本框。
     private JTextField emailField;
@@ -35,14 +41,32 @@ public class ContactManagerGUI extends JFrame {
     // 用于标识当前选中的联系人ID，常见于联系人管理、表格操作等场景
     private int selectedContactId = -1;
 
+    // 窗口创建时间与是否已记录首次渲染耗时，用于统计打开窗口到表格出数据的时间
+    private final long createdNanos = System.nanoTime();
+    private boolean firstRenderLogged = false;
+
+    // 搜索时先显示的常用联系人候选数；搜索序号用于丢弃已被新搜索取代的完整结果
+    private static final int SUGGESTION_LIMIT = 10;
+    private int searchSequence = 0;
+    // 选中一行时向上、向下各预读的行数（只在需要访问数据库时生效）
+    private static final int NEIGHBOUR_PREFETCH = 20;
+
     /**
      * 构造函数，初始化GUI和业务服务
      */
     public ContactManagerGUI() {
-        service = new ContactService();
+        service = ContactService.getShared(); // 使用共享服务，切换界面时不再重新连接数据库
         initializeGUI();   //初始化图形用户界面（GUI），例如创建窗口、按钮、表格等组件
+        ContactEdtMonitor monitor = ContactEdtMonitor.get();
+        if (monitor != null) {
+            monitor.attachOverlay(this); // 界面响应调试浮层，Ctrl+Shift+D 显示
+        }
         loadAllContacts();  //从数据库加载所有联系人
         setVisible(false); // 初始时不显示主界面
+        if (!service.isReconciled()) {
+            // 当前数据可能来自本地快照，后台同步完成后刷新表格
+            service.warmUpAsync().thenRun(() -> SwingUtilities.invokeLater(this::refreshTable));
+        }
     }
 
     /**
@@ -155,11 +179,33 @@ public class ContactManagerGUI extends JFrame {
         showAllButton.addActionListener(e -> loadAllContacts());
         searchField.addActionListener(e -> searchContacts());
 
+        // 快速筛选：输入时即时过滤当前表格中的行，不重新查询
+        JLabel filterLabel = new JLabel("筛选：");
+        filterField = new JTextField(12);
+        filterField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                tableSorter.setFilterText(filterField.getText());
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                tableSorter.setFilterText(filterField.getText());
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                tableSorter.setFilterText(filterField.getText());
+            }
+        });
+
         // 添加组件到面板
         panel.add(searchLabel);
         panel.add(searchField);
         panel.add(searchButton);
         panel.add(showAllButton);
+        panel.add(filterLabel);
+        panel.add(filterField);
 
         return panel;
     }
@@ -173,16 +219,14 @@ public class ContactManagerGUI extends JFrame {
         panel.setBackground(new Color(250, 250, 250));
 
         // 创建表格模型
-        String[] columnNames = {"ID", "姓名", "电话", "邮箱", "地址", "黑名单"};
-        tableModel = new DefaultTableModel(columnNames, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false;
-            }
-        };
+        // 列表只显示摘要，邮箱、地址与黑名单状态在选中某行后读取详情填入下方输入框
+        String[] columnNames = {"ID", "姓名", "电话"};
+        tableModel = new ContactTableModel(columnNames);
 
-        // 创建表格并设置样式
+        // 创建表格并设置样式，点击列头排序（排序在后台线程上进行）
         contactTable = new JTable(tableModel);
+        tableSorter = new ContactTableSorter(tableModel);
+        contactTable.setRowSorter(tableSorter);
         contactTable.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
         contactTable.setRowHeight(30);
         contactTable.setFont(new Font("微软雅黑", Font.PLAIN, 12));
@@ -193,9 +237,6 @@ public class ContactManagerGUI extends JFrame {
         contactTable.getColumnModel().getColumn(0).setPreferredWidth(50);  // ID列
         contactTable.getColumnModel().getColumn(1).setPreferredWidth(100); // 姓名
         contactTable.getColumnModel().getColumn(2).setPreferredWidth(120); // 电话
-        contactTable.getColumnModel().getColumn(3).setPreferredWidth(200); // 邮箱
-        contactTable.getColumnModel().getColumn(4).setPreferredWidth(200); // 地址
-        contactTable.getColumnModel().getColumn(5).setPreferredWidth(80);  // 黑名单
 
         // 添加表格点击事件
         contactTable.addMouseListener(new MouseAdapter() {
@@ -339,11 +380,12 @@ public class ContactManagerGUI extends JFrame {
     private void selectContact() {
         int selectedRow = contactTable.getSelectedRow();
         if (selectedRow >= 0) {
-            // 从表格中获取ID
-            selectedContactId = Integer.parseInt(tableModel.getValueAt(selectedRow, 0).toString());
+            // 从表格中获取ID（视图行号需转换为模型行号）
+            int modelRow = contactTable.convertRowIndexToModel(selectedRow);
+            selectedContactId = Integer.parseInt(tableModel.getValueAt(modelRow, 0).toString());
             
-            // 从数据库获取完整的联系人信息
-            Contact contact = service.getContact(selectedContactId);
+            // 获取完整的联系人信息；需要访问数据库时顺带预读表格中相邻的行
+            Contact contact = service.getContactDetail(selectedContactId, neighbourIds(selectedRow));
             if (contact != null) {
                 nameField.setText(contact.getName());
                 phoneField.setText(contact.getPhone());
@@ -354,6 +396,22 @@ public class ContactManagerGUI extends JFrame {
         }
     }
 
+    /**
+     * 视图中与指定行相邻的联系人编号，由近及远交替向下、向上
+     */
+    private List<Integer> neighbourIds(int viewRow) {
+        List<Integer> ids = new ArrayList<>(2 * NEIGHBOUR_PREFETCH);
+        int rows = contactTable.getRowCount();
+        for (int distance = 1; distance <= NEIGHBOUR_PREFETCH; distance++) {
+            for (int row : new int[] {viewRow + distance, viewRow - distance}) {
+                if (row >= 0 && row < rows) {
+                    ids.add(Integer.parseInt(tableModel.getValueAt(contactTable.convertRowIndexToModel(row), 0).toString()));
+                }
+            }
+        }
+        return ids;
+    }
+
     /**
      * 添加联系人
      */
@@ -383,7 +441,7 @@ public class ContactManagerGUI extends JFrame {
             loadAllContacts();
             clearFields();
         } else {
-            JOptionPane.showMessageDialog(this, "联系人添加失败，请检查输入格式！", "错误", JOptionPane.ERROR_MESSAGE);
+            JOptionPane.showMessageDialog(this, writeFailure("联系人添加失败，请检查输入格式！"), "错误", JOptionPane.ERROR_MESSAGE);
         }
     }
 
@@ -423,7 +481,7 @@ public class ContactManagerGUI extends JFrame {
             clearFields();
             selectedContactId = -1;
         } else {
-            JOptionPane.showMessageDialog(this, "联系人更新失败，请检查输入格式！", "错误", JOptionPane.ERROR_MESSAGE);
+            JOptionPane.showMessageDialog(this, writeFailure("联系人更新失败，请检查输入格式！"), "错误", JOptionPane.ERROR_MESSAGE);
         }
     }
 
@@ -448,7 +506,7 @@ public class ContactManagerGUI extends JFrame {
                 clearFields();
                 selectedContactId = -1;
             } else {
-                JOptionPane.showMessageDialog(this, "联系人删除失败！", "错误", JOptionPane.ERROR_MESSAGE);
+                JOptionPane.showMessageDialog(this, writeFailure("联系人删除失败！"), "错误", JOptionPane.ERROR_MESSAGE);
             }
         }
     }
@@ -466,14 +524,43 @@ public class ContactManagerGUI extends JFrame {
         contactTable.clearSelection();
     }
 
+    /**
+     * 在标题中标明数据是否可能过期：数据库不可用时显示的是本地快照，只能查看
+     */
+    private void updateTitle() {
+        if (!service.isDatabaseAvailable()) {
+            setTitle("Java 通讯录管理系统（数据库不可用，只读，数据可能不是最新）");
+        } else if (service.isStale()) {
+            setTitle("Java 通讯录管理系统（尚未与数据库同步）");
+        } else {
+            setTitle("Java 通讯录管理系统");
+        }
+    }
+
+    /**
+     * 写操作失败的提示：数据库不可用时说明当前为只读模式，而不是提示检查输入
+     */
+    private String writeFailure(String message) {
+        return service.isDatabaseAvailable() ? message : "数据库暂不可用，当前为只读模式，请稍后重试";
+    }
+
     /**
      * 加载所有联系人到表格
      */
     private void loadAllContacts() {
-        List<Contact> contacts = service.getAllContacts();
+        List<ContactSummary> contacts = service.listSummaries();
         updateTable(contacts);
     }
 
+    /**
+     * 按当前搜索条件重新加载表格（搜索框为空时显示全部）
+     */
+    private void refreshTable() {
+        String keyword = searchField.getText().trim();
+        searchSequence++; // 尚未返回的后台搜索结果不再覆盖表格
+        updateTable(keyword.isEmpty() ? service.listSummaries() : service.searchSummariesByFrequency(keyword));
+    }
+
     /**
      * 搜索联系人
      */
@@ -484,25 +571,87 @@ public class ContactManagerGUI extends JFrame {
             return;
         }
 
-        List<Contact> results = service.searchContacts(keyword);
-        updateTable(results);
+        // 先在常用联系人中给出候选，完整结果（常用的排在前面）在后台查询完成后替换
+        long started = System.nanoTime();
+        int sequence = ++searchSequence;
+        List<ContactSummary> suggestions = new ArrayList<>();
+        for (Contact contact : service.suggestContacts(keyword, SUGGESTION_LIMIT)) {
+            suggestions.add(ContactSummary.of(contact));
+        }
+        if (!suggestions.isEmpty()) {
+            updateTable(suggestions);
+            recordSearchRender(started, true);
+        }
+        service.async().submit(() -> service.searchSummariesByFrequency(keyword), 0)
+                .whenComplete((results, error) -> SwingUtilities.invokeLater(() -> {
+                    if (sequence != searchSequence) {
+                        return;
+                    }
+                    if (error != null) {
+                        JOptionPane.showMessageDialog(this, "搜索失败: " + error.getMessage(), "错误",
+                                JOptionPane.ERROR_MESSAGE);
+                        return;
+                    }
+                    updateTable(results);
+                    recordSearchRender(started, false);
+                }));
+    }
+
+    /**
+     * 排到绘制之后再记录搜索到结果可见的时间
+     */
+    private static void recordSearchRender(long started, boolean first) {
+        ContactEdtMonitor monitor = ContactEdtMonitor.get();
+        if (monitor != null) {
+            SwingUtilities.invokeLater(() -> monitor.recordSearchRender(System.nanoTime() - started, first));
+        }
     }
 
     /**
      * 更新表格数据
      */
-    private void updateTable(List<Contact> contacts) {
-        tableModel.setRowCount(0); // 清空表格内容
-        for (Contact contact : contacts) {
-            Object[] row = {
-                contact.getId(),        // ID
-                contact.getName(),      // 姓名
-                contact.getPhone(),     // 电话
-                contact.getEmail() != null ? contact.getEmail() : "", // 邮箱
-                contact.getAddress() != null ? contact.getAddress() : "", // 地址
-                contact.isBlacklisted() ? "是" : "否" // 黑名单状态
-            };
-            tableModel.addRow(row);
+    private void updateTable(List<ContactSummary> contacts) {
+        Vector<Vector<Object>> data = new Vector<>(contacts.size());
+        for (ContactSummary contact : contacts) {
+            Vector<Object> row = new Vector<>(3);
+            row.add(contact.getId());        // ID
+            row.add(contact.getName());      // 姓名
+            row.add(contact.getPhone());     // 电话
+            data.add(row);
+        }
+        // 整体替换表格内容，只触发一次表格变化事件（逐行添加会让排序器逐行重建）
+        tableModel.replaceRows(data);
+        updateTitle();
+        if (!firstRenderLogged) {
+            firstRenderLogged = true;
+            int rows = contacts.size();
+            boolean fromDatabase = service.isReconciled();
+            // 排到绘制之后再计时，得到打开窗口到表格可见的时间
+            SwingUtilities.invokeLater(() -> System.out.println("首次表格渲染耗时: "
+                    + (System.nanoTime() - createdNanos) / 1_000_000 + " ms（" + rows + " 行，数据来源："
+                    + (fromDatabase ? "数据库" : "本地快照") + "）"));
+        }
+    }
+
+    /**
+     * 联系人表格模型：单元格不可编辑，支持整体替换全部行
+     */
+    private static class ContactTableModel extends DefaultTableModel {
+        private static final long serialVersionUID = 1L;
+
+        ContactTableModel(String[] columnNames) {
+            super(columnNames, 0);
+        }
+
+        @Override
+        public boolean isCellEditable(int row, int column) {
+            return false;
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        void replaceRows(Vector<Vector<Object>> rows) {
+            dataVector = (Vector) rows;
+            fireTableDataChanged();
         }
     }
 
@@ -510,6 +659,9 @@ public class ContactManagerGUI extends JFrame {
      * 创建并显示启动闪屏界面
      */
     private static void createAndShowSplashScreen() {
+        // 闪屏显示期间在后台加载本地快照并同步数据库
+        ContactService.getShared().warmUpAsync();
+
     	 // 创建启动页面
         JFrame splashFrame = new JFrame("Java 通讯录管理系统");
         splashFrame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -736,6 +888,8 @@ public class ContactManagerGUI extends JFrame {
         } catch (Exception e) {
             e.printStackTrace();
         }
+        // 监控界面线程的响应时间，处理过久时输出调用栈
+        ContactEdtMonitor.install();
 
         SwingUtilities.invokeLater(() -> {
             // 创建启动页面
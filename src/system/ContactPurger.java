@@ -0,0 +1,97 @@
+package system;
+
+import java.sql.SQLException;
+
+/**
+ * ContactPurger 类：软删除模式下在后台物理删除墓碑（deleted_at 不为空的联系人）及其标签
+ * 删除时联系人已从内存副本与各索引中移除，这里只清理数据库，不影响缓存。
+ * 只清理超过保留时间（撤销窗口）的墓碑；每轮每个分片最多删除一小批，两轮之间至少间隔一段时间，
+ * 即删除速率不超过 批量 / 间隔，避免长事务和大范围锁影响正常读写。
+ * 一轮删满一批说明还有积压，按固定间隔继续；否则空闲等待，间隔逐步加长到上限。
+ *
+ * 配置（系统属性）：
+ *   contact.softDelete            是否启用软删除，默认 true
+ *   contact.purge.intervalMs      两批之间的间隔，默认 1000
+ *   contact.purge.batchSize       每批每个分片最多删除的联系人数，默认 100
+ *   contact.purge.graceMinutes    墓碑保留时间（可撤销的时间），默认 10
+ */
+class ContactPurger {
+
+    private static final long INTERVAL_MILLIS = Math.max(1, Long.getLong("contact.purge.intervalMs", 1000));
+    private static final int BATCH_SIZE = Math.max(1, Integer.getInteger("contact.purge.batchSize", 100));
+    private static final long GRACE_MILLIS = Long.getLong("contact.purge.graceMinutes", 10) * 60_000;
+    // 没有积压时的最长等待时间
+    private static final long IDLE_MILLIS = Math.max(INTERVAL_MILLIS, Math.min(GRACE_MILLIS / 4, 60_000));
+
+    private final ContactDao dao;
+    private volatile Thread thread;
+    private volatile long purgedCount;
+
+    ContactPurger(ContactDao dao) {
+        this.dao = dao;
+    }
+
+    synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        Thread worker = new Thread(this::run, "contact-purger");
+        worker.setDaemon(true);
+        worker.setPriority(Thread.MIN_PRIORITY);
+        thread = worker;
+        worker.start();
+    }
+
+    synchronized void stop() {
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    /**
+     * 已物理删除的联系人数
+     */
+    long getPurgedCount() {
+        return purgedCount;
+    }
+
+    /**
+     * 清理一批到期的墓碑
+     * @return 本批删除的联系人数
+     */
+    int purgeOnce() throws SQLException {
+        int purged = dao.purgeDeleted(System.currentTimeMillis() - GRACE_MILLIS, BATCH_SIZE);
+        purgedCount += purged;
+        return purged;
+    }
+
+    private void run() {
+        long interval = INTERVAL_MILLIS;
+        boolean failing = false;
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                int purged = purgeOnce();
+                if (failing) {
+                    System.out.println("墓碑清理已恢复");
+                    failing = false;
+                }
+                // 删满一批（可能是多个分片合计）说明还有积压
+                interval = purged >= BATCH_SIZE ? INTERVAL_MILLIS : Math.min(interval * 2, IDLE_MILLIS);
+                Thread.sleep(interval);
+            } catch (SQLException e) {
+                if (!failing) {
+                    System.err.println("清理已删除的联系人失败，稍后重试: " + e.getMessage());
+                    failing = true;
+                }
+                try {
+                    Thread.sleep(IDLE_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+}
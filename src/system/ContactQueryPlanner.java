@@ -0,0 +1,153 @@
+package system;
+
+import java.util.*;
+
+/**
+ * ContactQueryPlanner 类：为 ContactFilter 选择执行方式
+ * 内存数据可用时，能由内存索引回答的条件先取候选编号，其余条件在候选或全表上流式过滤；
+ * 内存数据不可用时，能翻译为 SQL 的条件下推到 WHERE，其余条件在读取结果集时过滤。
+ * 两种方式都在达到 LIMIT 后立即停止。
+ */
+class ContactQueryPlanner {
+
+    /**
+     * 访问路径
+     */
+    enum Access {
+        INDEX("内存索引"), MEMORY_SCAN("内存顺序扫描"), SQL("数据库查询");
+
+        final String label;
+
+        Access(String label) {
+            this.label = label;
+        }
+    }
+
+    /**
+     * 查询计划
+     */
+    static final class Plan {
+        final Access access;
+        final List<ContactFilter> indexConditions = new ArrayList<>();
+        final List<ContactIndex> indexUsed = new ArrayList<>();
+        final List<ContactFilter> pushed = new ArrayList<>();
+        final List<ContactFilter> residual = new ArrayList<>();
+        final List<Object> params = new ArrayList<>();
+        String where;
+        final int limit;
+
+        Plan(Access access, int limit) {
+            this.access = access;
+            this.limit = limit;
+        }
+
+        boolean hasLimit() {
+            return limit > 0;
+        }
+
+        /**
+         * 需要在读取后逐行判断的条件，没有时返回 null
+         */
+        ContactFilter residualFilter() {
+            if (residual.isEmpty()) {
+                return null;
+            }
+            return residual.size() == 1 ? residual.get(0) : new ContactFilter.And(residual);
+        }
+
+        /**
+         * 以文本形式描述执行计划，租户编号以 ? 表示
+         */
+        String explain() {
+            return explain("?");
+        }
+
+        /**
+         * 以文本形式描述执行计划
+         * @param tenant 执行查询的租户编号，作为第一个绑定参数显示
+         */
+        String explain(String tenant) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("查询计划\n");
+            sb.append("  访问路径: ").append(access.label).append('\n');
+            for (int i = 0; i < indexConditions.size(); i++) {
+                sb.append("  索引查找: ").append(indexUsed.get(i).getName())
+                  .append(" <- ").append(indexConditions.get(i)).append('\n');
+            }
+            if (access == Access.SQL) {
+                sb.append("  SQL: ").append(ContactDao.querySql(where)).append('\n');
+                List<Object> bound = new ArrayList<>(params.size() + 1);
+                bound.add(tenant);
+                bound.addAll(params);
+                sb.append("  绑定参数: ").append(bound).append('\n');
+            } else if (access == Access.MEMORY_SCAN) {
+                sb.append("  扫描顺序: 按姓名排序的内存视图\n");
+            } else {
+                sb.append("  候选合并: 位图求交集，候选较多时按姓名视图顺序过滤，否则逐个查找后按姓名排序\n");
+            }
+            sb.append("  后置过滤: ").append(residual.isEmpty() ? "无" : String.valueOf(residualFilter())).append('\n');
+            sb.append("  LIMIT: ").append(hasLimit() ? limit + "（达到后停止读取）" : "无");
+            return sb.toString();
+        }
+
+        @Override
+        public String toString() {
+            return explain();
+        }
+    }
+
+    /**
+     * 生成执行计划
+     * @param filter 过滤条件
+     * @param limit 最多返回条数，小于等于 0 表示不限制
+     * @param memoryAvailable 内存中是否有完整的联系人副本
+     * @param indexes 可用的内存索引
+     */
+    Plan plan(ContactFilter filter, int limit, boolean memoryAvailable, List<ContactIndex> indexes) {
+        List<ContactFilter> conjuncts = filter.conjuncts();
+        if (memoryAvailable) {
+            List<ContactFilter> indexConditions = new ArrayList<>();
+            List<ContactIndex> indexUsed = new ArrayList<>();
+            List<ContactFilter> residual = new ArrayList<>();
+            for (ContactFilter conjunct : conjuncts) {
+                ContactIndex index = findIndex(conjunct, indexes);
+                if (index != null) {
+                    indexConditions.add(conjunct);
+                    indexUsed.add(index);
+                } else {
+                    residual.add(conjunct);
+                }
+            }
+            Plan plan = new Plan(indexConditions.isEmpty() ? Access.MEMORY_SCAN : Access.INDEX, limit);
+            plan.indexConditions.addAll(indexConditions);
+            plan.indexUsed.addAll(indexUsed);
+            plan.residual.addAll(residual);
+            return plan;
+        }
+
+        Plan plan = new Plan(Access.SQL, limit);
+        List<String> clauses = new ArrayList<>();
+        for (ContactFilter conjunct : conjuncts) {
+            String sql = conjunct.toSql(plan.params);
+            if (sql != null) {
+                clauses.add(sql);
+                plan.pushed.add(conjunct);
+            } else {
+                plan.residual.add(conjunct);
+            }
+        }
+        if (!clauses.isEmpty()) {
+            plan.where = String.join(" AND ", clauses);
+        }
+        return plan;
+    }
+
+    private static ContactIndex findIndex(ContactFilter condition, List<ContactIndex> indexes) {
+        for (ContactIndex index : indexes) {
+            if (index.supports(condition)) {
+                return index;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,411 @@
+package system;
+
+import java.io.*;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.sql.*;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ContactQueryTracer 类：慢查询日志
+ * ContactDao 取得的每个连接都经过本类包装，逐条语句记录执行与读取结果所用的时间；
+ * 超过阈值的语句连同绑定参数（可脱敏）、影响或返回的行数、获取连接的等待时间写入本地日志文件，
+ * 每种语句首次变慢时另外执行一次 EXPLAIN 记下执行计划。执行失败的语句无论快慢都会记录。
+ * 未超过阈值时只多出计时与保存参数引用的开销；阈值为负数时不做包装。
+ *
+ * 配置（系统属性）：
+ *   contact.slowQuery.thresholdMs  阈值毫秒数，默认 200，负数表示关闭
+ *   contact.slowQuery.file         日志文件，默认 contact-slow-query.log
+ *   contact.slowQuery.maxBytes     单个文件的最大字节数，超过后轮转，默认 10 MB
+ *   contact.slowQuery.files        保留的历史文件数（.1 ~ .N），默认 5
+ *   contact.slowQuery.mask         是否对字符串参数脱敏，默认 false
+ */
+class ContactQueryTracer {
+
+    // 最多为多少种不同的语句记录执行计划
+    private static final int MAX_EXPLAINED = 1000;
+
+    private static volatile ContactQueryTracer shared;
+
+    private final long thresholdNanos;
+    private final File file;
+    private final long maxBytes;
+    private final int maxFiles;
+    private final boolean mask;
+
+    private final Set<String> explained = ConcurrentHashMap.newKeySet();
+    private final AtomicLong slowCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private Writer writer;
+    private long written;
+
+    ContactQueryTracer(long thresholdMillis, File file, long maxBytes, int maxFiles, boolean mask) {
+        this.thresholdNanos = thresholdMillis < 0 ? -1 : thresholdMillis * 1_000_000;
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.maxFiles = Math.max(0, maxFiles);
+        this.mask = mask;
+    }
+
+    /**
+     * 进程内共享的实例，按系统属性配置，所有 DAO 写入同一个日志文件
+     */
+    static ContactQueryTracer getShared() {
+        if (shared == null) {
+            synchronized (ContactQueryTracer.class) {
+                if (shared == null) {
+                    shared = new ContactQueryTracer(
+                            Long.getLong("contact.slowQuery.thresholdMs", 200),
+                            new File(System.getProperty("contact.slowQuery.file", "contact-slow-query.log")),
+                            Long.getLong("contact.slowQuery.maxBytes", 10L << 20),
+                            Integer.getInteger("contact.slowQuery.files", 5),
+                            Boolean.getBoolean("contact.slowQuery.mask"));
+                }
+            }
+        }
+        return shared;
+    }
+
+    boolean isEnabled() {
+        return thresholdNanos >= 0;
+    }
+
+    long getSlowCount() {
+        return slowCount.get();
+    }
+
+    long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * 包装连接，之后通过它创建的语句都会被计时
+     * @param waitNanos 获取该连接所用的时间，超过阈值时单独记录一条
+     */
+    Connection wrap(Connection conn, long waitNanos) {
+        if (!isEnabled()) {
+            return conn;
+        }
+        ConnectionHandler handler = new ConnectionHandler(conn, waitNanos);
+        if (waitNanos >= thresholdNanos) {
+            write(header("获取连接慢", waitNanos, 0, handler.source()) + "\n");
+        }
+        return (Connection) Proxy.newProxyInstance(ContactQueryTracer.class.getClassLoader(),
+                new Class<?>[] {Connection.class}, handler);
+    }
+
+    private static Object invoke(Object target, Method method, Object[] args) throws Throwable {
+        try {
+            return method.invoke(target, args);
+        } catch (InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    private final class ConnectionHandler implements InvocationHandler {
+        final Connection target;
+        final long waitNanos;
+
+        ConnectionHandler(Connection target, long waitNanos) {
+            this.target = target;
+            this.waitNanos = waitNanos;
+        }
+
+        /**
+         * 连接来源（主库或副本的地址），只在写日志时获取
+         */
+        String source() {
+            try {
+                return target.getMetaData().getURL();
+            } catch (SQLException | RuntimeException e) {
+                return "未知";
+            }
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            Object result = ContactQueryTracer.invoke(target, method, args);
+            String name = method.getName();
+            if (name.equals("prepareStatement") && result instanceof PreparedStatement) {
+                return Proxy.newProxyInstance(ContactQueryTracer.class.getClassLoader(),
+                        new Class<?>[] {PreparedStatement.class},
+                        new StatementHandler((Statement) result, this, (String) args[0]));
+            }
+            if (name.equals("createStatement") && result instanceof Statement) {
+                return Proxy.newProxyInstance(ContactQueryTracer.class.getClassLoader(),
+                        new Class<?>[] {Statement.class}, new StatementHandler((Statement) result, this, null));
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 一条语句：保存绑定参数，计时每次执行；查询从执行开始计到结果集读完（或关闭）为止
+     */
+    private final class StatementHandler implements InvocationHandler {
+        final Statement target;
+        final ConnectionHandler connection;
+        final String preparedSql;
+        Object[] params = new Object[8];
+        int batchSize;
+
+        // 正在读取结果集的一次执行
+        String pendingSql;
+        long pendingNanos;
+        long pendingRows;
+
+        StatementHandler(Statement target, ConnectionHandler connection, String preparedSql) {
+            this.target = target;
+            this.connection = connection;
+            this.preparedSql = preparedSql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("execute")) {
+                finishPending();
+                return execute(method, args);
+            }
+            if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                finishPending();
+                int index = (Integer) args[0];
+                if (index >= params.length) {
+                    params = Arrays.copyOf(params, Math.max(index + 1, params.length * 2));
+                }
+                params[index] = name.equals("setNull") ? null : args[1];
+            } else if (name.equals("clearParameters")) {
+                Arrays.fill(params, null);
+            } else if (name.equals("addBatch")) {
+                batchSize++;
+            } else if (name.equals("clearBatch")) {
+                batchSize = 0;
+            } else if (name.equals("close")) {
+                finishPending();
+            }
+            return ContactQueryTracer.invoke(target, method, args);
+        }
+
+        private Object execute(Method method, Object[] args) throws Throwable {
+            String sql = preparedSql != null ? preparedSql : args != null && args.length > 0 && args[0] instanceof String
+                    ? (String) args[0] : "(批量语句)";
+            int batch = batchSize;
+            long start = System.nanoTime();
+            Object result;
+            try {
+                result = ContactQueryTracer.invoke(target, method, args);
+            } catch (SQLException e) {
+                failed(connection, sql, params, batch, System.nanoTime() - start, e);
+                throw e;
+            } finally {
+                if (method.getName().equals("executeBatch")) {
+                    batchSize = 0;
+                }
+            }
+            long elapsed = System.nanoTime() - start;
+            if (result instanceof ResultSet) {
+                pendingSql = sql;
+                pendingNanos = elapsed;
+                pendingRows = 0;
+                return Proxy.newProxyInstance(ContactQueryTracer.class.getClassLoader(),
+                        new Class<?>[] {ResultSet.class}, new ResultSetHandler((ResultSet) result, this));
+            }
+            long rows = -1;
+            if (result instanceof int[]) {
+                rows = 0;
+                for (int count : (int[]) result) {
+                    rows += Math.max(0, count);
+                }
+            } else if (result instanceof Number) {
+                rows = ((Number) result).longValue();
+            } else if (Boolean.FALSE.equals(result)) {
+                rows = target.getUpdateCount();
+            }
+            finished(connection, sql, params, batch, elapsed, rows);
+            return result;
+        }
+
+        void finishPending() {
+            if (pendingSql != null) {
+                String sql = pendingSql;
+                pendingSql = null;
+                finished(connection, sql, params, 0, pendingNanos, pendingRows);
+            }
+        }
+    }
+
+    /**
+     * 结果集：统计读取的行数与 next 所用时间，读完或关闭时结束本次执行的计时
+     */
+    private static final class ResultSetHandler implements InvocationHandler {
+        final ResultSet target;
+        final StatementHandler statement;
+
+        ResultSetHandler(ResultSet target, StatementHandler statement) {
+            this.target = target;
+            this.statement = statement;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.equals("next")) {
+                long start = System.nanoTime();
+                Object result = ContactQueryTracer.invoke(target, method, args);
+                statement.pendingNanos += System.nanoTime() - start;
+                if (Boolean.TRUE.equals(result)) {
+                    statement.pendingRows++;
+                } else {
+                    statement.finishPending();
+                }
+                return result;
+            }
+            if (name.equals("close")) {
+                statement.finishPending();
+            }
+            return ContactQueryTracer.invoke(target, method, args);
+        }
+    }
+
+    // ---------------------------------------------------------------- 记录
+
+    private void finished(ConnectionHandler connection, String sql, Object[] params, int batch, long nanos, long rows) {
+        if (nanos < thresholdNanos) {
+            return;
+        }
+        slowCount.incrementAndGet();
+        StringBuilder entry = new StringBuilder(header("慢查询", nanos, connection.waitNanos, connection.source()));
+        entry.append(" 行数 ").append(rows < 0 ? "未知" : String.valueOf(rows)).append('\n');
+        appendStatement(entry, sql, params, batch);
+        appendPlan(entry, connection.target, sql, params, batch);
+        write(entry.toString());
+    }
+
+    private void failed(ConnectionHandler connection, String sql, Object[] params, int batch, long nanos,
+                        SQLException error) {
+        failedCount.incrementAndGet();
+        StringBuilder entry = new StringBuilder(header("执行失败", nanos, connection.waitNanos, connection.source()));
+        entry.append(" 错误 ").append(error.getSQLState()).append(' ').append(error.getMessage()).append('\n');
+        appendStatement(entry, sql, params, batch);
+        write(entry.toString());
+    }
+
+    private static String header(String kind, long nanos, long waitNanos, String source) {
+        return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").format(new Date()) + " " + kind + " "
+                + nanos / 1_000_000 + " ms（等待连接 " + waitNanos / 1_000_000 + " ms） 数据源 " + source;
+    }
+
+    private void appendStatement(StringBuilder entry, String sql, Object[] params, int batch) {
+        entry.append("  SQL: ").append(sql).append('\n');
+        if (batch > 0) {
+            entry.append("  批量: ").append(batch).append(" 组参数，以下为最后一组\n");
+        }
+        StringBuilder bound = new StringBuilder();
+        for (int i = 1; i < params.length; i++) {
+            if (params[i] != null) {
+                bound.append(bound.length() == 0 ? "" : ", ").append('[').append(i).append("]=").append(format(params[i]));
+            }
+        }
+        if (bound.length() > 0) {
+            entry.append("  参数: ").append(bound).append('\n');
+        }
+    }
+
+    private String format(Object value) {
+        if (!(value instanceof String)) {
+            return String.valueOf(value);
+        }
+        String text = (String) value;
+        if (mask) {
+            // 保留首尾各一个字符，其余替换为 *，不暴露姓名、电话等内容
+            StringBuilder masked = new StringBuilder(text.length());
+            for (int i = 0; i < text.length(); i++) {
+                masked.append(text.length() > 2 && (i == 0 || i == text.length() - 1) ? text.charAt(i) : '*');
+            }
+            text = masked.toString();
+        }
+        return "'" + text + "'";
+    }
+
+    /**
+     * 每种语句第一次变慢时在同一连接上执行 EXPLAIN；EXPLAIN 本身不计入日志
+     */
+    private void appendPlan(StringBuilder entry, Connection conn, String sql, Object[] params, int batch) {
+        String verb = sql.trim().toUpperCase();
+        boolean explainable = verb.startsWith("SELECT") || verb.startsWith("UPDATE") || verb.startsWith("DELETE")
+                || verb.startsWith("INSERT") || verb.startsWith("REPLACE");
+        if (!explainable || explained.size() >= MAX_EXPLAINED || !explained.add(sql)) {
+            return;
+        }
+        entry.append("  执行计划:\n");
+        try (PreparedStatement explain = conn.prepareStatement("EXPLAIN " + sql)) {
+            int count = explain.getParameterMetaData().getParameterCount();
+            for (int i = 1; i <= count; i++) {
+                explain.setObject(i, i < params.length ? params[i] : null);
+            }
+            try (ResultSet rs = explain.executeQuery()) {
+                ResultSetMetaData meta = rs.getMetaData();
+                StringBuilder columns = new StringBuilder("    ");
+                for (int c = 1; c <= meta.getColumnCount(); c++) {
+                    columns.append(c > 1 ? " | " : "").append(meta.getColumnLabel(c));
+                }
+                entry.append(columns).append('\n');
+                while (rs.next()) {
+                    StringBuilder row = new StringBuilder("    ");
+                    for (int c = 1; c <= meta.getColumnCount(); c++) {
+                        row.append(c > 1 ? " | " : "").append(rs.getString(c));
+                    }
+                    entry.append(row).append('\n');
+                }
+            }
+        } catch (SQLException | RuntimeException e) {
+            entry.append("    无法获取执行计划: ").append(e.getMessage()).append('\n');
+        }
+    }
+
+    /**
+     * 追加到日志文件，超过大小上限时轮转：file → file.1 → file.2 ...，最旧的删除
+     */
+    private synchronized void write(String entry) {
+        byte[] bytes = entry.getBytes(StandardCharsets.UTF_8);
+        try {
+            if (writer == null) {
+                written = file.length();
+                writer = new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8);
+            }
+            if (written > 0 && written + bytes.length > maxBytes) {
+                rotate();
+            }
+            writer.write(entry);
+            writer.flush();
+            written += bytes.length;
+        } catch (IOException e) {
+            System.err.println("写入慢查询日志失败: " + e.getMessage());
+        }
+    }
+
+    private void rotate() throws IOException {
+        writer.close();
+        writer = null;
+        for (int i = maxFiles; i >= 1; i--) {
+            File from = i == 1 ? file : new File(file.getPath() + "." + (i - 1));
+            File to = new File(file.getPath() + "." + i);
+            if (from.exists() && (!to.exists() || to.delete())) {
+                from.renameTo(to);
+            }
+        }
+        if (maxFiles == 0) {
+            file.delete();
+        }
+        writer = new OutputStreamWriter(new FileOutputStream(file, false), StandardCharsets.UTF_8);
+        written = 0;
+    }
+}
@@ -0,0 +1,191 @@
+package system;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ContactScanEngine 类：在内存联系人数组上并行执行任意条件（正则、多字段子串等无法走索引的条件）
+ * 数组按固定大小分块，用 fork/join 递归拆分到单个块后逐行判断；结果保持输入数组的顺序。
+ * 有 LIMIT 时，一旦从第一块起连续完成的块已凑够条数，其后的块不再扫描，正在扫描的块也会尽快停止。
+ */
+class ContactScanEngine {
+
+    // 每块的行数：足够大以摊薄任务调度开销，又足够小以便及早停止
+    static final int CHUNK_SIZE = 4096;
+
+    private final ForkJoinPool pool;
+
+    ContactScanEngine() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    ContactScanEngine(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * 扫描结果与统计
+     */
+    static final class Result {
+        final List<Contact> matches;
+        final long scannedRows;
+        final long totalRows;
+        final long elapsedNanos;
+
+        Result(List<Contact> matches, long scannedRows, long totalRows, long elapsedNanos) {
+            this.matches = matches;
+            this.scannedRows = scannedRows;
+            this.totalRows = totalRows;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * 每秒扫描的行数
+         */
+        long rowsPerSecond() {
+            return elapsedNanos == 0 ? scannedRows : scannedRows * 1_000_000_000L / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return "扫描 " + scannedRows + "/" + totalRows + " 行，命中 " + matches.size() + " 行，用时 "
+                    + elapsedNanos / 1_000_000 + " ms（" + rowsPerSecond() + " 行/秒）";
+        }
+    }
+
+    /**
+     * 扫描数组中满足条件的联系人
+     * @param rows 待扫描的联系人（扫描期间不得修改）
+     * @param filter 过滤条件，null 表示全部满足；会被多个线程同时调用，须线程安全
+     * @param limit 最多返回条数，小于等于 0 表示不限制
+     * @return 按数组顺序排列的前 limit 个满足条件的联系人
+     */
+    Result scan(Contact[] rows, ContactFilter filter, int limit) {
+        long start = System.nanoTime();
+        Scan scan = new Scan(rows, filter, limit > 0 ? limit : Integer.MAX_VALUE);
+        if (scan.chunkCount == 1) {
+            scan.scanChunk(0); // 单块时直接在调用线程上执行
+        } else if (scan.chunkCount > 1) {
+            pool.invoke(scan.new ChunkTask(0, scan.chunkCount));
+        }
+        return new Result(scan.collect(), scan.scanned.sum(), rows.length, System.nanoTime() - start);
+    }
+
+    /**
+     * 一次扫描的共享状态
+     */
+    private static final class Scan {
+        final Contact[] rows;
+        final ContactFilter filter;
+        final int limit;
+        final int chunkCount;
+        // 每块命中行的下标及其数量，每块只由一个线程写入
+        final int[][] chunkHits;
+        final int[] chunkHitCounts;
+        final boolean[] chunkDone;
+        final LongAdder scanned = new LongAdder();
+        // 下标大于它的块已不需要扫描
+        volatile int cutoffChunk = Integer.MAX_VALUE;
+        // 从第一块起连续完成的块数及其命中总数，用于判断何时凑够 LIMIT
+        private int completedPrefix;
+        private long prefixHits;
+
+        Scan(Contact[] rows, ContactFilter filter, int limit) {
+            this.rows = rows;
+            this.filter = filter;
+            this.limit = limit;
+            this.chunkCount = (rows.length + CHUNK_SIZE - 1) / CHUNK_SIZE;
+            this.chunkHits = new int[chunkCount][];
+            this.chunkHitCounts = new int[chunkCount];
+            this.chunkDone = new boolean[chunkCount];
+        }
+
+        /**
+         * 按块拆分的 fork/join 任务，拆到单个块为止；先处理左半部分，使前面的块尽早完成
+         */
+        final class ChunkTask extends RecursiveAction {
+            private static final long serialVersionUID = 1L;
+
+            private final int from;
+            private final int to;
+
+            ChunkTask(int from, int to) {
+                this.from = from;
+                this.to = to;
+            }
+
+            @Override
+            protected void compute() {
+                if (from >= cutoffChunk) {
+                    return;
+                }
+                if (to - from == 1) {
+                    scanChunk(from);
+                    return;
+                }
+                int mid = (from + to) >>> 1;
+                ChunkTask right = new ChunkTask(mid, to);
+                right.fork();
+                new ChunkTask(from, mid).compute();
+                right.join();
+            }
+        }
+
+        void scanChunk(int chunk) {
+            int start = chunk * CHUNK_SIZE;
+            int end = Math.min(rows.length, start + CHUNK_SIZE);
+            int[] hits = new int[Math.min(CHUNK_SIZE, limit)];
+            int count = 0;
+            int i = start;
+            for (; i < end; i++) {
+                // 每 256 行检查一次是否已不再需要本块
+                if ((i & 0xFF) == 0 && chunk > cutoffChunk) {
+                    break;
+                }
+                Contact contact = rows[i];
+                if (filter == null || filter.test(contact)) {
+                    hits[count++] = i;
+                    if (count == limit) {
+                        i++;
+                        break; // 本块之后的行不可能进入前 limit 条
+                    }
+                }
+            }
+            scanned.add(i - start);
+            chunkHits[chunk] = hits;
+            chunkHitCounts[chunk] = count;
+            complete(chunk);
+        }
+
+        private synchronized void complete(int chunk) {
+            chunkDone[chunk] = true;
+            while (completedPrefix < chunkCount && chunkDone[completedPrefix]) {
+                prefixHits += chunkHitCounts[completedPrefix];
+                completedPrefix++;
+                if (prefixHits >= limit) {
+                    cutoffChunk = completedPrefix - 1;
+                    return;
+                }
+            }
+        }
+
+        /**
+         * 按块顺序合并命中的行，最多 limit 条；调用时所有任务都已结束
+         */
+        synchronized List<Contact> collect() {
+            int last = Math.min(cutoffChunk, chunkCount - 1);
+            List<Contact> matches = new ArrayList<>();
+            for (int chunk = 0; chunk <= last && matches.size() < limit; chunk++) {
+                int[] hits = chunkHits[chunk];
+                int count = Math.min(chunkHitCounts[chunk], limit - matches.size());
+                for (int k = 0; k < count; k++) {
+                    matches.add(rows[hits[k]]);
+                }
+            }
+            return matches;
+        }
+    }
+}
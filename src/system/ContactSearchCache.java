@@ -0,0 +1,207 @@
+package system;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * ContactSearchCache 类：模糊查询结果缓存，以规范化后的关键字为键，保存按姓名排序的联系人编号
+ * 每项记录生成时的全局写入代数，任何写入都会使代数递增，查询时代数不一致即视为失效，不需要逐项清理。
+ * 没有结果的查询同样缓存（负缓存）。限制条目数与估算占用的字节数，超出时按最近访问时间近似淘汰。
+ * 读取不加锁：命中只在条目上记下访问时刻（以写入缓存的次数计），超出限制时由一个线程扫描全部条目，
+ * 淘汰最久未访问的若干项并多留出 1/16 的余量，其余线程不等待。
+ */
+class ContactSearchCache {
+
+    // 每项除编号数组外的固定开销（键、数组头、哈希表节点等）估算
+    private static final int ENTRY_OVERHEAD = 96;
+
+    private final int maxEntries;
+    private final long maxBytes;
+
+    private final ConcurrentHashMap<String, Entry> entries = new ConcurrentHashMap<>(64);
+    private final AtomicLong bytes = new AtomicLong();
+    // 访问时刻：每次写入缓存加一，读取只读它，命中之间不争用同一变量
+    private final AtomicLong clock = new AtomicLong();
+    private final ReentrantLock evictLock = new ReentrantLock();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder stale = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private static final class Entry {
+        final long generation;
+        final int[] ids;
+        final int size;
+        volatile long accessed;
+
+        Entry(String key, long generation, int[] ids, long accessed) {
+            this.generation = generation;
+            this.ids = ids;
+            this.size = ENTRY_OVERHEAD + key.length() * 2 + ids.length * 4;
+            this.accessed = accessed;
+        }
+    }
+
+    /**
+     * 缓存统计
+     */
+    static final class Stats {
+        final long hits;
+        final long negativeHits;
+        final long misses;
+        final long stale;
+        final long evictions;
+        final int entries;
+        final long bytes;
+
+        Stats(long hits, long negativeHits, long misses, long stale, long evictions, int entries, long bytes) {
+            this.hits = hits;
+            this.negativeHits = negativeHits;
+            this.misses = misses;
+            this.stale = stale;
+            this.evictions = evictions;
+            this.entries = entries;
+            this.bytes = bytes;
+        }
+
+        double hitRatio() {
+            long total = hits + misses;
+            return total == 0 ? 0 : (double) hits / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("查询缓存: 命中 %d 次（其中空结果 %d 次），未命中 %d 次（其中已失效 %d 次），命中率 %.1f%%，"
+                    + "%d 项，约 %d KB，淘汰 %d 项", hits, negativeHits, misses, stale, hitRatio() * 100,
+                    entries, bytes / 1024, evictions);
+        }
+    }
+
+    ContactSearchCache() {
+        this(Integer.getInteger("contact.searchCache.entries", 1024),
+             Long.getLong("contact.searchCache.maxBytes", 8L << 20));
+    }
+
+    ContactSearchCache(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * 缓存键：与查询时的大小写处理一致，只转为小写
+     */
+    static String normalize(String keyword) {
+        return keyword.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @param generation 当前的写入代数
+     * @return 缓存的编号（按姓名排序，可能为空数组），未命中或已失效时返回 null
+     */
+    int[] get(String key, long generation) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        if (entry.generation != generation) {
+            if (entries.remove(key, entry)) {
+                bytes.addAndGet(-entry.size);
+                stale.increment();
+            }
+            misses.increment();
+            return null;
+        }
+        hits.increment();
+        if (entry.ids.length == 0) {
+            negativeHits.increment();
+        }
+        long now = clock.get();
+        if (entry.accessed != now) {
+            entry.accessed = now;
+        }
+        return entry.ids;
+    }
+
+    /**
+     * 保存查询结果；结果超过容量的 1/16 时不缓存，以免挤掉大量小结果
+     * @param generation 开始查询前读取的写入代数，查询期间发生写入时该项在下次读取时即失效
+     */
+    void put(String key, long generation, int[] ids) {
+        if (maxEntries <= 0) {
+            return;
+        }
+        Entry entry = new Entry(key, generation, ids, clock.incrementAndGet());
+        if (entry.size > maxBytes / 16) {
+            return;
+        }
+        Entry previous = entries.put(key, entry);
+        bytes.addAndGet(previous != null ? entry.size - previous.size : entry.size);
+        if ((entries.size() > maxEntries || bytes.get() > maxBytes) && evictLock.tryLock()) {
+            try {
+                evict();
+            } finally {
+                evictLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 淘汰最久未访问的条目，直到条目数与字节数都回到上限的 15/16 以下
+     */
+    private void evict() {
+        int targetEntries = maxEntries - maxEntries / 16;
+        long targetBytes = maxBytes - maxBytes / 16;
+        if (entries.size() <= targetEntries && bytes.get() <= targetBytes) {
+            return;
+        }
+        // 先记下各项的访问时刻再排序，排序期间的命中不影响比较结果
+        List<Candidate> candidates = new ArrayList<>(entries.size());
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            candidates.add(new Candidate(entry.getKey(), entry.getValue()));
+        }
+        candidates.sort(Comparator.comparingLong(candidate -> candidate.accessed));
+        for (Candidate candidate : candidates) {
+            if (entries.size() <= targetEntries && bytes.get() <= targetBytes) {
+                break;
+            }
+            if (entries.remove(candidate.key, candidate.entry)) {
+                bytes.addAndGet(-candidate.entry.size);
+                evictions.increment();
+            }
+        }
+    }
+
+    private static final class Candidate {
+        final String key;
+        final Entry entry;
+        final long accessed;
+
+        Candidate(String key, Entry entry) {
+            this.key = key;
+            this.entry = entry;
+            this.accessed = entry.accessed;
+        }
+    }
+
+    void clear() {
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            if (entries.remove(entry.getKey(), entry.getValue())) {
+                bytes.addAndGet(-entry.getValue().size);
+            }
+        }
+    }
+
+    Stats stats() {
+        return new Stats(hits.sum(), negativeHits.sum(), misses.sum(), stale.sum(), evictions.sum(), entries.size(),
+                bytes.get());
+    }
+}
@@ -1,120 +1,2052 @@
 package system;
 
+import java.sql.SQLException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.ToIntFunction;
 import java.util.regex.*;
 
 /**
  * ContactService 类：封装联系人管理的业务逻辑，包含添加、删除、更新、查询操作
  */
 class ContactService {
+    // 进程内共享的服务实例，GUI 各窗口与命令行共用，避免重复创建 DAO 与数据库连接
+    private static volatile ContactService shared;
+
     private ContactDao dao;
+    private final ContactSnapshotStore snapshotStore;
+
+    // 内存中的联系人副本（不可变快照）：null 表示尚未加载，此时读操作直接访问数据库
+    // 读操作只读取引用，不加锁；写操作基于当前快照生成新版本后原子替换
+    private final AtomicReference<ContactSnapshot> current = new AtomicReference<>();
+    // 已关闭（多租户时被淘汰）：不再收到变更通知，因此不再保留内存副本、索引与查询缓存，读操作直接访问数据库；
+    // 依赖内存结构的查询（标签计数、分面、即席扫描、容错与全文检索）每次从数据库读取全部联系人临时求出
+    private volatile boolean closed = false;
+    // 是否已与数据库同步；未同步时缓存来自本地快照，可能过期
+    private volatile boolean reconciled = false;
+    private volatile boolean dirty = false;
+    // 写操作计数（写入代数），用于检测后台同步期间是否发生了写入，以及判断查询缓存是否失效
+    private final AtomicLong writeGeneration = new AtomicLong();
+    private CompletableFuture<Void> warmUp;
+    // 写操作按联系人编号分段加锁，不同编号的写入互不阻塞
+    private static final int WRITE_STRIPES = 64;
+    private final ReentrantLock[] writeLocks = new ReentrantLock[WRITE_STRIPES];
+    // 发布锁：增量发布（及监听器回调）共享读锁，整体替换快照与注册监听器独占写锁
+    private final ReentrantReadWriteLock publishLock = new ReentrantReadWriteLock();
+    // 变更日志，供下游按序号增量同步
+    private final ContactChangeJournal journal = new ContactChangeJournal();
+
+    // 组合条件查询的计划器与可用的内存索引
+    private final ContactQueryPlanner planner = new ContactQueryPlanner();
+    private final ContactScanEngine scanEngine = new ContactScanEngine();
+    private final List<ContactIndex> indexes = new CopyOnWriteArrayList<>();
+    // 标签与黑名单状态的位图索引，始终随写入维护
+    private final ContactTagIndex tagIndex = new ContactTagIndex();
+    // 模糊查询结果缓存，按写入代数整体失效
+    private final ContactSearchCache searchCache;
+    // 各联系人的访问频率（随时间衰减）与热点联系人，用于候选提示和结果排序
+    private final ContactAccessTracker accessTracker;
+    // 内存占用估算：每个联系人在快照与姓名视图中的字节数，以及全文/拼写索引建立后每人额外的字节数
+    private static final int CONTACT_BYTES = 320;
+    private static final int TEXT_INDEX_BYTES = 256;
+    // 内存副本未加载时按编号读取的详情缓存，以及选中一行时顺带读取的相邻行数上限
+    private final ContactDetailCache detailCache = new ContactDetailCache();
+    private static final int DETAIL_PREFETCH = Integer.getInteger("contact.detail.prefetch", 50);
+    // 全文检索结果按访问频率加权的系数：分数乘以 1 + 系数 × ln(1 + 访问分数)
+    private static final double POPULARITY_WEIGHT = 0.25;
+    // 索引候选数不少于总数的 1/8 时，改为按姓名视图顺序过滤而不是逐个查找后排序
+    private static final int DENSE_CANDIDATE_RATIO = 8;
+    private static final int MAX_TAG_LENGTH = 50;
+
+    // 内存副本变化的监听器，以及按需创建的分面计数
+    private final List<ContactChangeListener> listeners = new CopyOnWriteArrayList<>();
+    private volatile ContactFacets facets;
+    private volatile ContactFuzzyIndex fuzzyIndex;
+    private volatile ContactTextIndex textIndex;
+    private volatile ContactServiceAsync async;
+    // 其他实例写入的变更通知，预热时启动
+    private volatile ContactChangeFeed changeFeed;
+    // 软删除模式下后台物理删除墓碑，预热时启动
+    private volatile ContactPurger purger;
+    // 是否自行启动变更通知与墓碑清理线程；多租户时由 ContactTenants 统一运行
+    private final boolean background;
+    // 最近几次删除的编号（每次一组，最新的在队首），用于撤销；墓碑被物理删除后撤销失败
+    private static final int UNDO_DEPTH = 20;
+    private final Deque<List<Integer>> recentDeletes = new ArrayDeque<>();
+    // 冷数据分层：归档表中（或可能在其中）的编号，null 表示尚未加载，第一次按编号读取未命中时加载；
+    // 按编号读取未命中且在其中时透明移回。访问时锁住 archivedLock。
+    // archivedEpoch 在每次补记编号时加一，使补记前开始的加载结果作废；加载失败后一段时间内不再重试，
+    // 未命中的编号逐个查归档表
+    private static final long ARCHIVED_RETRY_MILLIS = 60_000;
+    private final Object archivedLock = new Object();
+    private final Object archivedLoadLock = new Object();
+    private ContactBitmap archived;
+    private long archivedEpoch;
+    private long archivedRetryAt;
+    private final AtomicLong archivedCount = new AtomicLong();
+    private final AtomicLong unarchivedCount = new AtomicLong();
+    // 最近访问过、尚未写回数据库的编号，由 ContactTiering 在归档前批量更新最近访问时间
+    private final Set<Integer> touched = ConcurrentHashMap.newKeySet();
+    private volatile ContactTiering tiering;
+    // 降级：数据库不可用（熔断）期间读操作由内存副本（必要时为本地快照）提供并标记为过期，写操作立即拒绝；
+    // degraded 表示因数据库不可用而未能同步，恢复后在后台重新同步
+    private static final String READ_ONLY = "数据库暂不可用，当前为只读模式，请稍后重试";
+    private volatile boolean degraded = false;
+    private final AtomicBoolean resyncing = new AtomicBoolean();
+    private final Runnable recoveryListener = this::resyncAfterOutage;
+
+    public ContactService() {
+        this(new ContactDao(), new ContactSnapshotStore());
+    }
+
+    ContactService(ContactDao dao, ContactSnapshotStore snapshotStore) {
+        this(dao, snapshotStore, new ContactSearchCache(), new ContactAccessTracker(), true);
+    }
+
+    /**
+     * @param searchCache 查询缓存，多租户时按每个租户的内存预算创建
+     * @param accessTracker 访问频率统计
+     * @param background 是否在预热时启动变更通知与墓碑清理线程
+     */
+    ContactService(ContactDao dao, ContactSnapshotStore snapshotStore, ContactSearchCache searchCache,
+                   ContactAccessTracker accessTracker, boolean background) {
+        this.dao = dao;
+        this.snapshotStore = snapshotStore;
+        this.searchCache = searchCache;
+        this.accessTracker = accessTracker;
+        this.background = background;
+        for (int i = 0; i < WRITE_STRIPES; i++) {
+            writeLocks[i] = new ReentrantLock();
+        }
+        indexes.add(new IdIndex());
+        listeners.add(tagIndex);
+        indexes.add(tagIndex);
+        listeners.add(accessTracker);
+        dao.addRecoveryListener(recoveryListener);
+    }
+
+    /**
+     * 获取进程内共享的服务实例
+     */
+    public static ContactService getShared() {
+        if (shared == null) {
+            synchronized (ContactService.class) {
+                if (shared == null) {
+                    ContactService service = new ContactService();
+                    Runtime.getRuntime().addShutdownHook(new Thread(service::saveSnapshot, "contact-snapshot"));
+                    shared = service;
+                }
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * 异步预热：先加载本地快照使读操作立即可用，再在后台与数据库同步
+     * @return 同步完成时结束的 Future，重复调用返回同一个
+     */
+    public synchronized CompletableFuture<Void> warmUpAsync() {
+        if (warmUp == null) {
+            warmUp = CompletableFuture.runAsync(this::warmUp);
+        }
+        return warmUp;
+    }
+
+    /**
+     * 本服务的异步接口，首次调用时创建
+     */
+    public ContactServiceAsync async() {
+        ContactServiceAsync result = async;
+        if (result == null) {
+            synchronized (this) {
+                if (async == null) {
+                    async = new ContactServiceAsync(this);
+                }
+                result = async;
+            }
+        }
+        return result;
+    }
+
+    public boolean isReconciled() {
+        return reconciled;
+    }
+
+    private void warmUp() {
+        long start = System.nanoTime();
+        List<Contact> snapshot = snapshotStore.load();
+        if (snapshot != null) {
+            publishLock.writeLock().lock();
+            try {
+                if (current.get() == null) {
+                    installSnapshot(snapshot);
+                }
+            } finally {
+                publishLock.writeLock().unlock();
+            }
+            System.out.println("已从本地快照加载 " + snapshot.size() + " 个联系人，用时 "
+                    + (System.nanoTime() - start) / 1_000_000 + " ms");
+        }
+        if (background && ContactDao.CHANGE_FEED_ENABLED) {
+            // 先记下通知的高水位再全量加载，加载期间其他实例的写入之后会再刷新一次
+            String tenant = dao.getTenant();
+            changeFeed = new ContactChangeFeed(dao, (changedTenant, ids) -> {
+                if (changedTenant.equals(tenant)) {
+                    applyRemoteChanges(ids);
+                }
+            }, this::resync);
+            changeFeed.start();
+        }
+        reconcile();
+        if (reconciled) {
+            System.out.println("数据库同步完成，用时 " + (System.nanoTime() - start) / 1_000_000 + " ms");
+        }
+        if (background && ContactDao.SOFT_DELETE) {
+            purger = new ContactPurger(dao);
+            purger.start();
+        }
+        if (background && ContactTiering.ENABLED) {
+            tiering = new ContactTiering(() -> Collections.singletonList(this));
+            tiering.start();
+        }
+    }
+
+    /**
+     * 从数据库重新加载全部联系人替换内存副本；若加载期间有写入则重试，保证写入不被覆盖
+     */
+    private void reconcile() {
+        // 先加载归档编号：之后其他实例归档的联系人会通过变更通知补记
+        loadArchived(true);
+        for (int attempt = 0; attempt < 5; attempt++) {
+            long generation = writeGeneration.get();
+            List<Contact> fresh;
+            try {
+                fresh = dao.fetchAllContacts();
+            } catch (SQLException e) {
+                System.err.println("后台同步数据库失败，继续使用本地快照: " + e.getMessage());
+                if (!dao.isAvailable()) {
+                    degraded = true;
+                }
+                return;
+            }
+            boolean installed = false;
+            publishLock.writeLock().lock();
+            try {
+                // 写入在数据库提交后、发布前递增计数，计数未变说明读取结果已包含所有已发布的写入
+                if (generation == writeGeneration.get()) {
+                    installSnapshot(fresh);
+                    reconciled = true;
+                    degraded = false;
+                    dirty = false;
+                    installed = true;
+                }
+            } finally {
+                publishLock.writeLock().unlock();
+            }
+            if (installed) {
+                snapshotStore.save(fresh);
+                return;
+            }
+        }
+        System.err.println("后台同步期间写入频繁，暂不替换内存数据");
+    }
+
+    /**
+     * 整体替换内存副本并通知监听器重建，调用方需持有发布写锁
+     * 替换前已有内存副本时，将两者的差异（其他进程的写入）记入变更日志
+     */
+    private void installSnapshot(List<Contact> contacts) {
+        if (closed) {
+            return;
+        }
+        ContactSnapshot previous = current.get();
+        ContactSnapshot snapshot = ContactSnapshot.of(previous == null ? 1 : previous.getVersion() + 1, contacts);
+        if (previous != null) {
+            journalDiff(previous, snapshot);
+        }
+        current.set(snapshot);
+        writeGeneration.incrementAndGet();
+        List<Contact> values = snapshot.values();
+        for (ContactChangeListener listener : listeners) {
+            try {
+                listener.contactsReloaded(values);
+            } catch (RuntimeException e) {
+                System.err.println("内存结构重建失败: " + e.getMessage());
+            }
+        }
+    }
+
+    private void journalDiff(ContactSnapshot previous, ContactSnapshot next) {
+        for (Contact contact : next.values()) {
+            Contact before = previous.get(contact.getId());
+            if (before == null) {
+                journal.append(ContactChangeJournal.ChangeType.ADD, contact.getId(), contact);
+            } else if (!ContactChangeJournal.sameContent(before, contact)) {
+                journal.append(ContactChangeJournal.ChangeType.UPDATE, contact.getId(), contact);
+            }
+        }
+        for (Contact before : previous.values()) {
+            if (!next.contains(before.getId())) {
+                journal.append(ContactChangeJournal.ChangeType.DELETE, before.getId(), null);
+            }
+        }
+    }
+
+    private void fireChanged(Contact before, Contact after) {
+        for (ContactChangeListener listener : listeners) {
+            try {
+                listener.contactChanged(before, after);
+            } catch (RuntimeException e) {
+                System.err.println("内存结构更新失败: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 注册内存副本变化的监听器；内存副本已加载时立即以当前数据回调一次 contactsReloaded
+     * 监听器会被不同编号的写线程并发回调，需自行保证线程安全
+     */
+    void addChangeListener(ContactChangeListener listener) {
+        publishLock.writeLock().lock();
+        try {
+            listeners.add(listener);
+            ContactSnapshot snapshot = current.get();
+            if (snapshot != null) {
+                listener.contactsReloaded(snapshot.values());
+            }
+        } finally {
+            publishLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 当前内存快照，供需要多次读取且要求前后一致的调用方使用
+     * @return 快照（元素不可修改），内存副本未加载时返回 null
+     */
+    ContactSnapshot snapshot() {
+        return current.get();
+    }
+
+    /**
+     * 确保内存副本已加载，未加载时等待预热完成
+     */
+    private void ensureLoaded() {
+        if (current.get() == null) {
+            warmUpAsync().join();
+        }
+    }
+
+    private ReentrantLock writeLock(int id) {
+        return writeLocks[ShardRouter.shardIndex(id, WRITE_STRIPES)];
+    }
+
+    /**
+     * 按分段序号升序锁住一批编号对应的写锁，固定顺序避免批量写入之间死锁
+     * @return 已加锁的分段序号，需交给 unlockAll 释放
+     */
+    private int[] lockAll(Collection<Integer> ids) {
+        boolean[] needed = new boolean[WRITE_STRIPES];
+        for (int id : ids) {
+            needed[ShardRouter.shardIndex(id, WRITE_STRIPES)] = true;
+        }
+        int[] stripes = new int[WRITE_STRIPES];
+        int n = 0;
+        for (int i = 0; i < WRITE_STRIPES; i++) {
+            if (needed[i]) {
+                stripes[n++] = i;
+            }
+        }
+        stripes = Arrays.copyOf(stripes, n);
+        for (int stripe : stripes) {
+            writeLocks[stripe].lock();
+        }
+        return stripes;
+    }
+
+    private void unlockAll(int[] stripes) {
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            writeLocks[stripes[i]].unlock();
+        }
+    }
+
+    /**
+     * 写入成功后记录变更日志并发布新的内存快照，调用方需持有该编号的写锁
+     * 写入代数在发布前后各递增一次：发布前递增供后台同步检测写入，发布后递增使发布期间生成的查询缓存失效
+     */
+    private void cachePut(ContactChangeJournal.ChangeType type, Contact contact) {
+        writeGeneration.incrementAndGet();
+        Contact copy = new Contact(contact);
+        publishLock.readLock().lock();
+        try {
+            journal.append(type, copy.getId(), copy);
+            while (true) {
+                ContactSnapshot snapshot = current.get();
+                if (snapshot == null) {
+                    return;
+                }
+                if (current.compareAndSet(snapshot, snapshot.with(copy))) {
+                    dirty = true;
+                    fireChanged(snapshot.get(copy.getId()), copy);
+                    return;
+                }
+            }
+        } finally {
+            publishLock.readLock().unlock();
+            writeGeneration.incrementAndGet();
+        }
+    }
+
+    private void cacheRemove(int id) {
+        writeGeneration.incrementAndGet();
+        publishLock.readLock().lock();
+        try {
+            journal.append(ContactChangeJournal.ChangeType.DELETE, id, null);
+            while (true) {
+                ContactSnapshot snapshot = current.get();
+                if (snapshot == null) {
+                    return;
+                }
+                Contact before = snapshot.get(id);
+                if (before == null) {
+                    return;
+                }
+                if (current.compareAndSet(snapshot, snapshot.without(id))) {
+                    dirty = true;
+                    fireChanged(before, null);
+                    return;
+                }
+            }
+        } finally {
+            publishLock.readLock().unlock();
+            writeGeneration.incrementAndGet();
+        }
+    }
+
+    /**
+     * 刷新其他实例写入过的联系人：从主库重新读取，与内存副本不同的才发布（并记入变更日志、通知监听器）
+     * 内存副本未加载时只需使查询缓存失效
+     * @param ids 其他实例改动过的联系人编号
+     */
+    void applyRemoteChanges(Collection<Integer> ids) {
+        if (current.get() == null) {
+            markMaybeArchived(ids);
+            writeGeneration.incrementAndGet();
+            return;
+        }
+        List<Integer> sorted = new ArrayList<>(new TreeSet<>(ids));
+        int[] stripes = lockAll(sorted);
+        try {
+            Map<Integer, Contact> fresh = dao.getContacts(sorted, true);
+            for (int id : sorted) {
+                ContactSnapshot snapshot = current.get();
+                Contact before = snapshot == null ? null : snapshot.get(id);
+                Contact after = fresh.get(id);
+                if (after == null) {
+                    if (before != null) {
+                        // 可能是删除，也可能被其他实例归档，记为可能在归档中，访问时再确认
+                        cacheRemove(id);
+                        markMaybeArchived(Collections.singletonList(id));
+                    }
+                } else if (before == null) {
+                    cachePut(ContactChangeJournal.ChangeType.ADD, after);
+                } else if (!ContactChangeJournal.sameContent(before, after)) {
+                    cachePut(ContactChangeJournal.ChangeType.UPDATE, after);
+                }
+            }
+        } catch (SQLException e) {
+            System.err.println("刷新其他实例的修改失败: " + e.getMessage());
+        } finally {
+            unlockAll(stripes);
+        }
+    }
+
+    /**
+     * 整体与数据库同步，用于无法确定遗漏了哪些变更通知时
+     */
+    void resync() {
+        if (current.get() == null) {
+            writeGeneration.incrementAndGet();
+            return;
+        }
+        reconcile();
+    }
+
+    /**
+     * 当前的变更序号，下游首次全量同步后以此作为下次增量同步的起点
+     */
+    public long currentChangeSequence() {
+        return journal.currentSequence();
+    }
+
+    /**
+     * 增量同步：返回指定序号之后的变更，同一联系人的多次变更合并为最后状态
+     * 起始序号超出变更日志的保留范围（已截断或来自进程重启之前）时返回全量数据，此时 full 为 true
+     * @param sinceSequence 上次同步返回的 toSequence
+     */
+    public ContactChangeJournal.Delta changesSince(long sinceSequence) {
+        // 已关闭的服务收不到其他实例的变更，变更日志不完整，总是返回全量数据
+        ContactChangeJournal.Delta delta = closed ? null : journal.changesSince(sinceSequence);
+        if (delta != null) {
+            return delta;
+        }
+        ensureLoaded();
+        ContactSnapshot snapshot;
+        long sequence;
+        // 独占发布锁，保证全量数据与序号对应同一时刻
+        publishLock.writeLock().lock();
+        try {
+            snapshot = current.get();
+            sequence = journal.currentSequence();
+        } finally {
+            publishLock.writeLock().unlock();
+        }
+        List<Contact> contacts = new ArrayList<>();
+        if (snapshot != null) {
+            for (Contact cached : snapshot.values()) {
+                contacts.add(new Contact(cached));
+            }
+        } else {
+            contacts = dao.getAllContacts();
+        }
+        return new ContactChangeJournal.Delta(sinceSequence, sequence, true, contacts, new ArrayList<>());
+    }
+
+    /**
+     * 获取按姓名排序的内存视图，由快照在首次访问时生成
+     * @return 视图数组（只读，元素不可修改），内存副本未加载时返回 null
+     */
+    private Contact[] sortedByName() {
+        ContactSnapshot snapshot = readSnapshot();
+        return snapshot == null ? null : snapshot.sortedByName();
+    }
+
+    /**
+     * 将内存副本写回本地快照，供下次启动使用
+     */
+    void saveSnapshot() {
+        ContactSnapshot snapshot = current.get();
+        if (snapshot != null && dirty) {
+            dirty = false;
+            snapshotStore.save(snapshot.values());
+        }
+    }
+
+    String getTenant() {
+        return dao.getTenant();
+    }
+
+    /**
+     * 内存副本、各索引与缓存占用的字节数（估算），未加载时只计缓存与访问统计
+     */
+    long estimatedBytes() {
+        ContactSnapshot snapshot = current.get();
+        long contacts = snapshot == null ? 0 : snapshot.size();
+        long perContact = CONTACT_BYTES + (textIndex != null ? TEXT_INDEX_BYTES : 0)
+                + (fuzzyIndex != null ? TEXT_INDEX_BYTES : 0);
+        long archivedBytes;
+        synchronized (archivedLock) {
+            archivedBytes = archived == null ? 0 : archived.sizeInBytes();
+        }
+        return contacts * perContact + tagIndex.sizeInBytes() + searchCache.stats().bytes
+                + accessTracker.sizeInBytes() + archivedBytes;
+    }
+
+    /**
+     * 停止后台线程并保存本地快照，然后丢弃内存副本：之后不再收到其他实例的变更，
+     * 仍持有本服务的调用方每次都直接访问数据库（写入照常记入变更通知），不会读到过期数据
+     */
+    void close() {
+        ContactChangeFeed feed = changeFeed;
+        if (feed != null) {
+            feed.stop();
+        }
+        ContactPurger activePurger = purger;
+        if (activePurger != null) {
+            activePurger.stop();
+        }
+        ContactTiering activeTiering = tiering;
+        if (activeTiering != null) {
+            activeTiering.stop();
+        }
+        dao.removeRecoveryListener(recoveryListener);
+        flushAccesses();
+        saveSnapshot();
+        publishLock.writeLock().lock();
+        try {
+            closed = true;
+            current.set(null);
+            writeGeneration.incrementAndGet();
+            // 各内存结构随内存副本维护，一并丢弃；标签索引同时是查询索引，清空后保留
+            List<ContactChangeListener> derived = Arrays.asList(facets, fuzzyIndex, textIndex);
+            listeners.removeAll(derived);
+            facets = null;
+            fuzzyIndex = null;
+            textIndex = null;
+            tagIndex.contactsReloaded(Collections.emptyList());
+        } finally {
+            publishLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 写入变更通知时使用的实例标识
+     */
+    String getOrigin() {
+        return dao.getOrigin();
+    }
+
+    /**
+     * 已关闭的服务每次从数据库读取全部联系人，作为一次查询使用的临时快照
+     * @return 读取失败时返回 null（已输出错误）
+     */
+    private ContactSnapshot closedSnapshot() {
+        try {
+            return ContactSnapshot.of(0, dao.fetchAllContacts());
+        } catch (SQLException e) {
+            System.err.println("查询联系人失败: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 查询缓存使用的代数；已关闭的服务不再收到变更通知，每次都取新的代数，缓存不再命中
+     */
+    private long cacheGeneration() {
+        return closed ? writeGeneration.incrementAndGet() : writeGeneration.get();
+    }
+
+    // ---------------------------------------------------------------- 降级只读
+
+    /**
+     * 当前数据是否可能过期：尚未与数据库同步（来自本地快照），或数据库不可用（熔断中）
+     */
+    public boolean isStale() {
+        return !reconciled || degraded || !dao.isAvailable();
+    }
+
+    /**
+     * 数据库是否可用；不可用时写操作立即失败，读操作由内存副本或本地快照提供
+     */
+    public boolean isDatabaseAvailable() {
+        return dao.isAvailable();
+    }
+
+    /**
+     * 读操作使用的内存副本；未加载且数据库不可用时改为加载本地快照
+     * 因数据库不可用而未同步时，每次读取顺带检查是否可以重新同步（熔断期间不会发出请求）
+     * @return 快照，未加载且无法使用本地快照时返回 null（此时直接访问数据库）
+     */
+    private ContactSnapshot readSnapshot() {
+        ContactSnapshot snapshot = current.get();
+        if (snapshot == null && !dao.isAvailable() && fallBackToLocal()) {
+            snapshot = current.get();
+        }
+        if (degraded) {
+            resyncAfterOutage();
+        }
+        return snapshot;
+    }
+
+    /**
+     * 访问数据库失败后调用：数据库不可用时加载本地快照作为只读数据（标记为过期），恢复后在后台同步
+     * 其他原因（如 SQL 错误）的失败不降级
+     * @return 是否已有可用的内存副本，调用方据此改为从内存读取
+     */
+    private boolean fallBackToLocal() {
+        if (closed || dao.isAvailable()) {
+            return false;
+        }
+        degraded = true;
+        if (current.get() != null) {
+            return true;
+        }
+        List<Contact> local = snapshotStore.load();
+        if (local == null) {
+            return false;
+        }
+        boolean installed = false;
+        publishLock.writeLock().lock();
+        try {
+            if (current.get() == null) {
+                installSnapshot(local);
+                installed = true;
+            }
+        } finally {
+            publishLock.writeLock().unlock();
+        }
+        if (installed) {
+            System.err.println("数据库不可用，改为使用本地快照中的 " + local.size() + " 个联系人（只读，可能不是最新）");
+        }
+        return true;
+    }
+
+    /**
+     * 数据库恢复（或已到探测时间）后在后台重新同步，同一时间只进行一次
+     */
+    private void resyncAfterOutage() {
+        if (!degraded || !dao.allowsAttempt() || !resyncing.compareAndSet(false, true)) {
+            return;
+        }
+        CompletableFuture.runAsync(() -> {
+            try {
+                reconcile();
+            } finally {
+                resyncing.set(false);
+            }
+        });
+    }
+
+    /**
+     * 熔断期间立即拒绝写操作，不等待连接超时；不排队到恢复后再写，因为期间其他实例可能已修改同一联系人
+     * 已到探测时间时放行，由这次写入探测数据库是否恢复
+     */
+    private boolean rejectWrite() {
+        if (dao.allowsAttempt()) {
+            return false;
+        }
+        System.out.println(READ_ONLY);
+        return true;
+    }
+
+    /**
+     * 添加新联系人，包含输入校验
+     */
+    public boolean addContact(String name, String phone, String email, String address, boolean isBlacklisted) {
+        if (rejectWrite()) {
+            return false;
+        }
+        String error = checkContact(name, phone, email);
+        if (error != null) {
+            System.out.println(error);
+            return false;
+        }
+
+        Contact contact = new Contact(0, name, phone, 
+                                       email != null && email.trim().isEmpty() ? null : email, 
+                                       address != null && address.trim().isEmpty() ? null : address, isBlacklisted);
+        contact.setBlacklisted(isBlacklisted); // 设置黑名单状态
+        dao.addContact(contact);
+        if (contact.getId() > 0) {
+            ReentrantLock lock = writeLock(contact.getId());
+            lock.lock();
+            try {
+                cachePut(ContactChangeJournal.ChangeType.ADD, contact);
+            } finally {
+                lock.unlock();
+            }
+        }
+        // 写入失败时未分配编号
+        return contact.getId() > 0;
+    }
+
+    /**
+     * 新联系人的输入校验
+     * @return 校验失败的提示信息，校验通过返回 null
+     */
+    String checkContact(String name, String phone, String email) {
+        if (name == null || name.trim().isEmpty()) {
+            return "姓名不能为空！";
+        }
+        if (!isValidPhone(phone)) {
+            return "电话号码格式不正确！电话号码应为7-11位数字";
+        }
+        if (!isValidEmail(email)) {
+            return "邮箱格式不正确或不能只使用QQ邮箱！";
+        }
+        return null;
+    }
+
+    /**
+     * 批量添加联系人：校验失败的记录跳过，其余在一个事务中批量写入
+     * @return 与输入一一对应的结果，null 表示成功（编号已写回联系人对象），否则为失败原因
+     */
+    public String[] addContacts(List<Contact> contacts) {
+        String[] errors = new String[contacts.size()];
+        if (!dao.allowsAttempt()) {
+            Arrays.fill(errors, READ_ONLY);
+            return errors;
+        }
+        List<Contact> valid = new ArrayList<>(contacts.size());
+        List<Integer> validIndexes = new ArrayList<>(contacts.size());
+        for (int i = 0; i < contacts.size(); i++) {
+            Contact contact = contacts.get(i);
+            String error = checkContact(contact.getName(), contact.getPhone(), contact.getEmail());
+            if (error != null) {
+                errors[i] = error;
+                continue;
+            }
+            if (contact.getEmail() != null && contact.getEmail().trim().isEmpty()) {
+                contact.setEmail(null);
+            }
+            if (contact.getAddress() != null && contact.getAddress().trim().isEmpty()) {
+                contact.setAddress(null);
+            }
+            valid.add(contact);
+            validIndexes.add(i);
+        }
+        if (valid.isEmpty()) {
+            return errors;
+        }
+        String failure = null;
+        try {
+            dao.insertContacts(valid);
+        } catch (SQLException e) {
+            // 分片时部分分片可能已提交，编号非 0 的记录视为成功
+            failure = "批量添加联系人失败: " + e.getMessage();
+        }
+        List<Integer> ids = new ArrayList<>(valid.size());
+        for (Contact contact : valid) {
+            ids.add(contact.getId());
+        }
+        int[] stripes = lockAll(ids);
+        try {
+            for (int i = 0; i < valid.size(); i++) {
+                Contact contact = valid.get(i);
+                if (contact.getId() > 0) {
+                    cachePut(ContactChangeJournal.ChangeType.ADD, contact);
+                } else {
+                    errors[validIndexes.get(i)] = failure != null ? failure : "未获取到新联系人编号";
+                }
+            }
+        } finally {
+            unlockAll(stripes);
+        }
+        return errors;
+    }
+
+    /**
+     * 删除联系人
+     */
+    public boolean deleteContact(int id) {
+        if (rejectWrite()) {
+            return false;
+        }
+        ReentrantLock lock = writeLock(id);
+        lock.lock();
+        try {
+            boolean deleted = dao.deleteContact(id);
+            int deletedId = id;
+            if (!deleted) {
+                // 已归档的联系人先移回再删除，使其同样可以撤销（原编号被占用时移回后编号改变）
+                Contact restored = restoreArchived(id);
+                if (restored != null) {
+                    deletedId = restored.getId();
+                    deleted = dao.deleteContact(deletedId);
+                }
+            }
+            if (deleted) {
+                cacheRemove(deletedId);
+                rememberDeleted(Collections.singletonList(deletedId));
+            }
+            return deleted;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 批量删除联系人，在一个事务中执行
+     * @return 与输入一一对应的结果，null 表示成功，否则为失败原因
+     */
+    public String[] deleteContacts(List<Integer> ids) {
+        String[] errors = new String[ids.size()];
+        if (!dao.allowsAttempt()) {
+            Arrays.fill(errors, READ_ONLY);
+            return errors;
+        }
+        int[] stripes = lockAll(ids);
+        try {
+            int[] counts;
+            int[] deletedIds = new int[ids.size()];
+            for (int i = 0; i < deletedIds.length; i++) {
+                deletedIds[i] = ids.get(i);
+            }
+            try {
+                counts = dao.deleteContacts(ids);
+                // 已归档的联系人先移回再删除，使其同样可以撤销（原编号被占用时移回后编号改变）
+                List<Integer> unarchived = new ArrayList<>();
+                List<Integer> unarchivedIndexes = new ArrayList<>();
+                for (int i = 0; i < ids.size(); i++) {
+                    if (!isBatchSuccess(counts[i])) {
+                        Contact restored = restoreArchived(ids.get(i));
+                        if (restored != null) {
+                            unarchived.add(restored.getId());
+                            unarchivedIndexes.add(i);
+                        }
+                    }
+                }
+                if (!unarchived.isEmpty()) {
+                    int[] retried = dao.deleteContacts(unarchived);
+                    for (int i = 0; i < retried.length; i++) {
+                        counts[unarchivedIndexes.get(i)] = retried[i];
+                        deletedIds[unarchivedIndexes.get(i)] = unarchived.get(i);
+                    }
+                }
+            } catch (SQLException e) {
+                Arrays.fill(errors, "批量删除联系人失败: " + e.getMessage());
+                return errors;
+            }
+            List<Integer> deleted = new ArrayList<>(ids.size());
+            for (int i = 0; i < ids.size(); i++) {
+                if (isBatchSuccess(counts[i])) {
+                    cacheRemove(deletedIds[i]);
+                    deleted.add(deletedIds[i]);
+                } else {
+                    errors[i] = "未找到编号为 " + ids.get(i) + " 的联系人！";
+                }
+            }
+            rememberDeleted(deleted);
+            return errors;
+        } finally {
+            unlockAll(stripes);
+        }
+    }
+
+    private void rememberDeleted(List<Integer> ids) {
+        if (!ContactDao.SOFT_DELETE || ids.isEmpty()) {
+            return;
+        }
+        synchronized (recentDeletes) {
+            recentDeletes.addFirst(ids);
+            while (recentDeletes.size() > UNDO_DEPTH) {
+                recentDeletes.removeLast();
+            }
+        }
+    }
+
+    /**
+     * 恢复软删除的联系人：清除数据库中的墓碑标记后重新读取，发布到内存副本（各索引随之更新）
+     * @return 与输入一一对应的结果，null 表示成功，否则为失败原因
+     */
+    public String[] restoreContacts(List<Integer> ids) {
+        String[] errors = new String[ids.size()];
+        if (!ContactDao.SOFT_DELETE) {
+            Arrays.fill(errors, "未启用软删除，无法恢复");
+            return errors;
+        }
+        if (!dao.allowsAttempt()) {
+            Arrays.fill(errors, READ_ONLY);
+            return errors;
+        }
+        int[] stripes = lockAll(ids);
+        try {
+            int[] counts;
+            Map<Integer, Contact> restored;
+            try {
+                counts = dao.restoreContacts(ids);
+                restored = dao.getContacts(ids, true);
+            } catch (SQLException e) {
+                Arrays.fill(errors, "恢复联系人失败: " + e.getMessage());
+                return errors;
+            }
+            for (int i = 0; i < ids.size(); i++) {
+                Contact contact = restored.get(ids.get(i));
+                if (isBatchSuccess(counts[i]) && contact != null) {
+                    cachePut(ContactChangeJournal.ChangeType.ADD, contact);
+                } else {
+                    errors[i] = "编号为 " + ids.get(i) + " 的联系人未被删除或已被彻底清除！";
+                }
+            }
+            return errors;
+        } finally {
+            unlockAll(stripes);
+        }
+    }
+
+    /**
+     * 撤销最近一次删除（单个或批量）
+     * @return 恢复的联系人数；没有可撤销的删除时为 0
+     */
+    public int undoLastDelete() {
+        List<Integer> ids;
+        synchronized (recentDeletes) {
+            ids = recentDeletes.pollFirst();
+        }
+        if (ids == null) {
+            return 0;
+        }
+        int restored = 0;
+        for (String error : restoreContacts(ids)) {
+            if (error == null) {
+                restored++;
+            }
+        }
+        return restored;
+    }
+
+    /**
+     * 更新联系人信息
+     */
+    public boolean updateContact(int id, String name, String phone, String email, String address, boolean isBlacklisted) {
+        if (rejectWrite()) {
+            return false;
+        }
+        // 读取、修改、写回期间持有该编号的写锁，避免与同一联系人的并发修改互相覆盖
+        ReentrantLock lock = writeLock(id);
+        lock.lock();
+        try {
+            Contact contact = getContact(id);
+            if (contact == null) {
+                System.out.println("未找到编号为 " + id + " 的联系人！");
+                return false;
+            }
+
+            String error = applyChanges(contact, name, phone, email, address, isBlacklisted);
+            if (error != null) {
+                System.out.println(error);
+                return false;
+            }
+            return saveUpdated(ContactChangeJournal.ChangeType.UPDATE, contact);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 批量更新联系人：每个对象按编号匹配，字段含义与 updateContact 相同（null 或空表示不修改姓名、电话）
+     * @return 与输入一一对应的结果，null 表示成功，否则为失败原因
+     */
+    public String[] updateContacts(List<Contact> changes) {
+        String[] errors = new String[changes.size()];
+        if (!dao.allowsAttempt()) {
+            Arrays.fill(errors, READ_ONLY);
+            return errors;
+        }
+        List<Integer> ids = new ArrayList<>(changes.size());
+        for (Contact change : changes) {
+            ids.add(change.getId());
+        }
+        int[] stripes = lockAll(ids);
+        try {
+            return updateLocked(changes, ids, errors);
+        } finally {
+            unlockAll(stripes);
+        }
+    }
+
+    private String[] updateLocked(List<Contact> changes, List<Integer> ids, String[] errors) {
+        Map<Integer, Contact> existing = getContacts(ids);
+        List<Contact> merged = new ArrayList<>(changes.size());
+        List<Integer> mergedIndexes = new ArrayList<>(changes.size());
+        for (int i = 0; i < changes.size(); i++) {
+            Contact change = changes.get(i);
+            Contact contact = existing.get(change.getId());
+            if (contact == null) {
+                errors[i] = "未找到编号为 " + change.getId() + " 的联系人！";
+                continue;
+            }
+            String error = applyChanges(contact, change.getName(), change.getPhone(), change.getEmail(),
+                    change.getAddress(), change.isBlacklisted());
+            if (error != null) {
+                errors[i] = error;
+                continue;
+            }
+            merged.add(contact);
+            mergedIndexes.add(i);
+        }
+        if (merged.isEmpty()) {
+            return errors;
+        }
+        int[] counts;
+        try {
+            counts = dao.updateContacts(merged);
+        } catch (SQLException e) {
+            for (int index : mergedIndexes) {
+                errors[index] = "批量更新联系人失败: " + e.getMessage();
+            }
+            return errors;
+        }
+        for (int i = 0; i < merged.size(); i++) {
+            if (isBatchSuccess(counts[i])) {
+                cachePut(ContactChangeJournal.ChangeType.UPDATE, merged.get(i));
+            } else {
+                errors[mergedIndexes.get(i)] = "未找到编号为 " + merged.get(i).getId() + " 的联系人！";
+            }
+        }
+        return errors;
+    }
+
+    private static boolean isBatchSuccess(int count) {
+        return count > 0 || count == java.sql.Statement.SUCCESS_NO_INFO;
+    }
+
+    /**
+     * 将修改内容应用到联系人对象上，包含输入校验
+     * @return 校验失败的提示信息，成功返回 null
+     */
+    private String applyChanges(Contact contact, String name, String phone, String email, String address, boolean isBlacklisted) {
+        if (name != null && !name.trim().isEmpty()) {
+            contact.setName(name);
+        }
+
+        if (phone != null && !phone.trim().isEmpty()) {
+            if (isValidPhone(phone)) {
+                contact.setPhone(phone);
+            } else {
+                return "电话号码格式不正确！电话号码应为7-11位数字";
+            }
+        }
+
+        if (email != null) {
+            if (email.trim().isEmpty()) {
+                contact.setEmail(null);
+            } else if (isValidEmail(email)) {
+                contact.setEmail(email);
+            } else {
+                return "邮箱格式不正确或不能只使用QQ邮箱！";
+            }
+        }
+
+        if (address != null) {
+            contact.setAddress(address.trim().isEmpty() ? null : address);
+        }
+
+        contact.setBlacklisted(isBlacklisted); // 更新黑名单状态
+        return null;
+    }
+
+    /**
+     * 写回修改后的联系人，调用方需持有该编号的写锁
+     */
+    private boolean saveUpdated(ContactChangeJournal.ChangeType type, Contact contact) {
+        boolean updated = dao.updateContact(contact);
+        if (updated) {
+            cachePut(type, contact);
+        }
+        return updated;
+    }
+
+    /**
+     * 根据编号查询联系人，查到时记为一次访问（打开详情、修改都经过这里）；已归档的联系人移回后返回
+     */
+    public Contact getContact(int id) {
+        ContactSnapshot snapshot = readSnapshot();
+        Contact contact = null;
+        if (snapshot != null) {
+            Contact cached = snapshot.get(id);
+            if (cached != null) {
+                contact = new Contact(cached);
+            }
+        }
+        // 熔断期间不访问数据库，只在内存副本（本地快照）中查找
+        if (contact == null && (snapshot == null || !reconciled) && dao.allowsAttempt()) {
+            contact = dao.getContact(id);
+            if (contact == null && snapshot == null && fallBackToLocal()) {
+                return getContact(id);
+            }
+        }
+        if (contact == null) {
+            contact = restoreArchived(id);
+        }
+        if (contact != null) {
+            recordAccess(id);
+        }
+        return contact;
+    }
+
+    private void recordAccess(int id) {
+        accessTracker.record(id);
+        if (ContactTiering.ENABLED) {
+            touched.add(id);
+        }
+    }
+
+    /**
+     * 按编号批量查询联系人，缓存未命中的部分一次性从数据库读取
+     * @return 编号到联系人的映射，不存在的编号不出现在结果中
+     */
+    public Map<Integer, Contact> getContacts(Collection<Integer> ids) {
+        Map<Integer, Contact> found = new HashMap<>(Math.max(16, ids.size() * 2));
+        ContactSnapshot snapshot = readSnapshot();
+        List<Integer> missing = new ArrayList<>();
+        for (int id : ids) {
+            Contact cached = snapshot != null ? snapshot.get(id) : null;
+            if (cached != null) {
+                found.put(id, new Contact(cached));
+            } else if (snapshot == null || !reconciled) {
+                missing.add(id);
+            }
+        }
+        if (!missing.isEmpty()) {
+            try {
+                found.putAll(dao.getContacts(missing));
+            } catch (SQLException e) {
+                System.err.println("批量查询联系人失败: " + e.getMessage());
+                if (snapshot == null && fallBackToLocal()) {
+                    return getContacts(ids);
+                }
+                return found;
+            }
+        }
+        for (int id : ids) {
+            if (!found.containsKey(id)) {
+                Contact restored = restoreArchived(id);
+                if (restored != null) {
+                    found.put(id, restored);
+                }
+            }
+        }
+        return found;
+    }
+
+    /**
+     * 查询所有联系人
+     */
+    public List<Contact> getAllContacts() {
+        Contact[] sorted = sortedByName();
+        if (sorted != null) {
+            List<Contact> contacts = new ArrayList<>(sorted.length);
+            for (Contact cached : sorted) {
+                contacts.add(new Contact(cached));
+            }
+            return contacts;
+        }
+        List<Contact> contacts;
+        try {
+            contacts = dao.fetchAllContacts();
+        } catch (SQLException e) {
+            System.err.println("获取所有联系人失败: " + e.getMessage());
+            // 数据库不可用时显示本地快照，而不是空的通讯录
+            return fallBackToLocal() ? getAllContacts() : new ArrayList<>();
+        }
+        // 按姓名字母排序
+        Collections.sort(contacts, Comparator.comparing(Contact::getName));
+        return contacts;
+    }
 
-    public ContactService() {
-        dao = new ContactDao();
+    /**
+     * 列表用的联系人摘要（编号、姓名、电话），按姓名排序
+     * 内存副本已加载时直接引用其中的字符串，不复制完整联系人；否则用投影查询只读取这三列
+     */
+    public List<ContactSummary> listSummaries() {
+        Contact[] sorted = sortedByName();
+        if (sorted != null) {
+            List<ContactSummary> summaries = new ArrayList<>(sorted.length);
+            for (Contact cached : sorted) {
+                summaries.add(ContactSummary.of(cached));
+            }
+            return summaries;
+        }
+        try {
+            return dao.querySummaries(null);
+        } catch (SQLException e) {
+            System.err.println("获取联系人列表失败: " + e.getMessage());
+            return fallBackToLocal() ? listSummaries() : new ArrayList<>();
+        }
     }
 
     /**
-     * 添加新联系人，包含输入校验
+     * 按姓名或电话模糊查询，只返回摘要；与 searchContacts 共用查询缓存
      */
-    public boolean addContact(String name, String phone, String email, String address, boolean isBlacklisted) {
-        if (name == null || name.trim().isEmpty()) {
-            System.out.println("姓名不能为空！");
-            return false;
+    public List<ContactSummary> searchSummaries(String keyword) {
+        ContactSnapshot snapshot = readSnapshot();
+        if (snapshot == null) {
+            try {
+                return dao.querySummaries(keyword);
+            } catch (SQLException e) {
+                System.err.println("模糊查询联系人失败: " + e.getMessage());
+                return fallBackToLocal() ? searchSummaries(keyword) : new ArrayList<>();
+            }
+        }
+        String key = ContactSearchCache.normalize(keyword);
+        long generation = cacheGeneration();
+        int[] cachedIds = searchCache.get(key, generation);
+        List<ContactSummary> results = new ArrayList<>();
+        if (cachedIds != null) {
+            for (int id : cachedIds) {
+                Contact cached = snapshot.get(id);
+                if (cached != null) {
+                    results.add(ContactSummary.of(cached));
+                }
+            }
+            return results;
+        }
+        for (Contact cached : snapshot.sortedByName()) {
+            if (cached.getName().toLowerCase().contains(key) || cached.getPhone().contains(key)) {
+                results.add(ContactSummary.of(cached));
+            }
+        }
+        int[] ids = new int[results.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = results.get(i).getId();
         }
+        searchCache.put(key, generation, ids);
+        return results;
+    }
 
-        if (!isValidPhone(phone)) {
-            System.out.println("电话号码格式不正确！电话号码应为7-11位数字");
-            return false;
+    /**
+     * 列表选中某行后读取完整信息
+     * 内存副本中有该联系人时直接返回；否则查详情缓存，未命中时连同列表中相邻的行一次批量读取，
+     * 之后在相邻行间移动不再访问数据库
+     * @param neighbours 列表中与该行相邻的联系人编号（靠近的在前），用于预读
+     * @return 联系人，不存在时返回 null
+     */
+    public Contact getContactDetail(int id, List<Integer> neighbours) {
+        ContactSnapshot snapshot = readSnapshot();
+        if (snapshot != null && (reconciled || snapshot.contains(id))) {
+            return getContact(id);
+        }
+        long generation = cacheGeneration();
+        Contact contact = detailCache.get(id, generation);
+        if (contact == null) {
+            List<Integer> batch = new ArrayList<>(Math.min(neighbours.size(), DETAIL_PREFETCH) + 1);
+            batch.add(id);
+            for (int neighbour : neighbours) {
+                if (batch.size() > DETAIL_PREFETCH) {
+                    break;
+                }
+                if (neighbour != id && !detailCache.contains(neighbour, generation)) {
+                    batch.add(neighbour);
+                }
+            }
+            Map<Integer, Contact> found;
+            try {
+                found = dao.getContacts(batch);
+            } catch (SQLException e) {
+                System.err.println("查询联系人失败: " + e.getMessage());
+                return fallBackToLocal() ? getContact(id) : null;
+            }
+            detailCache.putAll(found, generation);
+            contact = found.get(id);
+            if (contact == null) {
+                contact = restoreArchived(id);
+            }
+        }
+        if (contact != null) {
+            recordAccess(id);
         }
+        return contact;
+    }
 
-        if (!isValidEmail(email)) {
-            System.out.println("邮箱格式不正确或不能只使用QQ邮箱！");
-            return false;
+    // ---------------------------------------------------------------- 冷数据分层
+
+    /**
+     * 从数据库读取归档中的编号
+     * @param reload 已加载时是否重新读取（同步数据库时），否则只在尚未加载时读取
+     */
+    private void loadArchived(boolean reload) {
+        synchronized (archivedLoadLock) {
+            long epoch;
+            synchronized (archivedLock) {
+                if (archived != null && !reload) {
+                    return;
+                }
+                epoch = archivedEpoch;
+            }
+            try {
+                ContactBitmap ids = dao.archivedIds();
+                synchronized (archivedLock) {
+                    // 读取期间补记过编号时结果可能不全，已加载的保留，未加载的留到下次
+                    if (archivedEpoch == epoch) {
+                        archived = ids;
+                    }
+                }
+            } catch (SQLException e) {
+                synchronized (archivedLock) {
+                    archivedRetryAt = System.currentTimeMillis() + ARCHIVED_RETRY_MILLIS;
+                }
+                System.err.println("读取归档联系人失败，未命中的查询将逐个检查归档: " + e.getMessage());
+            }
         }
+    }
 
-        Contact contact = new Contact(0, name, phone, 
-                                       email != null && email.trim().isEmpty() ? null : email, 
-                                       address != null && address.trim().isEmpty() ? null : address, isBlacklisted);
-        contact.setBlacklisted(isBlacklisted); // 设置黑名单状态
-        dao.addContact(contact);
-        return true;
+    /**
+     * 编号是否可能在归档中；归档编号尚未加载时先加载，无法加载时只查这一个编号，避免对每次未命中都开启移回的事务
+     */
+    private boolean mayBeArchived(int id) throws SQLException {
+        boolean load;
+        synchronized (archivedLock) {
+            if (archived != null) {
+                return archived.contains(id);
+            }
+            load = System.currentTimeMillis() >= archivedRetryAt;
+        }
+        if (load) {
+            loadArchived(false);
+            synchronized (archivedLock) {
+                if (archived != null) {
+                    return archived.contains(id);
+                }
+            }
+        }
+        return dao.isArchived(id);
+    }
+
+    private void markMaybeArchived(Collection<Integer> ids) {
+        synchronized (archivedLock) {
+            archivedEpoch++;
+            if (archived != null) {
+                for (int id : ids) {
+                    archived.add(id);
+                }
+            }
+        }
     }
+
     /**
-     * 删除联系人
+     * 把查询归档得到的联系人移回联系人表；与按编号读取不同，不会返回编号相同的其他联系人
+     * @return 移回的联系人（原编号已被占用时编号会改变），不在归档中或移回失败时返回 null
      */
-    public boolean deleteContact(int id) {
-        return dao.deleteContact(id);
+    public Contact restoreArchivedContact(int id) {
+        return restoreArchived(id, true);
+    }
+
+    private Contact restoreArchived(int id) {
+        return restoreArchived(id, false);
     }
 
     /**
-     * 更新联系人信息
+     * 编号在归档中时移回联系人表并发布到内存副本（各索引随之更新）
+     * @param explicit 确知编号来自归档（而非按编号读取未命中）
+     * @return 移回的联系人，不在归档中或移回失败时返回 null
      */
-    public boolean updateContact(int id, String name, String phone, String email, String address, boolean isBlacklisted) {
-        Contact contact = dao.getContact(id);
-        if (contact == null) {
-            System.out.println("未找到编号为 " + id + " 的联系人！");
-            return false;
+    private Contact restoreArchived(int id, boolean explicit) {
+        // 数据库不可用时无法确认，按不存在处理
+        if (!dao.isAvailable()) {
+            return null;
+        }
+        try {
+            if (!explicit && !mayBeArchived(id)) {
+                return null;
+            }
+        } catch (SQLException e) {
+            System.err.println("查询归档联系人失败: " + e.getMessage());
+            return null;
+        }
+        ReentrantLock lock = writeLock(id);
+        lock.lock();
+        try {
+            // 等锁期间可能已被其他线程移回
+            ContactSnapshot snapshot = current.get();
+            if (!explicit && snapshot != null && snapshot.contains(id)) {
+                return new Contact(snapshot.get(id));
+            }
+            int restoredId = dao.unarchiveContact(id);
+            synchronized (archivedLock) {
+                if (archived != null) {
+                    archived.remove(id);
+                }
+            }
+            if (restoredId == 0) {
+                return null;
+            }
+            unarchivedCount.incrementAndGet();
+            Contact contact = dao.getContacts(Collections.singletonList(restoredId), true).get(restoredId);
+            if (contact != null) {
+                cachePut(ContactChangeJournal.ChangeType.ADD, contact);
+            }
+            return contact;
+        } catch (SQLException e) {
+            System.err.println("从归档移回联系人失败: " + e.getMessage());
+            return null;
+        } finally {
+            lock.unlock();
         }
+    }
 
-        if (name != null && !name.trim().isEmpty()) {
-            contact.setName(name);
+    /**
+     * 在归档中按姓名或电话模糊查询，不移回；需要时再用 restoreArchivedContact 移回
+     */
+    public List<Contact> searchArchivedContacts(String keyword) {
+        try {
+            return dao.searchArchive(keyword);
+        } catch (SQLException e) {
+            System.err.println("查询归档联系人失败: " + e.getMessage());
+            return new ArrayList<>();
         }
+    }
 
-        if (phone != null && !phone.trim().isEmpty()) {
-            if (isValidPhone(phone)) {
-                contact.setPhone(phone);
-            } else {
-                System.out.println("电话号码格式不正确！电话号码应为7-11位数字");
-                return false;
+    /**
+     * 把近期访问过的编号的最近访问时间写回数据库，失败的留到下次
+     */
+    void flushAccesses() {
+        if (touched.isEmpty()) {
+            return;
+        }
+        List<Integer> ids = new ArrayList<>(touched);
+        try {
+            dao.touchContacts(ids);
+            touched.removeAll(ids);
+        } catch (SQLException e) {
+            System.err.println("更新最近访问时间失败: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 归档一批冷数据：从数据库与内存副本中移除，之后只在按编号访问或显式查询归档时读取
+     * 近期访问过但尚未写回的联系人不归档；移动期间持有这些编号的写锁，与并发修改互斥
+     * @param idleBeforeMillis 最近访问早于该时间的视为冷数据
+     * @param blacklisted 已拉黑的联系人是否也归档
+     * @return 本批归档的联系人数
+     */
+    int archiveCold(long idleBeforeMillis, boolean blacklisted, int limit) throws SQLException {
+        List<Integer> candidates = dao.archiveCandidates(idleBeforeMillis, blacklisted, limit);
+        candidates.removeIf(touched::contains);
+        if (candidates.isEmpty()) {
+            return 0;
+        }
+        int[] stripes = lockAll(candidates);
+        try {
+            List<Integer> moved = dao.archiveContacts(candidates, idleBeforeMillis, blacklisted);
+            markMaybeArchived(moved);
+            for (int id : moved) {
+                cacheRemove(id);
             }
+            archivedCount.addAndGet(moved.size());
+            return moved.size();
+        } finally {
+            unlockAll(stripes);
         }
+    }
 
-        if (email != null) {
-            if (email.trim().isEmpty()) {
-                contact.setEmail(null);
-            } else if (isValidEmail(email)) {
-                contact.setEmail(email);
-            } else {
-                System.out.println("邮箱格式不正确或不能只使用QQ邮箱！");
-                return false;
+    /**
+     * 冷数据分层的统计
+     */
+    public String getTieringStats() {
+        String resident;
+        synchronized (archivedLock) {
+            resident = archived == null ? "未知" : String.valueOf(archived.cardinality());
+        }
+        return "冷数据: 归档中 " + resident + " 个，本次运行归档 " + archivedCount.get() + " 个，移回 "
+                + unarchivedCount.get() + " 个";
+    }
+
+    /**
+     * 模糊查询联系人，根据姓名或电话包含关键字进行查询
+     * 结果以编号列表缓存，相同关键字（不区分大小写）在没有写入时直接由缓存返回
+     */
+    public List<Contact> searchContacts(String keyword) {
+        String key = ContactSearchCache.normalize(keyword);
+        // 先读取代数再查询，查询期间发生的写入会使本次结果在缓存中立即失效
+        long generation = cacheGeneration();
+        int[] cachedIds = searchCache.get(key, generation);
+        if (cachedIds != null) {
+            return resolveCached(cachedIds);
+        }
+        List<Contact> results;
+        Contact[] sorted = sortedByName();
+        if (sorted != null) {
+            results = new ArrayList<>();
+            for (Contact cached : sorted) {
+                if (cached.getName().toLowerCase().contains(key) || cached.getPhone().contains(key)) {
+                    results.add(new Contact(cached));
+                }
+            }
+        } else {
+            results = dao.searchContacts(keyword);
+            // 失败时 DAO 返回空结果；数据库不可用时改为在本地快照中查询，也不缓存空结果
+            if (results.isEmpty() && fallBackToLocal()) {
+                return searchContacts(keyword);
             }
+            // 按姓名字母排序
+            Collections.sort(results, Comparator.comparing(Contact::getName));
         }
+        int[] ids = new int[results.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = results.get(i).getId();
+        }
+        searchCache.put(key, generation, ids);
+        return results;
+    }
 
-        if (address != null) {
-            contact.setAddress(address.trim().isEmpty() ? null : address);
+    /**
+     * 按缓存的编号顺序取出联系人；此后又被删除的联系人跳过
+     */
+    private List<Contact> resolveCached(int[] ids) {
+        List<Contact> results = new ArrayList<>(ids.length);
+        if (ids.length == 0) {
+            return results;
+        }
+        List<Integer> idList = new ArrayList<>(ids.length);
+        for (int id : ids) {
+            idList.add(id);
         }
+        Map<Integer, Contact> found = getContacts(idList);
+        for (int id : ids) {
+            Contact contact = found.get(id);
+            if (contact != null) {
+                results.add(contact);
+            }
+        }
+        return results;
+    }
 
-        contact.setBlacklisted(isBlacklisted); // 更新黑名单状态
-        return dao.updateContact(contact);
+    /**
+     * 常用联系人候选：只在热点联系人（最常访问的少量联系人）中按姓名或电话匹配，按访问频率排序
+     * 不扫描全部联系人，可在完整查询返回之前先行展示
+     */
+    public List<Contact> suggestContacts(String keyword, int limit) {
+        List<Integer> hotIds = accessTracker.hotIds();
+        List<Contact> results = new ArrayList<>();
+        if (hotIds.isEmpty() || limit <= 0) {
+            return results;
+        }
+        String lower = keyword.toLowerCase();
+        Map<Integer, Contact> found = getContacts(hotIds);
+        for (int id : hotIds) {
+            Contact contact = found.get(id);
+            if (contact != null && (contact.getName().toLowerCase().contains(lower) || contact.getPhone().contains(lower))) {
+                results.add(contact);
+                if (results.size() >= limit) {
+                    break;
+                }
+            }
+        }
+        return results;
     }
 
     /**
-     * 根据编号查询联系人
+     * 与 searchContacts 的结果相同，但常访问的联系人排在前面，访问频率相同（包括从未访问）的按姓名排序
      */
-    public Contact getContact(int id) {
-        return dao.getContact(id);
+    public List<Contact> searchContactsByFrequency(String keyword) {
+        return byFrequency(searchContacts(keyword), Contact::getId);
     }
 
     /**
-     * 查询所有联系人
+     * 与 searchSummaries 的结果相同，排序方式同 searchContactsByFrequency，供列表显示
      */
-    public List<Contact> getAllContacts() {
-        List<Contact> contacts = dao.getAllContacts();
-        // 按姓名字母排序
-        Collections.sort(contacts, Comparator.comparing(Contact::getName));
-        return contacts;
+    public List<ContactSummary> searchSummariesByFrequency(String keyword) {
+        return byFrequency(searchSummaries(keyword), ContactSummary::getId);
     }
 
     /**
-     * 模糊查询联系人，根据姓名或电话包含关键字进行查询
+     * 按访问频率从高到低重排结果，频率相同的保持原有的姓名顺序
      */
-    public List<Contact> searchContacts(String keyword) {
-        List<Contact> results = dao.searchContacts(keyword);
-        // 按姓名字母排序
-        Collections.sort(results, Comparator.comparing(Contact::getName));
+    private <T> List<T> byFrequency(List<T> results, ToIntFunction<T> idOf) {
+        int[] ids = new int[results.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = idOf.applyAsInt(results.get(i));
+        }
+        int[] scores = accessTracker.estimates(ids);
+        Map<Integer, Integer> scoreOf = new HashMap<>();
+        for (int i = 0; i < ids.length; i++) {
+            if (scores[i] > 0) {
+                scoreOf.put(ids[i], scores[i]);
+            }
+        }
+        if (!scoreOf.isEmpty()) {
+            // 稳定排序，分数相同的保持原有的姓名顺序
+            results.sort(Comparator.comparingInt(r -> -scoreOf.getOrDefault(idOf.applyAsInt(r), 0)));
+        }
+        return results;
+    }
+
+    /**
+     * 模糊查询结果缓存的命中率与内存占用
+     */
+    public ContactSearchCache.Stats getSearchCacheStats() {
+        return searchCache.stats();
+    }
+
+    /**
+     * 在范围内按姓名或电话模糊查询，关键字为空时列出范围内的全部联系人，结果按姓名排序
+     * 范围是标签（分组）、黑名单状态及其 AND / OR / NOT 组合，例如
+     *   and(tagged("同事"), not(tagged("VIP")), blacklisted(false))
+     * 内存副本可用时范围由位图索引一次求出，之后按姓名视图顺序逐行只判断编号是否在位图中
+     * @param scope 范围，null 表示不限范围
+     */
+    public List<Contact> searchContacts(String keyword, ContactFilter scope) {
+        ContactSnapshot snapshot = current.get();
+        boolean allRows = keyword == null || keyword.isEmpty();
+        if (scope == null) {
+            return allRows ? getAllContacts() : searchContacts(keyword);
+        }
+        if (snapshot == null || !tagIndex.supports(scope)) {
+            return findContacts(allRows ? scope : ContactFilter.and(scope, ContactFilter.or(
+                    ContactFilter.contains(ContactFilter.Field.NAME, keyword),
+                    ContactFilter.contains(ContactFilter.Field.PHONE, keyword))), 0);
+        }
+        ContactBitmap members = tagIndex.lookupBitmap(scope);
+        String lower = allRows ? "" : keyword.toLowerCase();
+        List<Contact> results = new ArrayList<>(Math.min(members.cardinality(), 1024));
+        for (Contact cached : snapshot.sortedByName()) {
+            if (members.contains(cached.getId()) && (allRows
+                    || cached.getName().toLowerCase().contains(lower) || cached.getPhone().contains(lower))) {
+                results.add(new Contact(cached));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 各标签（分组）的联系人数量，按标签名排序
+     */
+    public Map<String, Integer> getTagCounts() {
+        if (closed) {
+            ContactSnapshot snapshot = closedSnapshot();
+            ContactTagIndex counted = new ContactTagIndex();
+            counted.contactsReloaded(snapshot == null ? Collections.emptyList() : snapshot.values());
+            return counted.countByTag();
+        }
+        ensureLoaded();
+        return tagIndex.countByTag();
+    }
+
+    /**
+     * 为一批联系人加上标签（分组），已带有该标签的联系人直接视为成功
+     * @return 与输入一一对应的结果，null 表示成功，否则为失败原因
+     */
+    public String[] tagContacts(List<Integer> ids, String tag) {
+        return changeTag(ids, tag, true);
+    }
+
+    /**
+     * 去掉一批联系人的标签（分组），本就不带该标签的联系人直接视为成功
+     * @return 与输入一一对应的结果，null 表示成功，否则为失败原因
+     */
+    public String[] untagContacts(List<Integer> ids, String tag) {
+        return changeTag(ids, tag, false);
+    }
+
+    private String[] changeTag(List<Integer> ids, String tag, boolean add) {
+        String[] errors = new String[ids.size()];
+        String normalized = tag == null ? "" : tag.trim();
+        if (normalized.isEmpty() || normalized.length() > MAX_TAG_LENGTH) {
+            Arrays.fill(errors, "标签不能为空且不能超过 " + MAX_TAG_LENGTH + " 个字符！");
+            return errors;
+        }
+        if (!dao.allowsAttempt()) {
+            Arrays.fill(errors, READ_ONLY);
+            return errors;
+        }
+        int[] stripes = lockAll(ids);
+        try {
+            Map<Integer, Contact> existing = getContacts(ids);
+            List<Contact> changed = new ArrayList<>();
+            List<Integer> changedIds = new ArrayList<>();
+            for (int i = 0; i < ids.size(); i++) {
+                Contact contact = existing.get(ids.get(i));
+                if (contact == null) {
+                    errors[i] = "未找到编号为 " + ids.get(i) + " 的联系人！";
+                } else if (contact.getTags().contains(normalized) != add) {
+                    Set<String> tags = new TreeSet<>(contact.getTags());
+                    if (add) {
+                        tags.add(normalized);
+                    } else {
+                        tags.remove(normalized);
+                    }
+                    contact.setTags(tags); // 同一编号重复出现时是同一对象，第二次不再满足条件
+                    changed.add(contact);
+                    changedIds.add(contact.getId());
+                }
+            }
+            if (changed.isEmpty()) {
+                return errors;
+            }
+            try {
+                dao.updateTags(changedIds, normalized, add);
+            } catch (SQLException e) {
+                String failure = "批量修改标签失败: " + e.getMessage();
+                Set<Integer> failed = new HashSet<>(changedIds);
+                for (int i = 0; i < ids.size(); i++) {
+                    if (failed.contains(ids.get(i))) {
+                        errors[i] = failure;
+                    }
+                }
+                return errors;
+            }
+            for (Contact contact : changed) {
+                cachePut(ContactChangeJournal.ChangeType.UPDATE, contact);
+            }
+            return errors;
+        } finally {
+            unlockAll(stripes);
+        }
+    }
+
+    /**
+     * 组合条件查询，结果按姓名排序
+     * @param filter 过滤条件，见 ContactFilter
+     * @param limit 最多返回条数，小于等于 0 表示不限制
+     */
+    public List<Contact> findContacts(ContactFilter filter, int limit) {
+        // 整个查询使用同一个快照，结果不会混杂查询期间发生的写入
+        ContactSnapshot snapshot = current.get();
+        ContactQueryPlanner.Plan plan = planner.plan(filter, limit, snapshot != null, indexes);
+        ContactFilter residual = plan.residualFilter();
+        List<Contact> results = new ArrayList<>();
+        switch (plan.access) {
+            case INDEX: {
+                ContactBitmap candidates = lookupCandidates(plan);
+                if ((long) candidates.cardinality() * DENSE_CANDIDATE_RATIO >= snapshot.size()) {
+                    // 候选较多时按姓名视图顺序判断编号是否在位图中，免去逐个查找和排序，满足 LIMIT 即停止
+                    for (Contact cached : snapshot.sortedByName()) {
+                        if (candidates.contains(cached.getId()) && (residual == null || residual.test(cached))) {
+                            results.add(new Contact(cached));
+                            if (plan.hasLimit() && results.size() >= plan.limit) {
+                                break;
+                            }
+                        }
+                    }
+                    return results;
+                }
+                for (int id : candidates.toArray()) {
+                    Contact cached = snapshot.get(id);
+                    if (cached != null && (residual == null || residual.test(cached))) {
+                        results.add(new Contact(cached));
+                    }
+                }
+                results.sort(ContactSnapshot.BY_NAME);
+                if (plan.hasLimit() && results.size() > plan.limit) {
+                    results = new ArrayList<>(results.subList(0, plan.limit));
+                }
+                return results;
+            }
+            case MEMORY_SCAN: {
+                // 视图已按姓名排序，并行扫描保持该顺序，满足 LIMIT 即可停止
+                for (Contact cached : scanEngine.scan(snapshot.sortedByName(), residual, plan.limit).matches) {
+                    results.add(new Contact(cached));
+                }
+                return results;
+            }
+            default:
+                try {
+                    return dao.queryContacts(plan.where, plan.params,
+                            residual == null ? null : residual::test, plan.limit);
+                } catch (SQLException e) {
+                    System.err.println("条件查询联系人失败: " + e.getMessage());
+                    return results;
+                }
+        }
+    }
+
+    /**
+     * 求出索引条件的候选编号：同一索引的多个条件合并为一个 AND 交给该索引，各索引的结果按位图求交集
+     */
+    private static ContactBitmap lookupCandidates(ContactQueryPlanner.Plan plan) {
+        Map<ContactIndex, List<ContactFilter>> byIndex = new LinkedHashMap<>();
+        for (int i = 0; i < plan.indexConditions.size(); i++) {
+            byIndex.computeIfAbsent(plan.indexUsed.get(i), k -> new ArrayList<>()).add(plan.indexConditions.get(i));
+        }
+        ContactBitmap candidates = null;
+        for (Map.Entry<ContactIndex, List<ContactFilter>> entry : byIndex.entrySet()) {
+            List<ContactFilter> conditions = entry.getValue();
+            ContactBitmap found = entry.getKey().lookupBitmap(
+                    conditions.size() == 1 ? conditions.get(0) : new ContactFilter.And(conditions));
+            candidates = candidates == null ? found : ContactBitmap.and(candidates, found);
+        }
+        return candidates;
+    }
+
+    /**
+     * 即席扫描：在内存副本上并行判断任意条件（如 ContactFilter.regex、地址子串），不使用索引也不访问数据库
+     * @param filter 过滤条件
+     * @param limit 最多返回条数，小于等于 0 表示不限制
+     * @return 按姓名排序的命中结果，以及扫描行数、耗时与每秒扫描行数
+     */
+    public ContactScanEngine.Result scanContacts(ContactFilter filter, int limit) {
+        ensureLoaded();
+        ContactSnapshot snapshot = closed ? closedSnapshot() : current.get();
+        Contact[] rows = snapshot == null ? new Contact[0] : snapshot.sortedByName();
+        ContactScanEngine.Result result = scanEngine.scan(rows, filter, limit);
+        result.matches.replaceAll(Contact::new);
+        return result;
+    }
+
+    /**
+     * 返回组合条件查询的执行计划说明，不执行查询
+     */
+    public String explain(ContactFilter filter, int limit) {
+        return planner.plan(filter, limit, current.get() != null, indexes).explain(dao.getTenant());
+    }
+
+    /**
+     * 分面计数：按城市、邮箱域名、黑名单状态统计联系人数量，随每次写入增量维护
+     * 首次调用时创建并注册到内存副本，之后的查询只读取计数，不访问数据库
+     */
+    public ContactFacets getFacets() {
+        if (closed) {
+            ContactSnapshot snapshot = closedSnapshot();
+            ContactFacets counted = new ContactFacets();
+            counted.contactsReloaded(snapshot == null ? Collections.emptyList() : snapshot.values());
+            return counted;
+        }
+        ContactFacets result = facets;
+        if (result == null) {
+            synchronized (this) {
+                if (facets == null) {
+                    ContactFacets created = new ContactFacets();
+                    addChangeListener(created);
+                    facets = created;
+                }
+                result = facets;
+            }
+        }
+        ensureLoaded();
+        return result;
+    }
+
+    /**
+     * 以内存副本全量重建分面计数，用于计数出现偏差后的恢复
+     */
+    public void rebuildFacets() {
+        ContactFacets rebuilt = getFacets();
+        publishLock.writeLock().lock();
+        try {
+            ContactSnapshot snapshot = current.get();
+            if (snapshot != null) {
+                rebuilt.contactsReloaded(snapshot.values());
+            }
+        } finally {
+            publishLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * 容错检索：查找姓名或电话与关键字编辑距离不超过 maxDistance 的联系人
+     * 由 BK 树索引支持，首次调用时建立索引，之后随写入增量维护
+     * @param keyword 关键字
+     * @param maxDistance 允许的最大编辑距离
+     * @param limit 最多返回条数，小于等于 0 表示不限制
+     * @return 按编辑距离从小到大、距离相同时按姓名排序的联系人
+     */
+    public List<Contact> fuzzySearch(String keyword, int maxDistance, int limit) {
+        ContactSnapshot snapshot = null;
+        boolean detached = closed;
+        ContactFuzzyIndex index = fuzzyIndex;
+        if (detached) {
+            snapshot = closedSnapshot();
+            index = new ContactFuzzyIndex();
+            index.contactsReloaded(snapshot == null ? Collections.emptyList() : snapshot.values());
+        } else if (index == null) {
+            synchronized (this) {
+                if (fuzzyIndex == null) {
+                    ContactFuzzyIndex created = new ContactFuzzyIndex();
+                    addChangeListener(created);
+                    fuzzyIndex = created;
+                }
+                index = fuzzyIndex;
+            }
+        }
+        if (!detached) {
+            ensureLoaded();
+            snapshot = current.get();
+        }
+        List<ContactFuzzyIndex.Match> matches = index.search(keyword, maxDistance);
+        List<Contact> results = new ArrayList<>();
+        if (snapshot == null) {
+            return results;
+        }
+        Map<Integer, Integer> distances = new HashMap<>();
+        for (ContactFuzzyIndex.Match match : matches) {
+            Contact cached = snapshot.get(match.id);
+            if (cached != null) {
+                results.add(new Contact(cached));
+                distances.put(match.id, match.distance);
+            }
+        }
+        results.sort(Comparator.<Contact>comparingInt(c -> distances.get(c.getId()))
+                .thenComparing(Contact::getName));
+        if (limit > 0 && results.size() > limit) {
+            results = new ArrayList<>(results.subList(0, limit));
+        }
+        return results;
+    }
+
+    /**
+     * 全文检索：在姓名、电话、邮箱、地址中查找，按 BM25 相关度（以访问频率加权）从高到低返回
+     * 中文按单字与二元组匹配，字母数字按整词匹配（不区分大小写）；姓名命中的权重最高，地址最低
+     * 首次调用时建立倒排索引，之后随写入增量维护
+     * @param query 查询文本，可包含多个词，命中的词越多越靠前
+     * @param limit 最多返回条数
+     */
+    public List<Contact> searchContactsRanked(String query, int limit) {
+        ContactSnapshot snapshot = null;
+        boolean detached = closed;
+        ContactTextIndex index = textIndex;
+        if (detached) {
+            snapshot = closedSnapshot();
+            index = new ContactTextIndex();
+            index.contactsReloaded(snapshot == null ? Collections.emptyList() : snapshot.values());
+        } else if (index == null) {
+            synchronized (this) {
+                if (textIndex == null) {
+                    ContactTextIndex created = new ContactTextIndex();
+                    addChangeListener(created);
+                    textIndex = created;
+                }
+                index = textIndex;
+            }
+        }
+        if (!detached) {
+            ensureLoaded();
+            snapshot = current.get();
+        }
+        List<Contact> results = new ArrayList<>();
+        if (snapshot == null) {
+            return results;
+        }
+        // 多取一些相关度靠前的结果，按访问频率加权后重新排序再截取
+        List<ContactTextIndex.Hit> hits = index.search(query, Math.max(limit * 4, 50));
+        int[] ids = new int[hits.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = hits.get(i).id;
+        }
+        int[] popularity = accessTracker.estimates(ids);
+        double[] weighted = new double[ids.length];
+        Integer[] order = new Integer[ids.length];
+        for (int i = 0; i < ids.length; i++) {
+            weighted[i] = hits.get(i).score * (1 + POPULARITY_WEIGHT * Math.log1p(popularity[i]));
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(weighted[b], weighted[a]));
+        for (int i : order) {
+            Contact cached = snapshot.get(ids[i]);
+            if (cached != null) {
+                results.add(new Contact(cached));
+                if (results.size() >= limit) {
+                    break;
+                }
+            }
+        }
         return results;
     }
 
+    /**
+     * 注册内存索引，供组合条件查询使用
+     */
+    void registerIndex(ContactIndex index) {
+        indexes.add(index);
+    }
+
+    /**
+     * 编号索引：直接使用内存副本按编号查找，回答 idIn 条件
+     */
+    private final class IdIndex implements ContactIndex {
+        @Override
+        public String getName() {
+            return "id";
+        }
+
+        @Override
+        public boolean supports(ContactFilter condition) {
+            return condition instanceof ContactFilter.IdIn;
+        }
+
+        @Override
+        public int[] lookup(ContactFilter condition) {
+            ContactSnapshot snapshot = current.get();
+            Set<Integer> ids = ((ContactFilter.IdIn) condition).ids;
+            int[] found = new int[ids.size()];
+            int n = 0;
+            for (int id : ids) {
+                if (snapshot != null && snapshot.contains(id)) {
+                    found[n++] = id;
+                }
+            }
+            found = Arrays.copyOf(found, n);
+            Arrays.sort(found);
+            return found;
+        }
+    }
+
     /**
      * 电话号码校验：7-11位数字
      */
@@ -157,15 +2089,33 @@ class ContactService {
 				return contact;
 			}
 		}
+		// 按姓名与电话精确查找也算访问，归档中的同样移回
+		for (Contact contact : searchArchivedContacts(phone)) {
+			if (contact.getName().equals(name) && contact.getPhone().equals(phone)) {
+				Contact restored = restoreArchivedContact(contact.getId());
+				if (restored != null) {
+					return restored;
+				}
+			}
+		}
 		return null;
 	}
 	public boolean addToBlacklist(int id) {
-	    Contact contact = dao.getContact(id);
-	    if (contact == null) {
-	        System.out.println("未找到编号为 " + id + " 的联系人！");
+	    if (rejectWrite()) {
 	        return false;
 	    }
-	    contact.setBlacklisted(true);
-	    return dao.updateContact(contact);
+	    ReentrantLock lock = writeLock(id);
+	    lock.lock();
+	    try {
+	        Contact contact = getContact(id);
+	        if (contact == null) {
+	            System.out.println("未找到编号为 " + id + " 的联系人！");
+	            return false;
+	        }
+	        contact.setBlacklisted(true);
+	        return saveUpdated(ContactChangeJournal.ChangeType.BLACKLIST, contact);
+	    } finally {
+	        lock.unlock();
+	    }
 	}
 }
\ No newline at end of file
@@ -0,0 +1,210 @@
+package system;
+
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ContactServiceAsync 类：ContactService 的异步接口，每个方法立即返回 CompletableFuture
+ * 任务在虚拟线程上执行（运行在 Java 21 及以上时，通过反射创建），否则退回到守护线程池；
+ * 同时执行的任务数由信号量限制，避免并发请求超过数据库连接的承受能力。
+ * 支持超时（超时后以 TimeoutException 结束并中断任务）与取消（cancel 会中断正在执行的任务）。
+ *
+ * 用法示例：
+ *   ContactServiceAsync async = ContactService.getShared().async();
+ *   CompletableFuture<Contact> a = async.getContactAsync(1);
+ *   CompletableFuture<List<Contact>> b = async.searchContactsAsync("王");
+ *   a.thenCombine(b, (contact, results) -> ...);
+ */
+class ContactServiceAsync {
+
+    // 批量查询拆分后每个子任务的编号数
+    private static final int MULTI_GET_CHUNK = 200;
+
+    // 超时计时线程，所有实例共用
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "contact-async-timer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ContactService service;
+    private final ExecutorService executor;
+    private final boolean virtualThreads;
+    private final Semaphore permits;
+    private final int maxConcurrency;
+    private final long defaultTimeoutMillis;
+
+    ContactServiceAsync(ContactService service) {
+        this(service, Integer.getInteger("contact.async.maxConcurrency", 64),
+             Long.getLong("contact.async.timeoutMs", 0L),
+             Boolean.parseBoolean(System.getProperty("contact.async.virtualThreads", "true")));
+    }
+
+    /**
+     * @param maxConcurrency 同时执行的最大任务数
+     * @param defaultTimeoutMillis 默认超时毫秒数，小于等于 0 表示不限
+     * @param preferVirtualThreads 是否优先使用虚拟线程
+     */
+    ContactServiceAsync(ContactService service, int maxConcurrency, long defaultTimeoutMillis,
+                        boolean preferVirtualThreads) {
+        this.service = service;
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+        this.permits = new Semaphore(this.maxConcurrency, true);
+        this.defaultTimeoutMillis = defaultTimeoutMillis;
+        ExecutorService virtual = preferVirtualThreads ? newVirtualThreadExecutor() : null;
+        this.virtualThreads = virtual != null;
+        this.executor = virtual != null ? virtual : newPlatformThreadExecutor(this.maxConcurrency);
+    }
+
+    /**
+     * 通过反射调用 Executors.newVirtualThreadPerTaskExecutor，当前 Java 版本不支持时返回 null
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static ExecutorService newPlatformThreadExecutor(int threads) {
+        AtomicInteger counter = new AtomicInteger();
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), r -> {
+                    Thread thread = new Thread(r, "contact-async-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * 正在执行（已取得许可）的任务数
+     */
+    int getActiveCount() {
+        return maxConcurrency - permits.availablePermits();
+    }
+
+    // ---------------------------------------------------------------- 异步接口
+
+    public CompletableFuture<Contact> getContactAsync(int id) {
+        return submit(() -> service.getContact(id), defaultTimeoutMillis);
+    }
+
+    /**
+     * 批量查询：编号按 MULTI_GET_CHUNK 拆分为多个子任务并发执行，全部完成后合并
+     * 任一子任务失败或超时时整体失败，取消整体时同时取消所有子任务
+     */
+    public CompletableFuture<Map<Integer, Contact>> getContactsAsync(Collection<Integer> ids) {
+        List<Integer> all = new ArrayList<>(new LinkedHashSet<>(ids));
+        List<CompletableFuture<Map<Integer, Contact>>> parts = new ArrayList<>();
+        for (int from = 0; from < all.size(); from += MULTI_GET_CHUNK) {
+            List<Integer> chunk = all.subList(from, Math.min(from + MULTI_GET_CHUNK, all.size()));
+            parts.add(submit(() -> service.getContacts(chunk), defaultTimeoutMillis));
+        }
+        CompletableFuture<Map<Integer, Contact>> merged = CompletableFuture
+                .allOf(parts.toArray(new CompletableFuture<?>[0]))
+                .thenApply(ignored -> {
+                    Map<Integer, Contact> found = new HashMap<>(Math.max(16, all.size() * 2));
+                    for (CompletableFuture<Map<Integer, Contact>> part : parts) {
+                        found.putAll(part.join());
+                    }
+                    return found;
+                });
+        merged.whenComplete((value, error) -> {
+            if (error != null) {
+                for (CompletableFuture<Map<Integer, Contact>> part : parts) {
+                    part.cancel(true);
+                }
+            }
+        });
+        return merged;
+    }
+
+    public CompletableFuture<List<Contact>> getAllContactsAsync() {
+        return submit(service::getAllContacts, defaultTimeoutMillis);
+    }
+
+    public CompletableFuture<List<Contact>> searchContactsAsync(String keyword) {
+        return submit(() -> service.searchContacts(keyword), defaultTimeoutMillis);
+    }
+
+    public CompletableFuture<List<Contact>> findContactsAsync(ContactFilter filter, int limit) {
+        return submit(() -> service.findContacts(filter, limit), defaultTimeoutMillis);
+    }
+
+    public CompletableFuture<Boolean> addContactAsync(String name, String phone, String email, String address,
+                                                      boolean isBlacklisted) {
+        return submit(() -> service.addContact(name, phone, email, address, isBlacklisted), defaultTimeoutMillis);
+    }
+
+    public CompletableFuture<Boolean> updateContactAsync(int id, String name, String phone, String email,
+                                                         String address, boolean isBlacklisted) {
+        return submit(() -> service.updateContact(id, name, phone, email, address, isBlacklisted),
+                defaultTimeoutMillis);
+    }
+
+    public CompletableFuture<Boolean> deleteContactAsync(int id) {
+        return submit(() -> service.deleteContact(id), defaultTimeoutMillis);
+    }
+
+    /**
+     * 以异步方式执行任意操作，受并发上限约束
+     * @param task 要执行的操作，被取消或超时时其线程会被中断
+     * @param timeoutMillis 超时毫秒数，小于等于 0 表示不限；从提交时开始计时，包括等待许可的时间
+     */
+    <T> CompletableFuture<T> submit(Callable<T> task, long timeoutMillis) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> running;
+        try {
+            running = executor.submit(() -> {
+                if (result.isDone()) {
+                    return; // 排队期间已被取消或超时
+                }
+                try {
+                    permits.acquire();
+                } catch (InterruptedException e) {
+                    result.completeExceptionally(new CancellationException("等待执行许可时被中断"));
+                    return;
+                }
+                try {
+                    if (!result.isDone()) {
+                        result.complete(task.call());
+                    }
+                } catch (Throwable t) {
+                    result.completeExceptionally(t);
+                } finally {
+                    permits.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+        if (timeoutMillis > 0) {
+            ScheduledFuture<?> timeout = TIMER.schedule(() -> {
+                result.completeExceptionally(new TimeoutException("操作超过 " + timeoutMillis + " ms 未完成"));
+            }, timeoutMillis, TimeUnit.MILLISECONDS);
+            result.whenComplete((value, error) -> timeout.cancel(false));
+        }
+        // 被取消或超时时中断执行中的任务，释放其占用的许可与数据库连接
+        result.whenComplete((value, error) -> {
+            if (error instanceof CancellationException || error instanceof TimeoutException) {
+                running.cancel(true);
+            }
+        });
+        return result;
+    }
+}
@@ -0,0 +1,145 @@
+package system;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * ContactSnapshot 类：联系人内存副本的一个不可变版本
+ * 读操作获取当前版本后无需加锁即可任意读取；写操作基于当前版本生成新版本（结构共享），
+ * 再由 ContactService 原子地发布。快照中的联系人对象不得修改，返回给调用方前需拷贝。
+ */
+final class ContactSnapshot {
+
+    // 姓名视图的顺序：按姓名，姓名相同时按编号，使增量生成与整体排序的结果一致
+    static final Comparator<Contact> BY_NAME = Comparator.comparing(Contact::getName).thenComparingInt(Contact::getId);
+    // 向前追溯生成姓名视图的最大版本数，超过时整体排序
+    private static final int MAX_DERIVE_DEPTH = 1024;
+
+    private final long version;
+    private final PersistentIntMap<Contact> contacts;
+    // 按姓名排序的视图，首次使用时生成，同一版本内复用
+    private volatile Contact[] sortedByName;
+    // 派生出本版本的上一版本及本次变化的编号：上一版本（或更早的版本）已有姓名视图时，
+    // 只需把变化的联系人合并进去，不必整体重新排序；视图生成后即释放，不长期持有旧版本
+    private volatile ContactSnapshot parent;
+    private final int changedId;
+    private final int depth;
+
+    private ContactSnapshot(long version, PersistentIntMap<Contact> contacts) {
+        this(version, contacts, null, 0);
+    }
+
+    private ContactSnapshot(long version, PersistentIntMap<Contact> contacts, ContactSnapshot parent, int changedId) {
+        this.version = version;
+        this.contacts = contacts;
+        int parentDepth = parent == null ? 0 : parent.sortedByName != null ? 0 : parent.depth;
+        if (parent != null && parentDepth < MAX_DERIVE_DEPTH) {
+            this.parent = parent;
+            this.depth = parentDepth + 1;
+        } else {
+            this.depth = 0;
+        }
+        this.changedId = changedId;
+    }
+
+    static ContactSnapshot of(long version, Collection<Contact> contacts) {
+        int[] keys = new int[contacts.size()];
+        Object[] values = new Object[contacts.size()];
+        int i = 0;
+        for (Contact contact : contacts) {
+            keys[i] = contact.getId();
+            values[i] = contact;
+            i++;
+        }
+        return new ContactSnapshot(version, PersistentIntMap.<Contact>build(keys, values));
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public int size() {
+        return contacts.size();
+    }
+
+    public Contact get(int id) {
+        return contacts.get(id);
+    }
+
+    public boolean contains(int id) {
+        return contacts.containsKey(id);
+    }
+
+    public List<Contact> values() {
+        return contacts.values();
+    }
+
+    /**
+     * 按姓名排序的全部联系人（只读数组）
+     */
+    public Contact[] sortedByName() {
+        Contact[] sorted = sortedByName;
+        if (sorted == null) {
+            sorted = deriveSorted();
+            if (sorted == null) {
+                sorted = contacts.values().toArray(new Contact[0]);
+                Arrays.sort(sorted, BY_NAME);
+            }
+            sortedByName = sorted;
+            parent = null;
+        }
+        return sorted;
+    }
+
+    /**
+     * 沿派生链找到最近一个已有姓名视图的版本，去掉其中期间变化过的联系人，再按顺序并入这些联系人的当前版本
+     * @return 新视图，派生链上没有可用的视图时返回 null
+     */
+    private Contact[] deriveSorted() {
+        ContactBitmap changed = new ContactBitmap();
+        Contact[] base = null;
+        for (ContactSnapshot s = this; base == null; ) {
+            ContactSnapshot p = s.parent;
+            if (p == null) {
+                return null;
+            }
+            changed.add(s.changedId);
+            base = p.sortedByName;
+            s = p;
+        }
+        List<Contact> updated = new ArrayList<>(changed.cardinality());
+        changed.forEach(id -> {
+            Contact contact = contacts.get(id);
+            if (contact != null) {
+                updated.add(contact);
+            }
+        });
+        updated.sort(BY_NAME);
+        Contact[] merged = new Contact[contacts.size()];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while (i < base.length || j < updated.size()) {
+            if (i < base.length && changed.contains(base[i].getId())) {
+                i++;
+            } else if (j == updated.size() || (i < base.length && BY_NAME.compare(base[i], updated.get(j)) <= 0)) {
+                merged[k++] = base[i++];
+            } else {
+                merged[k++] = updated.get(j++);
+            }
+        }
+        return merged;
+    }
+
+    ContactSnapshot with(Contact contact) {
+        return new ContactSnapshot(version + 1, contacts.put(contact.getId(), contact), this, contact.getId());
+    }
+
+    ContactSnapshot without(int id) {
+        PersistentIntMap<Contact> next = contacts.remove(id);
+        return next == contacts ? this : new ContactSnapshot(version + 1, next, this, id);
+    }
+}
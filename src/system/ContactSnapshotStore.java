@@ -0,0 +1,74 @@
+package system;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * ContactSnapshotStore 类：联系人本地快照文件的读写，启动时先用快照展示数据，再与数据库同步
+ */
+class ContactSnapshotStore {
+
+    // 快照文件路径，可通过 -Dcontact.snapshot.file=... 指定；指定了 -Dcontact.tenant 时按租户区分文件
+    private static final String DEFAULT_FILE = "contacts.snapshot";
+
+    private final File file;
+
+    public ContactSnapshotStore() {
+        this(new File(System.getProperty("contact.snapshot.file", defaultFile())));
+    }
+
+    private static String defaultFile() {
+        String tenant = System.getProperty("contact.tenant", ContactDao.DEFAULT_TENANT);
+        return tenant.isEmpty() ? DEFAULT_FILE : "contacts-" + ContactDao.checkTenant(tenant) + ".snapshot";
+    }
+
+    public ContactSnapshotStore(File file) {
+        this.file = file;
+    }
+
+    /**
+     * 读取本地快照
+     * @return 快照中的联系人列表，文件不存在或损坏时返回 null
+     */
+    @SuppressWarnings("unchecked")
+    public List<Contact> load() {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (ObjectInputStream in = new ObjectInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            return (List<Contact>) in.readObject();
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            System.err.println("读取本地快照失败: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 写入本地快照，先写临时文件再替换，避免进程中断留下半个文件
+     * @param contacts 要保存的联系人
+     */
+    public void save(Collection<Contact> contacts) {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (ObjectOutputStream out = new ObjectOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeObject(new ArrayList<>(contacts));
+        } catch (IOException e) {
+            System.err.println("写入本地快照失败: " + e.getMessage());
+            return;
+        }
+        try {
+            try {
+                Files.move(tmp.toPath(), file.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            System.err.println("替换本地快照失败: " + e.getMessage());
+        }
+    }
+}
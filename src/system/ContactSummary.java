@@ -0,0 +1,40 @@
+package system;
+
+/**
+ * ContactSummary 类：列表显示用的联系人摘要，只含编号、姓名与电话
+ * 由投影查询直接生成（只读取这三列、不读取标签），或引用内存副本中的字符串生成，不复制完整联系人；
+ * 需要完整信息时再按编号读取。不可变。
+ */
+final class ContactSummary {
+
+    private final int id;
+    private final String name;
+    private final String phone;
+
+    ContactSummary(int id, String name, String phone) {
+        this.id = id;
+        this.name = name;
+        this.phone = phone;
+    }
+
+    static ContactSummary of(Contact contact) {
+        return new ContactSummary(contact.getId(), contact.getName(), contact.getPhone());
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getPhone() {
+        return phone;
+    }
+
+    @Override
+    public String toString() {
+        return "编号: " + id + ", 姓名: " + name + ", 电话: " + phone;
+    }
+}
@@ -0,0 +1,391 @@
+package system;
+
+import javax.swing.RowSorter;
+import javax.swing.SortOrder;
+import javax.swing.SwingUtilities;
+import javax.swing.table.TableModel;
+import java.nio.charset.StandardCharsets;
+import java.text.Collator;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * ContactTableSorter 类：联系人表格的列排序与快速筛选
+ * 表格数据变化时在事件线程上复制一份列数据，排序与筛选在后台线程上计算，完成后回到事件线程替换行映射，
+ * 不会阻塞界面。每列的排序结果（按中文排序规则预先计算排序键后得到的行序）按数据版本缓存，
+ * 之后切换升降序或改变筛选条件只需线性扫描一遍行号数组。
+ */
+class ContactTableSorter extends RowSorter<TableModel> {
+
+    // 后台计算线程，所有表格共用；只有最新的一次请求会被应用
+    private static final ExecutorService WORKER = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "contact-table-sort");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final TableModel model;
+
+    // 以下字段只在事件线程上读写
+    private List<SortKey> sortKeys = Collections.emptyList();
+    private String filterText = "";
+    // 视图行到模型行的映射，null 表示与模型一一对应
+    private int[] viewToModel;
+    private int[] modelToView;
+    private int modelRowCount;
+    // 当前的数据版本与请求序号，后台结果只在两者都未变化时应用
+    private ColumnData data;
+    private volatile long requestSequence;
+    // 各列文本到排序键的缓存，跨数据版本复用（刷新表格时多数文本不变）；只在后台线程上访问
+    private final Map<Integer, Map<String, byte[]>> keyCache = new HashMap<>();
+
+    /**
+     * 某一版本表格数据的只读副本，以及按需计算并缓存的每列排序结果与小写文本
+     */
+    private static final class ColumnData {
+        final Object[][] columns;
+        final int rowCount;
+        final int[][] sortedRows;
+        volatile String[][] lowerText;
+
+        ColumnData(Object[][] columns, int rowCount) {
+            this.columns = columns;
+            this.rowCount = rowCount;
+            this.sortedRows = new int[columns.length][];
+        }
+    }
+
+    ContactTableSorter(TableModel model) {
+        this.model = model;
+        allRowsChanged();
+    }
+
+    @Override
+    public TableModel getModel() {
+        return model;
+    }
+
+    /**
+     * 设置快速筛选文本：任一列包含该文本（不区分大小写）的行才显示，空文本显示全部
+     */
+    void setFilterText(String text) {
+        String normalized = text == null ? "" : text.trim().toLowerCase();
+        if (!normalized.equals(filterText)) {
+            filterText = normalized;
+            schedule();
+        }
+    }
+
+    @Override
+    public void toggleSortOrder(int column) {
+        SortOrder order = SortOrder.ASCENDING;
+        if (!sortKeys.isEmpty() && sortKeys.get(0).getColumn() == column
+                && sortKeys.get(0).getSortOrder() == SortOrder.ASCENDING) {
+            order = SortOrder.DESCENDING;
+        }
+        setSortKeys(Collections.singletonList(new SortKey(column, order)));
+    }
+
+    @Override
+    public void setSortKeys(List<? extends SortKey> keys) {
+        List<SortKey> updated = new ArrayList<>();
+        if (keys != null && !keys.isEmpty() && keys.get(0).getSortOrder() != SortOrder.UNSORTED) {
+            // 只按第一个排序键排序
+            updated.add(keys.get(0));
+        }
+        if (!updated.equals(sortKeys)) {
+            sortKeys = Collections.unmodifiableList(updated);
+            fireSortOrderChanged();
+            schedule();
+        }
+    }
+
+    @Override
+    public List<? extends SortKey> getSortKeys() {
+        return sortKeys;
+    }
+
+    @Override
+    public int convertRowIndexToModel(int index) {
+        if (viewToModel == null) {
+            if (index < 0 || index >= modelRowCount) {
+                throw new IndexOutOfBoundsException("Invalid index");
+            }
+            return index;
+        }
+        return viewToModel[index];
+    }
+
+    @Override
+    public int convertRowIndexToView(int index) {
+        if (modelToView == null) {
+            if (index < 0 || index >= modelRowCount) {
+                throw new IndexOutOfBoundsException("Invalid index");
+            }
+            return index;
+        }
+        return modelToView[index];
+    }
+
+    @Override
+    public int getViewRowCount() {
+        return viewToModel == null ? modelRowCount : viewToModel.length;
+    }
+
+    @Override
+    public int getModelRowCount() {
+        return model.getRowCount();
+    }
+
+    @Override
+    public void modelStructureChanged() {
+        sortKeys = Collections.emptyList();
+        allRowsChanged();
+    }
+
+    /**
+     * 表格数据整体变化：先按模型顺序显示，复制数据后在后台重新排序和筛选
+     */
+    @Override
+    public void allRowsChanged() {
+        int rows = model.getRowCount();
+        int cols = model.getColumnCount();
+        Object[][] columns = new Object[cols][rows];
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < cols; c++) {
+                columns[c][r] = model.getValueAt(r, c);
+            }
+        }
+        data = new ColumnData(columns, rows);
+        modelRowCount = rows;
+        viewToModel = null;
+        modelToView = null;
+        if (!sortKeys.isEmpty() || !filterText.isEmpty()) {
+            schedule();
+        }
+    }
+
+    @Override
+    public void rowsInserted(int firstRow, int endRow) {
+        allRowsChanged();
+    }
+
+    @Override
+    public void rowsDeleted(int firstRow, int endRow) {
+        allRowsChanged();
+    }
+
+    @Override
+    public void rowsUpdated(int firstRow, int endRow) {
+        allRowsChanged();
+    }
+
+    @Override
+    public void rowsUpdated(int firstRow, int endRow, int column) {
+        allRowsChanged();
+    }
+
+    /**
+     * 提交一次后台排序筛选，完成后在事件线程上应用
+     */
+    private void schedule() {
+        final long sequence = ++requestSequence;
+        final ColumnData snapshot = data;
+        final SortKey key = sortKeys.isEmpty() ? null : sortKeys.get(0);
+        final String filter = filterText;
+        WORKER.execute(() -> {
+            if (sequence != requestSequence) {
+                return; // 已有更新的请求
+            }
+            int[] rows = compute(snapshot, key, filter);
+            SwingUtilities.invokeLater(() -> apply(sequence, snapshot, rows));
+        });
+    }
+
+    private void apply(long sequence, ColumnData snapshot, int[] rows) {
+        if (sequence != requestSequence || snapshot != data) {
+            return;
+        }
+        int[] lastViewToModel = viewToModel;
+        if (lastViewToModel == null) {
+            lastViewToModel = new int[modelRowCount];
+            for (int i = 0; i < lastViewToModel.length; i++) {
+                lastViewToModel[i] = i;
+            }
+        }
+        int[] toView = new int[modelRowCount];
+        Arrays.fill(toView, -1);
+        for (int i = 0; i < rows.length; i++) {
+            toView[rows[i]] = i;
+        }
+        viewToModel = rows;
+        modelToView = toView;
+        fireRowSorterChanged(lastViewToModel);
+    }
+
+    /**
+     * 在后台线程上计算视图行序
+     */
+    private int[] compute(ColumnData data, SortKey key, String filter) {
+        int n = data.rowCount;
+        int[] order;
+        boolean descending = false;
+        if (key != null) {
+            order = sortedRows(data, key.getColumn());
+            descending = key.getSortOrder() == SortOrder.DESCENDING;
+        } else {
+            order = null;
+        }
+        String[][] lower = filter.isEmpty() ? null : lowerText(data);
+        int[] rows = new int[n];
+        int count = 0;
+        for (int i = 0; i < n; i++) {
+            int row = order == null ? i : order[descending ? n - 1 - i : i];
+            if (lower == null || matches(lower, row, filter)) {
+                rows[count++] = row;
+            }
+        }
+        return count == n ? rows : Arrays.copyOf(rows, count);
+    }
+
+    private static boolean matches(String[][] lower, int row, String filter) {
+        for (String[] column : lower) {
+            if (column[row].contains(filter)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String[][] lowerText(ColumnData data) {
+        String[][] lower = data.lowerText;
+        if (lower == null) {
+            lower = new String[data.columns.length][];
+            for (int c = 0; c < lower.length; c++) {
+                Object[] values = data.columns[c];
+                String[] text = new String[data.rowCount];
+                for (int r = 0; r < text.length; r++) {
+                    text[r] = values[r] == null ? "" : values[r].toString().toLowerCase();
+                }
+                lower[c] = text;
+            }
+            data.lowerText = lower;
+        }
+        return lower;
+    }
+
+    /**
+     * 某列按升序排列的模型行号，每个数据版本每列只计算一次
+     * 整数列直接按数值排序；其他列先生成中文排序规则下的排序键，避免每次比较时重复解析字符串
+     */
+    private int[] sortedRows(ColumnData data, int column) {
+        int[] sorted = data.sortedRows[column];
+        if (sorted != null) {
+            return sorted;
+        }
+        Object[] values = data.columns[column];
+        int n = data.rowCount;
+        boolean numeric = true;
+        for (Object value : values) {
+            if (!(value instanceof Integer)) {
+                numeric = false;
+                break;
+            }
+        }
+        sorted = new int[n];
+        if (numeric) {
+            // 高 32 位为数值，低 32 位为行号，一次基本类型排序完成
+            long[] packed = new long[n];
+            for (int r = 0; r < n; r++) {
+                packed[r] = ((long) (Integer) values[r] << 32) | r;
+            }
+            Arrays.sort(packed);
+            for (int i = 0; i < n; i++) {
+                sorted[i] = (int) packed[i];
+            }
+        } else {
+            Collator collator = null;
+            Map<String, byte[]> previous = keyCache.getOrDefault(column, Collections.emptyMap());
+            Map<String, byte[]> cache = new HashMap<>(Math.max(16, n * 2));
+            RowKey[] keys = new RowKey[n];
+            for (int r = 0; r < n; r++) {
+                String text = values[r] == null ? "" : values[r].toString();
+                byte[] key;
+                if (isAscii(text)) {
+                    // 电话、邮箱等纯 ASCII 文本按字符顺序比较即可，不需要排序规则
+                    key = text.getBytes(StandardCharsets.ISO_8859_1);
+                } else {
+                    key = cache.get(text);
+                    if (key == null) {
+                        key = previous.get(text);
+                        if (key == null) {
+                            if (collator == null) {
+                                collator = Collator.getInstance(Locale.CHINA);
+                            }
+                            key = collator.getCollationKey(text).toByteArray();
+                        }
+                        cache.put(text, key);
+                    }
+                }
+                keys[r] = new RowKey(key, r);
+            }
+            // 只保留当前数据中出现的文本，缓存大小不超过表格行数
+            keyCache.put(column, cache);
+            Arrays.sort(keys);
+            for (int i = 0; i < n; i++) {
+                sorted[i] = keys[i].row;
+            }
+        }
+        data.sortedRows[column] = sorted;
+        return sorted;
+    }
+
+    private static boolean isAscii(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 预先计算的排序键（字节序列），前 8 字节另存为 long 以便多数比较一次完成；相同时按行号保持原有顺序
+     * 纯 ASCII 文本与中文文本的字节来源不同，同一列混合两种文本时两类之间的先后只保证稳定
+     */
+    private static final class RowKey implements Comparable<RowKey> {
+        final long prefix;
+        final byte[] key;
+        final int row;
+
+        RowKey(byte[] key, int row) {
+            long p = 0;
+            for (int i = 0; i < 8; i++) {
+                p = (p << 8) | (i < key.length ? key[i] & 0xFF : 0);
+            }
+            this.prefix = p;
+            this.key = key;
+            this.row = row;
+        }
+
+        @Override
+        public int compareTo(RowKey other) {
+            int c = Long.compareUnsigned(prefix, other.prefix);
+            if (c == 0) {
+                c = compareBytes(key, other.key);
+            }
+            return c != 0 ? c : Integer.compare(row, other.row);
+        }
+
+        private static int compareBytes(byte[] a, byte[] b) {
+            int len = Math.min(a.length, b.length);
+            for (int i = 8; i < len; i++) {
+                if (a[i] != b[i]) {
+                    return (a[i] & 0xFF) - (b[i] & 0xFF);
+                }
+            }
+            return a.length - b.length;
+        }
+    }
+}
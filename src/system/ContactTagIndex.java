@@ -0,0 +1,198 @@
+package system;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * ContactTagIndex 类：标签与黑名单状态的位图索引
+ * 每个标签、每种黑名单状态各保存一个 ContactBitmap，随 ContactService 的写入增量维护。
+ * 由标签、黑名单条件经 AND / OR / NOT 组合成的条件整体在位图上求值，不逐个联系人判断。
+ */
+class ContactTagIndex implements ContactChangeListener, ContactIndex {
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, ContactBitmap> byTag = new HashMap<>();
+    private ContactBitmap blacklisted = new ContactBitmap();
+    private ContactBitmap notBlacklisted = new ContactBitmap();
+
+    @Override
+    public void contactChanged(Contact before, Contact after) {
+        lock.writeLock().lock();
+        try {
+            if (before != null) {
+                remove(before);
+            }
+            if (after != null) {
+                add(after);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void contactsReloaded(Collection<Contact> contacts) {
+        // 按编号升序加入，位图只在末尾追加
+        Contact[] ordered = contacts.toArray(new Contact[0]);
+        Arrays.sort(ordered, Comparator.comparingInt(Contact::getId));
+        lock.writeLock().lock();
+        try {
+            byTag.clear();
+            blacklisted = new ContactBitmap();
+            notBlacklisted = new ContactBitmap();
+            for (Contact contact : ordered) {
+                add(contact);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void add(Contact contact) {
+        for (String tag : contact.getTags()) {
+            byTag.computeIfAbsent(tag, k -> new ContactBitmap()).add(contact.getId());
+        }
+        (contact.isBlacklisted() ? blacklisted : notBlacklisted).add(contact.getId());
+    }
+
+    private void remove(Contact contact) {
+        for (String tag : contact.getTags()) {
+            ContactBitmap bitmap = byTag.get(tag);
+            if (bitmap != null) {
+                bitmap.remove(contact.getId());
+                if (bitmap.isEmpty()) {
+                    byTag.remove(tag);
+                }
+            }
+        }
+        (contact.isBlacklisted() ? blacklisted : notBlacklisted).remove(contact.getId());
+    }
+
+    /**
+     * 各标签的联系人数量，按标签名排序
+     */
+    Map<String, Integer> countByTag() {
+        lock.readLock().lock();
+        try {
+            Map<String, Integer> counts = new TreeMap<>();
+            for (Map.Entry<String, ContactBitmap> entry : byTag.entrySet()) {
+                counts.put(entry.getKey(), entry.getValue().cardinality());
+            }
+            return counts;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 全部位图占用的内存字节数（估算）
+     */
+    long sizeInBytes() {
+        lock.readLock().lock();
+        try {
+            long bytes = blacklisted.sizeInBytes() + notBlacklisted.sizeInBytes();
+            for (ContactBitmap bitmap : byTag.values()) {
+                bytes += bitmap.sizeInBytes();
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "tag-bitmap";
+    }
+
+    /**
+     * 条件树只由标签、黑名单条件及 AND / OR / NOT 组成时可由本索引回答
+     */
+    @Override
+    public boolean supports(ContactFilter condition) {
+        if (condition instanceof ContactFilter.Tagged || condition instanceof ContactFilter.Blacklisted) {
+            return true;
+        }
+        if (condition instanceof ContactFilter.Not) {
+            return supports(((ContactFilter.Not) condition).child);
+        }
+        List<ContactFilter> children;
+        if (condition instanceof ContactFilter.And) {
+            children = ((ContactFilter.And) condition).children;
+        } else if (condition instanceof ContactFilter.Or) {
+            children = ((ContactFilter.Or) condition).children;
+        } else {
+            return false;
+        }
+        if (children.isEmpty()) {
+            return false;
+        }
+        for (ContactFilter child : children) {
+            if (!supports(child)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int[] lookup(ContactFilter condition) {
+        return lookupBitmap(condition).toArray();
+    }
+
+    @Override
+    public ContactBitmap lookupBitmap(ContactFilter condition) {
+        lock.readLock().lock();
+        try {
+            return evaluate(condition);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * 在位图上求值，返回新位图；NOT 以全部联系人（两种黑名单状态之并）为全集求差
+     */
+    private ContactBitmap evaluate(ContactFilter condition) {
+        if (condition instanceof ContactFilter.Tagged) {
+            ContactBitmap bitmap = byTag.get(((ContactFilter.Tagged) condition).tag);
+            return bitmap == null ? new ContactBitmap() : bitmap.copy();
+        }
+        if (condition instanceof ContactFilter.Blacklisted) {
+            return (((ContactFilter.Blacklisted) condition).blacklisted ? blacklisted : notBlacklisted).copy();
+        }
+        if (condition instanceof ContactFilter.Not) {
+            ContactFilter child = ((ContactFilter.Not) condition).child;
+            return ContactBitmap.andNot(ContactBitmap.or(blacklisted, notBlacklisted), evaluate(child));
+        }
+        if (condition instanceof ContactFilter.And) {
+            List<ContactFilter> children = ((ContactFilter.And) condition).children;
+            // NOT 子条件改为对其余结果求差，不必先求补集
+            ContactBitmap result = null;
+            List<ContactFilter> negated = new ArrayList<>();
+            for (ContactFilter child : children) {
+                if (child instanceof ContactFilter.Not) {
+                    negated.add(((ContactFilter.Not) child).child);
+                    continue;
+                }
+                ContactBitmap bitmap = evaluate(child);
+                result = result == null ? bitmap : ContactBitmap.and(result, bitmap);
+                if (result.isEmpty()) {
+                    return result;
+                }
+            }
+            if (result == null) {
+                result = ContactBitmap.or(blacklisted, notBlacklisted);
+            }
+            for (ContactFilter child : negated) {
+                result = ContactBitmap.andNot(result, evaluate(child));
+            }
+            return result;
+        }
+        ContactBitmap result = new ContactBitmap();
+        for (ContactFilter child : ((ContactFilter.Or) condition).children) {
+            result = ContactBitmap.or(result, evaluate(child));
+        }
+        return result;
+    }
+}
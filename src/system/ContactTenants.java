@@ -0,0 +1,291 @@
+package system;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ContactTenants 类：一个进程内承载多个租户（每个客户一本通讯录），按需加载、按内存预算淘汰
+ * 每个租户有独立的 ContactService（内存副本、索引、查询缓存与访问统计），DAO 共用同一组数据库连接，
+ * 实例标识各自独立。
+ * 首次访问某个租户时创建服务并异步预热（先读本地快照，再与数据库同步）；
+ * 已加载租户的估算内存合计超过预算或数量超过上限时，按最近最少使用淘汰：保存快照后丢弃，
+ * 再次访问时重新加载。这样堆内存只与常用租户的数据量相关，而不是随租户总数线性增长。
+ * 被淘汰的服务丢弃内存副本，仍持有它的调用方直接访问数据库；它的写入不再视为本进程的写入，
+ * 由变更通知交给重新加载的服务。
+ * 变更通知、墓碑清理与冷数据归档在整个进程中各只运行一份，通知按租户分发给已加载的服务；
+ * 未加载的租户无需处理，重新加载时会与数据库同步；归档只处理已加载的租户。
+ * 本类供嵌入使用（例如服务端按请求的租户取得服务）；命令行与 GUI 入口是单租户的，由 contact.tenant 选择租户。
+ *
+ * 配置（系统属性）：
+ *   contact.tenants.maxBytes          已加载租户的内存预算合计，默认 256 MB
+ *   contact.tenants.maxResident       同时加载的租户数上限，默认 200
+ *   contact.tenants.snapshotDir       各租户本地快照所在目录，默认 tenants
+ *   contact.tenant.searchCacheBytes   每个租户查询缓存的字节数上限，默认 512 KB
+ *   contact.tenant.searchCacheEntries 每个租户查询缓存的条目数上限，默认 256
+ *   contact.tenant.accessWidth        每个租户访问统计每行的计数器数，默认 1024
+ *   contact.tenant.hotSize            每个租户的热点联系人数，默认 32
+ */
+class ContactTenants {
+
+    private static volatile ContactTenants shared;
+
+    private final ContactDao dao;
+    private final File snapshotDir;
+    private final long maxBytes;
+    private final int maxResident;
+    private final long searchCacheBytes;
+    private final int searchCacheEntries;
+    private final int accessWidth;
+    private final int hotSize;
+
+    // 已加载的租户，按访问顺序排列（最近访问的在末尾）
+    private final LinkedHashMap<String, ContactService> resident = new LinkedHashMap<>(64, 0.75f, true);
+    // 已加载服务的实例标识，变更通知跳过这些标识的写入（已在本地发布）；淘汰时先移除
+    private final Set<String> localOrigins = ConcurrentHashMap.newKeySet();
+    private ContactChangeFeed changeFeed;
+    private ContactPurger purger;
+    private ContactTiering tiering;
+    private long loads;
+    private long evictions;
+
+    /**
+     * 各租户的加载与淘汰统计
+     */
+    static final class Stats {
+        final int resident;
+        final long bytes;
+        final long maxBytes;
+        final long loads;
+        final long evictions;
+
+        Stats(int resident, long bytes, long maxBytes, long loads, long evictions) {
+            this.resident = resident;
+            this.bytes = bytes;
+            this.maxBytes = maxBytes;
+            this.loads = loads;
+            this.evictions = evictions;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("租户: 已加载 %d 个，约 %d KB / 预算 %d KB，累计加载 %d 次，淘汰 %d 次",
+                    resident, bytes / 1024, maxBytes / 1024, loads, evictions);
+        }
+    }
+
+    ContactTenants(ContactDao dao) {
+        this(dao, new File(System.getProperty("contact.tenants.snapshotDir", "tenants")),
+             Long.getLong("contact.tenants.maxBytes", 256L << 20),
+             Integer.getInteger("contact.tenants.maxResident", 200));
+    }
+
+    /**
+     * @param dao 任一租户的 DAO，各租户的 DAO 由它派生、共用连接
+     * @param snapshotDir 本地快照目录
+     * @param maxBytes 已加载租户的内存预算合计
+     * @param maxResident 同时加载的租户数上限
+     */
+    ContactTenants(ContactDao dao, File snapshotDir, long maxBytes, int maxResident) {
+        this.dao = dao;
+        this.localOrigins.add(dao.getOrigin());
+        this.snapshotDir = snapshotDir;
+        this.maxBytes = maxBytes;
+        this.maxResident = Math.max(1, maxResident);
+        this.searchCacheBytes = Long.getLong("contact.tenant.searchCacheBytes", 512L << 10);
+        this.searchCacheEntries = Integer.getInteger("contact.tenant.searchCacheEntries", 256);
+        this.accessWidth = Integer.getInteger("contact.tenant.accessWidth", 1 << 10);
+        this.hotSize = Integer.getInteger("contact.tenant.hotSize", 32);
+    }
+
+    /**
+     * 获取进程内共享的租户注册表，退出时保存各已加载租户的快照
+     */
+    static ContactTenants getShared() {
+        if (shared == null) {
+            synchronized (ContactTenants.class) {
+                if (shared == null) {
+                    ContactTenants tenants = new ContactTenants(new ContactDao());
+                    Runtime.getRuntime().addShutdownHook(new Thread(tenants::saveAll, "contact-tenant-snapshots"));
+                    shared = tenants;
+                }
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * 获取租户的服务，未加载时创建并异步预热；必要时淘汰最久未访问的其他租户
+     * @param tenant 租户编号，只允许字母、数字与 _ . -
+     */
+    ContactService get(String tenant) {
+        ContactDao.checkTenant(tenant);
+        List<ContactService> evicted;
+        ContactService service;
+        synchronized (this) {
+            startBackground();
+            service = resident.get(tenant);
+            if (service == null) {
+                snapshotDir.mkdirs();
+                ContactAccessTracker tracker = new ContactAccessTracker(accessWidth, hotSize,
+                        Long.getLong("contact.access.halfLifeMinutes", 60) * 60_000);
+                ContactDao tenantDao = dao.forTenant(tenant);
+                service = new ContactService(tenantDao, new ContactSnapshotStore(snapshotFile(tenant)),
+                        new ContactSearchCache(searchCacheEntries, searchCacheBytes), tracker, false);
+                localOrigins.add(tenantDao.getOrigin());
+                resident.put(tenant, service);
+                loads++;
+                // 预热完成后数据量才确定，再按预算检查一次
+                service.warmUpAsync().thenRun(this::trim);
+            }
+            evicted = evictOverBudget(tenant);
+        }
+        for (ContactService cold : evicted) {
+            cold.close();
+        }
+        return service;
+    }
+
+    /**
+     * 租户当前是否已加载
+     */
+    synchronized boolean isResident(String tenant) {
+        return resident.containsKey(tenant);
+    }
+
+    /**
+     * 主动淘汰一个租户（例如客户注销后），保存快照后丢弃内存数据
+     */
+    void evict(String tenant) {
+        ContactService service;
+        synchronized (this) {
+            service = resident.remove(tenant);
+            if (service != null) {
+                localOrigins.remove(service.getOrigin());
+                evictions++;
+            }
+        }
+        if (service != null) {
+            service.close();
+        }
+    }
+
+    /**
+     * 超出数量上限或内存预算时，从最久未访问的租户开始淘汰，刚访问的租户保留，且至少保留一个
+     * @return 被淘汰的服务，由调用方在锁外关闭（保存快照涉及磁盘写入）
+     */
+    private List<ContactService> evictOverBudget(String keep) {
+        List<ContactService> evicted = new ArrayList<>();
+        long bytes = 0;
+        for (ContactService service : resident.values()) {
+            bytes += service.estimatedBytes();
+        }
+        Iterator<Map.Entry<String, ContactService>> eldest = resident.entrySet().iterator();
+        while ((resident.size() > maxResident || bytes > maxBytes) && resident.size() > 1 && eldest.hasNext()) {
+            Map.Entry<String, ContactService> entry = eldest.next();
+            if (entry.getKey().equals(keep)) {
+                continue;
+            }
+            bytes -= entry.getValue().estimatedBytes();
+            evicted.add(entry.getValue());
+            localOrigins.remove(entry.getValue().getOrigin());
+            eldest.remove();
+            evictions++;
+        }
+        return evicted;
+    }
+
+    /**
+     * 按内存预算检查一次，用于租户预热完成、数据量变化之后（get 时也会检查）
+     */
+    void trim() {
+        List<ContactService> evicted;
+        synchronized (this) {
+            evicted = evictOverBudget(null);
+        }
+        for (ContactService cold : evicted) {
+            cold.close();
+        }
+    }
+
+    synchronized Stats stats() {
+        long bytes = 0;
+        for (ContactService service : resident.values()) {
+            bytes += service.estimatedBytes();
+        }
+        return new Stats(resident.size(), bytes, maxBytes, loads, evictions);
+    }
+
+    /**
+     * 保存所有已加载租户的快照
+     */
+    void saveAll() {
+        List<ContactService> services;
+        synchronized (this) {
+            services = new ArrayList<>(resident.values());
+        }
+        for (ContactService service : services) {
+            service.saveSnapshot();
+        }
+    }
+
+    private File snapshotFile(String tenant) {
+        // 默认租户（空字符串）的文件名为 .snapshot，不会与其他租户重名
+        return new File(snapshotDir, tenant + ".snapshot");
+    }
+
+    /**
+     * 首次使用时启动进程内唯一的变更通知、墓碑清理与冷数据归档线程
+     */
+    private void startBackground() {
+        if (changeFeed == null && ContactDao.CHANGE_FEED_ENABLED) {
+            changeFeed = new ContactChangeFeed(dao, this::applyRemoteChanges, this::resyncAll, localOrigins::contains);
+            changeFeed.start();
+        }
+        if (purger == null && ContactDao.SOFT_DELETE) {
+            purger = new ContactPurger(dao);
+            purger.start();
+        }
+        if (tiering == null && ContactTiering.ENABLED) {
+            tiering = new ContactTiering(this::residentServices);
+            tiering.start();
+        }
+    }
+
+    private synchronized List<ContactService> residentServices() {
+        return new ArrayList<>(resident.values());
+    }
+
+    private void applyRemoteChanges(String tenant, Set<Integer> ids) {
+        ContactService service;
+        synchronized (this) {
+            // 后台刷新不算作访问，不调整访问顺序
+            service = peek(tenant);
+        }
+        if (service != null) {
+            service.applyRemoteChanges(ids);
+        }
+    }
+
+    private void resyncAll() {
+        List<ContactService> services;
+        synchronized (this) {
+            services = new ArrayList<>(resident.values());
+        }
+        for (ContactService service : services) {
+            service.resync();
+        }
+    }
+
+    /**
+     * 取得已加载的服务而不改变访问顺序（访问顺序的 LinkedHashMap.get 会把条目移到末尾）
+     */
+    private ContactService peek(String tenant) {
+        for (Map.Entry<String, ContactService> entry : resident.entrySet()) {
+            if (entry.getKey().equals(tenant)) {
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,355 @@
+package system;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * ContactTextIndex 类：姓名、电话、邮箱、地址的全文检索索引，按 BM25F 相关度返回前 k 个联系人
+ * 中文按单字与相邻两字（二元组）切分，字母数字按连续的词切分并转为小写。
+ * 倒排表按变长整数压缩并且只在末尾追加：每次写入为联系人分配一个新的内部槽位，旧槽位标记为失效，
+ * 失效槽位超过有效槽位时整体重建。查询时逐个词顺序解码倒排表累加得分，再用大小为 k 的小顶堆取前 k 个。
+ */
+class ContactTextIndex implements ContactChangeListener {
+
+    /**
+     * 参与检索的字段及其权重：姓名命中比地址命中更能说明相关
+     */
+    enum Field {
+        NAME(3.0f), PHONE(2.0f), EMAIL(1.5f), ADDRESS(1.0f);
+
+        final float boost;
+
+        Field(float boost) {
+            this.boost = boost;
+        }
+
+        String valueOf(Contact contact) {
+            switch (this) {
+                case NAME: return contact.getName();
+                case PHONE: return contact.getPhone();
+                case EMAIL: return contact.getEmail();
+                default: return contact.getAddress();
+            }
+        }
+    }
+
+    /**
+     * 一条检索结果
+     */
+    static final class Hit {
+        final int id;
+        final float score;
+
+        Hit(int id, float score) {
+            this.id = id;
+            this.score = score;
+        }
+    }
+
+    private static final Field[] FIELDS = Field.values();
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    // 失效槽位至少达到这么多、且多于有效槽位时才重建
+    private static final int MIN_COMPACT_SLOTS = 4096;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private State state = new State(16);
+
+    /**
+     * 索引的全部数据，重建时整体替换
+     */
+    private static final class State {
+        final Map<String, Postings> postings = new HashMap<>();
+        // 联系人编号到当前槽位
+        final Map<Integer, Integer> slotOf = new HashMap<>();
+        // 各槽位对应的联系人（失效后置为 null）与各字段的词数
+        Contact[] contacts;
+        final int[][] lengths = new int[FIELDS.length][];
+        int slotCount;
+        final long[] liveLengthSum = new long[FIELDS.length];
+
+        State(int capacity) {
+            contacts = new Contact[capacity];
+            for (int f = 0; f < FIELDS.length; f++) {
+                lengths[f] = new int[capacity];
+            }
+        }
+
+        int liveCount() {
+            return slotOf.size();
+        }
+    }
+
+    /**
+     * 一个词的倒排表：每项为 (槽位差值, 字段掩码, 各命中字段的词频)，均为变长整数
+     */
+    private static final class Postings {
+        byte[] data = new byte[8];
+        int length;
+        int lastSlot = -1;
+        // 有效槽位的项数（文档频率）
+        int liveCount;
+
+        void append(int slot, int[] tf) {
+            int mask = 0;
+            for (int f = 0; f < tf.length; f++) {
+                if (tf[f] > 0) {
+                    mask |= 1 << f;
+                }
+            }
+            writeVarInt(slot - lastSlot);
+            writeVarInt(mask);
+            for (int f = 0; f < tf.length; f++) {
+                if (tf[f] > 0) {
+                    writeVarInt(tf[f]);
+                }
+            }
+            lastSlot = slot;
+            liveCount++;
+        }
+
+        private void writeVarInt(int value) {
+            if (length + 5 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            while ((value & ~0x7F) != 0) {
+                data[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[length++] = (byte) value;
+        }
+    }
+
+    @Override
+    public void contactChanged(Contact before, Contact after) {
+        lock.writeLock().lock();
+        try {
+            if (before != null) {
+                remove(state, before.getId());
+            }
+            if (after != null) {
+                add(state, after);
+            }
+            if (state.slotCount - state.liveCount() >= MIN_COMPACT_SLOTS
+                    && state.slotCount - state.liveCount() > state.liveCount()) {
+                state = rebuild(liveContacts(state));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void contactsReloaded(Collection<Contact> contacts) {
+        State rebuilt = rebuild(contacts);
+        lock.writeLock().lock();
+        try {
+            state = rebuilt;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static State rebuild(Collection<Contact> contacts) {
+        State rebuilt = new State(Math.max(16, contacts.size()));
+        for (Contact contact : contacts) {
+            add(rebuilt, contact);
+        }
+        return rebuilt;
+    }
+
+    private static List<Contact> liveContacts(State state) {
+        List<Contact> live = new ArrayList<>(state.liveCount());
+        for (int slot : state.slotOf.values()) {
+            live.add(state.contacts[slot]);
+        }
+        return live;
+    }
+
+    private static void add(State state, Contact contact) {
+        remove(state, contact.getId());
+        int slot = state.slotCount++;
+        if (slot == state.contacts.length) {
+            int capacity = slot * 2;
+            state.contacts = Arrays.copyOf(state.contacts, capacity);
+            for (int f = 0; f < FIELDS.length; f++) {
+                state.lengths[f] = Arrays.copyOf(state.lengths[f], capacity);
+            }
+        }
+        state.contacts[slot] = contact;
+        state.slotOf.put(contact.getId(), slot);
+        Map<String, int[]> terms = new HashMap<>();
+        for (Field field : FIELDS) {
+            int f = field.ordinal();
+            int[] count = new int[1];
+            tokenize(field.valueOf(contact), true, term -> {
+                terms.computeIfAbsent(term, k -> new int[FIELDS.length])[f]++;
+                count[0]++;
+            });
+            state.lengths[f][slot] = count[0];
+            state.liveLengthSum[f] += count[0];
+        }
+        for (Map.Entry<String, int[]> entry : terms.entrySet()) {
+            state.postings.computeIfAbsent(entry.getKey(), k -> new Postings()).append(slot, entry.getValue());
+        }
+    }
+
+    /**
+     * 使联系人的当前槽位失效；倒排表中的项保留到下次重建，查询时跳过
+     */
+    private static void remove(State state, int id) {
+        Integer slot = state.slotOf.remove(id);
+        if (slot == null) {
+            return;
+        }
+        Contact contact = state.contacts[slot];
+        state.contacts[slot] = null;
+        Set<String> terms = new HashSet<>();
+        for (Field field : FIELDS) {
+            state.liveLengthSum[field.ordinal()] -= state.lengths[field.ordinal()][slot];
+            tokenize(field.valueOf(contact), true, terms::add);
+        }
+        for (String term : terms) {
+            Postings postings = state.postings.get(term);
+            if (postings != null) {
+                postings.liveCount--;
+            }
+        }
+    }
+
+    /**
+     * 按 BM25F 相关度检索，查询词之间为"或"关系，命中的词越多、越稀有、所在字段权重越高得分越高
+     * @param query 查询文本
+     * @param k 最多返回条数
+     * @return 按得分从高到低排列
+     */
+    List<Hit> search(String query, int k) {
+        Set<String> terms = new LinkedHashSet<>();
+        tokenize(query, false, terms::add);
+        if (terms.isEmpty() || k <= 0) {
+            return new ArrayList<>();
+        }
+        lock.readLock().lock();
+        try {
+            State s = state;
+            int n = s.liveCount();
+            if (n == 0) {
+                return new ArrayList<>();
+            }
+            float[] avgLength = new float[FIELDS.length];
+            for (int f = 0; f < FIELDS.length; f++) {
+                avgLength[f] = Math.max(1f, (float) s.liveLengthSum[f] / n);
+            }
+            float[] scores = new float[s.slotCount];
+            int[] touched = new int[16];
+            int touchedCount = 0;
+            for (String term : terms) {
+                Postings postings = s.postings.get(term);
+                if (postings == null || postings.liveCount <= 0) {
+                    continue;
+                }
+                float idf = (float) Math.log(1 + (n - postings.liveCount + 0.5) / (postings.liveCount + 0.5));
+                byte[] data = postings.data;
+                int slot = -1;
+                int[] cursor = new int[1];
+                while (cursor[0] < postings.length) {
+                    slot += readVarInt(data, cursor);
+                    int mask = readVarInt(data, cursor);
+                    float weighted = 0;
+                    for (int f = 0; f < FIELDS.length; f++) {
+                        if ((mask & (1 << f)) != 0) {
+                            int tf = readVarInt(data, cursor);
+                            float norm = 1 - B + B * s.lengths[f][slot] / avgLength[f];
+                            weighted += FIELDS[f].boost * tf / norm;
+                        }
+                    }
+                    if (s.contacts[slot] == null) {
+                        continue; // 已失效的槽位
+                    }
+                    if (scores[slot] == 0) {
+                        if (touchedCount == touched.length) {
+                            touched = Arrays.copyOf(touched, touchedCount * 2);
+                        }
+                        touched[touchedCount++] = slot;
+                    }
+                    scores[slot] += idf * weighted / (K1 + weighted);
+                }
+            }
+            // 小顶堆保留得分最高的 k 个，堆顶是其中最差的一个；得分相同时编号小的优先，结果与槽位分配无关
+            Comparator<Hit> worseFirst = (a, b) -> a.score != b.score
+                    ? Float.compare(a.score, b.score) : Integer.compare(b.id, a.id);
+            PriorityQueue<Hit> heap = new PriorityQueue<>(Math.min(k, Math.max(1, touchedCount)) + 1, worseFirst);
+            for (int i = 0; i < touchedCount; i++) {
+                int slot = touched[i];
+                Hit hit = new Hit(s.contacts[slot].getId(), scores[slot]);
+                if (heap.size() < k) {
+                    heap.add(hit);
+                } else if (worseFirst.compare(hit, heap.peek()) > 0) {
+                    heap.poll();
+                    heap.add(hit);
+                }
+            }
+            List<Hit> hits = new ArrayList<>(heap);
+            hits.sort(worseFirst.reversed());
+            return hits;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private static int readVarInt(byte[] data, int[] cursor) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = data[cursor[0]++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    /**
+     * 切分文本：连续的字母数字为一个词（转为小写），连续的汉字切为相邻两字的二元组
+     * @param indexing 为 true 时（建索引）汉字另外输出单字，使单字查询（如只输入姓氏）也能命中；
+     *                 查询时只有单个汉字才输出单字，两字以上只输出二元组
+     */
+    static void tokenize(String text, boolean indexing, Consumer<String> out) {
+        if (text == null) {
+            return;
+        }
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            char c = text.charAt(i);
+            if (isHan(c)) {
+                int start = i;
+                while (i < length && isHan(text.charAt(i))) {
+                    i++;
+                }
+                int runLength = i - start;
+                for (int j = start; j < i; j++) {
+                    if (indexing || runLength == 1) {
+                        out.accept(String.valueOf(text.charAt(j)));
+                    }
+                    if (j + 1 < i) {
+                        out.accept(text.substring(j, j + 2));
+                    }
+                }
+            } else if (Character.isLetterOrDigit(c)) {
+                int start = i;
+                while (i < length && Character.isLetterOrDigit(text.charAt(i)) && !isHan(text.charAt(i))) {
+                    i++;
+                }
+                out.accept(text.substring(start, i).toLowerCase());
+            } else {
+                i++;
+            }
+        }
+    }
+
+    private static boolean isHan(char c) {
+        return Character.UnicodeScript.of(c) == Character.UnicodeScript.HAN;
+    }
+}
@@ -0,0 +1,106 @@
+package system;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.function.Supplier;
+
+/**
+ * ContactTiering 类：冷热数据分层，在后台把冷数据从联系人表移到归档表
+ * 冷数据指长期未访问（打开详情、修改等按编号的访问，以及更新）的联系人，以及（按配置）已拉黑的联系人。
+ * 归档后联系人不再参与全量加载、内存副本与各索引，常用数据的加载时间和内存占用只与热数据量相关；
+ * 按编号访问归档中的联系人时透明移回，也可显式查询归档（不移回）。
+ * 每轮先把内存中记录的访问时间写回数据库，再逐批归档，两批之间暂停片刻，避免长时间占用写锁。
+ *
+ * 配置（系统属性）：
+ *   contact.tiering.enabled          是否启用，默认 false
+ *   contact.tiering.idleDays         多少天未访问视为冷数据，默认 180
+ *   contact.tiering.blacklisted      已拉黑的联系人是否也归档，默认 true
+ *   contact.tiering.batchSize        每批每个分片最多归档的联系人数，默认 500
+ *   contact.tiering.intervalMinutes  两轮之间的间隔，默认 60
+ */
+class ContactTiering {
+
+    static final boolean ENABLED = Boolean.getBoolean("contact.tiering.enabled");
+    private static final long IDLE_MILLIS = Long.getLong("contact.tiering.idleDays", 180) * 86_400_000L;
+    private static final boolean BLACKLISTED =
+            Boolean.parseBoolean(System.getProperty("contact.tiering.blacklisted", "true"));
+    private static final int BATCH_SIZE = Math.max(1, Integer.getInteger("contact.tiering.batchSize", 500));
+    private static final long INTERVAL_MILLIS =
+            Math.max(60_000, Long.getLong("contact.tiering.intervalMinutes", 60) * 60_000);
+    private static final long BATCH_PAUSE_MILLIS = 200;
+
+    // 需要分层的服务：单库时为共享服务，多租户时为当前已加载的租户（未加载的租户在下次加载后处理）
+    private final Supplier<Collection<ContactService>> services;
+    private volatile Thread thread;
+
+    ContactTiering(Supplier<Collection<ContactService>> services) {
+        this.services = services;
+    }
+
+    synchronized void start() {
+        if (thread != null) {
+            return;
+        }
+        Thread worker = new Thread(this::run, "contact-tiering");
+        worker.setDaemon(true);
+        worker.setPriority(Thread.MIN_PRIORITY);
+        thread = worker;
+        worker.start();
+    }
+
+    synchronized void stop() {
+        if (thread != null) {
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    /**
+     * 执行一轮：写回访问时间，然后归档直到没有新的冷数据
+     * @return 本轮归档的联系人数
+     */
+    int runOnce() throws SQLException, InterruptedException {
+        int total = 0;
+        for (ContactService service : services.get()) {
+            service.flushAccesses();
+            long idleBefore = System.currentTimeMillis() - IDLE_MILLIS;
+            int archived;
+            do {
+                archived = service.archiveCold(idleBefore, BLACKLISTED, BATCH_SIZE);
+                total += archived;
+                if (archived > 0) {
+                    Thread.sleep(BATCH_PAUSE_MILLIS);
+                }
+            } while (archived > 0);
+        }
+        return total;
+    }
+
+    private void run() {
+        boolean failing = false;
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                int archived = runOnce();
+                if (failing) {
+                    System.out.println("冷数据归档已恢复");
+                    failing = false;
+                }
+                if (archived > 0) {
+                    System.out.println("已归档 " + archived + " 个冷数据联系人");
+                }
+            } catch (SQLException e) {
+                if (!failing) {
+                    System.err.println("归档冷数据失败，稍后重试: " + e.getMessage());
+                    failing = true;
+                }
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                Thread.sleep(INTERVAL_MILLIS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+}
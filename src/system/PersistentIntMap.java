@@ -0,0 +1,297 @@
+package system;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * PersistentIntMap 类：以 int 为键的不可变哈希映射（32 路哈希数组映射字典树，HAMT）
+ * put/remove 只复制从根到目标的路径上的节点（约 log32(n) 个），其余部分在新旧版本之间共享，
+ * 因此可以廉价地生成新版本，而旧版本仍可被其他线程无锁读取。
+ */
+final class PersistentIntMap<V> {
+
+    private static final PersistentIntMap<Object> EMPTY = new PersistentIntMap<>(null, 0);
+
+    /**
+     * 内部节点：bitmap 标记 32 个槽位中哪些被占用，slots 只保存被占用的槽位（Leaf 或 Node）
+     */
+    private static final class Node {
+        final int bitmap;
+        final Object[] slots;
+
+        Node(int bitmap, Object[] slots) {
+            this.bitmap = bitmap;
+            this.slots = slots;
+        }
+    }
+
+    private static final class Leaf {
+        final int key;
+        final Object value;
+
+        Leaf(int key, Object value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+
+    private final Node root;
+    private final int size;
+
+    private PersistentIntMap(Node root, int size) {
+        this.root = root;
+        this.size = size;
+    }
+
+    @SuppressWarnings("unchecked")
+    static <V> PersistentIntMap<V> empty() {
+        return (PersistentIntMap<V>) EMPTY;
+    }
+
+    /**
+     * 批量构建，逐层按哈希分桶，比逐个 put 少产生中间版本；键重复时保留后出现的值
+     */
+    static <V> PersistentIntMap<V> build(int[] keys, Object[] values) {
+        int n = keys.length;
+        if (n == 0) {
+            return empty();
+        }
+        int[] hashes = new int[n];
+        int[] order = new int[n];
+        for (int i = 0; i < n; i++) {
+            hashes[i] = hash(keys[i]);
+            order[i] = i;
+        }
+        int[] size = {0};
+        Object root = buildSlot(order, new int[n], 0, n, 0, hashes, keys, values, size);
+        Node rootNode = root instanceof Node ? (Node) root
+                : new Node(1 << (hashes[order[0]] & 31), new Object[] {root});
+        return new PersistentIntMap<>(rootNode, size[0]);
+    }
+
+    private static Object buildSlot(int[] order, int[] scratch, int from, int to, int shift,
+                                    int[] hashes, int[] keys, Object[] values, int[] size) {
+        if (to - from == 1 || shift > 30) {
+            // 剩下的条目哈希完全相同，即键相同，取最后一个
+            int last = order[from];
+            for (int i = from + 1; i < to; i++) {
+                last = Math.max(last, order[i]);
+            }
+            size[0]++;
+            return new Leaf(keys[last], values[last]);
+        }
+        int[] counts = new int[33];
+        for (int i = from; i < to; i++) {
+            counts[((hashes[order[i]] >>> shift) & 31) + 1]++;
+        }
+        for (int b = 0; b < 32; b++) {
+            counts[b + 1] += counts[b];
+        }
+        int[] starts = counts.clone();
+        for (int i = from; i < to; i++) {
+            int b = (hashes[order[i]] >>> shift) & 31;
+            scratch[from + counts[b]++] = order[i];
+        }
+        System.arraycopy(scratch, from, order, from, to - from);
+        int bitmap = 0;
+        List<Object> slots = new ArrayList<>(32);
+        for (int b = 0; b < 32; b++) {
+            int bucketFrom = from + starts[b];
+            int bucketTo = from + starts[b + 1];
+            if (bucketFrom < bucketTo) {
+                bitmap |= 1 << b;
+                slots.add(buildSlot(order, scratch, bucketFrom, bucketTo, shift + 5, hashes, keys, values, size));
+            }
+        }
+        return new Node(bitmap, slots.toArray());
+    }
+
+    /**
+     * 乘以奇数常量是 int 上的双射，不同的键一定得到不同的哈希，因此不需要处理冲突
+     */
+    private static int hash(int key) {
+        return key * 0x9E3779B9;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        Node node = root;
+        int h = hash(key);
+        int shift = 0;
+        while (node != null) {
+            int bit = 1 << ((h >>> shift) & 31);
+            if ((node.bitmap & bit) == 0) {
+                return null;
+            }
+            Object slot = node.slots[Integer.bitCount(node.bitmap & (bit - 1))];
+            if (slot instanceof Leaf) {
+                Leaf leaf = (Leaf) slot;
+                return leaf.key == key ? (V) leaf.value : null;
+            }
+            node = (Node) slot;
+            shift += 5;
+        }
+        return null;
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    /**
+     * 返回放入键值后的新版本，当前版本不变
+     */
+    public PersistentIntMap<V> put(int key, V value) {
+        boolean[] added = {false};
+        int h = hash(key);
+        Node newRoot = root == null
+                ? new Node(1 << (h & 31), new Object[] {new Leaf(key, value)})
+                : put(root, 0, h, key, value, added);
+        if (root == null) {
+            added[0] = true;
+        }
+        return newRoot == root ? this : new PersistentIntMap<>(newRoot, size + (added[0] ? 1 : 0));
+    }
+
+    private static Node put(Node node, int shift, int h, int key, Object value, boolean[] added) {
+        int bit = 1 << ((h >>> shift) & 31);
+        int idx = Integer.bitCount(node.bitmap & (bit - 1));
+        if ((node.bitmap & bit) == 0) {
+            Object[] slots = new Object[node.slots.length + 1];
+            System.arraycopy(node.slots, 0, slots, 0, idx);
+            slots[idx] = new Leaf(key, value);
+            System.arraycopy(node.slots, idx, slots, idx + 1, node.slots.length - idx);
+            added[0] = true;
+            return new Node(node.bitmap | bit, slots);
+        }
+        Object slot = node.slots[idx];
+        Object replacement;
+        if (slot instanceof Leaf) {
+            Leaf leaf = (Leaf) slot;
+            if (leaf.key == key) {
+                if (leaf.value == value) {
+                    return node;
+                }
+                replacement = new Leaf(key, value);
+            } else {
+                replacement = merge(shift + 5, leaf, hash(leaf.key), new Leaf(key, value), h);
+                added[0] = true;
+            }
+        } else {
+            Node child = (Node) slot;
+            Node newChild = put(child, shift + 5, h, key, value, added);
+            if (newChild == child) {
+                return node;
+            }
+            replacement = newChild;
+        }
+        Object[] slots = node.slots.clone();
+        slots[idx] = replacement;
+        return new Node(node.bitmap, slots);
+    }
+
+    private static Node merge(int shift, Leaf a, int ha, Leaf b, int hb) {
+        int ia = (ha >>> shift) & 31;
+        int ib = (hb >>> shift) & 31;
+        if (ia == ib) {
+            return new Node(1 << ia, new Object[] {merge(shift + 5, a, ha, b, hb)});
+        }
+        return new Node((1 << ia) | (1 << ib), ia < ib ? new Object[] {a, b} : new Object[] {b, a});
+    }
+
+    /**
+     * 返回删除键后的新版本，当前版本不变
+     */
+    public PersistentIntMap<V> remove(int key) {
+        if (root == null) {
+            return this;
+        }
+        Object newRoot = remove(root, 0, hash(key), key);
+        if (newRoot == root) {
+            return this;
+        }
+        return new PersistentIntMap<>((Node) newRoot, size - 1);
+    }
+
+    /**
+     * @return 新的槽位内容：Node、只剩一个叶子时上提的 Leaf、或为空时的 null
+     */
+    private static Object remove(Node node, int shift, int h, int key) {
+        int bit = 1 << ((h >>> shift) & 31);
+        if ((node.bitmap & bit) == 0) {
+            return node;
+        }
+        int idx = Integer.bitCount(node.bitmap & (bit - 1));
+        Object slot = node.slots[idx];
+        Object replacement;
+        if (slot instanceof Leaf) {
+            if (((Leaf) slot).key != key) {
+                return node;
+            }
+            replacement = null;
+        } else {
+            replacement = remove((Node) slot, shift + 5, h, key);
+            if (replacement == slot) {
+                return node;
+            }
+        }
+        if (replacement == null) {
+            if (node.slots.length == 1) {
+                return null;
+            }
+            Object[] slots = new Object[node.slots.length - 1];
+            System.arraycopy(node.slots, 0, slots, 0, idx);
+            System.arraycopy(node.slots, idx + 1, slots, idx, slots.length - idx);
+            if (shift > 0 && slots.length == 1 && slots[0] instanceof Leaf) {
+                return slots[0];
+            }
+            return new Node(node.bitmap & ~bit, slots);
+        }
+        if (shift > 0 && node.slots.length == 1 && replacement instanceof Leaf) {
+            return replacement;
+        }
+        Object[] slots = node.slots.clone();
+        slots[idx] = replacement;
+        return new Node(node.bitmap, slots);
+    }
+
+    /**
+     * 遍历所有值（顺序与键的大小无关）
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachValue(Consumer<? super V> action) {
+        if (root == null) {
+            return;
+        }
+        Object[][] stack = new Object[8][];
+        int[] positions = new int[8];
+        int depth = 0;
+        stack[0] = root.slots;
+        while (depth >= 0) {
+            if (positions[depth] == stack[depth].length) {
+                positions[depth] = 0;
+                depth--;
+                continue;
+            }
+            Object slot = stack[depth][positions[depth]++];
+            if (slot instanceof Leaf) {
+                action.accept((V) ((Leaf) slot).value);
+            } else {
+                depth++;
+                stack[depth] = ((Node) slot).slots;
+                positions[depth] = 0;
+            }
+        }
+    }
+
+    public List<V> values() {
+        List<V> values = new ArrayList<>(size);
+        forEachValue(values::add);
+        return values;
+    }
+}
@@ -0,0 +1,384 @@
+package system;
+
+import java.sql.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * ShardRouter 类：ContactDao 之下的路由层，按联系人编号的哈希把数据分布到多个分片，
+ * 读请求在允许的延迟范围内发往只读副本，全量查询在各分片上并行执行后归并
+ *
+ * 通过系统属性配置（未配置时等同于原来的单库）：
+ *   contact.shards                   分片数量，默认 1
+ *   contact.shard.N.url              第 N 个分片主库地址（分片 0 默认使用 ContactDao 中的地址）
+ *   contact.shard.N.user / .password 第 N 个分片的账号，默认取 contact.db.user / contact.db.password
+ *   contact.shard.N.replicas         第 N 个分片的只读副本地址，逗号分隔，账号与主库相同
+ *   contact.replica.maxStalenessMs   允许读到的最大延迟，默认 1000；本进程写入后该时间内读主库
+ *   contact.replica.lagQuery         在副本上执行、返回复制延迟秒数的 SQL，可选
+ */
+class ShardRouter {
+
+    // 副本延迟探测结果的缓存时间
+    private static final long LAG_CHECK_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * 一个分片：一个主库加若干只读副本
+     */
+    static class Shard {
+        final int index;
+        final ContactDataSource primary;
+        final List<Replica> replicas;
+        final AtomicInteger nextReplica = new AtomicInteger();
+        // 在此时间之前的读请求都走主库，保证读到本进程刚写入的数据
+        volatile long primaryUntilNanos = System.nanoTime();
+        volatile boolean initialized = false;
+        // 主库的熔断器，主库的所有连接都经过它取得
+        final ContactCircuitBreaker breaker;
+
+        Shard(int index, ContactDataSource primary, List<ContactDataSource> replicas) {
+            this.index = index;
+            this.primary = primary;
+            this.breaker = new ContactCircuitBreaker(primary.getUrl());
+            // 故障可能是数据库重启（MySQL 5.7 重启后自增计数按现有最大编号重置），恢复后重新执行初始化检查
+            this.breaker.addRecoveryListener(() -> initialized = false);
+            this.replicas = new ArrayList<>(replicas.size());
+            for (ContactDataSource replica : replicas) {
+                this.replicas.add(new Replica(replica));
+            }
+        }
+    }
+
+    static class Replica {
+        final ContactDataSource source;
+        volatile long lagCheckedNanos;
+        volatile double lagSeconds = -1;
+
+        Replica(ContactDataSource source) {
+            this.source = source;
+            this.lagCheckedNanos = System.nanoTime() - LAG_CHECK_INTERVAL_NANOS;
+        }
+    }
+
+    /**
+     * 在单个分片上执行的任务
+     */
+    interface ShardTask<T> {
+        T run(Shard shard) throws SQLException;
+    }
+
+    private final List<Shard> shards;
+    private final long maxStalenessNanos;
+    private final String lagQuery;
+    private ExecutorService executor;
+    // 分片模式下的全局编号分配器，0 表示尚未从各分片读取当前最大编号
+    private int nextId = 0;
+
+    public ShardRouter(List<Shard> shards, long maxStalenessMillis, String lagQuery) {
+        if (shards.isEmpty()) {
+            throw new IllegalArgumentException("至少需要一个分片");
+        }
+        this.shards = new ArrayList<>(shards);
+        this.maxStalenessNanos = TimeUnit.MILLISECONDS.toNanos(maxStalenessMillis);
+        this.lagQuery = lagQuery;
+    }
+
+    /**
+     * 单库、无副本的路由，行为与原来的 ContactDao 相同
+     */
+    public static ShardRouter single(ContactDataSource source) {
+        return new ShardRouter(Collections.singletonList(
+                new Shard(0, source, Collections.<ContactDataSource>emptyList())), 0, null);
+    }
+
+    /**
+     * 按系统属性创建路由
+     * @param defaultUrl 分片 0 的默认地址
+     */
+    public static ShardRouter fromSystemProperties(String defaultUrl, String defaultUser, String defaultPassword) {
+        int count = Integer.getInteger("contact.shards", 1);
+        String user = System.getProperty("contact.db.user", defaultUser);
+        String password = System.getProperty("contact.db.password", defaultPassword);
+        List<Shard> shards = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String prefix = "contact.shard." + i + ".";
+            String url = System.getProperty(prefix + "url", i == 0 ? defaultUrl : null);
+            if (url == null) {
+                throw new IllegalStateException("缺少分片配置: " + prefix + "url");
+            }
+            String shardUser = System.getProperty(prefix + "user", user);
+            String shardPassword = System.getProperty(prefix + "password", password);
+            List<ContactDataSource> replicas = new ArrayList<>();
+            for (String replicaUrl : System.getProperty(prefix + "replicas", "").split(",")) {
+                if (!replicaUrl.trim().isEmpty()) {
+                    replicas.add(new ContactDataSource(replicaUrl.trim(), shardUser, shardPassword));
+                }
+            }
+            shards.add(new Shard(i, new ContactDataSource(url, shardUser, shardPassword), replicas));
+        }
+        return new ShardRouter(shards, Long.getLong("contact.replica.maxStalenessMs", 1000L),
+                System.getProperty("contact.replica.lagQuery"));
+    }
+
+    public int size() {
+        return shards.size();
+    }
+
+    /**
+     * 所有分片主库是否都处于正常状态（没有熔断）
+     */
+    public boolean isAvailable() {
+        for (Shard shard : shards) {
+            if (!shard.breaker.isClosed()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 现在访问所有分片是否都会真正发出请求（正常，或已到探测时间）
+     */
+    public boolean allowsAttempt() {
+        for (Shard shard : shards) {
+            if (!shard.breaker.allowsAttempt()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 任一分片主库熔断后恢复时回调
+     */
+    public void addRecoveryListener(Runnable listener) {
+        for (Shard shard : shards) {
+            shard.breaker.addRecoveryListener(listener);
+        }
+    }
+
+    public void removeRecoveryListener(Runnable listener) {
+        for (Shard shard : shards) {
+            shard.breaker.removeRecoveryListener(listener);
+        }
+    }
+
+    public boolean isSharded() {
+        return shards.size() > 1;
+    }
+
+    public List<Shard> getShards() {
+        return Collections.unmodifiableList(shards);
+    }
+
+    public Shard shard(int index) {
+        return shards.get(index);
+    }
+
+    /**
+     * 联系人编号所在的分片
+     */
+    public Shard shardOf(int id) {
+        return shards.get(shardIndex(id, shards.size()));
+    }
+
+    static int shardIndex(int id, int shardCount) {
+        // 乘法哈希打散连续编号，避免编号规律导致分片倾斜
+        int h = id * 0x9E3779B9;
+        h ^= h >>> 16;
+        return Math.floorMod(h, shardCount);
+    }
+
+    /**
+     * 按分片对编号分组
+     * @return 每个分片对应的输入下标列表
+     */
+    public List<List<Integer>> groupByShard(List<Integer> ids) {
+        List<List<Integer>> groups = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            groups.add(new ArrayList<Integer>());
+        }
+        for (int i = 0; i < ids.size(); i++) {
+            groups.get(shardIndex(ids.get(i), shards.size())).add(i);
+        }
+        return groups;
+    }
+
+    /**
+     * 记录一次写入：之后 maxStaleness 时间内该分片的读请求走主库
+     */
+    public void markWritten(Shard shard) {
+        shard.primaryUntilNanos = System.nanoTime() + maxStalenessNanos;
+    }
+
+    /**
+     * 打开一个主库连接，经过该分片的熔断器（失败时有限重试，熔断期间立即失败）
+     */
+    public Connection openPrimary(Shard shard) throws SQLException {
+        return shard.breaker.open(shard.primary::getConnection);
+    }
+
+    /**
+     * 打开一个读连接：优先轮询选择延迟在允许范围内的副本，否则使用主库
+     */
+    public Connection openRead(Shard shard) throws SQLException {
+        if (shard.replicas.isEmpty() || System.nanoTime() - shard.primaryUntilNanos < 0) {
+            return openPrimary(shard);
+        }
+        int size = shard.replicas.size();
+        for (int attempt = 0; attempt < size; attempt++) {
+            Replica replica = shard.replicas.get(Math.floorMod(shard.nextReplica.getAndIncrement(), size));
+            Connection conn = null;
+            try {
+                conn = replica.source.getConnection();
+                if (isFreshEnough(replica, conn)) {
+                    return conn;
+                }
+                conn.close();
+            } catch (SQLException e) {
+                System.err.println("只读副本不可用，改为访问主库: " + replica.source + " " + e.getMessage());
+                if (conn != null) {
+                    try {
+                        conn.close();
+                    } catch (SQLException ignored) {
+                    }
+                }
+            }
+        }
+        return openPrimary(shard);
+    }
+
+    private boolean isFreshEnough(Replica replica, Connection conn) throws SQLException {
+        if (lagQuery == null) {
+            return true;
+        }
+        long now = System.nanoTime();
+        if (now - replica.lagCheckedNanos >= LAG_CHECK_INTERVAL_NANOS) {
+            double lag = -1;
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery(lagQuery)) {
+                if (rs.next()) {
+                    lag = rs.getDouble(1);
+                    if (rs.wasNull()) {
+                        lag = -1;
+                    }
+                }
+            }
+            replica.lagSeconds = lag;
+            replica.lagCheckedNanos = now;
+        }
+        double lag = replica.lagSeconds;
+        return lag >= 0 && lag * 1e9 <= maxStalenessNanos;
+    }
+
+    /**
+     * 为分片模式下的新联系人分配全局编号，首次调用时读取各分片当前的最大编号（含已归档的联系人，
+     * 归档的编号移回时仍使用原编号，不能再分配给新联系人）
+     */
+    public synchronized int allocateId() throws SQLException {
+        if (nextId == 0) {
+            int max = 0;
+            for (Integer shardMax : scatter(shard -> {
+                try (Connection conn = openPrimary(shard);
+                     Statement stmt = conn.createStatement();
+                     ResultSet rs = stmt.executeQuery("SELECT GREATEST(COALESCE((SELECT MAX(id) FROM contacts), 0), "
+                             + "COALESCE((SELECT MAX(id) FROM contacts_archive), 0))")) {
+                    return rs.next() ? rs.getInt(1) : 0;
+                }
+            })) {
+                max = Math.max(max, shardMax);
+            }
+            nextId = max + 1;
+        }
+        return nextId++;
+    }
+
+    /**
+     * 编号冲突（例如其他进程也在写入）后重新读取最大编号
+     */
+    public synchronized void resetIdAllocator() {
+        nextId = 0;
+    }
+
+    /**
+     * 在所有分片上并行执行任务
+     * @return 按分片顺序排列的结果
+     */
+    public <T> List<T> scatter(ShardTask<T> task) throws SQLException {
+        if (shards.size() == 1) {
+            return Collections.singletonList(task.run(shards.get(0)));
+        }
+        List<Future<T>> futures = new ArrayList<>(shards.size());
+        for (Shard shard : shards) {
+            futures.add(executor().submit(() -> task.run(shard)));
+        }
+        List<T> results = new ArrayList<>(shards.size());
+        SQLException failure = null;
+        for (Future<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof SQLException) {
+                    if (failure == null) {
+                        failure = (SQLException) cause;
+                    }
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                } else {
+                    throw new IllegalStateException(cause);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("分片查询被中断", e);
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return results;
+    }
+
+    /**
+     * k 路归并各分片已排好序的结果
+     */
+    public static <T> List<T> mergeSorted(List<List<T>> sortedLists, Comparator<? super T> comparator) {
+        if (sortedLists.size() == 1) {
+            return sortedLists.get(0);
+        }
+        int total = 0;
+        for (List<T> list : sortedLists) {
+            total += list.size();
+        }
+        List<T> merged = new ArrayList<>(total);
+        // 堆中保存 {列表下标, 元素下标}
+        PriorityQueue<int[]> heap = new PriorityQueue<>(Math.max(1, sortedLists.size()),
+                (a, b) -> comparator.compare(sortedLists.get(a[0]).get(a[1]), sortedLists.get(b[0]).get(b[1])));
+        for (int i = 0; i < sortedLists.size(); i++) {
+            if (!sortedLists.get(i).isEmpty()) {
+                heap.add(new int[] {i, 0});
+            }
+        }
+        while (!heap.isEmpty()) {
+            int[] top = heap.poll();
+            List<T> list = sortedLists.get(top[0]);
+            merged.add(list.get(top[1]));
+            if (++top[1] < list.size()) {
+                heap.add(top);
+            }
+        }
+        return merged;
+    }
+
+    private synchronized ExecutorService executor() {
+        if (executor == null) {
+            AtomicInteger counter = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(Math.min(shards.size(), 32), r -> {
+                Thread thread = new Thread(r, "contact-shard-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return executor;
+    }
+}